@@ -0,0 +1,59 @@
+/*
+Test data for the benchmarks of the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.recognition.packets.ConfigurableDevice;
+import com.estimote.coresdk.recognition.utils.DeviceId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Seeded beacon and device lists, the same on every run.
+ */
+final class BenchmarkData {
+
+    static final String UUID_STRING = "B9407F30-F5F8-466E-AFF9-25556B57FE6D";
+    static final UUID PROXIMITY_UUID = UUID.fromString(UUID_STRING);
+
+    private static final long SEED = 42;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Beacons of one synthetic fleet, all of them seen.
+     */
+    static List<Beacon> beacons(int count) {
+        List<Beacon> beacons = new ArrayList<Beacon>(count);
+        new SimulatedBeaconSource.SyntheticFleet(PROXIMITY_UUID, count, 4.0, 0.0, SEED).beacons(0, beacons);
+        return beacons;
+    }
+
+    static List<ConfigurableDevice> devices(int count) {
+        Random random = new Random(SEED);
+        List<ConfigurableDevice> devices = new ArrayList<ConfigurableDevice>(count);
+
+        for (int i = 0; i < count; i++) {
+            ConfigurableDevice d = new ConfigurableDevice();
+            d.macAddress = SimulatedBeaconSource.macAddressFor(1 + i / 1000, 1 + i % 1000);
+            d.type = "PROXIMITY_BEACON";
+            d.txPower = -12;
+            d.appVersion = "4.13.2";
+            d.bootloaderVersion = "4.1.0";
+            d.deviceId = new DeviceId(String.format("%032x", random.nextLong() & Long.MAX_VALUE));
+            d.discoveryTime = 1500000000000L + i;
+            d.isClose = random.nextInt(10) == 0;
+            d.isShaken = false;
+            d.rssi = -95 + random.nextInt(40);
+            devices.add(d);
+        }
+        return devices;
+    }
+}
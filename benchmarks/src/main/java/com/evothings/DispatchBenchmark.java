@@ -0,0 +1,141 @@
+/*
+Listener dispatch benchmarks for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import android.app.Activity;
+import android.content.Intent;
+
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaArgs;
+import org.apache.cordova.CordovaInterface;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A ranging result from the beacon source to the WebView: the plugin
+ * listener, the event pipeline, serialization and the Cordova result.
+ * Each operation waits for its result, so no frames are dropped.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int count;
+
+    @Param({ "json", "binary" })
+    String format;
+
+    private SimulatedBeaconSource source;
+    private EstimoteBeacons plugin;
+    private ExecutorService threadPool;
+    private volatile long results;
+
+    @Setup
+    public void setup() throws JSONException {
+        final List<Beacon> beacons = BenchmarkData.beacons(this.count);
+
+        this.source = new SimulatedBeaconSource(new SimulatedBeaconSource.Scenario() {
+            @Override
+            void beacons(long timeMillis, List<Beacon> out) {
+                out.addAll(beacons);
+            }
+        }, SimulatedBeaconSource.DEFAULT_PERIOD_MILLIS, SimulatedBeaconSource.DEFAULT_EXIT_DELAY_MILLIS);
+
+        this.plugin = new EstimoteBeacons() {
+            @Override
+            BeaconSource createBeaconSource() {
+                return source;
+            }
+        };
+
+        this.threadPool = Executors.newCachedThreadPool();
+        final Activity activity = new Activity();
+
+        this.plugin.privateInitialize(new CordovaInterface() {
+            @Override
+            public void startActivityForResult(CordovaPlugin command, Intent intent, int requestCode) {
+            }
+
+            @Override
+            public void setActivityResultCallback(CordovaPlugin plugin) {
+            }
+
+            @Override
+            public Activity getActivity() {
+                return activity;
+            }
+
+            @Override
+            public ExecutorService getThreadPool() {
+                return threadPool;
+            }
+        }, new CordovaWebView() {
+            @Override
+            public void sendPluginResult(PluginResult result, String callbackId) {
+                results++;
+            }
+        });
+
+        JSONObject region = new JSONObject();
+        region.put("identifier", "benchmark");
+        region.put("uuid", BenchmarkData.UUID_STRING);
+
+        JSONObject options = new JSONObject();
+        options.put("binary", "binary".equals(this.format));
+
+        this.plugin.execute("beacons_startRangingBeaconsInRegion",
+                new CordovaArgs(new JSONArray().put(region).put(options)),
+                new CallbackContext("ranging", this.plugin.webView));
+
+        // The first period connects to the service and starts ranging.
+        dispatch();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.plugin.onDestroy();
+        this.threadPool.shutdown();
+    }
+
+    @Benchmark
+    public long dispatch() {
+        long target = this.results + 1;
+        this.source.step();
+
+        while (this.results < target) {
+            Thread.yield();
+        }
+        return this.results;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+Region lookup benchmarks for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region keys and region parsing, done for every region call and result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegionBenchmark {
+
+    private JSONObject regionJson;
+    private Integer major;
+    private Integer minor;
+
+    @Setup
+    public void setup() throws JSONException {
+        this.regionJson = new JSONObject();
+        this.regionJson.put("identifier", "benchmark");
+        this.regionJson.put("uuid", BenchmarkData.UUID_STRING);
+        this.regionJson.put("major", 1);
+        this.regionJson.put("minor", 42);
+
+        this.major = 1;
+        this.minor = 42;
+    }
+
+    @Benchmark
+    public String regionKey() {
+        return EstimoteBeacons.beaconRegionHashMapKey(BenchmarkData.UUID_STRING, this.major, this.minor);
+    }
+
+    @Benchmark
+    public BeaconRegion createRegion() {
+        return EstimoteBeacons.createBeaconRegion(this.regionJson, false);
+    }
+
+    @Benchmark
+    public boolean validUuid() {
+        return EstimoteBeacons.isValidUuid(BenchmarkData.UUID_STRING);
+    }
+
+    @Benchmark
+    public boolean invalidUuid() {
+        return EstimoteBeacons.isValidUuid("B9407F30-F5F8-466E-AFF9-25556B57FE6X");
+    }
+}
@@ -0,0 +1,68 @@
+/*
+Serialization benchmarks for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.recognition.packets.ConfigurableDevice;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON building of ranging and discovery results.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int count;
+
+    private List<Beacon> beacons;
+    private List<ConfigurableDevice> devices;
+
+    @Setup
+    public void setup() {
+        this.beacons = BenchmarkData.beacons(this.count);
+        this.devices = BenchmarkData.devices(this.count);
+    }
+
+    @Benchmark
+    public JSONArray beaconArray() throws JSONException {
+        return EstimoteBeacons.makeJSONBeaconArray(this.beacons);
+    }
+
+    @Benchmark
+    public JSONArray deviceArray() throws JSONException {
+        return EstimoteBeacons.makeJSONDeviceArray(this.devices);
+    }
+
+    /**
+     * Building and encoding, as done for each result sent to JavaScript.
+     */
+    @Benchmark
+    public String beaconArrayEncoded() throws JSONException {
+        return EstimoteBeacons.makeJSONBeaconArray(this.beacons).toString();
+    }
+}
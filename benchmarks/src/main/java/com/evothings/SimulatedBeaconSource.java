@@ -0,0 +1,525 @@
+/*
+Simulated beacon source for the benchmarks and tests of the Android
+implementation of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.recognition.packets.ConfigurableDevice;
+import com.estimote.coresdk.recognition.utils.MacAddress;
+import com.estimote.coresdk.service.BeaconManager;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Beacon source that plays a scenario into the plugin listeners instead of
+ * scanning. Time is virtual: advance() runs the scenario on the calling
+ * thread as fast as it can, start() runs it on a timer at a chosen speed.
+ * With the same scenario and seed, the same events are produced.
+ *
+ * Every period, the beacons of the scenario are matched against the ranged
+ * regions and delivered like SDK ranging results. With a scan period set,
+ * ranging results are only delivered once per scan period and wait time. A monitored region is
+ * entered when one of its beacons is seen, and exited when none has been
+ * seen for exitDelayMillis.
+ */
+class SimulatedBeaconSource implements BeaconSource {
+
+    static final long DEFAULT_PERIOD_MILLIS = 100;
+    static final long DEFAULT_EXIT_DELAY_MILLIS = 5000;
+
+    /**
+     * Produces the beacons and devices seen at a point in virtual time.
+     */
+    abstract static class Scenario {
+        abstract void beacons(long timeMillis, List<Beacon> out);
+
+        void devices(long timeMillis, List<ConfigurableDevice> out) {
+        }
+    }
+
+    private final Scenario scenario;
+    private final long periodMillis;
+    private final long exitDelayMillis;
+
+    private BeaconManager.BeaconRangingListener rangingListener;
+    private BeaconManager.BeaconMonitoringListener monitoringListener;
+    private BeaconManager.ConfigurableDevicesListener devicesListener;
+
+    // Guarded by this.
+    private long timeMillis;
+    private BeaconManager.ServiceReadyCallback pendingReady;
+    private final LinkedHashMap<String, BeaconRegion> rangedRegions = new LinkedHashMap<String, BeaconRegion>();
+    private final LinkedHashMap<String, MonitoredRegion> monitoredRegions = new LinkedHashMap<String, MonitoredRegion>();
+    private boolean discovering;
+    private long rangingIntervalMillis;
+    private long nextRangingTime;
+
+    private ScheduledExecutorService timer;
+    private ScheduledFuture<?> timerTask;
+
+    SimulatedBeaconSource(Scenario scenario, long periodMillis, long exitDelayMillis) {
+        this.scenario = scenario;
+        this.periodMillis = Math.max(1, periodMillis);
+        this.exitDelayMillis = exitDelayMillis;
+    }
+
+    @Override
+    public void setErrorListener(BeaconManager.ErrorListener listener) {
+        // The simulation has no scanning errors.
+    }
+
+    @Override
+    public void setRangingListener(BeaconManager.BeaconRangingListener listener) {
+        this.rangingListener = listener;
+    }
+
+    @Override
+    public void setMonitoringListener(BeaconManager.BeaconMonitoringListener listener) {
+        this.monitoringListener = listener;
+    }
+
+    @Override
+    public void setConfigurableDevicesListener(BeaconManager.ConfigurableDevicesListener listener) {
+        this.devicesListener = listener;
+    }
+
+    /**
+     * The service is ready on the next period, like the asynchronous SDK bind.
+     */
+    @Override
+    public synchronized void connect(BeaconManager.ServiceReadyCallback callback) {
+        this.pendingReady = callback;
+    }
+
+    @Override
+    public synchronized void disconnect() {
+        this.pendingReady = null;
+        this.rangedRegions.clear();
+        this.monitoredRegions.clear();
+        this.discovering = false;
+    }
+
+    @Override
+    public synchronized void startRanging(BeaconRegion region) {
+        this.rangedRegions.put(regionKey(region), region);
+    }
+
+    @Override
+    public synchronized void stopRanging(BeaconRegion region) {
+        this.rangedRegions.remove(regionKey(region));
+    }
+
+    @Override
+    public synchronized void startMonitoring(BeaconRegion region) {
+        this.monitoredRegions.put(regionKey(region), new MonitoredRegion(region));
+    }
+
+    /**
+     * Stop monitoring by region identifier or region key.
+     */
+    @Override
+    public synchronized void stopMonitoring(String regionId) {
+        if (this.monitoredRegions.remove(regionId) != null) {
+            return;
+        }
+
+        for (Map.Entry<String, MonitoredRegion> entry : this.monitoredRegions.entrySet()) {
+            if (regionId.equals(entry.getValue().region.getIdentifier())) {
+                this.monitoredRegions.remove(entry.getKey());
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void setForegroundScanPeriod(long scanPeriodMillis, long waitTimeMillis) {
+        this.rangingIntervalMillis = scanPeriodMillis + waitTimeMillis;
+        this.nextRangingTime = Math.min(this.nextRangingTime, this.timeMillis + this.rangingIntervalMillis);
+    }
+
+    @Override
+    public synchronized void startConfigurableDevicesDiscovery() {
+        this.discovering = true;
+    }
+
+    @Override
+    public synchronized void stopConfigurableDevicesDiscovery() {
+        this.discovering = false;
+    }
+
+    /**
+     * Current virtual time.
+     */
+    synchronized long getTimeMillis() {
+        return this.timeMillis;
+    }
+
+    /**
+     * Run the scenario for the given virtual duration on the calling thread.
+     */
+    void advance(long durationMillis) {
+        long end = getTimeMillis() + durationMillis;
+
+        while (getTimeMillis() < end) {
+            step();
+        }
+    }
+
+    /**
+     * Run the scenario on a timer. A speed of 2 plays two virtual seconds per second.
+     */
+    synchronized void start(double speed) {
+        stop();
+
+        long delayMicros = Math.max(1, (long) (this.periodMillis * 1000 / speed));
+        this.timer = Executors.newSingleThreadScheduledExecutor();
+        this.timerTask = this.timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                step();
+            }
+        }, 0, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    synchronized void stop() {
+        if (this.timer != null) {
+            this.timerTask.cancel(false);
+            this.timer.shutdown();
+            this.timer = null;
+        }
+    }
+
+    /**
+     * Play one period: service readiness, then ranging, monitoring and discovery.
+     */
+    void step() {
+        BeaconManager.ServiceReadyCallback ready;
+        long now;
+
+        synchronized (this) {
+            ready = this.pendingReady;
+            this.pendingReady = null;
+            this.timeMillis += this.periodMillis;
+            now = this.timeMillis;
+        }
+
+        if (ready != null) {
+            ready.onServiceReady();
+        }
+
+        List<Beacon> beacons = new ArrayList<Beacon>();
+        this.scenario.beacons(now, beacons);
+
+        List<BeaconRegion> ranged;
+        List<MonitoredRegion> monitored;
+        boolean discovering;
+        synchronized (this) {
+            if (now >= this.nextRangingTime) {
+                this.nextRangingTime = now + this.rangingIntervalMillis;
+                ranged = new ArrayList<BeaconRegion>(this.rangedRegions.values());
+            } else {
+                ranged = Collections.<BeaconRegion>emptyList();
+            }
+            monitored = new ArrayList<MonitoredRegion>(this.monitoredRegions.values());
+            discovering = this.discovering;
+        }
+
+        if (this.rangingListener != null) {
+            for (BeaconRegion region : ranged) {
+                this.rangingListener.onBeaconsDiscovered(region, matching(region, beacons));
+            }
+        }
+
+        for (MonitoredRegion m : monitored) {
+            List<Beacon> matched = matching(m.region, beacons);
+
+            if (!matched.isEmpty()) {
+                m.lastSeen = now;
+                if (!m.inside) {
+                    m.inside = true;
+                    if (this.monitoringListener != null) {
+                        this.monitoringListener.onEnteredRegion(m.region, matched);
+                    }
+                }
+            } else if (m.inside && now - m.lastSeen >= this.exitDelayMillis) {
+                m.inside = false;
+                if (this.monitoringListener != null) {
+                    this.monitoringListener.onExitedRegion(m.region);
+                }
+            }
+        }
+
+        if (discovering && this.devicesListener != null) {
+            List<ConfigurableDevice> devices = new ArrayList<ConfigurableDevice>();
+            this.scenario.devices(now, devices);
+            if (!devices.isEmpty()) {
+                this.devicesListener.onConfigurableDevicesFound(devices);
+            }
+        }
+    }
+
+    private static List<Beacon> matching(BeaconRegion region, List<Beacon> beacons) {
+        UUID uuid = region.getProximityUUID();
+        Integer major = region.getMajor();
+        Integer minor = region.getMinor();
+
+        List<Beacon> result = new ArrayList<Beacon>();
+        for (Beacon beacon : beacons) {
+            if ((uuid == null || uuid.equals(beacon.getProximityUUID()))
+                    && (major == null || major == beacon.getMajor())
+                    && (minor == null || minor == beacon.getMinor())) {
+                result.add(beacon);
+            }
+        }
+        return result;
+    }
+
+    private static String regionKey(BeaconRegion region) {
+        UUID uuid = region.getProximityUUID();
+        return EstimoteBeacons.beaconRegionHashMapKey(uuid == null ? null : uuid.toString(),
+                region.getMajor(), region.getMinor());
+    }
+
+    /**
+     * MAC address derived from major and minor, for beacons without one.
+     */
+    static MacAddress macAddressFor(int major, int minor) {
+        return MacAddress.fromString(String.format(Locale.US, "EB:5A:%02X:%02X:%02X:%02X",
+                (major >> 8) & 0xFF, major & 0xFF, (minor >> 8) & 0xFF, minor & 0xFF));
+    }
+
+    private static class MonitoredRegion {
+        final BeaconRegion region;
+        boolean inside;
+        long lastSeen;
+
+        MonitoredRegion(BeaconRegion region) {
+            this.region = region;
+        }
+    }
+
+    /**
+     * A fleet of beacons with a fixed mean RSSI each and Gaussian noise.
+     * Each beacon is missed in a period with the given probability.
+     */
+    static class SyntheticFleet extends Scenario {
+        private final UUID uuid;
+        private final int[] meanRssi;
+        private final MacAddress[] macAddresses;
+        private final double noise;
+        private final double missRate;
+        private final Random random;
+
+        SyntheticFleet(UUID uuid, int count, double noise, double missRate, long seed) {
+            this.uuid = uuid;
+            this.meanRssi = new int[count];
+            this.macAddresses = new MacAddress[count];
+            this.noise = noise;
+            this.missRate = missRate;
+            this.random = new Random(seed);
+
+            for (int i = 0; i < count; i++) {
+                this.meanRssi[i] = -95 + this.random.nextInt(40);
+                this.macAddresses[i] = macAddressFor(major(i), minor(i));
+            }
+        }
+
+        private static int major(int i) {
+            return 1 + i / 1000;
+        }
+
+        private static int minor(int i) {
+            return 1 + i % 1000;
+        }
+
+        @Override
+        synchronized void beacons(long timeMillis, List<Beacon> out) {
+            for (int i = 0; i < this.meanRssi.length; i++) {
+                if (this.random.nextDouble() < this.missRate) {
+                    continue;
+                }
+
+                int rssi = (int) Math.round(this.meanRssi[i] + this.random.nextGaussian() * this.noise);
+                out.add(new Beacon(this.uuid, this.macAddresses[i], major(i), minor(i), -59, rssi));
+            }
+        }
+    }
+
+    /**
+     * A walk along waypoints past beacons at fixed positions, in meters.
+     * RSSI follows the log-distance path loss model with Gaussian noise.
+     */
+    static class ScriptedWalk extends Scenario {
+        private final List<Beacon> beacons = new ArrayList<Beacon>();
+        private final List<double[]> positions = new ArrayList<double[]>();
+        private final List<double[]> waypoints = new ArrayList<double[]>();
+        private final double pathLossExponent;
+        private final double noise;
+        private final Random random;
+
+        ScriptedWalk(double pathLossExponent, double noise, long seed) {
+            this.pathLossExponent = pathLossExponent;
+            this.noise = noise;
+            this.random = new Random(seed);
+        }
+
+        /**
+         * Place a beacon at a position.
+         */
+        ScriptedWalk beacon(UUID uuid, int major, int minor, double x, double y) {
+            this.beacons.add(new Beacon(uuid, macAddressFor(major, minor), major, minor, -59, 0));
+            this.positions.add(new double[] { x, y });
+            return this;
+        }
+
+        /**
+         * Be at a position at a point in time. Waypoints are added in time order.
+         */
+        ScriptedWalk waypoint(long timeMillis, double x, double y) {
+            this.waypoints.add(new double[] { timeMillis, x, y });
+            return this;
+        }
+
+        @Override
+        synchronized void beacons(long timeMillis, List<Beacon> out) {
+            double[] p = position(timeMillis);
+
+            for (int i = 0; i < this.beacons.size(); i++) {
+                Beacon b = this.beacons.get(i);
+                double dx = this.positions.get(i)[0] - p[0];
+                double dy = this.positions.get(i)[1] - p[1];
+                double distance = Math.max(0.1, Math.sqrt(dx * dx + dy * dy));
+
+                double rssi = b.getMeasuredPower() - 10 * this.pathLossExponent * Math.log10(distance)
+                        + this.random.nextGaussian() * this.noise;
+                if (rssi > -100) {
+                    out.add(new Beacon(b.getProximityUUID(), b.getMacAddress(), b.getMajor(), b.getMinor(),
+                            b.getMeasuredPower(), (int) Math.round(rssi)));
+                }
+            }
+        }
+
+        private double[] position(long timeMillis) {
+            if (this.waypoints.isEmpty()) {
+                return new double[] { 0, 0 };
+            }
+
+            double[] previous = this.waypoints.get(0);
+            for (double[] w : this.waypoints) {
+                if (w[0] >= timeMillis) {
+                    if (w == previous || w[0] == previous[0]) {
+                        return new double[] { w[1], w[2] };
+                    }
+                    double f = (timeMillis - previous[0]) / (w[0] - previous[0]);
+                    return new double[] { previous[1] + f * (w[1] - previous[1]), previous[2] + f * (w[2] - previous[2]) };
+                }
+                previous = w;
+            }
+            return new double[] { previous[1], previous[2] };
+        }
+    }
+
+    /**
+     * Replays the ranging records of trace files written by TraceRecorder,
+     * with virtual time starting at the first record.
+     */
+    static class TraceReplay extends Scenario {
+        private final List<Long> times = new ArrayList<Long>();
+        private final List<List<Beacon>> records = new ArrayList<List<Beacon>>();
+        private int next;
+
+        TraceReplay(List<File> files) throws IOException {
+            long start = -1;
+            for (File file : files) {
+                InputStream in = new FileInputStream(file);
+                try {
+                    start = read(new DataInputStream(in), start);
+                } finally {
+                    in.close();
+                }
+            }
+        }
+
+        private long read(DataInputStream in, long start) throws IOException {
+            byte[] header = new byte[8];
+            in.readFully(header);
+            if (header[0] != 'E' || header[1] != 'B' || header[2] != 'T' || header[3] != 'R') {
+                throw new IOException("Not a trace file.");
+            }
+
+            // Beacons ranged in several regions at the same time are played once.
+            Set<String> seen = new HashSet<String>();
+            long seenTime = -1;
+
+            while (true) {
+                int type;
+                try {
+                    type = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    return start;
+                }
+
+                long timestamp = Long.reverseBytes(in.readLong());
+                in.skipBytes(20);
+                int count = Short.reverseBytes(in.readShort()) & 0xFFFF;
+
+                if (timestamp != seenTime) {
+                    seen.clear();
+                    seenTime = timestamp;
+                }
+
+                List<Beacon> beacons = new ArrayList<Beacon>(count);
+                for (int i = 0; i < count; i++) {
+                    UUID uuid = new UUID(Long.reverseBytes(in.readLong()), Long.reverseBytes(in.readLong()));
+                    int major = Short.reverseBytes(in.readShort()) & 0xFFFF;
+                    int minor = Short.reverseBytes(in.readShort()) & 0xFFFF;
+                    int rssi = in.readByte();
+                    int measuredPower = in.readByte();
+
+                    if (seen.add(uuid + ":" + major + ":" + minor)) {
+                        beacons.add(new Beacon(uuid, macAddressFor(major, minor), major, minor, measuredPower, rssi));
+                    }
+                }
+
+                if (type != TraceRecorder.TYPE_RANGING) {
+                    continue;
+                }
+                if (start < 0) {
+                    start = timestamp;
+                }
+                this.times.add(timestamp - start);
+                this.records.add(beacons);
+            }
+        }
+
+        @Override
+        synchronized void beacons(long timeMillis, List<Beacon> out) {
+            while (this.next < this.records.size() && this.times.get(this.next) <= timeMillis) {
+                out.addAll(this.records.get(this.next));
+                this.next++;
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/*
+Stand-in for the Android Activity class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package android.app;
+
+import android.content.Context;
+
+public class Activity extends Context {
+    public static final int RESULT_OK = -1;
+    public static final int RESULT_CANCELED = 0;
+
+    public void runOnUiThread(Runnable action) {
+        action.run();
+    }
+}
@@ -0,0 +1,20 @@
+/*
+Stand-in for the Android BluetoothAdapter class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package android.bluetooth;
+
+public class BluetoothAdapter {
+    public static final String ACTION_REQUEST_ENABLE = "android.bluetooth.adapter.action.REQUEST_ENABLE";
+
+    private static final BluetoothAdapter DEFAULT = new BluetoothAdapter();
+
+    public static BluetoothAdapter getDefaultAdapter() {
+        return DEFAULT;
+    }
+
+    public boolean isEnabled() {
+        return true;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+Stand-in for the Android Context class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package android.content;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Context {
+    public static final int MODE_PRIVATE = 0;
+
+    private final Map<String, SharedPreferences> preferences = new HashMap<String, SharedPreferences>();
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public File getFilesDir() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    public File getCacheDir() {
+        return getFilesDir();
+    }
+
+    public synchronized SharedPreferences getSharedPreferences(String name, int mode) {
+        SharedPreferences result = this.preferences.get(name);
+        if (result == null) {
+            result = new SharedPreferences.InMemory();
+            this.preferences.put(name, result);
+        }
+        return result;
+    }
+}
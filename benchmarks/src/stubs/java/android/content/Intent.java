@@ -0,0 +1,18 @@
+/*
+Stand-in for the Android Intent class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package android.content;
+
+public class Intent {
+    private final String action;
+
+    public Intent(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return this.action;
+    }
+}
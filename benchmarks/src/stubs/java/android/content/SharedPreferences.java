@@ -0,0 +1,64 @@
+/*
+Stand-in for the Android SharedPreferences class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package android.content;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public interface SharedPreferences {
+    String getString(String key, String defValue);
+
+    Editor edit();
+
+    interface Editor {
+        Editor putString(String key, String value);
+
+        Editor remove(String key);
+
+        void apply();
+
+        boolean commit();
+    }
+
+    /**
+     * Preferences kept in memory, edits are applied immediately.
+     */
+    class InMemory implements SharedPreferences, Editor {
+        private final Map<String, String> values = new HashMap<String, String>();
+
+        @Override
+        public synchronized String getString(String key, String defValue) {
+            String value = this.values.get(key);
+            return value == null ? defValue : value;
+        }
+
+        @Override
+        public Editor edit() {
+            return this;
+        }
+
+        @Override
+        public synchronized Editor putString(String key, String value) {
+            this.values.put(key, value);
+            return this;
+        }
+
+        @Override
+        public synchronized Editor remove(String key) {
+            this.values.remove(key);
+            return this;
+        }
+
+        @Override
+        public void apply() {
+        }
+
+        @Override
+        public boolean commit() {
+            return true;
+        }
+    }
+}
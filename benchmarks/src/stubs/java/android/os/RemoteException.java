@@ -0,0 +1,15 @@
+/*
+Stand-in for the Android RemoteException class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package android.os;
+
+public class RemoteException extends Exception {
+    public RemoteException() {
+    }
+
+    public RemoteException(String message) {
+        super(message);
+    }
+}
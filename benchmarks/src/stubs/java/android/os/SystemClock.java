@@ -0,0 +1,23 @@
+/*
+Stand-in for the Android SystemClock class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package android.os;
+
+public final class SystemClock {
+    private SystemClock() {
+    }
+
+    public static long elapsedRealtime() {
+        return System.nanoTime() / 1000000;
+    }
+
+    public static long elapsedRealtimeNanos() {
+        return System.nanoTime();
+    }
+
+    public static long uptimeMillis() {
+        return elapsedRealtime();
+    }
+}
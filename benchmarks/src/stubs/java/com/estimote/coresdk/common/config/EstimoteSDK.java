@@ -0,0 +1,20 @@
+/*
+Stand-in for the Estimote SDK EstimoteSDK class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.coresdk.common.config;
+
+import android.content.Context;
+
+public class EstimoteSDK {
+    private static String appId;
+
+    public static void initialize(Context context, String appId, String appToken) {
+        EstimoteSDK.appId = appId;
+    }
+
+    public static String getAppId() {
+        return appId;
+    }
+}
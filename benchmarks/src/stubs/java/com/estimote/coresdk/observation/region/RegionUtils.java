@@ -0,0 +1,43 @@
+/*
+Stand-in for the Estimote SDK RegionUtils class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.coresdk.observation.region;
+
+import com.estimote.coresdk.observation.utils.Proximity;
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+/**
+ * Same distance model as the SDK, so the benchmarks do comparable work.
+ */
+public class RegionUtils {
+    public static double computeAccuracy(Beacon beacon) {
+        if (beacon.getRssi() == 0) {
+            return -1.0;
+        }
+
+        double ratio = beacon.getRssi() / (double) beacon.getMeasuredPower();
+        double rssiCorrection = 0.96 + Math.pow(Math.abs(beacon.getRssi()), 3.0) % 10.0 / 150.0;
+
+        if (ratio <= 1.0) {
+            return Math.pow(ratio, 9.98) * rssiCorrection;
+        }
+        return (0.103 + 0.89978 * Math.pow(ratio, 7.71)) * rssiCorrection;
+    }
+
+    public static Proximity computeProximity(Beacon beacon) {
+        double accuracy = computeAccuracy(beacon);
+
+        if (accuracy < 0) {
+            return Proximity.UNKNOWN;
+        }
+        if (accuracy < 0.5) {
+            return Proximity.IMMEDIATE;
+        }
+        if (accuracy <= 3.0) {
+            return Proximity.NEAR;
+        }
+        return Proximity.FAR;
+    }
+}
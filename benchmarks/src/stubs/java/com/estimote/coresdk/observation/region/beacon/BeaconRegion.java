@@ -0,0 +1,44 @@
+/*
+Stand-in for the Estimote SDK BeaconRegion class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.coresdk.observation.region.beacon;
+
+import java.util.UUID;
+
+public class BeaconRegion {
+    private final String identifier;
+    private final UUID proximityUUID;
+    private final Integer major;
+    private final Integer minor;
+
+    public BeaconRegion(String identifier, UUID proximityUUID, Integer major, Integer minor) {
+        this.identifier = identifier;
+        this.proximityUUID = proximityUUID;
+        this.major = major;
+        this.minor = minor;
+    }
+
+    public String getIdentifier() {
+        return this.identifier;
+    }
+
+    public UUID getProximityUUID() {
+        return this.proximityUUID;
+    }
+
+    public Integer getMajor() {
+        return this.major;
+    }
+
+    public Integer getMinor() {
+        return this.minor;
+    }
+
+    @Override
+    public String toString() {
+        return "BeaconRegion{identifier='" + this.identifier + "', proximityUUID=" + this.proximityUUID
+                + ", major=" + this.major + ", minor=" + this.minor + "}";
+    }
+}
@@ -0,0 +1,14 @@
+/*
+Stand-in for the Estimote SDK SecureBeaconRegion class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.coresdk.observation.region.beacon;
+
+import java.util.UUID;
+
+public class SecureBeaconRegion extends BeaconRegion {
+    public SecureBeaconRegion(String identifier, UUID proximityUUID, Integer major, Integer minor) {
+        super(identifier, proximityUUID, major, minor);
+    }
+}
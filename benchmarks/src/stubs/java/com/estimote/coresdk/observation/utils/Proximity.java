@@ -0,0 +1,10 @@
+/*
+Stand-in for the Estimote SDK Proximity class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.coresdk.observation.utils;
+
+public enum Proximity {
+    UNKNOWN, IMMEDIATE, NEAR, FAR
+}
@@ -0,0 +1,59 @@
+/*
+Stand-in for the Estimote SDK Beacon class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.coresdk.recognition.packets;
+
+import com.estimote.coresdk.recognition.utils.MacAddress;
+
+import java.util.UUID;
+
+public class Beacon {
+    private final UUID proximityUUID;
+    private final MacAddress macAddress;
+    private final int major;
+    private final int minor;
+    private final int measuredPower;
+    private final int rssi;
+
+    public Beacon(UUID proximityUUID, MacAddress macAddress, int major, int minor, int measuredPower, int rssi) {
+        this.proximityUUID = proximityUUID;
+        this.macAddress = macAddress;
+        this.major = major;
+        this.minor = minor;
+        this.measuredPower = measuredPower;
+        this.rssi = rssi;
+    }
+
+    public UUID getProximityUUID() {
+        return this.proximityUUID;
+    }
+
+    public MacAddress getMacAddress() {
+        return this.macAddress;
+    }
+
+    public int getMajor() {
+        return this.major;
+    }
+
+    public int getMinor() {
+        return this.minor;
+    }
+
+    public int getMeasuredPower() {
+        return this.measuredPower;
+    }
+
+    public int getRssi() {
+        return this.rssi;
+    }
+
+    @Override
+    public String toString() {
+        return "Beacon{macAddress=" + this.macAddress + ", proximityUUID=" + this.proximityUUID
+                + ", major=" + this.major + ", minor=" + this.minor
+                + ", measuredPower=" + this.measuredPower + ", rssi=" + this.rssi + "}";
+    }
+}
@@ -0,0 +1,22 @@
+/*
+Stand-in for the Estimote SDK ConfigurableDevice class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.coresdk.recognition.packets;
+
+import com.estimote.coresdk.recognition.utils.DeviceId;
+import com.estimote.coresdk.recognition.utils.MacAddress;
+
+public class ConfigurableDevice {
+    public MacAddress macAddress;
+    public String type;
+    public int txPower;
+    public String appVersion;
+    public String bootloaderVersion;
+    public DeviceId deviceId;
+    public long discoveryTime;
+    public boolean isClose;
+    public boolean isShaken;
+    public int rssi;
+}
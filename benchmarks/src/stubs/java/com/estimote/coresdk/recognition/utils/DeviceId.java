@@ -0,0 +1,19 @@
+/*
+Stand-in for the Estimote SDK DeviceId class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.coresdk.recognition.utils;
+
+public class DeviceId {
+    private final String id;
+
+    public DeviceId(String id) {
+        this.id = id;
+    }
+
+    @Override
+    public String toString() {
+        return this.id;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+Stand-in for the Estimote SDK MacAddress class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.coresdk.recognition.utils;
+
+public class MacAddress {
+    private final String address;
+
+    private MacAddress(String address) {
+        this.address = address;
+    }
+
+    public static MacAddress fromString(String address) {
+        return new MacAddress(address.toUpperCase());
+    }
+
+    public String toStandardString() {
+        return this.address;
+    }
+
+    public String toHexString() {
+        return this.address.replace(":", "");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MacAddress && ((MacAddress) o).address.equals(this.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.address.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "[" + this.address + "]";
+    }
+}
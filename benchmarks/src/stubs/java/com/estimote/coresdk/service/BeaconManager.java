@@ -0,0 +1,87 @@
+/*
+Stand-in for the Estimote SDK BeaconManager class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.coresdk.service;
+
+import android.content.Context;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.recognition.packets.ConfigurableDevice;
+
+import java.util.List;
+
+/**
+ * Does not scan, the benchmarks use the simulated beacon source instead.
+ */
+public class BeaconManager {
+    public interface ErrorListener {
+        void onError(Integer errorId);
+    }
+
+    public interface ServiceReadyCallback {
+        void onServiceReady();
+    }
+
+    public interface BeaconRangingListener {
+        void onBeaconsDiscovered(BeaconRegion region, List<Beacon> beacons);
+    }
+
+    public interface BeaconMonitoringListener {
+        void onEnteredRegion(BeaconRegion region, List<Beacon> beacons);
+
+        void onExitedRegion(BeaconRegion region);
+    }
+
+    public interface ConfigurableDevicesListener {
+        void onConfigurableDevicesFound(List<ConfigurableDevice> devices);
+    }
+
+    public BeaconManager(Context context) {
+    }
+
+    public void setErrorListener(ErrorListener listener) {
+    }
+
+    public void setRangingListener(BeaconRangingListener listener) {
+    }
+
+    public void setMonitoringListener(BeaconMonitoringListener listener) {
+    }
+
+    public void setConfigurableDevicesListener(ConfigurableDevicesListener listener) {
+    }
+
+    public void setForegroundScanPeriod(long scanPeriodMillis, long waitTimeMillis) {
+    }
+
+    public void setBackgroundScanPeriod(long scanPeriodMillis, long waitTimeMillis) {
+    }
+
+    public void connect(ServiceReadyCallback callback) {
+        callback.onServiceReady();
+    }
+
+    public void disconnect() {
+    }
+
+    public void startRanging(BeaconRegion region) {
+    }
+
+    public void stopRanging(BeaconRegion region) {
+    }
+
+    public void startMonitoring(BeaconRegion region) {
+    }
+
+    public void stopMonitoring(String regionId) {
+    }
+
+    public void startConfigurableDevicesDiscovery() {
+    }
+
+    public void stopConfigurableDevicesDiscovery() {
+    }
+}
@@ -0,0 +1,12 @@
+/*
+Stand-in for the Estimote SDK DeviceConnectionException class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.mgmtsdk.common.exceptions;
+
+public class DeviceConnectionException extends Exception {
+    public DeviceConnectionException(String message) {
+        super(message);
+    }
+}
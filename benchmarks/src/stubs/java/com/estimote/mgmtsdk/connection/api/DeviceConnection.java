@@ -0,0 +1,30 @@
+/*
+Stand-in for the Estimote SDK DeviceConnection class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.mgmtsdk.connection.api;
+
+import com.estimote.mgmtsdk.common.exceptions.DeviceConnectionException;
+import com.estimote.mgmtsdk.feature.settings.api.Settings;
+
+/**
+ * Never connects, device connections are not benchmarked.
+ */
+public class DeviceConnection {
+    public final Settings settings = new Settings();
+
+    public void connect(DeviceConnectionCallback callback) {
+        callback.onConnectionFailed(new DeviceConnectionException("No devices in benchmarks."));
+    }
+
+    public boolean isConnected() {
+        return false;
+    }
+
+    public void close() {
+    }
+
+    public void destroy() {
+    }
+}
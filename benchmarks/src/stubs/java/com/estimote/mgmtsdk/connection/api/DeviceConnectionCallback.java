@@ -0,0 +1,16 @@
+/*
+Stand-in for the Estimote SDK DeviceConnectionCallback class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.mgmtsdk.connection.api;
+
+import com.estimote.mgmtsdk.common.exceptions.DeviceConnectionException;
+
+public interface DeviceConnectionCallback {
+    void onConnected();
+
+    void onDisconnected();
+
+    void onConnectionFailed(DeviceConnectionException e);
+}
@@ -0,0 +1,30 @@
+/*
+Stand-in for the Estimote SDK DeviceConnectionProvider class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.mgmtsdk.connection.api;
+
+import android.content.Context;
+
+import com.estimote.coresdk.recognition.packets.ConfigurableDevice;
+
+public class DeviceConnectionProvider {
+    public interface ConnectionProviderCallback {
+        void onConnectedToService();
+    }
+
+    public DeviceConnectionProvider(Context context) {
+    }
+
+    public void connectToService(ConnectionProviderCallback callback) {
+        callback.onConnectedToService();
+    }
+
+    public DeviceConnection getConnection(ConfigurableDevice device) {
+        return new DeviceConnection();
+    }
+
+    public void destroy() {
+    }
+}
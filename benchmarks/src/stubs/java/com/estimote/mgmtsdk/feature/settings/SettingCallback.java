@@ -0,0 +1,14 @@
+/*
+Stand-in for the Estimote SDK SettingCallback class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.mgmtsdk.feature.settings;
+
+import com.estimote.mgmtsdk.common.exceptions.DeviceConnectionException;
+
+public interface SettingCallback<T> {
+    void onSuccess(T value);
+
+    void onFailure(DeviceConnectionException e);
+}
@@ -0,0 +1,21 @@
+/*
+Stand-in for the Estimote SDK Property class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.mgmtsdk.feature.settings.api;
+
+import com.estimote.mgmtsdk.feature.settings.SettingCallback;
+
+public class Property<T> {
+    private T value;
+
+    public void get(SettingCallback<T> callback) {
+        callback.onSuccess(this.value);
+    }
+
+    public void set(T value, SettingCallback<T> callback) {
+        this.value = value;
+        callback.onSuccess(value);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+Stand-in for the Estimote SDK Settings class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package com.estimote.mgmtsdk.feature.settings.api;
+
+import java.util.UUID;
+
+public class Settings {
+    public static class Beacon {
+        private final Property<UUID> proximityUUID = new Property<UUID>();
+        private final Property<Integer> major = new Property<Integer>();
+        private final Property<Integer> minor = new Property<Integer>();
+        private final Property<Integer> advertisingInterval = new Property<Integer>();
+        private final Property<Integer> transmitPower = new Property<Integer>();
+
+        public Property<UUID> proximityUUID() {
+            return this.proximityUUID;
+        }
+
+        public Property<Integer> major() {
+            return this.major;
+        }
+
+        public Property<Integer> minor() {
+            return this.minor;
+        }
+
+        public Property<Integer> advertisingInterval() {
+            return this.advertisingInterval;
+        }
+
+        public Property<Integer> transmitPower() {
+            return this.transmitPower;
+        }
+    }
+
+    public static class Power {
+        private final Property<Integer> batteryPercentage = new Property<Integer>();
+
+        public Property<Integer> batteryPercentage() {
+            return this.batteryPercentage;
+        }
+    }
+
+    public static class DeviceInfo {
+        private final Property<Object> color = new Property<Object>();
+        private final Property<String> name = new Property<String>();
+        private final Property<String> firmware = new Property<String>();
+        private final Property<String> hardware = new Property<String>();
+
+        public Property<Object> color() {
+            return this.color;
+        }
+
+        public Property<String> name() {
+            return this.name;
+        }
+
+        public Property<String> firmware() {
+            return this.firmware;
+        }
+
+        public Property<String> hardware() {
+            return this.hardware;
+        }
+    }
+
+    public final Beacon beacon = new Beacon();
+    public final Power power = new Power();
+    public final DeviceInfo deviceInfo = new DeviceInfo();
+}
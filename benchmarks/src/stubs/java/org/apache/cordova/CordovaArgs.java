@@ -0,0 +1,92 @@
+/*
+Stand-in for the Cordova CordovaArgs class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Base64;
+
+public class CordovaArgs {
+    private final JSONArray baseArgs;
+
+    public CordovaArgs(JSONArray args) {
+        this.baseArgs = args;
+    }
+
+    public Object get(int index) throws JSONException {
+        return this.baseArgs.get(index);
+    }
+
+    public boolean getBoolean(int index) throws JSONException {
+        return this.baseArgs.getBoolean(index);
+    }
+
+    public double getDouble(int index) throws JSONException {
+        return this.baseArgs.getDouble(index);
+    }
+
+    public int getInt(int index) throws JSONException {
+        return this.baseArgs.getInt(index);
+    }
+
+    public long getLong(int index) throws JSONException {
+        return this.baseArgs.getLong(index);
+    }
+
+    public String getString(int index) throws JSONException {
+        return this.baseArgs.getString(index);
+    }
+
+    public JSONArray getJSONArray(int index) throws JSONException {
+        return this.baseArgs.getJSONArray(index);
+    }
+
+    public JSONObject getJSONObject(int index) throws JSONException {
+        return this.baseArgs.getJSONObject(index);
+    }
+
+    public byte[] getArrayBuffer(int index) throws JSONException {
+        return Base64.getDecoder().decode(this.baseArgs.getString(index));
+    }
+
+    public Object opt(int index) {
+        return this.baseArgs.opt(index);
+    }
+
+    public boolean optBoolean(int index) {
+        return this.baseArgs.optBoolean(index);
+    }
+
+    public double optDouble(int index) {
+        return this.baseArgs.optDouble(index);
+    }
+
+    public int optInt(int index) {
+        return this.baseArgs.optInt(index);
+    }
+
+    public long optLong(int index) {
+        return this.baseArgs.optLong(index);
+    }
+
+    public String optString(int index) {
+        return this.baseArgs.optString(index);
+    }
+
+    public JSONArray optJSONArray(int index) {
+        return this.baseArgs.optJSONArray(index);
+    }
+
+    public JSONObject optJSONObject(int index) {
+        return this.baseArgs.optJSONObject(index);
+    }
+
+    public boolean isNull(int index) {
+        return this.baseArgs.isNull(index);
+    }
+}
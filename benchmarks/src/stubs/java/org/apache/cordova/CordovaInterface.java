@@ -0,0 +1,21 @@
+/*
+Stand-in for the Cordova CordovaInterface class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package org.apache.cordova;
+
+import android.app.Activity;
+import android.content.Intent;
+
+import java.util.concurrent.ExecutorService;
+
+public interface CordovaInterface {
+    void startActivityForResult(CordovaPlugin command, Intent intent, int requestCode);
+
+    void setActivityResultCallback(CordovaPlugin plugin);
+
+    Activity getActivity();
+
+    ExecutorService getThreadPool();
+}
@@ -0,0 +1,10 @@
+/*
+Stand-in for the Cordova CordovaWebView class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package org.apache.cordova;
+
+public interface CordovaWebView {
+    void sendPluginResult(PluginResult result, String callbackId);
+}
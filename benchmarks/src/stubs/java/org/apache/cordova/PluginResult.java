@@ -0,0 +1,106 @@
+/*
+Stand-in for the Cordova PluginResult class, used to build the plugin sources for the
+benchmarks outside of an Android project.
+*/
+
+package org.apache.cordova;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Messages are encoded in the constructor, like in Cordova, so that the
+ * encoding cost is part of what is measured.
+ */
+public class PluginResult {
+    public enum Status {
+        NO_RESULT,
+        OK,
+        CLASS_NOT_FOUND_EXCEPTION,
+        ILLEGAL_ACCESS_EXCEPTION,
+        INSTANTIATION_EXCEPTION,
+        MALFORMED_URL_EXCEPTION,
+        IO_EXCEPTION,
+        INVALID_ACTION,
+        JSON_EXCEPTION,
+        ERROR
+    }
+
+    private final int status;
+    private final String encodedMessage;
+    private final List<PluginResult> multipartMessages;
+    private boolean keepCallback = false;
+
+    public PluginResult(Status status) {
+        this(status, status.name());
+    }
+
+    public PluginResult(Status status, String message) {
+        this(status, JSONObject.quote(message), null);
+    }
+
+    public PluginResult(Status status, JSONArray message) {
+        this(status, message.toString(), null);
+    }
+
+    public PluginResult(Status status, JSONObject message) {
+        this(status, message.toString(), null);
+    }
+
+    public PluginResult(Status status, int i) {
+        this(status, String.valueOf(i), null);
+    }
+
+    public PluginResult(Status status, float f) {
+        this(status, String.valueOf(f), null);
+    }
+
+    public PluginResult(Status status, boolean b) {
+        this(status, String.valueOf(b), null);
+    }
+
+    public PluginResult(Status status, byte[] data) {
+        this(status, data, false);
+    }
+
+    public PluginResult(Status status, byte[] data, boolean binaryString) {
+        this(status, Base64.getEncoder().encodeToString(data), null);
+    }
+
+    public PluginResult(Status status, List<PluginResult> multipartMessages) {
+        this(status, null, multipartMessages);
+    }
+
+    private PluginResult(Status status, String encodedMessage, List<PluginResult> multipartMessages) {
+        this.status = status.ordinal();
+        this.encodedMessage = encodedMessage;
+        this.multipartMessages = multipartMessages;
+    }
+
+    public void setKeepCallback(boolean b) {
+        this.keepCallback = b;
+    }
+
+    public boolean getKeepCallback() {
+        return this.keepCallback;
+    }
+
+    public int getStatus() {
+        return this.status;
+    }
+
+    public String getEncodedMessage() {
+        return this.encodedMessage;
+    }
+
+    public int getMultipartMessagesSize() {
+        return this.multipartMessages == null ? 0 : this.multipartMessages.size();
+    }
+
+    public PluginResult getMultipartMessage(int index) {
+        return this.multipartMessages.get(index);
+    }
+}
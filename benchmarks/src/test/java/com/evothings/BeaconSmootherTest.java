@@ -0,0 +1,105 @@
+/*
+Tests of RSSI smoothing for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.RegionUtils;
+import com.estimote.coresdk.observation.utils.Proximity;
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BeaconSmootherTest {
+
+    private static final UUID PROXIMITY_UUID = UUID.fromString("B9407F30-F5F8-466E-AFF9-25556B57FE6D");
+
+    private static Beacon beacon(int rssi) {
+        return new Beacon(PROXIMITY_UUID, SimulatedBeaconSource.macAddressFor(1, 1), 1, 1, -59, rssi);
+    }
+
+    private static BeaconSmoother smoother(JSONObject smoothing) throws JSONException {
+        return BeaconSmoother.fromOptions(new JSONObject().put("smoothing", smoothing));
+    }
+
+    @Test
+    public void accuracyIsOnTheScaleOfTheSdk() throws JSONException {
+        for (String type : new String[] { "ema", "kalman", "median" }) {
+            BeaconSmoother smoother = smoother(new JSONObject().put("type", type));
+            long now = 0;
+            for (int rssi = -50; rssi >= -90; rssi--) {
+                Beacon b = beacon(rssi);
+                for (int i = 0; i < 100; i++) {
+                    smoother.update(Arrays.asList(b), now += 100);
+                }
+
+                // Settled on a constant RSSI, the readings are the unsmoothed ones.
+                assertEquals(type, rssi, smoother.getRssi(b), 0.5);
+                assertEquals(type, RegionUtils.computeAccuracy(b), smoother.getAccuracy(b), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void proximityDoesNotFlickerAtBoundary() throws JSONException {
+        BeaconSmoother smoother = smoother(new JSONObject().put("type", "ema").put("alpha", 1.0));
+        long now = 0;
+
+        // Far, then just within the near boundary of 3 meters and back.
+        smoother.update(Arrays.asList(beacon(-90)), now += 100);
+        assertEquals(Proximity.FAR, smoother.getProximity(beacon(-90)));
+
+        smoother.update(Arrays.asList(beacon(-68)), now += 100);
+        assertEquals(2.72, smoother.getAccuracy(beacon(-68)), 0.01);
+        assertEquals(Proximity.FAR, smoother.getProximity(beacon(-68)));
+
+        // Clearly near.
+        smoother.update(Arrays.asList(beacon(-66)), now += 100);
+        assertEquals(2.24, smoother.getAccuracy(beacon(-66)), 0.01);
+        assertEquals(Proximity.NEAR, smoother.getProximity(beacon(-66)));
+
+        smoother.update(Arrays.asList(beacon(-69)), now += 100);
+        assertEquals(3.18, smoother.getAccuracy(beacon(-69)), 0.01);
+        assertEquals(Proximity.NEAR, smoother.getProximity(beacon(-69)));
+    }
+
+    @Test
+    public void stateStartsOverAfterMaxGap() throws JSONException {
+        BeaconSmoother smoother = smoother(new JSONObject().put("type", "ema").put("alpha", 0.1).put("maxGap", 5000));
+        long now = 0;
+        for (int i = 0; i < 50; i++) {
+            smoother.update(Arrays.asList(beacon(-50)), now += 100);
+        }
+
+        // Within the gap, the new reading only moves the average.
+        now += 5000;
+        smoother.update(Arrays.asList(beacon(-90)), now);
+        assertEquals(-54, smoother.getRssi(beacon(-90)), 0.1);
+
+        // After a longer gap, the beacon starts from its new reading.
+        now += 5001;
+        smoother.update(Arrays.asList(beacon(-90)), now);
+        assertEquals(-90, smoother.getRssi(beacon(-90)), 1e-9);
+        assertEquals(RegionUtils.computeAccuracy(beacon(-90)), smoother.getAccuracy(beacon(-90)), 1e-9);
+    }
+
+    @Test
+    public void noSmoothingWithoutOption() throws JSONException {
+        assertNull(BeaconSmoother.fromOptions(null));
+        assertNull(BeaconSmoother.fromOptions(new JSONObject().put("binary", true)));
+    }
+
+    @Test(expected = JSONException.class)
+    public void unknownTypeIsRejected() throws JSONException {
+        smoother(new JSONObject().put("type", "kalmann"));
+    }
+}
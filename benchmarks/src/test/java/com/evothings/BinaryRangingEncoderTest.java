@@ -0,0 +1,141 @@
+/*
+Tests of the binary encoding of ranging results for the Android
+implementation of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.recognition.utils.MacAddress;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Encodes ranging results in Java and decodes them with the decoder of
+ * EstimoteBeacons.js run by Node.js, the result must match the JSON
+ * encoding. Skipped when node is not installed.
+ */
+public class BinaryRangingEncoderTest {
+
+    private static final File SCRIPT = new File("../plugin/src/js/EstimoteBeacons.js");
+
+    // Loads the decoder function alone, the rest of the script needs Cordova.
+    private static final String DECODE =
+            "var fs = require('fs');"
+            + "var source = fs.readFileSync(process.argv[1], 'utf8');"
+            + "var start = source.indexOf('function helper_decodeBinaryRangingInformation');"
+            + "var decode = eval('(' + source.substring(start, source.indexOf('\\n}\\n', start) + 2) + ')');"
+            + "var bytes = Buffer.from(fs.readFileSync(0, 'utf8'), 'base64');"
+            + "var buffer = bytes.buffer.slice(bytes.byteOffset, bytes.byteOffset + bytes.length);"
+            + "process.stdout.write(JSON.stringify(decode(buffer)));";
+
+    private static final UUID UUID_1 = UUID.fromString("B9407F30-F5F8-466E-AFF9-25556B57FE6D");
+    private static final UUID UUID_2 = UUID.fromString("D0D3FA86-CA76-45EC-9BD9-6AF4F2F1E4C0");
+
+    private static JSONObject decode(byte[] message) throws IOException, InterruptedException, JSONException {
+        Process node;
+        try {
+            node = new ProcessBuilder("node", "-e", DECODE, SCRIPT.getPath()).start();
+        } catch (IOException e) {
+            assumeTrue("node not found", false);
+            return null;
+        }
+
+        OutputStream in = node.getOutputStream();
+        in.write(Base64.getEncoder().encode(message));
+        in.close();
+
+        String out = read(node.getInputStream());
+        String err = read(node.getErrorStream());
+        assertEquals(err, 0, node.waitFor());
+        return new JSONObject(out);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toString("UTF-8");
+    }
+
+    private static void assertSameRegion(JSONObject expected, JSONObject actual) throws JSONException {
+        assertEquals(expected.getString("identifier"), actual.getString("identifier"));
+        for (String name : new String[] { "proximityUUID", "major", "minor" }) {
+            assertEquals(name, expected.has(name), actual.has(name));
+            if (expected.has(name)) {
+                assertEquals(name, String.valueOf(expected.get(name)), String.valueOf(actual.get(name)));
+            }
+        }
+    }
+
+    private static void assertSameBeacons(JSONArray expected, JSONArray actual) throws JSONException {
+        assertEquals(expected.length(), actual.length());
+        for (int i = 0; i < expected.length(); i++) {
+            JSONObject e = expected.getJSONObject(i);
+            JSONObject a = actual.getJSONObject(i);
+
+            assertEquals(e.getString("proximityUUID"), a.getString("proximityUUID"));
+            assertEquals(e.getInt("major"), a.getInt("major"));
+            assertEquals(e.getInt("minor"), a.getInt("minor"));
+            assertEquals(e.getInt("rssi"), a.getInt("rssi"));
+            assertEquals(e.getString("proximity"), a.getString("proximity"));
+            assertEquals(e.getString("macAddress"), a.getString("macAddress"));
+            // Sent as a 32 bit float.
+            assertEquals(e.getDouble("accuracy"), a.getDouble("accuracy"), 1e-5 * e.getDouble("accuracy"));
+        }
+    }
+
+    private static void assertRoundTrip(BinaryRangingEncoder encoder, BeaconRegion region, List<Beacon> beacons)
+            throws Exception {
+        JSONObject expected = EstimoteBeacons.makeJSONRangingInformation(region, beacons, BeaconReadings.RAW);
+        JSONObject actual = decode(encoder.encode(region, beacons));
+
+        assertSameRegion(expected.getJSONObject("region"), actual.getJSONObject("region"));
+        assertSameBeacons(expected.getJSONArray("beacons"), actual.getJSONArray("beacons"));
+    }
+
+    @Test
+    public void fleetDecodesAsJSON() throws Exception {
+        List<Beacon> beacons = new ArrayList<Beacon>();
+        new SimulatedBeaconSource.SyntheticFleet(UUID_1, 40, 4.0, 0.0, 3).beacons(0, beacons);
+
+        BinaryRangingEncoder encoder = new BinaryRangingEncoder();
+        assertRoundTrip(encoder, new BeaconRegion("fleet", UUID_1, null, null), beacons);
+
+        // Again with the MAC addresses taken from the cache.
+        assertRoundTrip(encoder, new BeaconRegion("fleet", UUID_1, null, null), beacons);
+    }
+
+    @Test
+    public void regionPropertiesAndUuidTable() throws Exception {
+        List<Beacon> beacons = new ArrayList<Beacon>();
+        beacons.add(new Beacon(UUID_1, MacAddress.fromString("0A:1B:2C:3D:4E:5F"), 65535, 0, -59, -40));
+        beacons.add(new Beacon(UUID_2, MacAddress.fromString("f0:e1:d2:c3:b4:a5"), 1, 65535, -59, -100));
+        beacons.add(new Beacon(UUID_1, SimulatedBeaconSource.macAddressFor(7, 8), 7, 8, -59, -70));
+
+        BinaryRangingEncoder encoder = new BinaryRangingEncoder();
+        assertRoundTrip(encoder, new BeaconRegion("Region é☃", UUID_1, 65535, 0), beacons);
+        assertRoundTrip(encoder, new BeaconRegion("", null, null, null), beacons);
+        assertRoundTrip(encoder, new BeaconRegion("empty", UUID_2, 3, null), new ArrayList<Beacon>());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+Tests of the debouncing of monitoring transitions for the Android
+implementation of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The debouncer runs on the real clock, so the delays are kept short.
+ */
+public class MonitoringDebouncerTest {
+
+    private static final long DELAY_MILLIS = 100;
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private ScheduledExecutorService scheduler;
+
+    // Guarded by this.
+    private final List<String> transitions = new ArrayList<String>();
+    private int suppressed;
+
+    private final MonitoringDebouncer.Listener listener = new MonitoringDebouncer.Listener() {
+        @Override
+        public void onTransition(boolean entered) {
+            synchronized (MonitoringDebouncerTest.this) {
+                transitions.add(entered ? "enter" : "exit");
+                MonitoringDebouncerTest.this.notifyAll();
+            }
+        }
+
+        @Override
+        public void onSuppressed() {
+            synchronized (MonitoringDebouncerTest.this) {
+                suppressed++;
+            }
+        }
+    };
+
+    @Before
+    public void setUp() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        this.scheduler.shutdownNow();
+    }
+
+    private synchronized List<String> awaitTransitions(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (this.transitions.size() < count && System.currentTimeMillis() < end) {
+            wait(end - System.currentTimeMillis());
+        }
+        return new ArrayList<String>(this.transitions);
+    }
+
+    private synchronized List<String> transitions() {
+        return new ArrayList<String>(this.transitions);
+    }
+
+    private synchronized int suppressed() {
+        return this.suppressed;
+    }
+
+    /**
+     * Give a check that would wrongly report the time to run.
+     */
+    private void settle() throws InterruptedException {
+        Thread.sleep(3 * DELAY_MILLIS);
+    }
+
+    @Test
+    public void entryIsReportedAfterDwell() throws InterruptedException {
+        MonitoringDebouncer debouncer = new MonitoringDebouncer(DELAY_MILLIS, 0, 0, this.scheduler, this.listener);
+
+        long start = System.nanoTime();
+        debouncer.update(true);
+        assertTrue(transitions().isEmpty());
+
+        assertEquals(Arrays.asList("enter"), awaitTransitions(1));
+        assertTrue((System.nanoTime() - start) / 1000000 >= DELAY_MILLIS - 1);
+
+        // Exits are not held back.
+        debouncer.update(false);
+        assertEquals(Arrays.asList("enter", "exit"), transitions());
+    }
+
+    @Test
+    public void flapIsSuppressed() throws InterruptedException {
+        MonitoringDebouncer debouncer = new MonitoringDebouncer(DELAY_MILLIS, 0, 0, this.scheduler, this.listener);
+
+        // The first state is reported as it is, exits are not held back.
+        debouncer.update(false);
+        assertEquals(Arrays.asList("exit"), transitions());
+
+        debouncer.update(true);
+        debouncer.update(false);
+        settle();
+
+        assertEquals(Arrays.asList("exit"), transitions());
+        assertEquals(1, suppressed());
+    }
+
+    @Test
+    public void exitWithinGraceIsSuppressed() throws InterruptedException {
+        MonitoringDebouncer debouncer = new MonitoringDebouncer(0, DELAY_MILLIS, 0, this.scheduler, this.listener);
+
+        debouncer.update(true);
+        assertEquals(Arrays.asList("enter"), transitions());
+
+        debouncer.update(false);
+        debouncer.update(true);
+        settle();
+        assertEquals(Arrays.asList("enter"), transitions());
+        assertEquals(1, suppressed());
+
+        debouncer.update(false);
+        assertEquals(Arrays.asList("enter", "exit"), awaitTransitions(2));
+    }
+
+    @Test
+    public void transitionsAreSpacedByMinInterval() throws InterruptedException {
+        MonitoringDebouncer debouncer = new MonitoringDebouncer(0, 0, DELAY_MILLIS, this.scheduler, this.listener);
+
+        debouncer.update(true);
+        long start = System.nanoTime();
+        debouncer.update(false);
+        assertEquals(Arrays.asList("enter"), transitions());
+
+        assertEquals(Arrays.asList("enter", "exit"), awaitTransitions(2));
+        assertTrue((System.nanoTime() - start) / 1000000 >= DELAY_MILLIS - 1);
+    }
+
+    @Test
+    public void closeDropsPendingTransition() throws InterruptedException {
+        MonitoringDebouncer debouncer = new MonitoringDebouncer(DELAY_MILLIS, 0, 0, this.scheduler, this.listener);
+
+        debouncer.update(true);
+        debouncer.close();
+        settle();
+
+        assertTrue(transitions().isEmpty());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+Tests of the selection of the nearest beacons for the Android
+implementation of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NearestSelectorTest {
+
+    private static final UUID PROXIMITY_UUID = UUID.fromString("B9407F30-F5F8-466E-AFF9-25556B57FE6D");
+
+    private static Beacon beacon(int major, int minor, int rssi) {
+        return new Beacon(PROXIMITY_UUID, SimulatedBeaconSource.macAddressFor(major, minor), major, minor, -59, rssi);
+    }
+
+    private static NearestSelector selector(JSONObject nearest, NearestSelector.Shared shared) throws JSONException {
+        return NearestSelector.fromOptions(new JSONObject().put("nearest", nearest), shared);
+    }
+
+    private static List<Integer> minors(List<Beacon> beacons) {
+        List<Integer> minors = new ArrayList<Integer>();
+        for (Beacon beacon : beacons) {
+            minors.add(beacon.getMinor());
+        }
+        return minors;
+    }
+
+    @Test
+    public void keepsNearestFirst() throws JSONException {
+        NearestSelector selector = selector(new JSONObject().put("count", 3), null);
+        List<Beacon> beacons = Arrays.asList(
+                beacon(1, 1, -80), beacon(1, 2, -60), beacon(1, 3, -90), beacon(1, 4, -70), beacon(1, 5, -65));
+
+        assertEquals(Arrays.asList(2, 5, 4), minors(selector.select(beacons, BeaconReadings.RAW)));
+    }
+
+    @Test
+    public void tiesAreBrokenByMinor() throws JSONException {
+        NearestSelector selector = selector(new JSONObject().put("count", 2).put("by", "rssi"), null);
+        List<Beacon> beacons = Arrays.asList(beacon(1, 3, -70), beacon(1, 1, -70), beacon(1, 2, -70));
+
+        assertEquals(Arrays.asList(1, 2), minors(selector.select(beacons, BeaconReadings.RAW)));
+    }
+
+    @Test
+    public void acrossRegionsKeepsNearestOfAllRegions() throws JSONException {
+        NearestSelector.Shared shared = new NearestSelector.Shared();
+        JSONObject nearest = new JSONObject().put("count", 2).put("by", "rssi").put("acrossRegions", true);
+        NearestSelector first = selector(nearest, shared);
+        NearestSelector second = selector(nearest, shared);
+
+        List<Beacon> firstBeacons = Arrays.asList(beacon(1, 1, -60), beacon(1, 2, -80));
+        List<Beacon> secondBeacons = Arrays.asList(beacon(2, 3, -65), beacon(2, 4, -70));
+
+        // The second region is not known yet, the first keeps both.
+        assertEquals(Arrays.asList(1, 2), minors(first.select(firstBeacons, BeaconReadings.RAW)));
+
+        // Two nearest of both regions are minors 1 and 3.
+        assertEquals(Arrays.asList(3), minors(second.select(secondBeacons, BeaconReadings.RAW)));
+        assertEquals(Arrays.asList(1), minors(first.select(firstBeacons, BeaconReadings.RAW)));
+
+        // Without the second region, the first keeps both again.
+        second.close();
+        assertEquals(Arrays.asList(1, 2), minors(first.select(firstBeacons, BeaconReadings.RAW)));
+    }
+
+    @Test
+    public void regionsAreRankedAloneByDefault() throws JSONException {
+        NearestSelector.Shared shared = new NearestSelector.Shared();
+        NearestSelector first = selector(new JSONObject().put("count", 1), shared);
+        NearestSelector second = selector(new JSONObject().put("count", 1), shared);
+
+        assertEquals(Arrays.asList(1), minors(first.select(Arrays.asList(beacon(1, 1, -60)), BeaconReadings.RAW)));
+        assertEquals(Arrays.asList(2), minors(second.select(Arrays.asList(beacon(2, 2, -80)), BeaconReadings.RAW)));
+    }
+
+    @Test
+    public void noSelectorWithoutOption() throws JSONException {
+        assertNull(NearestSelector.fromOptions(null, null));
+        assertNull(NearestSelector.fromOptions(new JSONObject().put("binary", true), null));
+    }
+
+    @Test(expected = JSONException.class)
+    public void unknownRankingIsRejected() throws JSONException {
+        selector(new JSONObject().put("count", 1).put("by", "distance"), null);
+    }
+}
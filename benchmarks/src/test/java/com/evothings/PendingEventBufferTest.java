@@ -0,0 +1,125 @@
+/*
+Tests of the buffer of undelivered events for the Android implementation of
+the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PendingEventBufferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        this.file = new File(this.folder.getRoot(), "pending/events.txt");
+    }
+
+    private static void add(PendingEventBuffer buffer, String channel, String key, boolean entered)
+            throws JSONException {
+        buffer.add(channel, key, entered, new JSONObject().put("key", key).put("entered", entered));
+    }
+
+    private static List<String> events(JSONArray json) throws JSONException {
+        List<String> events = new ArrayList<String>();
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject event = json.getJSONObject(i);
+            events.add(event.getString("key") + (event.getBoolean("entered") ? "+" : "-"));
+        }
+        return events;
+    }
+
+    @Test
+    public void oppositeTransitionsCollapse() throws JSONException {
+        PendingEventBuffer buffer = new PendingEventBuffer(this.file, 100, 100);
+        add(buffer, "zones", "A", true);
+        add(buffer, "zones", "A", false);
+        add(buffer, "zones", "B", true);
+        add(buffer, "zones", "A", true);
+        add(buffer, "zones", "B", false);
+        add(buffer, "zones", "C", true);
+
+        assertEquals(Arrays.asList("A+", "C+"), events(buffer.take("zones")));
+        assertNull(buffer.take("zones"));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void repeatedTransitionsAreKept() throws JSONException {
+        PendingEventBuffer buffer = new PendingEventBuffer(this.file, 100, 100);
+        add(buffer, "zones", "A", true);
+        add(buffer, "zones", "A", true);
+        add(buffer, "zones", "A", false);
+
+        assertEquals(Arrays.asList("A+"), events(buffer.take("zones")));
+    }
+
+    @Test
+    public void channelsAreTakenSeparately() throws JSONException {
+        PendingEventBuffer buffer = new PendingEventBuffer(this.file, 100, 2);
+        add(buffer, "region1", "A", true);
+        add(buffer, "region2", "B", true);
+        add(buffer, "region1", "A", false);
+        add(buffer, "region2", "B", false);
+        add(buffer, "region2", "C", true);
+
+        assertEquals(Arrays.asList("C+"), events(buffer.take("region2")));
+        assertEquals(2, buffer.size());
+
+        buffer.discard("region1");
+        assertEquals(0, buffer.size());
+        assertFalse(this.file.exists());
+    }
+
+    @Test
+    public void spilledEventsSurviveRestart() throws JSONException {
+        PendingEventBuffer buffer = new PendingEventBuffer(this.file, 100, 4);
+        for (int i = 0; i < 10; i++) {
+            add(buffer, "zones", "Z" + i, true);
+        }
+        assertTrue(this.file.exists());
+        assertEquals(10, buffer.size());
+
+        // Only the events spilled to the file are left in a new process.
+        PendingEventBuffer restarted = new PendingEventBuffer(this.file, 100, 4);
+        assertEquals(8, restarted.size());
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 8; i++) {
+            expected.add("Z" + i + "+");
+        }
+        assertEquals(expected, events(restarted.take("zones")));
+        assertEquals(0, restarted.size());
+    }
+
+    @Test
+    public void oldestEventsAreDropped() throws JSONException {
+        PendingEventBuffer buffer = new PendingEventBuffer(this.file, 6, 2);
+        for (int i = 0; i < 10; i++) {
+            add(buffer, "zones", "Z" + i, true);
+        }
+
+        assertEquals(6, buffer.size());
+        assertEquals(Arrays.asList("Z4+", "Z5+", "Z6+", "Z7+", "Z8+", "Z9+"), events(buffer.take("zones")));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+Tests of indoor position estimation for the Android implementation of the
+Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.service.BeaconManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stands at known points of a floor map on a simulated source.
+ */
+public class PositionEstimatorTest {
+
+    private static final String UUID_STRING = "B9407F30-F5F8-466E-AFF9-25556B57FE6D";
+    private static final UUID PROXIMITY_UUID = UUID.fromString(UUID_STRING);
+
+    // Beacons of floor 0, one more beacon on floor 1 at index 5.
+    private static final double[][] POSITIONS = { { 0, 0 }, { 10, 0 }, { 0, 10 }, { 10, 10 }, { 5, 5 }, { 3, 4 } };
+
+    private int positions;
+    private double x;
+    private double y;
+    private int floor;
+    private int beacons;
+
+    private static JSONArray map() throws JSONException {
+        JSONArray map = new JSONArray();
+        for (int i = 0; i < POSITIONS.length; i++) {
+            map.put(new JSONObject()
+                    .put("uuid", UUID_STRING)
+                    .put("major", 1)
+                    .put("minor", i)
+                    .put("x", POSITIONS[i][0])
+                    .put("y", POSITIONS[i][1])
+                    .put("floor", i < 5 ? 0 : 1));
+        }
+        return map;
+    }
+
+    private static SimulatedBeaconSource.ScriptedWalk standAt(double x, double y, double noise, int beaconCount) {
+        SimulatedBeaconSource.ScriptedWalk walk = new SimulatedBeaconSource.ScriptedWalk(2.0, noise, 1);
+        for (int i = 0; i < beaconCount; i++) {
+            walk.beacon(PROXIMITY_UUID, 1, i, POSITIONS[i][0], POSITIONS[i][1]);
+        }
+        return walk.waypoint(0, x, y);
+    }
+
+    private void run(SimulatedBeaconSource.Scenario walk, JSONObject options, long durationMillis) throws JSONException {
+        final PositionEstimator estimator = PositionEstimator.fromJSON(map(), options, new PositionEstimator.Listener() {
+            @Override
+            public void onPosition(double x, double y, int floor, double uncertainty, int beacons) {
+                PositionEstimatorTest.this.positions++;
+                PositionEstimatorTest.this.x = x;
+                PositionEstimatorTest.this.y = y;
+                PositionEstimatorTest.this.floor = floor;
+                PositionEstimatorTest.this.beacons = beacons;
+            }
+        });
+
+        final SimulatedBeaconSource source = new SimulatedBeaconSource(walk,
+                SimulatedBeaconSource.DEFAULT_PERIOD_MILLIS, SimulatedBeaconSource.DEFAULT_EXIT_DELAY_MILLIS);
+        source.setRangingListener(new BeaconManager.BeaconRangingListener() {
+            @Override
+            public void onBeaconsDiscovered(BeaconRegion region, List<Beacon> beacons) {
+                estimator.update(beacons, source.getTimeMillis());
+            }
+        });
+        for (BeaconRegion region : estimator.getRegions()) {
+            source.startRanging(region);
+        }
+        source.advance(durationMillis);
+    }
+
+    @Test
+    public void convergesOnKnownPoint() throws JSONException {
+        run(standAt(3, 4, 0.0, 5), null, 1000);
+
+        assertTrue(this.positions > 0);
+        assertEquals(0, this.floor);
+        assertEquals(5, this.beacons);
+        assertEquals(3, this.x, 1.0);
+        assertEquals(4, this.y, 1.0);
+    }
+
+    @Test
+    public void kalmanFilterSettlesOnNoisyRanges() throws JSONException {
+        run(standAt(7, 2, 2.0, 5), new JSONObject().put("filter", "kalman"), 20000);
+
+        assertEquals(7, this.x, 1.5);
+        assertEquals(2, this.y, 1.5);
+    }
+
+    @Test
+    public void floorWithMostBeaconsInRangeIsUsed() throws JSONException {
+        // The beacon of floor 1 is the nearest, but floor 0 has more beacons in range.
+        run(standAt(3, 4, 0.0, 6), null, 1000);
+
+        assertEquals(0, this.floor);
+        assertEquals(5, this.beacons);
+    }
+
+    @Test
+    public void tooFewBeaconsGiveNoPosition() throws JSONException {
+        run(standAt(3, 4, 0.0, 2), null, 1000);
+
+        assertEquals(0, this.positions);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+Tests of presence analytics for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+public class PresenceAggregatorTest {
+
+    private static final UUID PROXIMITY_UUID = UUID.fromString("B9407F30-F5F8-466E-AFF9-25556B57FE6D");
+
+    private static Beacon beacon(int minor, int rssi) {
+        return new Beacon(PROXIMITY_UUID, SimulatedBeaconSource.macAddressFor(1, minor), 1, minor, -59, rssi);
+    }
+
+    private static int histogramTotal(JSONObject beacon) throws JSONException {
+        JSONArray histogram = beacon.getJSONArray("rssiHistogram");
+        int total = 0;
+        for (int i = 0; i < histogram.length(); i++) {
+            total += histogram.getInt(i);
+        }
+        return total;
+    }
+
+    @Test
+    public void overlappingRegionsCountOneSighting() throws JSONException {
+        PresenceAggregator aggregator = PresenceAggregator.fromOptions(null);
+        List<Beacon> beacons = Arrays.asList(beacon(1, -70));
+
+        // Each cycle, the beacon is in the results of three regions.
+        for (long cycle = 0; cycle < 10; cycle++) {
+            long now = cycle * 1000;
+            aggregator.record(beacons, now);
+            aggregator.record(beacons, now + 5);
+            aggregator.record(beacons, now + 20);
+        }
+
+        JSONObject beacon = aggregator.makeJSONPresence().getJSONArray("beacons").getJSONObject(0);
+        assertEquals(10, beacon.getLong("sightings"));
+        assertEquals(10, histogramTotal(beacon));
+        assertEquals(9020, beacon.getLong("lastSeen"));
+        assertEquals(1, beacon.getInt("visits"));
+    }
+
+    @Test
+    public void visitsEndAfterGap() throws JSONException {
+        PresenceAggregator aggregator = PresenceAggregator.fromOptions(new JSONObject().put("visitGap", 5000));
+        List<Beacon> beacons = Arrays.asList(beacon(1, -70), beacon(2, -90));
+
+        aggregator.record(beacons, 0);
+        aggregator.record(beacons, 1000);
+        aggregator.record(Arrays.asList(beacon(1, -70)), 10000);
+
+        JSONArray json = aggregator.makeJSONPresence().getJSONArray("beacons");
+        assertEquals(2, json.length());
+        assertEquals(2, json.getJSONObject(0).getInt("visits"));
+        assertEquals(1000, json.getJSONObject(0).getLong("dwellTime"));
+        assertEquals(3, json.getJSONObject(0).getLong("sightings"));
+        assertEquals(1, json.getJSONObject(1).getInt("visits"));
+        assertEquals(2, json.getJSONObject(1).getLong("sightings"));
+    }
+}
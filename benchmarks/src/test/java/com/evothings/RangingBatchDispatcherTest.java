@@ -0,0 +1,126 @@
+/*
+Tests of the coalesced delivery of ranging results for the Android
+implementation of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RangingBatchDispatcherTest {
+
+    private static final int NO_RESULT = PluginResult.Status.NO_RESULT.ordinal();
+
+    /**
+     * Records the messages sent to JavaScript, slowly and at random speed,
+     * so that concurrent senders would overtake each other.
+     */
+    private static class RecordingWebView implements CordovaWebView {
+        private final Random random = new Random(1);
+        private final List<PluginResult> messages = new ArrayList<PluginResult>();
+
+        @Override
+        public void sendPluginResult(PluginResult result, String callbackId) {
+            long delay;
+            synchronized (this) {
+                delay = this.random.nextInt(50000);
+            }
+            LockSupport.parkNanos(delay);
+
+            synchronized (this) {
+                this.messages.add(result);
+            }
+        }
+
+        synchronized List<PluginResult> getMessages() {
+            return new ArrayList<PluginResult>(this.messages);
+        }
+    }
+
+    private static PluginResult result(int sequence) {
+        return new PluginResult(PluginResult.Status.OK, sequence);
+    }
+
+    /**
+     * Results of a batch message, checking the dispatch ids.
+     */
+    private static List<Integer> results(PluginResult batch, String dispatchId) throws JSONException {
+        JSONArray ids = new JSONArray(batch.getMultipartMessage(0).getEncodedMessage());
+        assertEquals(ids.length() + 1, batch.getMultipartMessagesSize());
+
+        List<Integer> results = new ArrayList<Integer>();
+        for (int i = 0; i < ids.length(); i++) {
+            assertEquals(dispatchId, ids.getString(i));
+            results.add(Integer.valueOf(batch.getMultipartMessage(i + 1).getEncodedMessage()));
+        }
+        return results;
+    }
+
+    @Test
+    public void timerAndSizeFlushesKeepOrder() throws JSONException {
+        RecordingWebView webView = new RecordingWebView();
+        // Timer flushes are due at once, and batches of four are flushed by add().
+        RangingBatchDispatcher dispatcher = new RangingBatchDispatcher(new CallbackContext("batch", webView), 0, 4);
+
+        int count = 2000;
+        for (int i = 0; i < count; i++) {
+            assertTrue(dispatcher.add("ranging1", result(i), false));
+            if (i % 50 == 0) {
+                LockSupport.parkNanos(100000);
+            }
+        }
+        dispatcher.close();
+        assertFalse(dispatcher.add("ranging1", result(count), false));
+
+        List<PluginResult> messages = webView.getMessages();
+        PluginResult last = messages.remove(messages.size() - 1);
+        assertEquals(NO_RESULT, last.getStatus());
+        assertFalse(last.getKeepCallback());
+
+        List<Integer> delivered = new ArrayList<Integer>();
+        for (PluginResult message : messages) {
+            assertTrue(message.getKeepCallback());
+            delivered.addAll(results(message, "ranging1"));
+        }
+
+        assertEquals(count, delivered.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, delivered.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void snapshotsReplaceEachOther() throws JSONException {
+        RecordingWebView webView = new RecordingWebView();
+        RangingBatchDispatcher dispatcher = new RangingBatchDispatcher(new CallbackContext("batch", webView), 60000, 32);
+
+        dispatcher.add("ranging1", result(1), true);
+        dispatcher.add("ranging2", result(2), true);
+        dispatcher.add("ranging1", result(3), true);
+        dispatcher.add("ranging3", result(4), true);
+        dispatcher.remove("ranging3");
+        dispatcher.close();
+
+        List<PluginResult> messages = webView.getMessages();
+        assertEquals(2, messages.size());
+        PluginResult batch = messages.get(0);
+        assertEquals("[\"ranging1\",\"ranging2\"]", batch.getMultipartMessage(0).getEncodedMessage());
+        assertEquals("3", batch.getMultipartMessage(1).getEncodedMessage());
+        assertEquals("2", batch.getMultipartMessage(2).getEncodedMessage());
+        assertEquals(NO_RESULT, messages.get(1).getStatus());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+Tests of the delta computation of ranging results for the Android
+implementation of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RangingDeltaTrackerTest {
+
+    private static final UUID PROXIMITY_UUID = UUID.fromString("B9407F30-F5F8-466E-AFF9-25556B57FE6D");
+
+    // Large enough that only RSSI changes are reported.
+    private static final double NO_ACCURACY_THRESHOLD = 1000;
+
+    private static final List<Beacon> NONE = Collections.emptyList();
+
+    private static Beacon beacon(int minor, int rssi) {
+        return new Beacon(PROXIMITY_UUID, SimulatedBeaconSource.macAddressFor(1, minor), 1, minor, -59, rssi);
+    }
+
+    @Test
+    public void newBeaconsAreAdded() {
+        RangingDeltaTracker tracker = new RangingDeltaTracker(5, NO_ACCURACY_THRESHOLD, 2);
+
+        assertTrue(tracker.update(Arrays.asList(beacon(1, -80), beacon(2, -81))));
+        assertEquals(2, tracker.getAdded().size());
+        assertTrue(tracker.getChanged().isEmpty());
+        assertTrue(tracker.getRemoved().isEmpty());
+
+        assertFalse(tracker.update(Arrays.asList(beacon(1, -80), beacon(2, -81))));
+        assertTrue(tracker.getAdded().isEmpty());
+    }
+
+    @Test
+    public void changesBelowThresholdAccumulate() {
+        RangingDeltaTracker tracker = new RangingDeltaTracker(5, NO_ACCURACY_THRESHOLD, 2);
+        tracker.update(Arrays.asList(beacon(1, -80)));
+
+        assertFalse(tracker.update(Arrays.asList(beacon(1, -83))));
+
+        // Measured against the last reported RSSI, so a slow drift is reported.
+        assertTrue(tracker.update(Arrays.asList(beacon(1, -85))));
+        assertEquals(1, tracker.getChanged().size());
+        assertEquals(-85, tracker.getChanged().get(0).getRssi());
+
+        assertFalse(tracker.update(Arrays.asList(beacon(1, -88))));
+    }
+
+    @Test
+    public void missedCyclesWithinGraceAreNotRemoved() {
+        RangingDeltaTracker tracker = new RangingDeltaTracker(5, NO_ACCURACY_THRESHOLD, 2);
+        tracker.update(Arrays.asList(beacon(1, -80)));
+
+        assertFalse(tracker.update(NONE));
+        assertFalse(tracker.update(NONE));
+
+        // Seen again, neither removed nor added.
+        assertFalse(tracker.update(Arrays.asList(beacon(1, -80))));
+
+        tracker.update(NONE);
+        tracker.update(NONE);
+        assertTrue(tracker.update(NONE));
+        assertEquals(1, tracker.getRemoved().size());
+        assertEquals(1, tracker.getRemoved().get(0).getMinor());
+
+        assertTrue(tracker.update(Arrays.asList(beacon(1, -80))));
+        assertEquals(1, tracker.getAdded().size());
+    }
+
+    @Test
+    public void noGraceRemovesOnFirstMiss() {
+        RangingDeltaTracker tracker = new RangingDeltaTracker(5, NO_ACCURACY_THRESHOLD, 0);
+        tracker.update(Arrays.asList(beacon(1, -80), beacon(2, -80)));
+
+        assertTrue(tracker.update(Arrays.asList(beacon(2, -80))));
+        assertEquals(1, tracker.getRemoved().size());
+        assertEquals(1, tracker.getRemoved().get(0).getMinor());
+    }
+
+    @Test
+    public void lossyFleetIsNotRemoved() {
+        // Every beacon is missed in about one cycle out of twenty, hardly ever more than three times in a row.
+        SimulatedBeaconSource.SyntheticFleet fleet =
+                new SimulatedBeaconSource.SyntheticFleet(PROXIMITY_UUID, 50, 0.0, 0.05, 7);
+        RangingDeltaTracker tracker = new RangingDeltaTracker(5, NO_ACCURACY_THRESHOLD, 3);
+
+        int removed = 0;
+        for (int cycle = 0; cycle < 100; cycle++) {
+            List<Beacon> beacons = new ArrayList<Beacon>();
+            fleet.beacons(cycle * 1000, beacons);
+            tracker.update(beacons);
+            removed += tracker.getRemoved().size();
+        }
+
+        assertEquals(0, removed);
+    }
+}
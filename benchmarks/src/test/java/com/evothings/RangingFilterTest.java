@@ -0,0 +1,99 @@
+/*
+Tests of the native filtering of ranging results for the Android
+implementation of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.RegionUtils;
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RangingFilterTest {
+
+    private static final UUID PROXIMITY_UUID = UUID.fromString("B9407F30-F5F8-466E-AFF9-25556B57FE6D");
+
+    private static Beacon beacon(int major, int minor, int rssi) {
+        return new Beacon(PROXIMITY_UUID, SimulatedBeaconSource.macAddressFor(major, minor), major, minor, -59, rssi);
+    }
+
+    private static RangingFilter filter(JSONObject filter) throws JSONException {
+        return RangingFilter.fromOptions(new JSONObject().put("filter", filter));
+    }
+
+    private static List<Integer> minors(List<Beacon> beacons) {
+        List<Integer> minors = new ArrayList<Integer>();
+        for (Beacon beacon : beacons) {
+            minors.add(beacon.getMinor());
+        }
+        return minors;
+    }
+
+    @Test
+    public void allowListMatchesMajorsAndPairs() throws JSONException {
+        RangingFilter filter = filter(new JSONObject().put("allow", new JSONArray()
+                .put(new JSONObject().put("major", 1))
+                .put(new JSONObject().put("major", 2).put("minor", 0))));
+
+        List<Beacon> beacons = Arrays.asList(beacon(1, 5, -70), beacon(2, 0, -70), beacon(2, 1, -70), beacon(3, 0, -70));
+        List<Beacon> accepted = filter.apply(beacons, BeaconReadings.RAW);
+
+        assertEquals(2, accepted.size());
+        assertEquals(1, accepted.get(0).getMajor());
+        assertEquals(2, accepted.get(1).getMajor());
+        assertEquals(0, accepted.get(1).getMinor());
+    }
+
+    @Test
+    public void conditionsMustAllBeMet() throws JSONException {
+        RangingFilter filter = filter(new JSONObject()
+                .put("minRssi", -80)
+                .put("proximities", new JSONArray().put("near").put("far")));
+
+        // Immediate, near, far and too weak.
+        List<Beacon> beacons = Arrays.asList(beacon(1, 1, -40), beacon(1, 2, -62), beacon(1, 3, -75), beacon(1, 4, -85));
+        assertEquals(Arrays.asList(2, 3), minors(filter.apply(beacons, BeaconReadings.RAW)));
+    }
+
+    @Test
+    public void maxAccuracyUsesSdkAccuracy() throws JSONException {
+        Beacon near = beacon(1, 1, -60);
+        Beacon far = beacon(1, 2, -80);
+        double limit = (RegionUtils.computeAccuracy(near) + RegionUtils.computeAccuracy(far)) / 2;
+
+        RangingFilter filter = filter(new JSONObject().put("maxAccuracy", limit));
+        assertEquals(Arrays.asList(1), minors(filter.apply(Arrays.asList(near, far), BeaconReadings.RAW)));
+    }
+
+    @Test
+    public void passingListIsNotCopied() throws JSONException {
+        RangingFilter filter = filter(new JSONObject().put("minRssi", -90));
+        List<Beacon> beacons = Arrays.asList(beacon(1, 1, -70), beacon(1, 2, -80));
+
+        assertSame(beacons, filter.apply(beacons, BeaconReadings.RAW));
+    }
+
+    @Test
+    public void noFilterWithoutOption() throws JSONException {
+        assertNull(RangingFilter.fromOptions(null));
+        assertNull(RangingFilter.fromOptions(new JSONObject().put("binary", true)));
+    }
+
+    @Test(expected = JSONException.class)
+    public void unknownProximityIsRejected() throws JSONException {
+        filter(new JSONObject().put("proximities", new JSONArray().put("close")));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+Tests of adaptive scan scheduling for the Android implementation of the
+Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.service.BeaconManager;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the scheduler on a simulated source that follows the scan periods it chooses.
+ */
+public class ScanSchedulerTest {
+
+    private static final UUID PROXIMITY_UUID = UUID.fromString("B9407F30-F5F8-466E-AFF9-25556B57FE6D");
+
+    private ScanScheduler scheduler;
+
+    private SimulatedBeaconSource source(SimulatedBeaconSource.Scenario scenario) throws JSONException {
+        final SimulatedBeaconSource source = new SimulatedBeaconSource(scenario,
+                SimulatedBeaconSource.DEFAULT_PERIOD_MILLIS, SimulatedBeaconSource.DEFAULT_EXIT_DELAY_MILLIS);
+
+        this.scheduler = new ScanScheduler(ScanScheduler.policyFromOptions(new JSONObject()),
+                ScanScheduler.DEFAULT_EVALUATION_INTERVAL_MILLIS, ScanScheduler.DEFAULT_MAX_BEACONS,
+                new ScanScheduler.Listener() {
+                    @Override
+                    public void onScanPeriod(ScanScheduler.ScanPeriod period) {
+                        source.setForegroundScanPeriod(period.scanMillis, period.waitMillis);
+                    }
+                }, 0);
+
+        source.setRangingListener(new BeaconManager.BeaconRangingListener() {
+            @Override
+            public void onBeaconsDiscovered(BeaconRegion region, List<Beacon> beacons) {
+                scheduler.observe(beacons, source.getTimeMillis());
+            }
+        });
+        return source;
+    }
+
+    private long waitTime() throws JSONException {
+        return this.scheduler.makeJSONStats(0).getLong("waitTime");
+    }
+
+    @Test
+    public void noisyStationaryFleetBacksOff() throws JSONException {
+        // RSSI noise of 3 dB, as with real beacons.
+        SimulatedBeaconSource source = source(new SimulatedBeaconSource.SyntheticFleet(PROXIMITY_UUID, 30, 3.0, 0.0, 5));
+        source.startRanging(new BeaconRegion("all", PROXIMITY_UUID, null, null));
+
+        source.advance(120000);
+        assertEquals(ScanScheduler.AdaptivePolicy.DEFAULT_MAX_WAIT_MILLIS, waitTime());
+
+        // And stays there.
+        source.advance(600000);
+        assertEquals(ScanScheduler.AdaptivePolicy.DEFAULT_MAX_WAIT_MILLIS, waitTime());
+    }
+
+    @Test
+    public void walkingPastBeaconsKeepsScanning() throws JSONException {
+        SimulatedBeaconSource.ScriptedWalk walk = new SimulatedBeaconSource.ScriptedWalk(2.0, 3.0, 5);
+        for (int i = 0; i < 10; i++) {
+            walk.beacon(PROXIMITY_UUID, 1, i + 1, i * 10, 2);
+        }
+        walk.waypoint(0, 0, 0).waypoint(120000, 90, 0);
+
+        // Overlapping regions report every beacon twice per scan cycle, which must not hide the movement.
+        SimulatedBeaconSource source = source(walk);
+        source.startRanging(new BeaconRegion("all", PROXIMITY_UUID, null, null));
+        source.startRanging(new BeaconRegion("major", PROXIMITY_UUID, 1, null));
+
+        source.advance(60000);
+        assertEquals(ScanScheduler.AdaptivePolicy.DEFAULT_ACTIVE_WAIT_MILLIS, waitTime());
+    }
+}
@@ -0,0 +1,114 @@
+/*
+Tests of the simulated beacon source for the benchmarks and tests of the
+Android implementation of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.service.BeaconManager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimulatedBeaconSourceTest {
+
+    private static final UUID PROXIMITY_UUID = UUID.fromString("B9407F30-F5F8-466E-AFF9-25556B57FE6D");
+
+    private final List<String> events = new ArrayList<String>();
+
+    private SimulatedBeaconSource source(SimulatedBeaconSource.Scenario scenario) {
+        final SimulatedBeaconSource source = new SimulatedBeaconSource(scenario, 100, 1000);
+        source.setRangingListener(new BeaconManager.BeaconRangingListener() {
+            @Override
+            public void onBeaconsDiscovered(BeaconRegion region, List<Beacon> beacons) {
+                StringBuilder event = new StringBuilder("ranged " + source.getTimeMillis() + ":");
+                for (Beacon beacon : beacons) {
+                    event.append(' ').append(beacon.getMinor()).append('/').append(beacon.getRssi());
+                }
+                events.add(event.toString());
+            }
+        });
+        source.setMonitoringListener(new BeaconManager.BeaconMonitoringListener() {
+            @Override
+            public void onEnteredRegion(BeaconRegion region, List<Beacon> beacons) {
+                events.add("enter " + source.getTimeMillis());
+            }
+
+            @Override
+            public void onExitedRegion(BeaconRegion region) {
+                events.add("exit " + source.getTimeMillis());
+            }
+        });
+        return source;
+    }
+
+    @Test
+    public void sameSeedPlaysSameEvents() {
+        List<String> first = play(7);
+        this.events.clear();
+        List<String> second = play(7);
+
+        assertEquals(20, first.size());
+        assertEquals(first, second);
+    }
+
+    private List<String> play(long seed) {
+        SimulatedBeaconSource source = source(new SimulatedBeaconSource.SyntheticFleet(PROXIMITY_UUID, 5, 3.0, 0.2, seed));
+        source.startRanging(new BeaconRegion("fleet", PROXIMITY_UUID, null, null));
+        source.advance(2000);
+        return new ArrayList<String>(this.events);
+    }
+
+    @Test
+    public void scanPeriodSpacesRangingResults() {
+        SimulatedBeaconSource source = source(new SimulatedBeaconSource.SyntheticFleet(PROXIMITY_UUID, 1, 0.0, 0.0, 1));
+        source.startRanging(new BeaconRegion("fleet", PROXIMITY_UUID, null, null));
+        source.setForegroundScanPeriod(400, 100);
+        source.advance(2000);
+
+        assertEquals(4, this.events.size());
+        assertTrue(this.events.get(0).startsWith("ranged 100:"));
+        assertTrue(this.events.get(1).startsWith("ranged 600:"));
+        assertTrue(this.events.get(3).startsWith("ranged 1600:"));
+    }
+
+    @Test
+    public void regionIsExitedAfterExitDelay() {
+        SimulatedBeaconSource.ScriptedWalk walk = new SimulatedBeaconSource.ScriptedWalk(2.0, 0.0, 1)
+                .beacon(PROXIMITY_UUID, 1, 1, 0, 0)
+                .waypoint(0, 1, 0)
+                .waypoint(1000, 1, 0)
+                .waypoint(1100, 1000, 0);
+        SimulatedBeaconSource source = source(walk);
+        source.startMonitoring(new BeaconRegion("walk", PROXIMITY_UUID, 1, null));
+        source.advance(5000);
+
+        // Last seen at 1000 ms, gone after the exit delay of one second.
+        assertEquals(Arrays.asList("enter 100", "exit 2000"), this.events);
+    }
+
+    @Test
+    public void walkFollowsPathLossModel() {
+        SimulatedBeaconSource.ScriptedWalk walk = new SimulatedBeaconSource.ScriptedWalk(2.0, 0.0, 1)
+                .beacon(PROXIMITY_UUID, 1, 1, 0, 0)
+                .waypoint(0, 1, 0)
+                .waypoint(1000, 10, 0);
+        List<Beacon> beacons = new ArrayList<Beacon>();
+
+        walk.beacons(0, beacons);
+        walk.beacons(1000, beacons);
+
+        // Measured power at one meter, 20 dB less at ten meters.
+        assertEquals(-59, beacons.get(0).getRssi());
+        assertEquals(-79, beacons.get(1).getRssi());
+    }
+}
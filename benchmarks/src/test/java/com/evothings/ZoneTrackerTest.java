@@ -0,0 +1,159 @@
+/*
+Tests of zone occupancy for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.service.BeaconManager;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Walks past the beacons of two zones on a simulated source.
+ */
+public class ZoneTrackerTest {
+
+    private static final String UUID_STRING = "B9407F30-F5F8-466E-AFF9-25556B57FE6D";
+    private static final UUID PROXIMITY_UUID = UUID.fromString(UUID_STRING);
+
+    private final List<String> transitions = new ArrayList<String>();
+
+    private ZoneTracker tracker(JSONObject options) throws JSONException {
+        JSONArray zones = new JSONArray()
+                .put(zone("A", 1))
+                .put(zone("B", 2));
+
+        return ZoneTracker.fromJSON(zones, options, new ZoneTracker.Listener() {
+            @Override
+            public void onZoneTransition(String zoneId, boolean entered, double rssi) {
+                transitions.add((entered ? "+" : "-") + zoneId);
+            }
+        });
+    }
+
+    private static JSONObject zone(String id, int major) throws JSONException {
+        return new JSONObject()
+                .put("id", id)
+                .put("beacons", new JSONArray().put(new JSONObject().put("uuid", UUID_STRING).put("major", major)));
+    }
+
+    /**
+     * Range the zone regions on a simulated source playing the walk.
+     */
+    private static SimulatedBeaconSource source(SimulatedBeaconSource.Scenario walk, final ZoneTracker tracker) {
+        final SimulatedBeaconSource source = new SimulatedBeaconSource(walk,
+                SimulatedBeaconSource.DEFAULT_PERIOD_MILLIS, SimulatedBeaconSource.DEFAULT_EXIT_DELAY_MILLIS);
+        source.setRangingListener(new BeaconManager.BeaconRangingListener() {
+            @Override
+            public void onBeaconsDiscovered(BeaconRegion region, List<Beacon> beacons) {
+                tracker.update(beacons, source.getTimeMillis());
+            }
+        });
+        for (BeaconRegion region : tracker.getRegions()) {
+            source.startRanging(region);
+        }
+        return source;
+    }
+
+    @Test
+    public void walkThroughZones() throws JSONException {
+        SimulatedBeaconSource.ScriptedWalk walk = new SimulatedBeaconSource.ScriptedWalk(2.0, 1.0, 1)
+                .beacon(PROXIMITY_UUID, 1, 1, 0, 0)
+                .beacon(PROXIMITY_UUID, 2, 1, 20, 0)
+                .waypoint(0, 0, 0)
+                .waypoint(10000, 0, 0)
+                .waypoint(20000, 20, 0)
+                .waypoint(30000, 20, 0)
+                .waypoint(40000, 60, 0);
+        ZoneTracker tracker = tracker(null);
+        SimulatedBeaconSource source = source(walk, tracker);
+
+        source.advance(ZoneTracker.DEFAULT_DWELL_MILLIS - 1000);
+        assertNull(tracker.getCurrentZone());
+
+        source.advance(5000);
+        assertEquals(Arrays.asList("+A"), this.transitions);
+
+        source.advance(22000);
+        assertEquals(Arrays.asList("+A", "-A", "+B"), this.transitions);
+        assertEquals("B", tracker.getCurrentZone());
+
+        source.advance(30000);
+        assertEquals(Arrays.asList("+A", "-A", "+B", "-B"), this.transitions);
+        assertNull(tracker.getCurrentZone());
+    }
+
+    @Test
+    public void hysteresisKeepsCurrentZone() throws JSONException {
+        // Standing halfway, both zones are about as strong.
+        SimulatedBeaconSource.ScriptedWalk walk = new SimulatedBeaconSource.ScriptedWalk(2.0, 1.0, 2)
+                .beacon(PROXIMITY_UUID, 1, 1, 0, 0)
+                .beacon(PROXIMITY_UUID, 2, 1, 6, 0)
+                .waypoint(0, 0, 0)
+                .waypoint(5000, 0, 0)
+                .waypoint(6000, 3, 0);
+        ZoneTracker tracker = tracker(new JSONObject().put("hysteresis", 10));
+        SimulatedBeaconSource source = source(walk, tracker);
+
+        source.advance(60000);
+        assertEquals(Arrays.asList("+A"), this.transitions);
+    }
+
+    @Test
+    public void shortVisitIsNotEntered() throws JSONException {
+        SimulatedBeaconSource.ScriptedWalk walk = new SimulatedBeaconSource.ScriptedWalk(2.0, 0.0, 3)
+                .beacon(PROXIMITY_UUID, 1, 1, 0, 0)
+                .waypoint(0, 50, 0)
+                .waypoint(5000, 1, 0)
+                .waypoint(6000, 1, 0)
+                .waypoint(11000, 50, 0);
+        ZoneTracker tracker = tracker(new JSONObject().put("dwellTime", 5000));
+        SimulatedBeaconSource source = source(walk, tracker);
+
+        source.advance(30000);
+        assertEquals(new ArrayList<String>(), this.transitions);
+    }
+
+    @Test
+    public void zeroMajorAndMinorAreNotWildcards() throws JSONException {
+        JSONArray zones = new JSONArray()
+                .put(new JSONObject().put("id", "minor0").put("beacons", new JSONArray()
+                        .put(new JSONObject().put("uuid", UUID_STRING).put("major", 5).put("minor", 0))))
+                .put(new JSONObject().put("id", "major0").put("beacons", new JSONArray()
+                        .put(new JSONObject().put("uuid", UUID_STRING).put("major", 0))));
+        ZoneTracker tracker = ZoneTracker.fromJSON(zones, new JSONObject().put("dwellTime", 0), new ZoneTracker.Listener() {
+            @Override
+            public void onZoneTransition(String zoneId, boolean entered, double rssi) {
+                transitions.add((entered ? "+" : "-") + zoneId);
+            }
+        });
+
+        // Other minors of major 5 and other majors are in neither zone.
+        tracker.update(Arrays.asList(beacon(5, 7, -50), beacon(3, 0, -50)), 0);
+        assertNull(tracker.getCurrentZone());
+
+        tracker.update(Arrays.asList(beacon(5, 0, -50)), 100);
+        assertEquals("minor0", tracker.getCurrentZone());
+
+        tracker.update(Arrays.asList(beacon(0, 9, -40)), 200);
+        assertEquals(Arrays.asList("+minor0", "-minor0", "+major0"), this.transitions);
+    }
+
+    private static Beacon beacon(int major, int minor, int rssi) {
+        return new Beacon(PROXIMITY_UUID, SimulatedBeaconSource.macAddressFor(major, minor), major, minor, -59, rssi);
+    }
+}
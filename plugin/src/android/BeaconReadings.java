@@ -0,0 +1,43 @@
+/*
+Source of beacon measurements for the Android implementation
+of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.RegionUtils;
+import com.estimote.coresdk.observation.utils.Proximity;
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+/**
+ * Gives the RSSI, accuracy and proximity reported for a beacon,
+ * either straight from the SDK or after smoothing.
+ */
+interface BeaconReadings {
+
+    /**
+     * Readings as computed by the Estimote SDK for the latest packet.
+     */
+    BeaconReadings RAW = new BeaconReadings() {
+        @Override
+        public double getRssi(Beacon beacon) {
+            return beacon.getRssi();
+        }
+
+        @Override
+        public double getAccuracy(Beacon beacon) {
+            return RegionUtils.computeAccuracy(beacon);
+        }
+
+        @Override
+        public Proximity getProximity(Beacon beacon) {
+            return RegionUtils.computeProximity(beacon);
+        }
+    };
+
+    double getRssi(Beacon beacon);
+
+    double getAccuracy(Beacon beacon);
+
+    Proximity getProximity(Beacon beacon);
+}
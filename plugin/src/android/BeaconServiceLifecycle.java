@@ -0,0 +1,303 @@
+/*
+Beacon service connection state for the Android implementation of the
+Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import android.os.RemoteException;
+
+import com.estimote.coresdk.service.BeaconManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connects the beacon source to the beacon service once, instead of once
+ * per operation. Operations requested while the service is disconnected or
+ * connecting are queued and run together when it is ready.
+ *
+ * Operations that keep running on the service (ranging, monitoring,
+ * discovery) are kept as replays under a key. If an operation fails because
+ * the service went away, the manager reconnects and runs all replays again.
+ * Other failures are only reported to the operation.
+ *
+ * The first reconnects in a row are immediate. If the service keeps failing,
+ * the replays are told through their error callbacks and reconnects are
+ * retried with a growing delay, until an operation succeeds again.
+ */
+class BeaconServiceLifecycle {
+
+    private static final String LOGTAG = "EstimoteBeacons";
+
+    static final int STATE_DISCONNECTED = 0;
+    static final int STATE_CONNECTING = 1;
+    static final int STATE_READY = 2;
+
+    // Immediate reconnects in a row, reset when an operation succeeds.
+    private static final int MAX_RECONNECTS = 3;
+
+    // Delay of the first retry after the immediate reconnects, doubled up to the maximum.
+    private static final long RETRY_MIN_MILLIS = 1000;
+    private static final long RETRY_MAX_MILLIS = 60000;
+
+    /**
+     * An operation on the beacon service.
+     */
+    interface Operation {
+        void run() throws Exception;
+
+        void onError(Exception e);
+    }
+
+    private final BeaconSource beaconSource;
+
+    // Guarded by this.
+    private int state = STATE_DISCONNECTED;
+    private boolean reconnecting;
+    private final LinkedHashMap<String, Operation> pending = new LinkedHashMap<String, Operation>();
+    private final LinkedHashMap<String, Operation> replays = new LinkedHashMap<String, Operation>();
+    private int anonymousCount;
+    private int reconnects;
+    private ScheduledExecutorService retryScheduler;
+    private ScheduledFuture<?> retry;
+
+    BeaconServiceLifecycle(BeaconSource beaconSource) {
+        this.beaconSource = beaconSource;
+    }
+
+    synchronized int getState() {
+        return this.state;
+    }
+
+    /**
+     * Run an operation now if the service is ready, or once it is.
+     * If replay is set, the operation is run again after a reconnect,
+     * until it is removed. A later operation with the same key replaces it.
+     */
+    void run(String key, Operation operation, boolean replay) {
+        synchronized (this) {
+            if (replay) {
+                this.replays.put(key, operation);
+            }
+
+            if (this.state != STATE_READY) {
+                if (key == null) {
+                    key = "#" + this.anonymousCount++;
+                }
+                this.pending.put(key, operation);
+                connect();
+                return;
+            }
+        }
+
+        if (execute(operation)) {
+            synchronized (this) {
+                this.reconnects = 0;
+            }
+        }
+    }
+
+    /**
+     * Forget the operation with the given key. Returns true if it was still
+     * waiting for the service, in which case it never ran.
+     */
+    synchronized boolean remove(String key) {
+        this.replays.remove(key);
+        return this.pending.remove(key) != null;
+    }
+
+    /**
+     * Forget all pending operations and replays.
+     */
+    synchronized void clear() {
+        this.pending.clear();
+        this.replays.clear();
+    }
+
+    /**
+     * Disconnect from the service. Pending operations and replays are dropped.
+     */
+    void disconnect() {
+        synchronized (this) {
+            clear();
+            this.state = STATE_DISCONNECTED;
+            this.reconnecting = false;
+            this.reconnects = 0;
+            if (this.retryScheduler != null) {
+                this.retryScheduler.shutdownNow();
+                this.retryScheduler = null;
+                this.retry = null;
+            }
+        }
+
+        PluginLog.d(LOGTAG, "Disconnecting from BeaconService.");
+
+        this.beaconSource.disconnect();
+    }
+
+    /**
+     * Mark the service as gone and reconnect, replaying the running operations.
+     * The failed operation, if any, has been told already.
+     */
+    void serviceLost(Operation failed) {
+        List<Operation> affected = new ArrayList<Operation>();
+        final Exception error;
+
+        synchronized (this) {
+            if (this.state != STATE_READY) {
+                return;
+            }
+
+            this.state = STATE_DISCONNECTED;
+            this.reconnecting = true;
+            this.reconnects++;
+
+            // Stale connection, the SDK needs a fresh bind.
+            this.beaconSource.disconnect();
+
+            if (this.reconnects <= MAX_RECONNECTS) {
+                PluginLog.e(LOGTAG, "Lost connection to BeaconService, reconnecting.");
+
+                connect();
+                return;
+            }
+
+            long delay = Math.min(RETRY_MAX_MILLIS,
+                    RETRY_MIN_MILLIS << Math.min(this.reconnects - MAX_RECONNECTS - 1, 16));
+
+            PluginLog.e(LOGTAG, "BeaconService operations keep failing, reconnecting in " + delay + " ms.");
+
+            scheduleRetry(delay);
+
+            // Told once, when the immediate reconnects are used up.
+            if (this.reconnects > MAX_RECONNECTS + 1) {
+                return;
+            }
+            for (Operation operation : this.replays.values()) {
+                if (operation != failed) {
+                    affected.add(operation);
+                }
+            }
+            error = new IllegalStateException("BeaconService keeps failing, retrying.");
+        }
+
+        for (Operation operation : affected) {
+            operation.onError(error);
+        }
+    }
+
+    /**
+     * Reconnect after a delay, unless connected meanwhile. Called with the lock held.
+     */
+    private void scheduleRetry(long delayMillis) {
+        if (this.retryScheduler == null) {
+            this.retryScheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        if (this.retry != null) {
+            this.retry.cancel(false);
+        }
+
+        this.retry = this.retryScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (BeaconServiceLifecycle.this) {
+                    if (BeaconServiceLifecycle.this.reconnecting) {
+                        connect();
+                    }
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Connect to the service unless already connecting. Called with the lock held.
+     */
+    private void connect() {
+        if (this.state != STATE_DISCONNECTED) {
+            return;
+        }
+        this.state = STATE_CONNECTING;
+
+        this.beaconSource.connect(new BeaconManager.ServiceReadyCallback() {
+            @Override
+            public void onServiceReady() {
+                PluginLog.d(LOGTAG, "Connected to BeaconService.");
+
+                onReady();
+            }
+        });
+    }
+
+    /**
+     * Run replays after a reconnect, then the queued operations, in one go.
+     */
+    private void onReady() {
+        List<Operation> operations = new ArrayList<Operation>();
+
+        synchronized (this) {
+            if (this.state != STATE_CONNECTING) {
+                return;
+            }
+            this.state = STATE_READY;
+
+            if (this.reconnecting) {
+                this.reconnecting = false;
+                for (Map.Entry<String, Operation> entry : this.replays.entrySet()) {
+                    // A queued operation with the same key is newer.
+                    if (!this.pending.containsKey(entry.getKey())) {
+                        operations.add(entry.getValue());
+                    }
+                }
+            }
+
+            operations.addAll(this.pending.values());
+            this.pending.clear();
+        }
+
+        PluginLog.d(LOGTAG, "Running " + operations.size() + " queued BeaconService operations.");
+
+        boolean succeeded = true;
+        for (Operation operation : operations) {
+            succeeded &= execute(operation);
+        }
+
+        // The replays work again, a later loss starts with immediate reconnects.
+        if (succeeded) {
+            synchronized (this) {
+                this.reconnects = 0;
+            }
+        }
+    }
+
+    /**
+     * Run an operation, returns false if it failed.
+     */
+    private boolean execute(Operation operation) {
+        try {
+            operation.run();
+            return true;
+        } catch (Exception e) {
+            operation.onError(e);
+
+            if (isServiceLoss(e)) {
+                serviceLost(operation);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if the failure means the service connection has died:
+     * a failed remote call, or a call on a manager that is not bound.
+     */
+    private static boolean isServiceLoss(Exception e) {
+        return e instanceof RemoteException || e instanceof IllegalStateException;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+RSSI smoothing for the Android implementation of the Cordova plugin
+for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.RegionUtils;
+import com.estimote.coresdk.observation.utils.Proximity;
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.recognition.utils.MacAddress;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Smooths the RSSI of ranged beacons with an exponential moving average,
+ * a one-dimensional Kalman filter or a moving median. Filter state is kept
+ * per MAC address in a table bounded to the least recently seen beacons.
+ * The table is keyed by the MacAddress of the beacon itself, so updates
+ * and lookups of known beacons do not allocate. The state of a beacon that
+ * was not seen for longer than the maximum gap starts over.
+ *
+ * The accuracy is the one the SDK computes for the smoothed RSSI, rounded
+ * like a measured one, so it is on the same scale as without smoothing. It
+ * is only computed again when the rounded RSSI changes. The proximity only
+ * changes once the smoothed accuracy is past a class boundary by a
+ * hysteresis margin, so it does not flicker at the boundaries.
+ *
+ * Instances are used from the ranging thread only and are not thread safe.
+ */
+class BeaconSmoother implements BeaconReadings {
+
+    static final int FILTER_EMA = 0;
+    static final int FILTER_KALMAN = 1;
+    static final int FILTER_MEDIAN = 2;
+
+    static final double DEFAULT_ALPHA = 0.3;
+    static final double DEFAULT_PROCESS_NOISE = 0.1;
+    static final double DEFAULT_MEASUREMENT_NOISE = 4.0;
+    static final int DEFAULT_WINDOW_SIZE = 5;
+    static final int DEFAULT_MAX_BEACONS = 512;
+    static final long DEFAULT_MAX_GAP_MILLIS = 10000;
+
+    // Proximity boundaries in meters and the relative margin needed to cross them.
+    private static final double IMMEDIATE_DISTANCE = 0.5;
+    private static final double NEAR_DISTANCE = 3.0;
+    private static final double HYSTERESIS = 0.15;
+
+    private final int filter;
+    private final double alpha;
+    private final double processNoise;
+    private final double measurementNoise;
+    private final int windowSize;
+    private final long maxGapMillis;
+
+    private final LinkedHashMap<MacAddress, State> states;
+    private final double[] medianScratch;
+
+    BeaconSmoother(int filter, double alpha, double processNoise, double measurementNoise, int windowSize,
+            long maxGapMillis, final int maxBeacons) {
+        this.filter = filter;
+        this.alpha = Math.max(0.01, Math.min(1.0, alpha));
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+        // Windows are only needed by the median filter.
+        this.windowSize = filter == FILTER_MEDIAN ? Math.max(1, windowSize) : 0;
+        this.medianScratch = new double[this.windowSize];
+        this.maxGapMillis = Math.max(0, maxGapMillis);
+
+        // Access ordered, so the least recently seen beacon is evicted first.
+        this.states = new LinkedHashMap<MacAddress, State>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MacAddress, State> eldest) {
+                return size() > maxBeacons;
+            }
+        };
+    }
+
+    /**
+     * Create a smoother from the smoothing ranging option, returns null if smoothing is not requested.
+     */
+    static BeaconSmoother fromOptions(JSONObject options) throws JSONException {
+        if (options == null) {
+            return null;
+        }
+
+        JSONObject json = options.optJSONObject("smoothing");
+        if (json == null) {
+            return null;
+        }
+
+        String type = json.optString("type", "kalman");
+        int filter;
+        if ("ema".equals(type)) {
+            filter = FILTER_EMA;
+        } else if ("median".equals(type)) {
+            filter = FILTER_MEDIAN;
+        } else if ("kalman".equals(type)) {
+            filter = FILTER_KALMAN;
+        } else {
+            throw new JSONException("Invalid smoothing type: " + type + ".");
+        }
+
+        return new BeaconSmoother(filter,
+                json.optDouble("alpha", DEFAULT_ALPHA),
+                json.optDouble("processNoise", DEFAULT_PROCESS_NOISE),
+                json.optDouble("measurementNoise", DEFAULT_MEASUREMENT_NOISE),
+                json.optInt("windowSize", DEFAULT_WINDOW_SIZE),
+                json.optLong("maxGap", DEFAULT_MAX_GAP_MILLIS),
+                Math.max(1, json.optInt("maxBeacons", DEFAULT_MAX_BEACONS)));
+    }
+
+    /**
+     * Feed the latest packets of a ranging cycle, received at the given time, to the filters.
+     */
+    void update(List<Beacon> beacons, long now) {
+        for (int i = 0, n = beacons.size(); i < n; i++) {
+            Beacon b = beacons.get(i);
+            MacAddress key = b.getMacAddress();
+            State state = this.states.get(key);
+            double rssi = b.getRssi();
+
+            if (state == null) {
+                state = new State(this.windowSize);
+                this.states.put(key, state);
+                state.reset(rssi, this.measurementNoise);
+            } else if (now - state.lastSeen > this.maxGapMillis) {
+                // Back after a long gap, the old state says nothing about the new position.
+                state.reset(rssi, this.measurementNoise);
+            }
+            state.lastSeen = now;
+
+            switch (this.filter) {
+                case FILTER_EMA:
+                    state.rssi += this.alpha * (rssi - state.rssi);
+                    break;
+                case FILTER_MEDIAN:
+                    state.rssi = median(state, rssi);
+                    break;
+                default:
+                    // Predict, then correct with the new measurement.
+                    state.variance += this.processNoise;
+                    double gain = state.variance / (state.variance + this.measurementNoise);
+                    state.rssi += gain * (rssi - state.rssi);
+                    state.variance *= (1 - gain);
+                    break;
+            }
+
+            updateAccuracy(state, b);
+            state.proximity = stableProximity(state.proximity, state.accuracy);
+        }
+    }
+
+    @Override
+    public double getRssi(Beacon beacon) {
+        State state = this.states.get(beacon.getMacAddress());
+        return state == null ? beacon.getRssi() : state.rssi;
+    }
+
+    @Override
+    public double getAccuracy(Beacon beacon) {
+        State state = this.states.get(beacon.getMacAddress());
+        return state == null ? RAW.getAccuracy(beacon) : state.accuracy;
+    }
+
+    @Override
+    public Proximity getProximity(Beacon beacon) {
+        State state = this.states.get(beacon.getMacAddress());
+        return state == null ? RAW.getProximity(beacon) : state.proximity;
+    }
+
+    /**
+     * Add a sample to the window of the beacon and return the median of the window.
+     */
+    private double median(State state, double rssi) {
+        state.window[state.windowPosition] = rssi;
+        state.windowPosition = (state.windowPosition + 1) % state.window.length;
+        if (state.windowCount < state.window.length) {
+            state.windowCount++;
+        }
+
+        System.arraycopy(state.window, 0, this.medianScratch, 0, state.windowCount);
+        Arrays.sort(this.medianScratch, 0, state.windowCount);
+
+        int middle = state.windowCount / 2;
+        if (state.windowCount % 2 == 1) {
+            return this.medianScratch[middle];
+        }
+        return (this.medianScratch[middle - 1] + this.medianScratch[middle]) / 2;
+    }
+
+    /**
+     * Set the accuracy the SDK computes for the smoothed RSSI, if the rounded RSSI or measured power changed.
+     */
+    private static void updateAccuracy(State state, Beacon b) {
+        int rssi = (int) Math.round(state.rssi);
+        int measuredPower = b.getMeasuredPower();
+        if (rssi == state.accuracyRssi && measuredPower == state.accuracyMeasuredPower) {
+            return;
+        }
+
+        state.accuracyRssi = rssi;
+        state.accuracyMeasuredPower = measuredPower;
+        state.accuracy = RegionUtils.computeAccuracy(new Beacon(b.getProximityUUID(), b.getMacAddress(),
+                b.getMajor(), b.getMinor(), measuredPower, rssi));
+    }
+
+    /**
+     * Return the proximity for an accuracy, keeping the current one until a boundary is clearly crossed.
+     */
+    static Proximity stableProximity(Proximity current, double accuracy) {
+        if (accuracy < 0) {
+            return Proximity.UNKNOWN;
+        }
+
+        Proximity target;
+        if (accuracy < IMMEDIATE_DISTANCE) {
+            target = Proximity.IMMEDIATE;
+        } else if (accuracy < NEAR_DISTANCE) {
+            target = Proximity.NEAR;
+        } else {
+            target = Proximity.FAR;
+        }
+
+        if (target == current || current == null || current == Proximity.UNKNOWN) {
+            return target;
+        }
+
+        double boundary;
+        if (current == Proximity.FAR || target == Proximity.FAR) {
+            if (current == Proximity.IMMEDIATE || target == Proximity.IMMEDIATE) {
+                // Two classes apart, no doubt about the change.
+                return target;
+            }
+            boundary = NEAR_DISTANCE;
+        } else {
+            boundary = IMMEDIATE_DISTANCE;
+        }
+
+        // Only switch once the accuracy is past the margin around the crossed boundary.
+        if (Math.abs(accuracy - boundary) < boundary * HYSTERESIS) {
+            return current;
+        }
+        return target;
+    }
+
+    /**
+     * Filter state of one beacon.
+     */
+    private static class State {
+        double rssi;
+        double variance;
+        long lastSeen;
+
+        double accuracy;
+        int accuracyRssi;
+        int accuracyMeasuredPower;
+        Proximity proximity;
+
+        final double[] window;
+        int windowPosition;
+        int windowCount;
+
+        State(int windowSize) {
+            this.window = new double[windowSize];
+        }
+
+        void reset(double rssi, double variance) {
+            this.rssi = rssi;
+            this.variance = variance;
+            this.accuracyRssi = Integer.MIN_VALUE;
+            this.proximity = Proximity.UNKNOWN;
+            this.windowPosition = 0;
+            this.windowCount = 0;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+Source of beacon events for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.service.BeaconManager;
+
+/**
+ * The part of BeaconManager used by the plugin. Implemented by
+ * EstimoteBeaconSource for the Estimote SDK, and by SimulatedBeaconSource
+ * in the benchmarks and tests to feed the plugin listeners without
+ * Bluetooth hardware.
+ */
+interface BeaconSource {
+
+    void setErrorListener(BeaconManager.ErrorListener listener);
+
+    void setRangingListener(BeaconManager.BeaconRangingListener listener);
+
+    void setMonitoringListener(BeaconManager.BeaconMonitoringListener listener);
+
+    void setConfigurableDevicesListener(BeaconManager.ConfigurableDevicesListener listener);
+
+    void connect(BeaconManager.ServiceReadyCallback callback);
+
+    void disconnect();
+
+    void startRanging(BeaconRegion region);
+
+    void stopRanging(BeaconRegion region);
+
+    void startMonitoring(BeaconRegion region);
+
+    void stopMonitoring(String regionId);
+
+    void startConfigurableDevicesDiscovery();
+
+    void stopConfigurableDevicesDiscovery();
+
+    /**
+     * Set the scan period and the wait time between scans used while ranging.
+     */
+    void setForegroundScanPeriod(long scanPeriodMillis, long waitTimeMillis);
+}
@@ -0,0 +1,242 @@
+/*
+Compact binary encoding of ranging results for the Android implementation
+of the Cordova plugin for Estimote Beacons.
+
+The layout is mirrored by helper_decodeBinaryRangingInformation() in
+EstimoteBeacons.js, keep both in sync.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.observation.utils.Proximity;
+import com.estimote.coresdk.recognition.packets.Beacon;
+import com.estimote.coresdk.recognition.utils.MacAddress;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Encodes a ranging result as a little-endian byte array.
+ *
+ * Header (28 bytes + identifier):
+ *   u8 version, u8 region flags (1 = UUID, 2 = major, 4 = minor),
+ *   u16 region major, u16 region minor, u16 UUID table size,
+ *   u16 beacon count, u16 identifier length, 16 bytes region UUID,
+ *   UTF-8 region identifier.
+ * Followed by the UUID table (16 bytes per UUID) and one 18 byte
+ * record per beacon:
+ *   u16 UUID index, u16 major, u16 minor, i8 rssi, u8 proximity,
+ *   f32 accuracy, 6 bytes MAC address.
+ *
+ * The MAC address bytes are parsed once per beacon and kept in a table
+ * keyed by MacAddress, bounded to the least recently seen beacons, so
+ * known beacons are written without going through a string.
+ *
+ * Instances reuse their buffers and are not thread safe.
+ */
+class BinaryRangingEncoder {
+
+    static final int VERSION = 1;
+
+    static final int REGION_HAS_UUID = 1;
+    static final int REGION_HAS_MAJOR = 2;
+    static final int REGION_HAS_MINOR = 4;
+
+    static final int PROXIMITY_UNKNOWN = 0;
+    static final int PROXIMITY_IMMEDIATE = 1;
+    static final int PROXIMITY_NEAR = 2;
+    static final int PROXIMITY_FAR = 3;
+
+    static final int HEADER_SIZE = 28;
+    static final int UUID_SIZE = 16;
+    static final int RECORD_SIZE = 18;
+
+    static final int MAX_MAC_ADDRESSES = 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    // UUID table for the message being encoded, stored as raw bits.
+    private long[] uuidMsb = new long[4];
+    private long[] uuidLsb = new long[4];
+    private int uuidCount;
+
+    // Raw bytes of the MAC addresses seen, access ordered for eviction.
+    private final LinkedHashMap<MacAddress, byte[]> macAddressBytes = new LinkedHashMap<MacAddress, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MacAddress, byte[]> eldest) {
+            return size() > MAX_MAC_ADDRESSES;
+        }
+    };
+
+    /**
+     * Map an Estimote proximity to its wire code.
+     */
+    static int proximityCode(Proximity proximity) {
+        if (proximity == Proximity.IMMEDIATE) {
+            return PROXIMITY_IMMEDIATE;
+        } else if (proximity == Proximity.NEAR) {
+            return PROXIMITY_NEAR;
+        } else if (proximity == Proximity.FAR) {
+            return PROXIMITY_FAR;
+        }
+        return PROXIMITY_UNKNOWN;
+    }
+
+    /**
+     * Encode the region and its beacons. Returns a new array sized to the message.
+     */
+    byte[] encode(BeaconRegion region, List<Beacon> beacons) {
+        return encode(region, beacons, BeaconReadings.RAW);
+    }
+
+    /**
+     * Encode the region and its beacons, with RSSI, accuracy and proximity from the given readings.
+     */
+    byte[] encode(BeaconRegion region, List<Beacon> beacons, BeaconReadings readings) {
+        int beaconCount = beacons.size();
+
+        // Build the UUID table first, ranged regions rarely hold more than a few.
+        this.uuidCount = 0;
+        for (int i = 0; i < beaconCount; i++) {
+            indexOfUuid(beacons.get(i).getProximityUUID());
+        }
+
+        String identifier = region.getIdentifier();
+        byte[] identifierBytes = identifier == null ? new byte[0] : identifier.getBytes(UTF8);
+
+        int size = HEADER_SIZE + identifierBytes.length + this.uuidCount * UUID_SIZE + beaconCount * RECORD_SIZE;
+        ByteBuffer out = prepareBuffer(size);
+
+        // Header.
+        UUID regionUuid = region.getProximityUUID();
+        Integer regionMajor = region.getMajor();
+        Integer regionMinor = region.getMinor();
+        int flags = (regionUuid != null ? REGION_HAS_UUID : 0)
+                | (regionMajor != null ? REGION_HAS_MAJOR : 0)
+                | (regionMinor != null ? REGION_HAS_MINOR : 0);
+
+        out.put((byte) VERSION);
+        out.put((byte) flags);
+        out.putShort((short) (regionMajor != null ? regionMajor : 0));
+        out.putShort((short) (regionMinor != null ? regionMinor : 0));
+        out.putShort((short) this.uuidCount);
+        out.putShort((short) beaconCount);
+        out.putShort((short) identifierBytes.length);
+        putUuid(out, regionUuid != null ? regionUuid.getMostSignificantBits() : 0L,
+                regionUuid != null ? regionUuid.getLeastSignificantBits() : 0L);
+        out.put(identifierBytes);
+
+        // UUID table.
+        for (int i = 0; i < this.uuidCount; i++) {
+            putUuid(out, this.uuidMsb[i], this.uuidLsb[i]);
+        }
+
+        // Beacon records.
+        for (int i = 0; i < beaconCount; i++) {
+            Beacon b = beacons.get(i);
+            int rssi = (int) Math.max(-128, Math.min(127, Math.round(readings.getRssi(b))));
+
+            out.putShort((short) indexOfUuid(b.getProximityUUID()));
+            out.putShort((short) b.getMajor());
+            out.putShort((short) b.getMinor());
+            out.put((byte) rssi);
+            out.put((byte) proximityCode(readings.getProximity(b)));
+            out.putFloat((float) readings.getAccuracy(b));
+            out.put(macAddressBytes(b.getMacAddress()));
+        }
+
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    /**
+     * Find the index of the UUID in the table, adding it when missing.
+     */
+    private int indexOfUuid(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+
+        for (int i = 0; i < this.uuidCount; i++) {
+            if (this.uuidMsb[i] == msb && this.uuidLsb[i] == lsb) {
+                return i;
+            }
+        }
+
+        if (this.uuidCount == this.uuidMsb.length) {
+            this.uuidMsb = Arrays.copyOf(this.uuidMsb, this.uuidCount * 2);
+            this.uuidLsb = Arrays.copyOf(this.uuidLsb, this.uuidCount * 2);
+        }
+        this.uuidMsb[this.uuidCount] = msb;
+        this.uuidLsb[this.uuidCount] = lsb;
+
+        return this.uuidCount++;
+    }
+
+    /**
+     * Clear the reusable buffer, growing it if needed.
+     */
+    private ByteBuffer prepareBuffer(int size) {
+        if (this.buffer.capacity() < size) {
+            this.buffer = ByteBuffer.allocate(Math.max(size, this.buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        this.buffer.clear();
+        return this.buffer;
+    }
+
+    /**
+     * Write UUID bits in big-endian order, which is the canonical byte order of a UUID.
+     */
+    private static void putUuid(ByteBuffer out, long msb, long lsb) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.put((byte) (msb >>> shift));
+        }
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.put((byte) (lsb >>> shift));
+        }
+    }
+
+    /**
+     * The six bytes of a MAC address, parsed on first sight.
+     */
+    private byte[] macAddressBytes(MacAddress macAddress) {
+        byte[] bytes = this.macAddressBytes.get(macAddress);
+        if (bytes == null) {
+            bytes = parseMacAddress(macAddress.toStandardString());
+            this.macAddressBytes.put(macAddress, bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * Parse the six bytes of a MAC address given as hex pairs, separators are skipped.
+     */
+    static byte[] parseMacAddress(String macAddress) {
+        // Malformed addresses are padded with zeros so records keep their fixed width.
+        byte[] bytes = new byte[6];
+        int written = 0;
+        int high = -1;
+
+        for (int i = 0; i < macAddress.length() && written < 6; i++) {
+            int digit = Character.digit(macAddress.charAt(i), 16);
+            if (digit < 0) {
+                continue;
+            }
+            if (high < 0) {
+                high = digit;
+            } else {
+                bytes[written++] = (byte) ((high << 4) | digit);
+                high = -1;
+            }
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,716 @@
+/*
+Device connection management for the Android implementation of the
+Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.estimote.coresdk.recognition.packets.ConfigurableDevice;
+import com.estimote.mgmtsdk.common.exceptions.DeviceConnectionException;
+import com.estimote.mgmtsdk.connection.api.DeviceConnection;
+import com.estimote.mgmtsdk.connection.api.DeviceConnectionCallback;
+import com.estimote.mgmtsdk.connection.api.DeviceConnectionProvider;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps several device connections open at once, keyed by MAC address.
+ * At most maxConnections connections are open or opening, further requests
+ * wait in line until a slot is freed. Connection attempts time out after
+ * connectTimeoutMillis, and connections that have not been used for
+ * idleTimeoutMillis are closed.
+ *
+ * A connection opened by connect() is held for JavaScript until it is
+ * disconnected. Internal users such as provisioning jobs take a reference
+ * with addReference() instead, and give it back with removeReference(),
+ * which only closes the connection once no reference is left, JavaScript
+ * does not hold it and no write is running on it.
+ *
+ * The timer thread and the idle check are started by the first connection,
+ * so apps that never connect to a device do not pay for them.
+ *
+ * One DeviceConnectionProvider stays bound to the connection service for
+ * the lifetime of the manager. Devices that were recently connected are
+ * remembered with their DeviceConnection, which is reused to reconnect
+ * them without looking them up again.
+ */
+class DeviceConnectionManager {
+
+    private static final String LOGTAG = "EstimoteBeacons";
+
+    static final int DEFAULT_MAX_CONNECTIONS = 4;
+    static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = 20000;
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+    private static final int MAX_RECENT_DEVICES = 16;
+    private static final long RECENT_DEVICE_TTL_MILLIS = 300000;
+
+    private static final int STATE_WAITING = 0;
+    private static final int STATE_CONNECTING = 1;
+    private static final int STATE_CONNECTED = 2;
+    private static final int STATE_CLOSED = 3;
+
+    /**
+     * Receives the outcome of a connection request.
+     */
+    interface ConnectCallback {
+        void onConnected(ManagedConnection connection);
+
+        void onConnectionFailed(String macAddress, String message, Exception cause);
+    }
+
+    private final DeviceConnectionProvider provider;
+
+    // Limits, guarded by this.
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private long connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    private long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+
+    // Open and opening connections by MAC address, and requests waiting for a slot. Guarded by this.
+    private final LinkedHashMap<String, ManagedConnection> connections = new LinkedHashMap<String, ManagedConnection>();
+    private final ArrayDeque<ManagedConnection> waiting = new ArrayDeque<ManagedConnection>();
+    private String mostRecentMacAddress;
+
+    // Binding state of the provider, and connections waiting for it. Guarded by this.
+    private boolean serviceBinding;
+    private boolean serviceReady;
+    private boolean destroyed;
+    private final List<ManagedConnection> awaitingService = new ArrayList<ManagedConnection>();
+
+    // Recently disconnected devices, least recently used first. Guarded by this.
+    private final LinkedHashMap<String, RecentDevice> recentDevices =
+            new LinkedHashMap<String, RecentDevice>(MAX_RECENT_DEVICES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, RecentDevice> eldest) {
+                    if (size() > MAX_RECENT_DEVICES) {
+                        eldest.getValue().deviceConnection.destroy();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    // Connection timeouts and the idle check, created on first use. Guarded by this.
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> idleCheck;
+
+    DeviceConnectionManager(Context context) {
+        this.provider = new DeviceConnectionProvider(context);
+    }
+
+    /**
+     * Change the limits. Timeouts apply to connections opened from now on.
+     */
+    synchronized void configure(int maxConnections, long connectTimeoutMillis, long idleTimeoutMillis) {
+        this.maxConnections = Math.max(1, maxConnections);
+        this.connectTimeoutMillis = Math.max(1000, connectTimeoutMillis);
+        this.idleTimeoutMillis = Math.max(1000, idleTimeoutMillis);
+
+        if (this.scheduler != null) {
+            scheduleIdleCheck();
+        }
+        startWaiting();
+    }
+
+    /**
+     * Connect to a device for JavaScript, or reuse the connection to it.
+     * The connection is held until it is disconnected.
+     */
+    void connect(ConfigurableDevice device, ConnectCallback callback) {
+        connect(device, callback, false);
+    }
+
+    /**
+     * Connect to a device and take a reference to the connection, or reuse
+     * the connection to it. Returns the connection, which may still be
+     * connecting, to be given back with removeReference().
+     */
+    ManagedConnection addReference(ConfigurableDevice device, ConnectCallback callback) {
+        return connect(device, callback, true);
+    }
+
+    /**
+     * Give back a reference taken with addReference(). The connection is
+     * closed, or its attempt cancelled, if nothing else holds it.
+     */
+    void removeReference(ManagedConnection connection) {
+        synchronized (this) {
+            if (connection.references > 0) {
+                connection.references--;
+            }
+            if (connection.references > 0 || connection.heldByUser || connection.isBusy()) {
+                // A busy connection is closed by the idle check once it is done.
+                return;
+            }
+        }
+
+        close(connection, "Connection cancelled.");
+    }
+
+    private ManagedConnection connect(ConfigurableDevice device, ConnectCallback callback, boolean counted) {
+        String macAddress = DeviceRegistry.macAddressKey(device.macAddress.toString());
+        ManagedConnection connection;
+
+        synchronized (this) {
+            connection = this.connections.get(macAddress);
+            if (connection == null) {
+                connection = findWaiting(macAddress);
+            }
+
+            if (connection == null) {
+                connection = new ManagedConnection(macAddress, device);
+                connection.hold(counted);
+                connection.callbacks.add(callback);
+
+                if (this.connections.size() < this.maxConnections) {
+                    open(connection);
+                } else {
+                    PluginLog.d(LOGTAG, "Connection limit reached, waiting to connect to device " + macAddress + ".");
+                    this.waiting.add(connection);
+                }
+                return connection;
+            }
+
+            connection.hold(counted);
+            connection.touch();
+            if (connection.state != STATE_CONNECTED) {
+                // Answered when the pending attempt completes.
+                connection.callbacks.add(callback);
+                return connection;
+            }
+            this.mostRecentMacAddress = macAddress;
+        }
+
+        callback.onConnected(connection);
+        return connection;
+    }
+
+    /**
+     * Return the connection to the device with the given MAC address, or to the
+     * most recently used device if the MAC address is null. Returns null if not connected.
+     */
+    synchronized ManagedConnection get(String macAddress) {
+        String key = macAddress == null ? this.mostRecentMacAddress : DeviceRegistry.macAddressKey(macAddress);
+        ManagedConnection connection = key == null ? null : this.connections.get(key);
+
+        if (connection == null || connection.state != STATE_CONNECTED || !connection.deviceConnection.isConnected()) {
+            return null;
+        }
+
+        connection.touch();
+        this.mostRecentMacAddress = key;
+        return connection;
+    }
+
+    /**
+     * Close the connection to a device, or all connections if the MAC address is null,
+     * whoever holds them. Pending requests for these devices fail. The done callback runs once all of
+     * the devices have disconnected.
+     */
+    void disconnect(String macAddress, final Runnable done) {
+        List<ManagedConnection> closing = new ArrayList<ManagedConnection>();
+
+        synchronized (this) {
+            if (macAddress == null) {
+                closing.addAll(this.connections.values());
+                closing.addAll(this.waiting);
+            } else {
+                String key = DeviceRegistry.macAddressKey(macAddress);
+                ManagedConnection connection = this.connections.get(key);
+                if (connection == null) {
+                    connection = findWaiting(key);
+                }
+                if (connection != null) {
+                    closing.add(connection);
+                }
+            }
+
+            if (!closing.isEmpty() && done != null) {
+                final AtomicInteger remaining = new AtomicInteger(closing.size());
+                Runnable waiter = new Runnable() {
+                    @Override
+                    public void run() {
+                        if (remaining.decrementAndGet() == 0) {
+                            done.run();
+                        }
+                    }
+                };
+                for (ManagedConnection connection : closing) {
+                    connection.closeWaiters.add(waiter);
+                }
+            }
+        }
+
+        if (closing.isEmpty() && done != null) {
+            done.run();
+        }
+
+        for (ManagedConnection connection : closing) {
+            close(connection, "Connection cancelled.");
+        }
+    }
+
+    /**
+     * Return a device that was connected within the last minutes, or null.
+     */
+    synchronized ConfigurableDevice findRecentDevice(String macAddress) {
+        RecentDevice recent = findRecent(DeviceRegistry.macAddressKey(macAddress));
+        return recent == null ? null : recent.device;
+    }
+
+    /**
+     * Close all connections, stop the timers and unbind from the connection service.
+     */
+    void destroy() {
+        disconnect(null, null);
+
+        synchronized (this) {
+            if (this.scheduler != null) {
+                this.scheduler.shutdownNow();
+                this.scheduler = null;
+                this.idleCheck = null;
+            }
+
+            for (RecentDevice recent : this.recentDevices.values()) {
+                recent.deviceConnection.destroy();
+            }
+            this.recentDevices.clear();
+            this.awaitingService.clear();
+            this.serviceReady = false;
+            this.destroyed = true;
+        }
+
+        this.provider.destroy();
+    }
+
+    /**
+     * Number of open and opening connections.
+     */
+    synchronized int size() {
+        return this.connections.size();
+    }
+
+    /**
+     * Number of requests waiting for a free slot.
+     */
+    synchronized int waitingCount() {
+        return this.waiting.size();
+    }
+
+    private ManagedConnection findWaiting(String macAddress) {
+        for (ManagedConnection connection : this.waiting) {
+            if (connection.macAddress.equals(macAddress)) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Start connecting. Called with the lock held.
+     */
+    private void open(final ManagedConnection connection) {
+        PluginLog.d(LOGTAG, "Connecting to device: " + connection.macAddress + ".");
+
+        connection.state = STATE_CONNECTING;
+        connection.touch();
+        this.connections.put(connection.macAddress, connection);
+
+        connection.timeout = getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (release(connection, true) == STATE_CONNECTING) {
+                    PluginLog.e(LOGTAG, "Connection to device " + connection.macAddress + " timed out.");
+
+                    List<ConnectCallback> callbacks = finish(connection);
+                    if (connection.deviceConnection != null) {
+                        connection.deviceConnection.close();
+                    }
+                    fail(connection, callbacks, "Connection timed out.", null);
+                }
+            }
+        }, this.connectTimeoutMillis, TimeUnit.MILLISECONDS);
+
+        if (this.serviceReady) {
+            getScheduler().execute(new Runnable() {
+                @Override
+                public void run() {
+                    startConnection(connection);
+                }
+            });
+        } else {
+            this.awaitingService.add(connection);
+            bindService();
+        }
+    }
+
+    /**
+     * Bind the provider to the connection service, once. Called with the lock held.
+     */
+    private void bindService() {
+        if (this.serviceBinding) {
+            return;
+        }
+        this.serviceBinding = true;
+
+        this.provider.connectToService(new DeviceConnectionProvider.ConnectionProviderCallback() {
+            @Override
+            public void onConnectedToService() {
+                PluginLog.d(LOGTAG, "Connected to ConnectionService.");
+
+                List<ManagedConnection> ready;
+                synchronized (DeviceConnectionManager.this) {
+                    serviceReady = true;
+                    ready = new ArrayList<ManagedConnection>(awaitingService);
+                    awaitingService.clear();
+                }
+
+                for (ManagedConnection connection : ready) {
+                    startConnection(connection);
+                }
+            }
+        });
+    }
+
+    /**
+     * Connect the device, reusing its previous DeviceConnection if it was connected recently.
+     */
+    private void startConnection(ManagedConnection connection) {
+        DeviceConnection deviceConnection;
+
+        synchronized (this) {
+            if (connection.state != STATE_CONNECTING) {
+                return;
+            }
+
+            RecentDevice recent = findRecent(connection.macAddress);
+            if (recent != null) {
+                PluginLog.d(LOGTAG, "Reconnecting to recent device " + connection.macAddress + ".");
+
+                this.recentDevices.remove(connection.macAddress);
+                deviceConnection = recent.deviceConnection;
+            } else {
+                deviceConnection = this.provider.getConnection(connection.device);
+            }
+            connection.deviceConnection = deviceConnection;
+        }
+
+        deviceConnection.connect(new ManagedConnectionCallback(connection));
+    }
+
+    /**
+     * Look up a recent device, dropping it if it has expired. Called with the lock held.
+     */
+    private RecentDevice findRecent(String macAddress) {
+        RecentDevice recent = this.recentDevices.get(macAddress);
+        if (recent != null && SystemClock.elapsedRealtime() - recent.disconnectTime > RECENT_DEVICE_TTL_MILLIS) {
+            this.recentDevices.remove(macAddress);
+            recent.deviceConnection.destroy();
+            return null;
+        }
+        return recent;
+    }
+
+    /**
+     * Close a connection. Pending requests fail with the given message.
+     */
+    private void close(ManagedConnection connection, String message) {
+        int state = release(connection, false);
+        DeviceConnection deviceConnection = connection.deviceConnection;
+
+        if (state == STATE_CLOSED) {
+            return;
+        }
+
+        if (state == STATE_CONNECTED && deviceConnection != null && deviceConnection.isConnected()) {
+            PluginLog.d(LOGTAG, "Disconnecting from device " + connection.macAddress + ".");
+
+            // Finished in onDisconnected.
+            deviceConnection.close();
+            return;
+        }
+
+        List<ConnectCallback> callbacks = finish(connection);
+        if (deviceConnection != null) {
+            deviceConnection.close();
+        }
+        fail(connection, callbacks, message, null);
+    }
+
+    /**
+     * Forget a connection and let a waiting one take its slot. If connectingOnly
+     * is set, only a connection that is still connecting is released.
+     * Returns the state the connection was in.
+     */
+    private synchronized int release(ManagedConnection connection, boolean connectingOnly) {
+        int state = connection.state;
+        if (state == STATE_CLOSED || (connectingOnly && state != STATE_CONNECTING)) {
+            return state;
+        }
+
+        connection.state = STATE_CLOSED;
+        if (connection.timeout != null) {
+            connection.timeout.cancel(false);
+        }
+
+        if (this.connections.get(connection.macAddress) == connection) {
+            this.connections.remove(connection.macAddress);
+        }
+        this.waiting.remove(connection);
+        this.awaitingService.remove(connection);
+
+        startWaiting();
+        return state;
+    }
+
+    /**
+     * Mark a released connection as done, run its close waiters and return its pending callbacks.
+     * Returns null if it was already done.
+     */
+    private List<ConnectCallback> finish(ManagedConnection connection) {
+        List<ConnectCallback> callbacks;
+        List<Runnable> waiters;
+
+        synchronized (this) {
+            if (connection.finished) {
+                return null;
+            }
+            connection.finished = true;
+
+            callbacks = new ArrayList<ConnectCallback>(connection.callbacks);
+            connection.callbacks.clear();
+            waiters = new ArrayList<Runnable>(connection.closeWaiters);
+            connection.closeWaiters.clear();
+        }
+
+        for (Runnable waiter : waiters) {
+            waiter.run();
+        }
+        return callbacks;
+    }
+
+    private void fail(ManagedConnection connection, List<ConnectCallback> callbacks, String message, Exception cause) {
+        if (callbacks != null) {
+            for (ConnectCallback callback : callbacks) {
+                callback.onConnectionFailed(connection.macAddress, message, cause);
+            }
+        }
+    }
+
+    /**
+     * Open waiting connections while there are free slots. Called with the lock held.
+     */
+    private void startWaiting() {
+        while (this.connections.size() < this.maxConnections && !this.waiting.isEmpty()) {
+            open(this.waiting.poll());
+        }
+    }
+
+    /**
+     * Close connections that have not been used within the idle timeout.
+     */
+    private void closeIdleConnections() {
+        List<ManagedConnection> idle = new ArrayList<ManagedConnection>();
+        long now = SystemClock.elapsedRealtime();
+
+        synchronized (this) {
+            for (ManagedConnection connection : this.connections.values()) {
+                if (connection.state == STATE_CONNECTED && !connection.isBusy() && connection.references == 0
+                        && now - connection.lastUsed > this.idleTimeoutMillis) {
+                    idle.add(connection);
+                }
+            }
+        }
+
+        for (ManagedConnection connection : idle) {
+            PluginLog.d(LOGTAG, "Closing idle connection to device " + connection.macAddress + ".");
+            close(connection, "Connection closed.");
+        }
+    }
+
+    /**
+     * Return the timer, creating it and starting the idle check on first use.
+     */
+    private synchronized ScheduledExecutorService getScheduler() {
+        if (this.scheduler == null) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduleIdleCheck();
+        }
+        return this.scheduler;
+    }
+
+    private synchronized void scheduleIdleCheck() {
+        if (this.idleCheck != null) {
+            this.idleCheck.cancel(false);
+        }
+
+        long period = Math.max(1000, this.idleTimeoutMillis / 2);
+        this.idleCheck = this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                closeIdleConnections();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Forwards SDK connection events of one connection.
+     */
+    private class ManagedConnectionCallback implements DeviceConnectionCallback {
+        private final ManagedConnection connection;
+
+        ManagedConnectionCallback(ManagedConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onConnected() {
+            List<ConnectCallback> callbacks;
+
+            synchronized (DeviceConnectionManager.this) {
+                if (this.connection.state != STATE_CONNECTING) {
+                    return;
+                }
+                this.connection.state = STATE_CONNECTED;
+                this.connection.wasConnected = true;
+                this.connection.timeout.cancel(false);
+                this.connection.touch();
+                mostRecentMacAddress = this.connection.macAddress;
+
+                callbacks = new ArrayList<ConnectCallback>(this.connection.callbacks);
+                this.connection.callbacks.clear();
+            }
+
+            PluginLog.d(LOGTAG, "Connected to device " + this.connection.macAddress + ".");
+
+            for (ConnectCallback callback : callbacks) {
+                callback.onConnected(this.connection);
+            }
+        }
+
+        @Override
+        public void onConnectionFailed(DeviceConnectionException e) {
+            if (release(this.connection, true) == STATE_CONNECTING) {
+                fail(this.connection, finish(this.connection), e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void onDisconnected() {
+            PluginLog.d(LOGTAG, "Disconnected from device " + this.connection.macAddress + ".");
+
+            release(this.connection, false);
+
+            // Keep the connection for a warm reconnect.
+            synchronized (DeviceConnectionManager.this) {
+                if (this.connection.wasConnected && !destroyed && !connections.containsKey(this.connection.macAddress)) {
+                    RecentDevice previous = recentDevices.put(this.connection.macAddress,
+                            new RecentDevice(this.connection.device, this.connection.deviceConnection));
+                    if (previous != null && previous.deviceConnection != this.connection.deviceConnection) {
+                        previous.deviceConnection.destroy();
+                    }
+                }
+            }
+
+            fail(this.connection, finish(this.connection), "Device disconnected.", null);
+        }
+    }
+
+    /**
+     * A connection to a device.
+     */
+    static class ManagedConnection {
+        private final String macAddress;
+        private final ConfigurableDevice device;
+        private volatile DeviceConnection deviceConnection;
+
+        // Guarded by the manager.
+        private int state = STATE_WAITING;
+        private boolean heldByUser;
+        private int references;
+        private boolean wasConnected;
+        private boolean finished;
+        private ScheduledFuture<?> timeout;
+        private final List<ConnectCallback> callbacks = new ArrayList<ConnectCallback>();
+        private final List<Runnable> closeWaiters = new ArrayList<Runnable>();
+
+        private final AtomicInteger busy = new AtomicInteger();
+        private volatile long lastUsed;
+
+        ManagedConnection(String macAddress, ConfigurableDevice device) {
+            this.macAddress = macAddress;
+            this.device = device;
+        }
+
+        String getMacAddress() {
+            return this.macAddress;
+        }
+
+        ConfigurableDevice getDevice() {
+            return this.device;
+        }
+
+        /**
+         * Take a reference, or hold the connection for JavaScript. Called with the manager lock held.
+         */
+        private void hold(boolean counted) {
+            if (counted) {
+                this.references++;
+            } else {
+                this.heldByUser = true;
+            }
+        }
+
+        DeviceConnection getDeviceConnection() {
+            return this.deviceConnection;
+        }
+
+        /**
+         * Mark the connection as in use, so that it is not closed for being idle.
+         */
+        void acquire() {
+            this.busy.incrementAndGet();
+            touch();
+        }
+
+        void release() {
+            this.busy.decrementAndGet();
+            touch();
+        }
+
+        boolean isBusy() {
+            return this.busy.get() > 0;
+        }
+
+        void touch() {
+            this.lastUsed = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * A device that was connected recently.
+     */
+    private static class RecentDevice {
+        final ConfigurableDevice device;
+        final DeviceConnection deviceConnection;
+        final long disconnectTime;
+
+        RecentDevice(ConfigurableDevice device, DeviceConnection deviceConnection) {
+            this.device = device;
+            this.deviceConnection = deviceConnection;
+            this.disconnectTime = SystemClock.elapsedRealtime();
+        }
+    }
+}
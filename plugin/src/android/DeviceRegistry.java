@@ -0,0 +1,153 @@
+/*
+Registry of discovered configurable devices for the Android implementation
+of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import android.os.SystemClock;
+
+import com.estimote.coresdk.recognition.packets.ConfigurableDevice;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Keeps the configurable devices found by discovery, indexed by MAC address.
+ * Entries are ordered by last sighting. Devices not seen within the time to
+ * live are evicted, and the least recently seen ones go first when the size
+ * cap is reached.
+ */
+class DeviceRegistry {
+
+    static final long DEFAULT_TTL_MILLIS = 60000;
+    static final int DEFAULT_MAX_DEVICES = 256;
+
+    private final long ttlMillis;
+    private final int maxDevices;
+
+    // Insertion ordered, entries are re-inserted on each sighting. Guarded by this.
+    private final LinkedHashMap<String, Entry> devices = new LinkedHashMap<String, Entry>();
+
+    DeviceRegistry(long ttlMillis, int maxDevices) {
+        this.ttlMillis = ttlMillis;
+        this.maxDevices = Math.max(1, maxDevices);
+    }
+
+    /**
+     * Normalize a MAC address for lookups: upper case hex digits only, so
+     * that "aa:bb:cc:dd:ee:ff", "AA-BB-CC-DD-EE-FF" and the "[AA:BB:CC:DD:EE:FF]"
+     * of MacAddress.toString() give the same key.
+     */
+    static String macAddressKey(String macAddress) {
+        StringBuilder key = new StringBuilder(12);
+        for (int i = 0, n = macAddress.length(); i < n; i++) {
+            char c = macAddress.charAt(i);
+            if ((c >= '0' && c <= '9') || (c >= 'A' && c <= 'F')) {
+                key.append(c);
+            } else if (c >= 'a' && c <= 'f') {
+                key.append((char) (c - 'a' + 'A'));
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Record the devices of a discovery callback.
+     */
+    synchronized void update(List<ConfigurableDevice> found) {
+        long now = SystemClock.elapsedRealtime();
+
+        for (ConfigurableDevice d : found) {
+            String key = macAddressKey(d.macAddress.toString());
+            Entry entry = this.devices.remove(key);
+
+            if (entry == null) {
+                entry = new Entry();
+            }
+            entry.device = d;
+            entry.rssi = d.rssi;
+            entry.lastSeen = now;
+
+            this.devices.put(key, entry);
+        }
+
+        evict(now);
+    }
+
+    /**
+     * Find a device seen within maxAgeMillis, returns null if there is none.
+     * Devices are only kept for the time to live, so a longer maximum age is
+     * clamped to it.
+     */
+    synchronized ConfigurableDevice find(String macAddress, long maxAgeMillis) {
+        long now = SystemClock.elapsedRealtime();
+        evict(now);
+
+        Entry entry = this.devices.get(macAddressKey(macAddress));
+        if (entry == null || now - entry.lastSeen > Math.min(maxAgeMillis, this.ttlMillis)) {
+            return null;
+        }
+        return entry.device;
+    }
+
+    /**
+     * Find a device seen within the time to live, returns null if there is none.
+     */
+    ConfigurableDevice find(String macAddress) {
+        return find(macAddress, this.ttlMillis);
+    }
+
+    /**
+     * Signal strength of the last sighting of a device seen within the time
+     * to live, returns null if there is none.
+     */
+    synchronized Integer findRssi(String macAddress) {
+        long now = SystemClock.elapsedRealtime();
+
+        Entry entry = this.devices.get(macAddressKey(macAddress));
+        if (entry == null || now - entry.lastSeen > this.ttlMillis) {
+            return null;
+        }
+        return entry.rssi;
+    }
+
+    /**
+     * Number of devices currently known.
+     */
+    synchronized int size() {
+        return this.devices.size();
+    }
+
+    synchronized void clear() {
+        this.devices.clear();
+    }
+
+    /**
+     * Drop expired devices and the least recently seen ones above the size cap.
+     */
+    private void evict(long now) {
+        Iterator<Entry> it = this.devices.values().iterator();
+        int size = this.devices.size();
+
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (size <= this.maxDevices && now - entry.lastSeen <= this.ttlMillis) {
+                // Later entries were seen more recently.
+                break;
+            }
+            it.remove();
+            size--;
+        }
+    }
+
+    /**
+     * Latest sighting of a device.
+     */
+    private static class Entry {
+        ConfigurableDevice device;
+        int rssi;
+        long lastSeen;
+    }
+}
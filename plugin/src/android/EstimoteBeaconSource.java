@@ -0,0 +1,88 @@
+/*
+Estimote SDK beacon source for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import android.content.Context;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.service.BeaconManager;
+
+/**
+ * Beacon source backed by the Estimote SDK BeaconManager.
+ */
+class EstimoteBeaconSource implements BeaconSource {
+
+    private final BeaconManager beaconManager;
+
+    EstimoteBeaconSource(Context context) {
+        this.beaconManager = new BeaconManager(context);
+    }
+
+    @Override
+    public void setErrorListener(BeaconManager.ErrorListener listener) {
+        this.beaconManager.setErrorListener(listener);
+    }
+
+    @Override
+    public void setRangingListener(BeaconManager.BeaconRangingListener listener) {
+        this.beaconManager.setRangingListener(listener);
+    }
+
+    @Override
+    public void setMonitoringListener(BeaconManager.BeaconMonitoringListener listener) {
+        this.beaconManager.setMonitoringListener(listener);
+    }
+
+    @Override
+    public void setConfigurableDevicesListener(BeaconManager.ConfigurableDevicesListener listener) {
+        this.beaconManager.setConfigurableDevicesListener(listener);
+    }
+
+    @Override
+    public void connect(BeaconManager.ServiceReadyCallback callback) {
+        this.beaconManager.connect(callback);
+    }
+
+    @Override
+    public void disconnect() {
+        this.beaconManager.disconnect();
+    }
+
+    @Override
+    public void startRanging(BeaconRegion region) {
+        this.beaconManager.startRanging(region);
+    }
+
+    @Override
+    public void stopRanging(BeaconRegion region) {
+        this.beaconManager.stopRanging(region);
+    }
+
+    @Override
+    public void startMonitoring(BeaconRegion region) {
+        this.beaconManager.startMonitoring(region);
+    }
+
+    @Override
+    public void stopMonitoring(String regionId) {
+        this.beaconManager.stopMonitoring(regionId);
+    }
+
+    @Override
+    public void startConfigurableDevicesDiscovery() {
+        this.beaconManager.startConfigurableDevicesDiscovery();
+    }
+
+    @Override
+    public void stopConfigurableDevicesDiscovery() {
+        this.beaconManager.stopConfigurableDevicesDiscovery();
+    }
+
+    @Override
+    public void setForegroundScanPeriod(long scanPeriodMillis, long waitTimeMillis) {
+        this.beaconManager.setForegroundScanPeriod(scanPeriodMillis, waitTimeMillis);
+    }
+}
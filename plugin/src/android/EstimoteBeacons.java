@@ -8,22 +8,18 @@ package com.evothings;
 
 import android.app.Activity;
 import android.bluetooth.BluetoothAdapter;
+import android.content.Context;
 import android.content.Intent;
-import android.util.Log;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
 
 import com.estimote.coresdk.common.config.EstimoteSDK;
-import com.estimote.coresdk.observation.region.RegionUtils;
 import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
 import com.estimote.coresdk.observation.region.beacon.SecureBeaconRegion;
 import com.estimote.coresdk.observation.utils.Proximity;
 import com.estimote.coresdk.recognition.packets.Beacon;
 import com.estimote.coresdk.recognition.packets.ConfigurableDevice;
 import com.estimote.coresdk.service.BeaconManager;
-import com.estimote.mgmtsdk.common.exceptions.DeviceConnectionException;
-import com.estimote.mgmtsdk.connection.api.DeviceConnection;
-import com.estimote.mgmtsdk.connection.api.DeviceConnectionCallback;
-import com.estimote.mgmtsdk.connection.api.DeviceConnectionProvider;
-import com.estimote.mgmtsdk.feature.settings.SettingCallback;
 import com.estimote.mgmtsdk.feature.settings.api.Settings;
 
 import org.apache.cordova.CallbackContext;
@@ -35,12 +31,14 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 /**
@@ -52,27 +50,92 @@ public class EstimoteBeacons extends CordovaPlugin {
     private static final String LOGTAG = "EstimoteBeacons";
     private static final int REQUEST_ENABLE_BLUETOOTH = 1;
 
+    // Keys of the operations replayed when the beacon service reconnects.
+    private static final String DISCOVERY_KEY = "discovery";
+
+    // Trace files go to this directory under the app files directory.
+    private static final String TRACE_DIRECTORY = "estimote-trace";
+
+    // Monitoring and zone events without a callback are spilled to this file in the app files directory.
+    private static final String PENDING_EVENTS_FILE = "estimote-pending-events.txt";
+
+    // Channel of the pending zone events, monitoring events use the monitoring key of their region.
+    private static final String ZONES_CHANNEL = "zones";
+
+    // Interval of the stats stream.
+    private static final long DEFAULT_STATS_INTERVAL_MILLIS = 5000;
+    private static final long MIN_STATS_INTERVAL_MILLIS = 100;
+
     private CordovaInterface cordovaInterface;
 
     private EstimoteSDK estimoteSDK;
-    private BeaconManager beaconManager;
+    private BeaconSource beaconSource;
+    private BeaconServiceLifecycle beaconService;
+
+    private DeviceRegistry discoveredDevices;
+    private DeviceConnectionManager deviceConnections;
 
-    private ArrayList<ConfigurableDevice> discoveredDevices;
-    private DeviceConnected connectedDevice;
+    // Provisioning job and its progress callback, set while a job runs.
+    private ProvisioningJob provisioningJob;
+    private CallbackContext provisioningCallbackContext;
 
-    // Maps and variables that keep track of Cordova callbacks.
-    private HashMap<String, CallbackContext> rangingCallbackContexts;
-    private HashMap<String, CallbackContext> monitoringCallbackContexts;
+    // Registries and variables that keep track of Cordova callbacks.
+    // Registries are written from Cordova threads and read from SDK threads.
+    private RegionRegistry<RangingSession> rangingSessions;
+
+    // Latest scores of the regions that rank their nearest beacons together.
+    private NearestSelector.Shared nearestRanking;
+    private RegionRegistry<MonitoringSession> monitoringSessions;
     private CallbackContext discoveringCallbackContext;
 
+    // Moves serialization and bridge calls off the SDK delivery thread.
+    private EventPipeline eventPipeline;
+
+    // Coalesces ranging results of all regions when set, read from the ranging thread.
+    private volatile RangingBatchDispatcher rangingBatchDispatcher;
+
+    // Records SDK events to files when set, read from the SDK threads.
+    private volatile TraceRecorder traceRecorder;
+
+    // Event counters, replaced when reset.
+    private volatile PluginStats stats;
+
+    // Sends the counters periodically while a stats stream is started.
+    private ScheduledExecutorService statsStream;
+
+    // Reports debounced monitoring transitions when due, created on first use.
+    private ScheduledExecutorService monitoringScheduler;
+
+    // Works out the current zone from the ranging of its own regions when set.
+    private volatile ZoneTracker zoneTracker;
+
+    // Callback of the zone events, null while detached by a reset. Zone
+    // tracking is resumed by starting it again with the same arguments.
+    private volatile CallbackContext zoneCallbackContext;
+    private String zoneTrackingArguments;
+
+    // Counts resets, so that work queued before a reset does not attach an old callback.
+    private volatile int resetCount;
+
+    // Monitoring and zone events that arrived without a callback.
+    private PendingEventBuffer pendingEvents;
+
+    // Computes positions from the ranging of its own regions when set.
+    private volatile PositionEstimator positionEstimator;
+
+    // Aggregates sightings of ranged beacons when set, written from the ranging thread.
+    private volatile PresenceAggregator presenceAggregator;
+
+    // Tunes the ranging scan period when set, fed from the ranging thread.
+    private volatile ScanScheduler scanScheduler;
+    private boolean isForeground = true;
+
     // Booleans to keep track of listeners.
     private boolean isRangingListenerSet;
     private boolean isMonitoringListenerSet;
     private boolean isDeviceDiscoveringListenerSet;
 
     private CallbackContext bluetoothStateCallbackContext;
-    private CallbackContext deviceConnectionCallback;
-    private CallbackContext deviceDisconnectionCallback;
 
     /**
      * Create JSON object representing a region.
@@ -91,24 +154,31 @@ public class EstimoteBeacons extends CordovaPlugin {
     /**
      * Create JSON object representing ranging information.
      */
-    private static JSONObject makeJSONRangingInformation(BeaconRegion region, List<Beacon> beacons) throws JSONException {
+    static JSONObject makeJSONRangingInformation(BeaconRegion region, List<Beacon> beacons, BeaconReadings readings) throws JSONException {
         // Create JSON object.
         JSONObject json = new JSONObject();
         json.put("region", makeJSONBeaconRegion(region));
-        json.put("beacons", makeJSONBeaconArray(beacons));
+        json.put("beacons", makeJSONBeaconArray(beacons, readings));
         return json;
     }
 
     /**
      * Create JSON object representing a beacon list.
      */
-    private static JSONArray makeJSONBeaconArray(List<Beacon> beacons) throws JSONException {
+    static JSONArray makeJSONBeaconArray(List<Beacon> beacons) throws JSONException {
+        return makeJSONBeaconArray(beacons, BeaconReadings.RAW);
+    }
+
+    /**
+     * Create JSON object representing a beacon list, with RSSI, accuracy and proximity from the given readings.
+     */
+    static JSONArray makeJSONBeaconArray(List<Beacon> beacons, BeaconReadings readings) throws JSONException {
         JSONArray jsonArray = new JSONArray();
 
         for (Beacon b : beacons) {
 
             // Compute proximity value.
-            Proximity proximityValue = RegionUtils.computeProximity(b);
+            Proximity proximityValue = readings.getProximity(b);
             String proximity = "unknown";
             if (proximityValue == Proximity.IMMEDIATE) {
                 proximity = "immediate";
@@ -126,14 +196,26 @@ public class EstimoteBeacons extends CordovaPlugin {
             json.put("minor", b.getMinor());
             json.put("proximity", proximity);
             json.put("macAddress", b.getMacAddress().toString());
-            json.put("accuracy", RegionUtils.computeAccuracy(b));
-            json.put("rssi", b.getRssi());
+            json.put("accuracy", readings.getAccuracy(b));
+            json.put("rssi", readings.getRssi(b));
 
             jsonArray.put(json);
         }
         return jsonArray;
     }
 
+    /**
+     * Create JSON object representing the changes of a ranged region.
+     */
+    private static JSONObject makeJSONRangingDelta(BeaconRegion region, RangingDeltaTracker tracker, BeaconReadings readings) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("region", makeJSONBeaconRegion(region));
+        json.put("added", makeJSONBeaconArray(tracker.getAdded(), readings));
+        json.put("changed", makeJSONBeaconArray(tracker.getChanged(), readings));
+        json.put("removed", makeJSONBeaconArray(tracker.getRemoved(), readings));
+        return json;
+    }
+
     /**
      * Makes a JSON object for monitoring callback.
      */
@@ -147,7 +229,7 @@ public class EstimoteBeacons extends CordovaPlugin {
     /**
      * Makes a key from UUID + major + minor.
      */
-    private static String beaconRegionHashMapKey(String uuid, Integer major, Integer minor) {
+    static String beaconRegionHashMapKey(String uuid, Integer major, Integer minor) {
         // Use ':' for easier decomposition.
         return (uuid == null ? "0" : uuid) + ":" + (major == null ? "0" : major) + ":" + (minor == null ? "0" : minor);
     }
@@ -165,7 +247,7 @@ public class EstimoteBeacons extends CordovaPlugin {
     /**
      * Makes a JSON array object from a ConfigurableDevice list.
      */
-    private static JSONArray makeJSONDeviceArray(List<ConfigurableDevice> devices) throws JSONException {
+    static JSONArray makeJSONDeviceArray(List<ConfigurableDevice> devices) throws JSONException {
         JSONArray jsonArray = new JSONArray();
         for (ConfigurableDevice d : devices) {
             // Construct JSON object for each device.
@@ -191,17 +273,32 @@ public class EstimoteBeacons extends CordovaPlugin {
     /**
      * Makes a key from a BeaconRegion object.
      */
-    private static String beaconRegionHashMapKey(BeaconRegion region) {
+    static String beaconRegionHashMapKey(BeaconRegion region) {
 
         UUID uuid = region.getProximityUUID();
 
         return beaconRegionHashMapKey((uuid == null ? null : uuid.toString()), region.getMajor(), region.getMinor());
     }
 
+    /**
+     * Beacon service operation key of the ranging of a region.
+     */
+    private static String rangingKey(BeaconRegion region) {
+        return "ranging:" + beaconRegionHashMapKey(region);
+    }
+
+    /**
+     * Beacon service operation key of the monitoring of a region.
+     */
+    private static String monitoringKey(BeaconRegion region) {
+        return "monitoring:" + beaconRegionHashMapKey(region);
+    }
+
+
     /**
      * Create a BeaconRegion object from Cordova arguments.
      */
-    private static BeaconRegion createBeaconRegion(JSONObject json, boolean isSecure) {
+    static BeaconRegion createBeaconRegion(JSONObject json, boolean isSecure) {
 
         String uuid = json.optString("uuid", null);
 
@@ -241,7 +338,7 @@ public class EstimoteBeacons extends CordovaPlugin {
     /**
      * Check if the given UUID is valid.
      */
-    private static boolean isValidUuid(String uuid) {
+    static boolean isValidUuid(String uuid) {
         String validChars = "[[a-fA-F]|[0-9]]";
         return Pattern.matches(validChars + "{8}-" + validChars + "{4}-" + validChars + "{4}-" + validChars + "{4}-" + validChars + "{12}", uuid);
     }
@@ -252,31 +349,50 @@ public class EstimoteBeacons extends CordovaPlugin {
     @Override
     public void pluginInitialize() {
         super.pluginInitialize();
-        Log.d(LOGTAG, "Initializing plugin.");
+        PluginLog.d(LOGTAG, "Initializing plugin.");
 
         // Setting up the Cordova configuration.
         this.cordovaInterface = cordova;
         this.cordovaInterface.setActivityResultCallback(this);
 
-        this.beaconManager = new BeaconManager(this.cordovaInterface.getActivity());
+        this.beaconSource = createBeaconSource();
 
-        this.beaconManager.setErrorListener(new BeaconManager.ErrorListener() {
+        this.beaconSource.setErrorListener(new BeaconManager.ErrorListener() {
             @Override
             public void onError(Integer integer) {
-                Log.e(LOGTAG, "BeaconManager error: " + integer + ".");
+                PluginLog.e(LOGTAG, "BeaconManager error: " + integer + ".");
             }
         });
 
-        this.discoveredDevices = new ArrayList<ConfigurableDevice>();
+        this.beaconService = new BeaconServiceLifecycle(this.beaconSource);
 
-        this.rangingCallbackContexts = new HashMap<String, CallbackContext>();
-        this.monitoringCallbackContexts = new HashMap<String, CallbackContext>();
+        this.discoveredDevices = new DeviceRegistry(DeviceRegistry.DEFAULT_TTL_MILLIS, DeviceRegistry.DEFAULT_MAX_DEVICES);
+        this.deviceConnections = new DeviceConnectionManager(cordova.getActivity());
+
+        this.eventPipeline = new EventPipeline(EventPipeline.DEFAULT_CAPACITY);
+        this.eventPipeline.start();
+
+        this.stats = new PluginStats();
+
+        this.pendingEvents = new PendingEventBuffer(new File(cordova.getActivity().getFilesDir(), PENDING_EVENTS_FILE),
+                PendingEventBuffer.DEFAULT_MAX_EVENTS, PendingEventBuffer.DEFAULT_MEMORY_EVENTS);
+
+        this.rangingSessions = new RegionRegistry<RangingSession>();
+        this.nearestRanking = new NearestSelector.Shared();
+        this.monitoringSessions = new RegionRegistry<MonitoringSession>();
 
         this.isRangingListenerSet = false;
         this.isMonitoringListenerSet = false;
         this.isDeviceDiscoveringListenerSet = false;
     }
 
+    /**
+     * Create the source of beacon events. Overridden to run the plugin on a simulated source.
+     */
+    BeaconSource createBeaconSource() {
+        return new EstimoteBeaconSource(this.cordovaInterface.getActivity());
+    }
+
     /**
      * Plugin reset.
      * Called when the WebView does a top-level navigation or refreshes.
@@ -284,11 +400,64 @@ public class EstimoteBeacons extends CordovaPlugin {
     @Override
     public void onReset() {
         super.onReset();
-        Log.d(LOGTAG, "Resetting WebView.");
+        PluginLog.d(LOGTAG, "Resetting WebView.");
 
-        this.rangingCallbackContexts.clear();
-        this.monitoringCallbackContexts.clear();
+        this.resetCount++;
+
+        // Queued monitoring transitions still run, and are kept as pending
+        // events once the sessions below are gone.
+        this.eventPipeline.clearDroppable();
+
+        this.rangingSessions.clear();
+        this.nearestRanking.clear();
+        this.closeMonitoringSessions();
         this.discoveringCallbackContext = null;
+
+        // Do not replay operations for callbacks that are gone.
+        this.beaconService.clear();
+
+        // The job stays saved and can be resumed.
+        this.stopProvisioningJob();
+
+        if (this.rangingBatchDispatcher != null) {
+            this.rangingBatchDispatcher.discard();
+            this.rangingBatchDispatcher = null;
+        }
+
+        this.stopStatsStream();
+        this.stopPositioning();
+        this.presenceAggregator = null;
+
+        // Zone events are kept until zone tracking is started again.
+        this.zoneCallbackContext = null;
+        this.stopScanScheduling();
+    }
+
+    /**
+     * Called when the activity goes to the background.
+     */
+    @Override
+    public void onPause(boolean multitasking) {
+        super.onPause(multitasking);
+        this.setForeground(false);
+    }
+
+    /**
+     * Called when the activity comes back to the foreground.
+     */
+    @Override
+    public void onResume(boolean multitasking) {
+        super.onResume(multitasking);
+        this.setForeground(true);
+    }
+
+    private synchronized void setForeground(boolean foreground) {
+        this.isForeground = foreground;
+
+        ScanScheduler scheduler = this.scanScheduler;
+        if (scheduler != null) {
+            scheduler.setForeground(foreground, SystemClock.elapsedRealtime());
+        }
     }
 
     /**
@@ -296,10 +465,28 @@ public class EstimoteBeacons extends CordovaPlugin {
      */
     @Override
     public void onDestroy() {
-        Log.d(LOGTAG, "Destroying the WebView.");
+        PluginLog.d(LOGTAG, "Destroying the WebView.");
+
+        this.stopProvisioningJob();
+        this.stopStatsStream();
+        this.stopZoneTracking();
+        this.stopPositioning();
+        this.stopScanScheduling();
+        this.stopMonitoringScheduler();
+        this.deviceConnections.destroy();
+
+        if (this.traceRecorder != null) {
+            this.traceRecorder.close();
+            this.traceRecorder = null;
+        }
 
-        this.disconnectConnectedDevice();
         this.disconnectBeaconManager();
+        this.eventPipeline.stop();
+
+        if (this.rangingBatchDispatcher != null) {
+            this.rangingBatchDispatcher.discard();
+            this.rangingBatchDispatcher = null;
+        }
 
         super.onDestroy();
     }
@@ -309,9 +496,7 @@ public class EstimoteBeacons extends CordovaPlugin {
      *  
      */
     private void disconnectBeaconManager() {
-        Log.d(LOGTAG, "Disconnecting from BeaconService.");
-
-        this.beaconManager.disconnect();
+        this.beaconService.disconnect();
     }
 
     /**
@@ -342,13 +527,61 @@ public class EstimoteBeacons extends CordovaPlugin {
         } else if ("beacons_connectToDevice".equals(action)) {
             this.connectToDevice(args, callbackContext);
         } else if ("beacons_disconnectFromDevice".equals(action)) {
-            this.disconnectConnectedDevice(callbackContext);
+            this.disconnectFromDevice(args, callbackContext);
+        } else if ("beacons_configureConnections".equals(action)) {
+            this.configureConnections(args, callbackContext);
         } else if ("beacons_writeConnectedProximityUUID".equals(action)) {
             this.writeConnectedProximityUUID(args, callbackContext);
         } else if ("beacons_writeConnectedMajor".equals(action)) {
             this.writeConnectedMajor(args, callbackContext);
         } else if ("beacons_writeConnectedMinor".equals(action)) {
             this.writeConnectedMinor(args, callbackContext);
+        } else if ("beacons_writeConnectedSettings".equals(action)) {
+            this.writeConnectedSettings(args, callbackContext);
+        } else if ("beacons_startProvisioning".equals(action)) {
+            this.startProvisioning(args, callbackContext);
+        } else if ("beacons_resumeProvisioning".equals(action)) {
+            this.resumeProvisioning(args, callbackContext);
+        } else if ("beacons_stopProvisioning".equals(action)) {
+            this.stopProvisioning(callbackContext);
+        } else if ("beacons_startRangingBatching".equals(action)) {
+            this.startRangingBatching(args, callbackContext);
+        } else if ("beacons_stopRangingBatching".equals(action)) {
+            this.stopRangingBatching(callbackContext);
+        } else if ("beacons_startTraceRecording".equals(action)) {
+            this.startTraceRecording(args, callbackContext);
+        } else if ("beacons_stopTraceRecording".equals(action)) {
+            this.stopTraceRecording(callbackContext);
+        } else if ("beacons_getEventQueueStats".equals(action)) {
+            callbackContext.success(this.eventPipeline.makeJSONStats());
+        } else if ("beacons_setLogLevel".equals(action)) {
+            this.setLogLevel(args, callbackContext);
+        } else if ("beacons_getLog".equals(action)) {
+            this.getLog(args, callbackContext);
+        } else if ("beacons_getStats".equals(action)) {
+            this.getStats(args, callbackContext);
+        } else if ("beacons_startStatsStream".equals(action)) {
+            this.startStatsStream(args, callbackContext);
+        } else if ("beacons_stopStatsStream".equals(action)) {
+            this.stopStatsStream(callbackContext);
+        } else if ("beacons_startZoneTracking".equals(action)) {
+            this.startZoneTracking(args, callbackContext);
+        } else if ("beacons_stopZoneTracking".equals(action)) {
+            this.stopZoneTracking(callbackContext);
+        } else if ("beacons_startPositioning".equals(action)) {
+            this.startPositioning(args, callbackContext);
+        } else if ("beacons_stopPositioning".equals(action)) {
+            this.stopPositioning(callbackContext);
+        } else if ("beacons_startPresenceAnalytics".equals(action)) {
+            this.startPresenceAnalytics(args, callbackContext);
+        } else if ("beacons_getPresenceAnalytics".equals(action)) {
+            this.getPresenceAnalytics(args, callbackContext);
+        } else if ("beacons_stopPresenceAnalytics".equals(action)) {
+            this.stopPresenceAnalytics(callbackContext);
+        } else if ("beacons_startScanScheduling".equals(action)) {
+            this.startScanScheduling(args, callbackContext);
+        } else if ("beacons_stopScanScheduling".equals(action)) {
+            this.stopScanScheduling(callbackContext);
         } else if ("bluetooth_bluetoothState".equals(action)) {
             this.checkBluetoothState(callbackContext);
         } else {
@@ -362,7 +595,7 @@ public class EstimoteBeacons extends CordovaPlugin {
      * If Bluetooth is off, open a Bluetooth dialog.
      */
     private void checkBluetoothState(final CallbackContext callbackContext) throws JSONException {
-        Log.d(LOGTAG, "Checking Bluetooth state.");
+        PluginLog.d(LOGTAG, "Checking Bluetooth state.");
 
         // Check that no Bluetooth state request is in progress.
         if (this.bluetoothStateCallbackContext != null) {
@@ -404,7 +637,7 @@ public class EstimoteBeacons extends CordovaPlugin {
      */
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent intent) {
-        Log.d(LOGTAG, "Resulting activity from Intent.");
+        PluginLog.d(LOGTAG, "Resulting activity from Intent.");
 
         if (requestCode == REQUEST_ENABLE_BLUETOOTH) {
             sendResultForBluetoothEnabled(this.bluetoothStateCallbackContext);
@@ -417,137 +650,117 @@ public class EstimoteBeacons extends CordovaPlugin {
      */
     private void startRangingBeaconsInRegion(CordovaArgs cordovaArgs, final CallbackContext callbackContext, boolean isSecure) throws JSONException {
         JSONObject json = cordovaArgs.getJSONObject(0);
+        JSONObject options = cordovaArgs.optJSONObject(1);
 
-        // The region is final because used in the onServiceReady() method.
+        // The region is final because used in the service operation.
         final BeaconRegion region = createBeaconRegion(json, isSecure);
 
-        Log.d(LOGTAG, "The region to range: " + region + ".");
+        if (PluginLog.isLoggable(PluginLog.DEBUG)) {
+            PluginLog.d(LOGTAG, "The region to range: " + region + ".");
+        }
 
         // Check the region validity.
         if (region != null) {
-            String key = beaconRegionHashMapKey(region);
-
-            // If the region is not actually ranged.
-            if (this.rangingCallbackContexts.get(key) == null) {
+            RangingSession session;
+            try {
+                session = new RangingSession(callbackContext, options);
+            } catch (JSONException e) {
+                callbackContext.error("Invalid ranging options: " + e.getMessage());
+                return;
+            }
 
-                // Add callback to hash map.
-                this.rangingCallbackContexts.put(key, callbackContext);
+            // Add callback and ranging options to the registry, if the region is not actually ranged.
+            if (this.rangingSessions.putIfAbsent(region, session) == null) {
 
                 // Create ranging listener.
                 if (!this.isRangingListenerSet) {
-                    this.beaconManager.setRangingListener(new PluginRangingListener());
+                    this.beaconSource.setRangingListener(new PluginRangingListener());
                     this.isRangingListenerSet = true;
                 }
 
-                this.beaconManager.connect(new BeaconManager.ServiceReadyCallback() {
+                this.beaconService.run(rangingKey(region), new BeaconServiceLifecycle.Operation() {
                     @Override
-                    public void onServiceReady() {
-                        Log.d(LOGTAG, "Connected to BeaconService.");
+                    public void run() throws Exception {
+                        PluginLog.d(LOGTAG, "Start ranging region: " + beaconRegionHashMapKey(region) + ".");
 
-                        startRanging(region, callbackContext);
+                        beaconSource.startRanging(region);
                     }
-                });
+
+                    @Override
+                    public void onError(Exception e) {
+                        PluginLog.e(LOGTAG, "Error during ranging: " + e + ".");
+
+                        callbackContext.error("Ranging remote exception.");
+                    }
+                }, true);
             }
         } else {
             callbackContext.error("Invalid UUID.");
         }
     }
 
-    /**
-     * Helper method.
-     */
-    private void startRanging(BeaconRegion region, CallbackContext callbackContext) {
-        try {
-            Log.d(LOGTAG, "Start ranging region: " + beaconRegionHashMapKey(region) + ".");
-
-            this.beaconManager.startRanging(region);
-        } catch (Exception e) {
-            Log.e(LOGTAG, "Error during ranging: " + e + ".");
-
-            callbackContext.error("Ranging remote exception.");
-        }
-    }
-
     /**
      * Stop ranging for beacons.
      */
     private void stopRangingBeaconsInRegion(CordovaArgs cordovaArgs, final CallbackContext callbackContext, boolean isSecure) throws JSONException {
         JSONObject json = cordovaArgs.getJSONObject(0);
 
-        BeaconRegion region = createBeaconRegion(json, isSecure);
+        final BeaconRegion region = createBeaconRegion(json, isSecure);
 
-        Log.d(LOGTAG, "The region to stop ranging: " + region + ".");
+        if (PluginLog.isLoggable(PluginLog.DEBUG)) {
+            PluginLog.d(LOGTAG, "The region to stop ranging: " + region + ".");
+        }
 
         // Check the region validity.
         if (region != null) {
 
-            String key = beaconRegionHashMapKey(region);
-            CallbackContext rangingCallback = this.rangingCallbackContexts.get(key);
+            // Remove ranging callback from the registry.
+            RangingSession rangingSession = this.rangingSessions.remove(region);
 
             // If ranging callback does not exist call error callback.
-            if (rangingCallback == null) {
+            if (rangingSession == null) {
                 callbackContext.error("Region not ranged, can't stop ranging.");
             } else {
 
-                // Remove ranging callback from hash map.
-                this.rangingCallbackContexts.remove(key);
+                // Drop results waiting for the next batch.
+                RangingBatchDispatcher dispatcher = this.rangingBatchDispatcher;
+                if (dispatcher != null && rangingSession.getDispatchId() != null) {
+                    dispatcher.remove(rangingSession.getDispatchId());
+                }
+
+                if (rangingSession.getNearest() != null) {
+                    rangingSession.getNearest().close();
+                }
 
                 // Clear ranging callback on JavaScript side.
                 PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
                 result.setKeepCallback(false);
-                rangingCallback.sendPluginResult(result);
-
-                try {
-                    Log.d(LOGTAG, "Stop ranging region: " + beaconRegionHashMapKey(region) + ".");
+                rangingSession.getCallbackContext().sendPluginResult(result);
 
-                    // Stop ranging.
-                    this.beaconManager.stopRanging(region);
-
-                    // Send back success.
+                if (this.beaconService.remove(rangingKey(region))) {
+                    // Ranging was still waiting for the service.
                     callbackContext.success();
-                } catch (Exception e) {
-                    Log.e(LOGTAG, "Stopping ranging error: " + e + ".");
-
-                    callbackContext.error("Stopping ranging remote exception.");
-                }
-
-            }
-        } else {
-            callbackContext.error("Invalid UUID.");
-        }
-    }
-
-    /**
-     * Start monitoring the given region.
-     */
-
-    private void startMonitoringForRegion(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
-        JSONObject json = cordovaArgs.getJSONObject(0);
-        final BeaconRegion region = createBeaconRegion(json, false);
+                } else {
+                    this.beaconService.run(null, new BeaconServiceLifecycle.Operation() {
+                        @Override
+                        public void run() throws Exception {
+                            PluginLog.d(LOGTAG, "Stop ranging region: " + beaconRegionHashMapKey(region) + ".");
 
-        // Check the region validity.
-        if (region != null) {
+                            // Stop ranging.
+                            beaconSource.stopRanging(region);
 
-            String key = beaconRegionHashMapKey(region);
-            if (this.monitoringCallbackContexts.get(key) == null) {
+                            // Send back success.
+                            callbackContext.success();
+                        }
 
-                // Add callback to hash map.
-                this.monitoringCallbackContexts.put(key, callbackContext);
+                        @Override
+                        public void onError(Exception e) {
+                            PluginLog.e(LOGTAG, "Stopping ranging error: " + e + ".");
 
-                // Create monitoring listener.
-                if (!this.isMonitoringListenerSet) {
-                    this.beaconManager.setMonitoringListener(new PluginMonitoringListener());
-                    this.isMonitoringListenerSet = true;
+                            callbackContext.error("Stopping ranging remote exception.");
+                        }
+                    }, false);
                 }
-
-                this.beaconManager.connect(new BeaconManager.ServiceReadyCallback() {
-                    @Override
-                    public void onServiceReady() {
-                        Log.d(LOGTAG, "Connected to BeaconService.");
-
-                        startMonitoring(region, callbackContext);
-                    }
-                });
             }
         } else {
             callbackContext.error("Invalid UUID.");
@@ -555,423 +768,1221 @@ public class EstimoteBeacons extends CordovaPlugin {
     }
 
     /**
-     * Helper method.
+     * Start delivering ranging results of all regions in batches.
      */
-    private void startMonitoring(BeaconRegion region, CallbackContext callbackContext) {
-        Log.d(LOGTAG, "Start monitoring region: " + region.getIdentifier() + ".");
+    private void startRangingBatching(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject json = cordovaArgs.optJSONObject(0);
 
-        try {
-            this.beaconManager.startMonitoring(region);
-        } catch (Exception e) {
-            Log.e(LOGTAG, "Monitoring error: " + e + ".");
+        if (this.rangingBatchDispatcher != null) {
+            callbackContext.error("Ranging batching already started.");
+        } else {
+            long flushInterval = json == null ? RangingBatchDispatcher.DEFAULT_FLUSH_INTERVAL_MILLIS
+                    : json.optLong("flushInterval", RangingBatchDispatcher.DEFAULT_FLUSH_INTERVAL_MILLIS);
+            int maxBatchSize = json == null ? RangingBatchDispatcher.DEFAULT_MAX_BATCH_SIZE
+                    : json.optInt("maxBatchSize", RangingBatchDispatcher.DEFAULT_MAX_BATCH_SIZE);
 
-            callbackContext.error("Starting monitoring remote exception.");
+            PluginLog.d(LOGTAG, "Start ranging batching, flush interval: " + flushInterval + " ms, max batch size: " + maxBatchSize + ".");
+
+            this.rangingBatchDispatcher = new RangingBatchDispatcher(callbackContext, flushInterval, maxBatchSize);
         }
     }
 
     /**
-     * Stop monitoring the region.
+     * Flush pending ranging results and go back to one message per result.
      */
-    private void stopMonitoringForRegion(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
-        JSONObject json = cordovaArgs.getJSONObject(0);
-        BeaconRegion region = createBeaconRegion(json, false);
-
-        // Check the region validity.
-        if (region != null) {
-
-            String key = beaconRegionHashMapKey(region);
-            CallbackContext monitoringCallback = this.monitoringCallbackContexts.get(key);
-
-            // If monitoring callback does not exist call error callback.
-            if (monitoringCallback == null) {
-                callbackContext.error("Region not monitored, can't stop.");
-            } else {
-                // Remove monitoring callback from hash map.
-                this.monitoringCallbackContexts.remove(key);
-
-                // Clear monitoring callback on JavaScript side.
-                PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
-                result.setKeepCallback(false);
-                monitoringCallback.sendPluginResult(result);
+    private void stopRangingBatching(final CallbackContext callbackContext) throws JSONException {
+        RangingBatchDispatcher dispatcher = this.rangingBatchDispatcher;
 
-                try {
-                    Log.d(LOGTAG, "Stop monitoring region: " + region.getIdentifier() + ".");
-
-                    // Stop monitoring.
-                    this.beaconManager.stopMonitoring(beaconRegionHashMapKey(region));
+        if (dispatcher == null) {
+            callbackContext.error("Ranging batching not started, can't stop.");
+        } else {
+            PluginLog.d(LOGTAG, "Stop ranging batching.");
 
-                    // Send back success.
-                    callbackContext.success();
-                } catch (Exception e) {
-                    Log.e(LOGTAG, "Stop monitoring error: " + e + ".");
+            this.rangingBatchDispatcher = null;
+            dispatcher.close();
 
-                    callbackContext.error("Stop monitoring remote exception.");
-                }
-            }
-        } else {
-            callbackContext.error("Invalid UUID.");
+            callbackContext.success();
         }
     }
 
     /**
-     * Start discovering connectivity packets.
+     * Start recording SDK events to trace files.
      */
-    private void startDiscoveringDevices(final CallbackContext callbackContext) throws JSONException {
-        if (this.discoveringCallbackContext == null) {
-            this.discoveringCallbackContext = callbackContext;
+    private void startTraceRecording(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject json = cordovaArgs.optJSONObject(0);
 
-            // Create discovering listener.
-            if (!this.isDeviceDiscoveringListenerSet) {
-                this.beaconManager.setConfigurableDevicesListener(new PluginDiscoveringListener());
-                this.isDeviceDiscoveringListenerSet = true;
-            }
+        if (this.traceRecorder != null) {
+            callbackContext.error("Trace recording already started.");
+        } else {
+            int maxFileSize = json == null ? TraceRecorder.DEFAULT_MAX_FILE_BYTES
+                    : json.optInt("maxFileSize", TraceRecorder.DEFAULT_MAX_FILE_BYTES);
+            int maxFiles = json == null ? TraceRecorder.DEFAULT_MAX_FILES
+                    : json.optInt("maxFiles", TraceRecorder.DEFAULT_MAX_FILES);
+            File directory = new File(cordova.getActivity().getFilesDir(), TRACE_DIRECTORY);
 
-            this.beaconManager.connect(new BeaconManager.ServiceReadyCallback() {
-                @Override
-                public void onServiceReady() {
-                    Log.d(LOGTAG, "Connected to BeaconService.");
+            PluginLog.d(LOGTAG, "Start trace recording to " + directory + ".");
 
-                    startDiscovering(callbackContext);
-                }
-            });
+            this.traceRecorder = new TraceRecorder(directory, maxFileSize, maxFiles);
+            callbackContext.success(this.traceRecorder.makeJSONStatus());
         }
     }
 
     /**
-     * Helper method.
+     * Stop recording and reply with the trace files.
      */
-    private void startDiscovering(CallbackContext callbackContext) {
-        Log.d(LOGTAG, "startDiscovering");
+    private void stopTraceRecording(final CallbackContext callbackContext) throws JSONException {
+        TraceRecorder recorder = this.traceRecorder;
 
-        try {
-            this.beaconManager.startConfigurableDevicesDiscovery();
-        } catch (Exception e) {
-            Log.e(LOGTAG, "Starting discovering error: " + e + ".");
+        if (recorder == null) {
+            callbackContext.error("Trace recording not started, can't stop.");
+        } else {
+            PluginLog.d(LOGTAG, "Stop trace recording.");
+
+            this.traceRecorder = null;
+            recorder.close();
 
-            callbackContext.error("Start discovering remote exception.");
+            callbackContext.success(recorder.makeJSONStatus());
         }
     }
 
     /**
-     * Stop discovering for connectivity packets.
+     * Set the log level and the sample interval of high-rate messages.
      */
-    private void stopDiscoveringDevices(final CallbackContext callbackContext) throws JSONException {
-        // If discovering callback does not exist call error callback
-        if (this.discoveringCallbackContext == null) {
-            callbackContext.error("Devices not being discovered, can't stop discovery.");
-        } else {
-            // Clear discovering callback on JavaScript side.
-            PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
-            result.setKeepCallback(false);
-            this.discoveringCallbackContext.sendPluginResult(result);
-            this.discoveringCallbackContext = null;
-
-            try {
-                Log.d(LOGTAG, "Stop discovering devices.");
-
-                // Stop discovering.
-                this.beaconManager.stopConfigurableDevicesDiscovery();
+    private void setLogLevel(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject json = cordovaArgs.getJSONObject(0);
 
-                // Send back success.
-                callbackContext.success();
-            } catch (Exception e) {
-                Log.e(LOGTAG, "Stop discovering error: " + e + ".");
+        int level = PluginLog.levelFromName(json.optString("level", PluginLog.levelName(PluginLog.getLevel())));
+        if (level < 0) {
+            callbackContext.error("Invalid log level.");
+            return;
+        }
 
-                callbackContext.error("Stop discovering remote exception.");
-            }
+        PluginLog.setLevel(level);
+        if (json.has("sampleInterval")) {
+            PluginLog.setSampleInterval(json.getLong("sampleInterval"));
         }
+
+        callbackContext.success();
     }
 
     /**
-     * Authenticate with Estimote Cloud.
+     * Reply with the recent log messages, oldest first.
      */
-    private void setupAppIDAndAppToken(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
-        if (this.estimoteSDK == null) {
-            this.estimoteSDK = new EstimoteSDK();
-
-            Log.d(LOGTAG, "Setting up connection with Estimote cloud.");
-            EstimoteSDK.initialize(this.cordova.getActivity(), cordovaArgs.getString(0), cordovaArgs.getString(1));
+    private void getLog(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject json = cordovaArgs.optJSONObject(0);
 
-            PluginResult r = new PluginResult(PluginResult.Status.OK);
-            callbackContext.sendPluginResult(r);
-        } else {
-            callbackContext.error("Already authenticated to Estimote cloud: " + EstimoteSDK.getAppId() + ".");
-        }
+        callbackContext.success(PluginLog.makeJSONBuffer(json != null && json.optBoolean("clear", false)));
     }
 
     /**
-     * Find device in rangedDevices, with MAC address.
+     * Reply with the event counters, registry sizes and event queue counters.
      */
-    private ConfigurableDevice findDevice(String macAddress) {
-        int size = this.discoveredDevices.size();
-        ConfigurableDevice current = null;
-        boolean searching = true;
+    private void getStats(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject json = cordovaArgs.optJSONObject(0);
 
-        while (searching && size > 0) {
-            current = this.discoveredDevices.get(size - 1);
-
-            // If device found.
-            if (current.macAddress.toString().equals(macAddress)) {
-                searching = false;
-            }
-            // Else continue.
-            else {
-                size--;
-            }
-        }
-        // If finally not found.
-        if (searching) {
-            current = null;
-        }
+        callbackContext.success(this.makeJSONStats());
 
-        return current;
-    }
+        if (json != null && json.optBoolean("reset", false)) {
+            PluginLog.d(LOGTAG, "Resetting stats.");
 
-    /**
-     * Find device in rangedDevices, from JSON.
-     */
-    private ConfigurableDevice findDevice(JSONObject json) throws JSONException {
-        String macAddress = json.optString("macAddress", "");
-        return findDevice(macAddress);
+            this.stats = new PluginStats();
+        }
     }
 
     /**
-     * Connect to a device.
+     * Send the stats to the callback at a fixed interval until stopped.
      */
-    private void connectToDevice(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
-        Log.d(LOGTAG, "Connecting to device.");
+    private void startStatsStream(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject json = cordovaArgs.optJSONObject(0);
 
-        JSONObject json = cordovaArgs.getJSONObject(0);
-        final ConfigurableDevice device = findDevice(json);
-
-        if (device == null) {
-            callbackContext.error("Could not find device to connect to.");
-        } else {
-            Log.d(LOGTAG, "Connecting to device: " + device.macAddress + ".");
-            // Devices are jealous creatures and don't like competition.
-            if (this.connectedDevice != null && !this.connectedDevice.getDevice().macAddress.equals(device.macAddress)) {
-                disconnectConnectedDevice();
+        synchronized (this) {
+            if (this.statsStream != null) {
+                callbackContext.error("Stats stream already started.");
+                return;
             }
 
-            this.deviceConnectionCallback = callbackContext;
+            long interval = Math.max(MIN_STATS_INTERVAL_MILLIS, json == null ? DEFAULT_STATS_INTERVAL_MILLIS
+                    : json.optLong("interval", DEFAULT_STATS_INTERVAL_MILLIS));
 
-            final DeviceConnectionProvider deviceConnectionProvider = new DeviceConnectionProvider(cordova.getActivity());
-            deviceConnectionProvider.connectToService(new DeviceConnectionProvider.ConnectionProviderCallback() {
-                @Override
-                public void onConnectedToService() {
-                    Log.d(LOGTAG, "Connected to ConnectionService.");
+            PluginLog.d(LOGTAG, "Start stats stream, interval: " + interval + " ms.");
 
-                    connectedDevice = new DeviceConnected(deviceConnectionProvider.getConnection(device), device);
-                    connectedDevice.getDeviceConnection().connect(new PluginDeviceConnectionCallback());
+            this.statsStream = Executors.newSingleThreadScheduledExecutor();
+            this.statsStream.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        PluginResult r = new PluginResult(PluginResult.Status.OK, makeJSONStats());
+                        r.setKeepCallback(true);
+                        callbackContext.sendPluginResult(r);
+                    } catch (JSONException e) {
+                        PluginLog.e(LOGTAG, "JSON error: " + e + ".");
+                    }
                 }
-            });
+            }, interval, interval, TimeUnit.MILLISECONDS);
         }
     }
 
     /**
-     * Disconnect from connected device, c/o Cordova.
+     * Stop the stats stream.
      */
-    private void disconnectConnectedDevice(CallbackContext callbackContext) throws JSONException {
-        Log.d(LOGTAG, "disconnectConnectedDevice (cordova)");
-
-        this.deviceDisconnectionCallback = callbackContext;
-        disconnectConnectedDevice();
+    private void stopStatsStream(final CallbackContext callbackContext) {
+        if (!this.stopStatsStream()) {
+            callbackContext.error("Stats stream not started, can't stop.");
+        } else {
+            callbackContext.success();
+        }
     }
 
     /**
-     * Disconnect from connected beacon.
+     * Stop the stats stream if started, returns false if it was not.
      */
-    private void disconnectConnectedDevice() {
+    private synchronized boolean stopStatsStream() {
+        if (this.statsStream == null) {
+            return false;
+        }
 
-        if (this.connectedDevice != null && this.connectedDevice.getDeviceConnection().isConnected()) {
-            Log.d(LOGTAG, "Disconnecting from device " + this.connectedDevice.getDevice().macAddress + ".");
+        PluginLog.d(LOGTAG, "Stop stats stream.");
 
-            this.connectedDevice.getDeviceConnection().close();
-            this.connectedDevice.setDeviceConnection(null);
-        }
+        this.statsStream.shutdownNow();
+        this.statsStream = null;
+        return true;
     }
 
     /**
-     * Write Proximity UUID to connected beacon.
+     * Start ranging the regions of a zone table and send zone transitions to the callback.
      */
-    private void writeConnectedProximityUUID(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
-        if (this.connectedDevice != null && this.connectedDevice.getDeviceConnection().isConnected()) {
+    private void startZoneTracking(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONArray zones = cordovaArgs.getJSONArray(0);
+        JSONObject options = cordovaArgs.optJSONObject(1);
 
-            String uuid = cordovaArgs.getString(0);
-            Log.d(LOGTAG, "New UUID to be put: " + uuid + ".");
-            final UUID newUuid = UUID.fromString(uuid);
+        String arguments = zones.toString() + (options == null ? "" : options.toString());
 
-            final UUID[] currentUuid = new UUID[1];
-            // Recover the current UUID to be replaced by.
-            this.connectedDevice.getDeviceConnection().settings.beacon.proximityUUID().get(new SettingCallback<UUID>() {
-                @Override
-                public void onSuccess(UUID uuid) {
-                    Log.d(LOGTAG, "UUID to be erased: " + uuid.toString() + ".");
-                    currentUuid[0] = uuid;
+        synchronized (this) {
+            if (this.zoneTracker != null) {
+                if (this.zoneCallbackContext != null) {
+                    callbackContext.error("Zone tracking already started.");
+                    return;
                 }
 
-                @Override
-                public void onFailure(DeviceConnectionException e) {
-                    Log.e(LOGTAG, "Could not recover current UUID.");
-
-                    callbackContext.error("Could not recover current UUID.");
+                if (arguments.equals(this.zoneTrackingArguments)) {
+                    this.resumeZoneTracking(callbackContext);
+                    return;
                 }
-            });
 
-            // Do not write the same UUID.
-            if (!newUuid.equals(currentUuid[0])) {
-                this.connectedDevice.getDeviceConnection().settings.beacon.proximityUUID().set(newUuid, new SettingCallback<UUID>() {
-                    @Override
-                    public void onSuccess(UUID uuid) {
-                        Log.d(LOGTAG, "UUID changed to: " + uuid.toString() + ".");
-                    }
+                // Another zone table, the detached tracking is obsolete.
+                this.stopZoneTracking();
+            }
 
+            ZoneTracker tracker;
+            try {
+                tracker = ZoneTracker.fromJSON(zones, options, new ZoneTracker.Listener() {
                     @Override
-                    public void onFailure(DeviceConnectionException e) {
-                        Log.e(LOGTAG, "Could not change UUID to: " + newUuid.toString() + ".");
+                    public void onZoneTransition(String zoneId, boolean entered, double rssi) {
+                        PluginLog.d(LOGTAG, (entered ? "Entered" : "Exited") + " zone: " + zoneId + ".");
+
+                        try {
+                            JSONObject json = new JSONObject();
+                            json.put("zone", zoneId);
+                            json.put("state", entered ? "entered" : "exited");
+                            if (!Double.isInfinite(rssi)) {
+                                json.put("rssi", rssi);
+                            }
+
+                            CallbackContext zoneCallback = zoneCallbackContext;
+                            if (zoneCallback == null) {
+                                json.put("time", System.currentTimeMillis());
+                                pendingEvents.add(ZONES_CHANNEL, zoneId, entered, json);
+                                return;
+                            }
 
-                        callbackContext.error("Could not change UUID.");
+                            PluginResult r = new PluginResult(PluginResult.Status.OK, json);
+                            r.setKeepCallback(true);
+                            zoneCallback.sendPluginResult(r);
+                        } catch (JSONException e) {
+                            PluginLog.e(LOGTAG, "JSON error: " + e + ".");
+                        }
                     }
                 });
-            } else {
-                PluginResult r = new PluginResult(PluginResult.Status.OK);
-                callbackContext.sendPluginResult(r);
+            } catch (JSONException e) {
+                callbackContext.error("Invalid zone table: " + e.getMessage());
+                return;
+            }
+
+            PluginLog.d(LOGTAG, "Start zone tracking, " + zones.length() + " zones.");
+
+            if (!this.isRangingListenerSet) {
+                this.beaconSource.setRangingListener(new PluginRangingListener());
+                this.isRangingListenerSet = true;
             }
+
+            this.zoneTracker = tracker;
+            this.zoneCallbackContext = callbackContext;
+            this.zoneTrackingArguments = arguments;
+            this.startRangingOwnRegions("zones:", tracker.getRegions(), callbackContext);
         }
     }
 
     /**
-     * Write Major to connected beacon.
+     * Attach a new callback to zone tracking detached by a reset, sending it the zone events that arrived meanwhile first.
      */
-    private void writeConnectedMajor(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+    private void resumeZoneTracking(final CallbackContext callbackContext) {
+        PluginLog.d(LOGTAG, "Resume zone tracking.");
 
-        if (this.connectedDevice != null && this.connectedDevice.getDeviceConnection().isConnected()) {
-
-            String major = cordovaArgs.getString(0);
-            Log.d(LOGTAG, "New major to be put: " + major + ".");
-            final Integer newMajor = Integer.decode(major);
-
-            final Integer[] currentMajor = new Integer[1];
-
-            // Recover the current major to be replaced by.
-            this.connectedDevice.getDeviceConnection().settings.beacon.major().get(new SettingCallback<Integer>() {
-                @Override
-                public void onSuccess(Integer major) {
-                    Log.d(LOGTAG, "Major to be replaced: " + major.toString() + ".");
-                    currentMajor[0] = major;
-                }
+        // The replay of the ranging was cleared with the reset.
+        this.startRangingOwnRegions("zones:", this.zoneTracker.getRegions(), callbackContext);
 
-                @Override
-                public void onFailure(DeviceConnectionException e) {
-                    Log.e(LOGTAG, "Could not recover current major.");
+        // Zone events are sent on the event pipeline thread, so none can come in between.
+        final ZoneTracker tracker = this.zoneTracker;
+        final int resumeResetCount = this.resetCount;
+        this.eventPipeline.postReliable(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (EstimoteBeacons.this) {
+                    // Reset or stopped meanwhile, the events stay pending.
+                    if (resumeResetCount != resetCount || tracker != zoneTracker) {
+                        return;
+                    }
 
-                    callbackContext.error("Could not recover major.");
+                    sendPendingEvents(ZONES_CHANNEL, callbackContext);
+                    zoneCallbackContext = callbackContext;
                 }
-            });
+            }
+        });
+    }
 
-            // Do not write the same major.
-            if (!newMajor.equals(currentMajor[0])) {
-                this.connectedDevice.getDeviceConnection().settings.beacon.major().set(newMajor,
-                        new SettingCallback<Integer>() {
-                            @Override
-                            public void onSuccess(Integer major) {
-                                Log.d(LOGTAG, "Major changed to: " + major.toString() + ".");
-                            }
+    /**
+     * Stop zone tracking.
+     */
+    private void stopZoneTracking(final CallbackContext callbackContext) {
+        if (!this.stopZoneTracking()) {
+            callbackContext.error("Zone tracking not started, can't stop.");
+        } else {
+            callbackContext.success();
+        }
+    }
+
+    /**
+     * Stop ranging the zone regions if tracking, returns false if not.
+     */
+    private synchronized boolean stopZoneTracking() {
+        ZoneTracker tracker = this.zoneTracker;
+        if (tracker == null) {
+            return false;
+        }
+
+        PluginLog.d(LOGTAG, "Stop zone tracking.");
+
+        this.zoneTracker = null;
+        this.zoneCallbackContext = null;
+        this.zoneTrackingArguments = null;
+        this.stopRangingOwnRegions("zones:", tracker.getRegions());
+        this.pendingEvents.discard(ZONES_CHANNEL);
+
+        return true;
+    }
+
+    /**
+     * Start computing positions from the ranging of the beacons of a floor map.
+     */
+    private void startPositioning(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONArray map = cordovaArgs.getJSONArray(0);
+        JSONObject options = cordovaArgs.optJSONObject(1);
+
+        synchronized (this) {
+            if (this.positionEstimator != null) {
+                callbackContext.error("Positioning already started.");
+                return;
+            }
+
+            PositionEstimator estimator;
+            try {
+                estimator = PositionEstimator.fromJSON(map, options, new PositionEstimator.Listener() {
+                    @Override
+                    public void onPosition(double x, double y, int floor, double uncertainty, int beacons) {
+                        try {
+                            JSONObject json = new JSONObject();
+                            json.put("x", x);
+                            json.put("y", y);
+                            json.put("floor", floor);
+                            json.put("uncertainty", uncertainty);
+                            json.put("beacons", beacons);
+
+                            PluginResult r = new PluginResult(PluginResult.Status.OK, json);
+                            r.setKeepCallback(true);
+                            callbackContext.sendPluginResult(r);
+                        } catch (JSONException e) {
+                            PluginLog.e(LOGTAG, "JSON error: " + e + ".");
+                        }
+                    }
+                });
+            } catch (JSONException e) {
+                callbackContext.error("Invalid floor map: " + e.getMessage());
+                return;
+            }
+
+            PluginLog.d(LOGTAG, "Start positioning, " + map.length() + " beacons.");
+
+            if (!this.isRangingListenerSet) {
+                this.beaconSource.setRangingListener(new PluginRangingListener());
+                this.isRangingListenerSet = true;
+            }
+
+            this.positionEstimator = estimator;
+            this.startRangingOwnRegions("position:", estimator.getRegions(), callbackContext);
+        }
+    }
+
+    /**
+     * Stop positioning.
+     */
+    private void stopPositioning(final CallbackContext callbackContext) {
+        if (!this.stopPositioning()) {
+            callbackContext.error("Positioning not started, can't stop.");
+        } else {
+            callbackContext.success();
+        }
+    }
+
+    /**
+     * Stop ranging the floor map regions if positioning, returns false if not.
+     */
+    private synchronized boolean stopPositioning() {
+        PositionEstimator estimator = this.positionEstimator;
+        if (estimator == null) {
+            return false;
+        }
+
+        PluginLog.d(LOGTAG, "Stop positioning.");
+
+        this.positionEstimator = null;
+        this.stopRangingOwnRegions("position:", estimator.getRegions());
+
+        return true;
+    }
+
+    /**
+     * Start aggregating the sightings of the beacons of all ranged regions.
+     */
+    private synchronized void startPresenceAnalytics(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        if (this.presenceAggregator != null) {
+            callbackContext.error("Presence analytics already started.");
+        } else {
+            PluginLog.d(LOGTAG, "Start presence analytics.");
+
+            this.presenceAggregator = PresenceAggregator.fromOptions(cordovaArgs.optJSONObject(0));
+            callbackContext.success();
+        }
+    }
+
+    /**
+     * Reply with the aggregated sightings, and optionally start over.
+     */
+    private synchronized void getPresenceAnalytics(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject json = cordovaArgs.optJSONObject(0);
+        PresenceAggregator aggregator = this.presenceAggregator;
+
+        if (aggregator == null) {
+            callbackContext.error("Presence analytics not started.");
+        } else {
+            if (json != null && json.optBoolean("reset", false)) {
+                this.presenceAggregator = aggregator.emptyCopy();
+            }
+
+            callbackContext.success(aggregator.makeJSONPresence());
+        }
+    }
+
+    /**
+     * Stop presence analytics and reply with the final aggregates.
+     */
+    private synchronized void stopPresenceAnalytics(final CallbackContext callbackContext) throws JSONException {
+        PresenceAggregator aggregator = this.presenceAggregator;
+
+        if (aggregator == null) {
+            callbackContext.error("Presence analytics not started, can't stop.");
+        } else {
+            PluginLog.d(LOGTAG, "Stop presence analytics.");
+
+            this.presenceAggregator = null;
+            callbackContext.success(aggregator.makeJSONPresence());
+        }
+    }
+
+    /**
+     * Start tuning the ranging scan period from the observed activity.
+     */
+    private synchronized void startScanScheduling(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject json = cordovaArgs.optJSONObject(0);
+        if (json == null) {
+            json = new JSONObject();
+        }
+
+        if (this.scanScheduler != null) {
+            callbackContext.error("Scan scheduling already started.");
+            return;
+        }
+
+        ScanScheduler.Policy policy;
+        try {
+            policy = this.createScanPolicy(json);
+        } catch (JSONException e) {
+            callbackContext.error("Invalid scan scheduling options: " + e.getMessage());
+            return;
+        }
+
+        PluginLog.d(LOGTAG, "Start scan scheduling.");
+
+        long now = SystemClock.elapsedRealtime();
+        ScanScheduler scheduler = new ScanScheduler(policy,
+                json.optLong("evaluationInterval", ScanScheduler.DEFAULT_EVALUATION_INTERVAL_MILLIS),
+                json.optInt("maxBeacons", ScanScheduler.DEFAULT_MAX_BEACONS),
+                new ScanScheduler.Listener() {
+                    @Override
+                    public void onScanPeriod(ScanScheduler.ScanPeriod period) {
+                        setScanPeriod(period);
+                    }
+                }, now);
+        scheduler.setForeground(this.isForeground, now);
+
+        this.scanScheduler = scheduler;
+        callbackContext.success();
+    }
+
+    /**
+     * Create the scan policy. Overridden to plug in another policy.
+     */
+    ScanScheduler.Policy createScanPolicy(JSONObject options) throws JSONException {
+        return ScanScheduler.policyFromOptions(options);
+    }
+
+    /**
+     * Stop scan scheduling and reply with its stats.
+     */
+    private void stopScanScheduling(final CallbackContext callbackContext) throws JSONException {
+        ScanScheduler scheduler = this.scanScheduler;
+        if (!this.stopScanScheduling()) {
+            callbackContext.error("Scan scheduling not started, can't stop.");
+        } else {
+            callbackContext.success(scheduler.makeJSONStats(SystemClock.elapsedRealtime()));
+        }
+    }
+
+    /**
+     * Stop scan scheduling and go back to the default scan period, returns false if not started.
+     */
+    private synchronized boolean stopScanScheduling() {
+        ScanScheduler scheduler = this.scanScheduler;
+        if (scheduler == null) {
+            return false;
+        }
+
+        PluginLog.d(LOGTAG, "Stop scan scheduling.");
+
+        this.scanScheduler = null;
+        scheduler.close(SystemClock.elapsedRealtime());
+        return true;
+    }
+
+    /**
+     * Apply a ranging scan period, and again after the service reconnects.
+     */
+    private void setScanPeriod(final ScanScheduler.ScanPeriod period) {
+        PluginLog.d(LOGTAG, "Scan period: " + period.scanMillis + " ms, wait time: " + period.waitMillis + " ms.");
+
+        // Replaces a period still waiting for the service.
+        this.beaconService.run("scanPeriod", new BeaconServiceLifecycle.Operation() {
+            @Override
+            public void run() throws Exception {
+                beaconSource.setForegroundScanPeriod(period.scanMillis, period.waitMillis);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                PluginLog.e(LOGTAG, "Scan period error: " + e + ".");
+            }
+        }, true);
+    }
+
+    /**
+     * Range regions that the plugin uses itself, under beacon service operation keys with the given prefix.
+     */
+    private void startRangingOwnRegions(final String keyPrefix, List<BeaconRegion> regions, final CallbackContext callbackContext) {
+        for (final BeaconRegion region : regions) {
+            this.beaconService.run(keyPrefix + beaconRegionHashMapKey(region), new BeaconServiceLifecycle.Operation() {
+                @Override
+                public void run() throws Exception {
+                    PluginLog.d(LOGTAG, "Start ranging region: " + region.getIdentifier() + ".");
+
+                    beaconSource.startRanging(region);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    PluginLog.e(LOGTAG, "Error during ranging: " + e + ".");
+
+                    callbackContext.error("Ranging remote exception.");
+                }
+            }, true);
+        }
+    }
+
+    /**
+     * Stop ranging regions started with startRangingOwnRegions.
+     */
+    private void stopRangingOwnRegions(String keyPrefix, List<BeaconRegion> regions) {
+        for (final BeaconRegion region : regions) {
+            if (!this.beaconService.remove(keyPrefix + beaconRegionHashMapKey(region))) {
+                this.beaconService.run(null, new BeaconServiceLifecycle.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        PluginLog.d(LOGTAG, "Stop ranging region: " + region.getIdentifier() + ".");
+
+                        beaconSource.stopRanging(region);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        PluginLog.e(LOGTAG, "Stopping ranging error: " + e + ".");
+                    }
+                }, false);
+            }
+        }
+    }
+
+    /**
+     * Make a JSON object with the event counters, registry sizes and event queue counters.
+     */
+    private JSONObject makeJSONStats() throws JSONException {
+        JSONObject json = this.stats.makeJSONStats();
+
+        JSONObject registries = new JSONObject();
+        registries.put("rangedRegions", this.rangingSessions.size());
+        registries.put("monitoredRegions", this.monitoringSessions.size());
+        registries.put("discoveredDevices", this.discoveredDevices.size());
+        registries.put("connections", this.deviceConnections.size());
+        registries.put("waitingConnections", this.deviceConnections.waitingCount());
+        registries.put("pendingEvents", this.pendingEvents.size());
+        json.put("registries", registries);
+
+        json.put("eventQueue", this.eventPipeline.makeJSONStats());
+
+        ScanScheduler scheduler = this.scanScheduler;
+        if (scheduler != null) {
+            json.put("scanScheduling", scheduler.makeJSONStats(SystemClock.elapsedRealtime()));
+        }
+
+        return json;
+    }
+
+    /**
+     * Start monitoring the given region.
+     */
+
+    private void startMonitoringForRegion(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject json = cordovaArgs.getJSONObject(0);
+        JSONObject options = cordovaArgs.optJSONObject(2);
+        final BeaconRegion region = createBeaconRegion(json, false);
+
+        // Check the region validity.
+        if (region != null) {
+            final MonitoringSession session = new MonitoringSession(region, callbackContext, options);
+
+            // Add callback and options to the registry, if the region is not actually monitored.
+            if (this.monitoringSessions.putIfAbsent(region, session) == null) {
+
+                // Send the transitions that arrived without a callback, before any new one.
+                // Transitions are sent on the event pipeline thread, and kept until then.
+                this.eventPipeline.postReliable(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Stopped or reset meanwhile, the transitions stay pending.
+                        if (monitoringSessions.get(region) != session) {
+                            return;
+                        }
+
+                        sendPendingEvents(monitoringKey(region), callbackContext);
+                        session.attach();
+                    }
+                });
+
+                // Create monitoring listener.
+                if (!this.isMonitoringListenerSet) {
+                    this.beaconSource.setMonitoringListener(new PluginMonitoringListener());
+                    this.isMonitoringListenerSet = true;
+                }
+
+                this.beaconService.run(monitoringKey(region), new BeaconServiceLifecycle.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        PluginLog.d(LOGTAG, "Start monitoring region: " + region.getIdentifier() + ".");
+
+                        beaconSource.startMonitoring(region);
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        PluginLog.e(LOGTAG, "Monitoring error: " + e + ".");
+
+                        callbackContext.error("Starting monitoring remote exception.");
+                    }
+                }, true);
+            }
+        } else {
+            callbackContext.error("Invalid UUID.");
+        }
+    }
+
+    /**
+     * Stop monitoring the region.
+     */
+    private void stopMonitoringForRegion(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject json = cordovaArgs.getJSONObject(0);
+        final BeaconRegion region = createBeaconRegion(json, false);
+
+        // Check the region validity.
+        if (region != null) {
+
+            // Remove monitoring callback from the registry.
+            MonitoringSession monitoringSession = this.monitoringSessions.remove(region);
+
+            // If monitoring callback does not exist call error callback.
+            if (monitoringSession == null) {
+                callbackContext.error("Region not monitored, can't stop.");
+            } else {
+                // Drop a transition waiting to be reported.
+                monitoringSession.close();
+                this.pendingEvents.discard(monitoringKey(region));
+
+                // Clear monitoring callback on JavaScript side.
+                PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+                result.setKeepCallback(false);
+                monitoringSession.getCallbackContext().sendPluginResult(result);
+
+                if (this.beaconService.remove(monitoringKey(region))) {
+                    // Monitoring was still waiting for the service.
+                    callbackContext.success();
+                } else {
+                    this.beaconService.run(null, new BeaconServiceLifecycle.Operation() {
+                        @Override
+                        public void run() throws Exception {
+                            PluginLog.d(LOGTAG, "Stop monitoring region: " + region.getIdentifier() + ".");
+
+                            // Stop monitoring.
+                            beaconSource.stopMonitoring(beaconRegionHashMapKey(region));
+
+                            // Send back success.
+                            callbackContext.success();
+                        }
+
+                        @Override
+                        public void onError(Exception e) {
+                            PluginLog.e(LOGTAG, "Stop monitoring error: " + e + ".");
+
+                            callbackContext.error("Stop monitoring remote exception.");
+                        }
+                    }, false);
+                }
+            }
+        } else {
+            callbackContext.error("Invalid UUID.");
+        }
+    }
+
+    /**
+     * Start discovering connectivity packets.
+     */
+    private void startDiscoveringDevices(final CallbackContext callbackContext) throws JSONException {
+        if (this.discoveringCallbackContext == null) {
+            this.discoveringCallbackContext = callbackContext;
+
+            // Create discovering listener.
+            if (!this.isDeviceDiscoveringListenerSet) {
+                this.beaconSource.setConfigurableDevicesListener(new PluginDiscoveringListener());
+                this.isDeviceDiscoveringListenerSet = true;
+            }
+
+            this.beaconService.run(DISCOVERY_KEY, new BeaconServiceLifecycle.Operation() {
+                @Override
+                public void run() throws Exception {
+                    PluginLog.d(LOGTAG, "startDiscovering");
+
+                    beaconSource.startConfigurableDevicesDiscovery();
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    PluginLog.e(LOGTAG, "Starting discovering error: " + e + ".");
+
+                    callbackContext.error("Start discovering remote exception.");
+                }
+            }, true);
+        }
+    }
+
+    /**
+     * Stop discovering for connectivity packets.
+     */
+    private void stopDiscoveringDevices(final CallbackContext callbackContext) throws JSONException {
+        // If discovering callback does not exist call error callback
+        if (this.discoveringCallbackContext == null) {
+            callbackContext.error("Devices not being discovered, can't stop discovery.");
+        } else {
+            // Clear discovering callback on JavaScript side.
+            PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+            result.setKeepCallback(false);
+            this.discoveringCallbackContext.sendPluginResult(result);
+            this.discoveringCallbackContext = null;
+
+            if (this.beaconService.remove(DISCOVERY_KEY)) {
+                // Discovery was still waiting for the service.
+                callbackContext.success();
+            } else {
+                this.beaconService.run(null, new BeaconServiceLifecycle.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        PluginLog.d(LOGTAG, "Stop discovering devices.");
+
+                        // Stop discovering.
+                        beaconSource.stopConfigurableDevicesDiscovery();
+
+                        // Send back success.
+                        callbackContext.success();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        PluginLog.e(LOGTAG, "Stop discovering error: " + e + ".");
+
+                        callbackContext.error("Stop discovering remote exception.");
+                    }
+                }, false);
+            }
+        }
+    }
+
+    /**
+     * Authenticate with Estimote Cloud.
+     */
+    private void setupAppIDAndAppToken(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        if (this.estimoteSDK == null) {
+            this.estimoteSDK = new EstimoteSDK();
+
+            PluginLog.d(LOGTAG, "Setting up connection with Estimote cloud.");
+            EstimoteSDK.initialize(this.cordova.getActivity(), cordovaArgs.getString(0), cordovaArgs.getString(1));
+
+            PluginResult r = new PluginResult(PluginResult.Status.OK);
+            callbackContext.sendPluginResult(r);
+        } else {
+            callbackContext.error("Already authenticated to Estimote cloud: " + EstimoteSDK.getAppId() + ".");
+        }
+    }
 
-                            @Override
-                            public void onFailure(DeviceConnectionException e) {
-                                Log.e(LOGTAG, "Major not changed to: " + newMajor.toString() + ".");
+    /**
+     * Find discovered device, from JSON.
+     * The optional maxAge property limits the search to devices seen in the last maxAge seconds,
+     * at most the time discovered devices are kept for.
+     * Devices connected in the last minutes are found even if discovery no longer sees them.
+     */
+    private ConfigurableDevice findDevice(JSONObject json) throws JSONException {
+        String macAddress = json.optString("macAddress", "");
+        ConfigurableDevice device;
 
-                                callbackContext.error("Could not change major.");
-                            }
-                        });
-            } else {
-                PluginResult r = new PluginResult(PluginResult.Status.OK);
-                callbackContext.sendPluginResult(r);
+        if (json.has("maxAge")) {
+            device = this.discoveredDevices.find(macAddress, (long) (json.optDouble("maxAge", 0) * 1000));
+        } else {
+            device = this.discoveredDevices.find(macAddress);
+        }
+
+        if (device == null) {
+            device = this.deviceConnections.findRecentDevice(macAddress);
+        }
+        return device;
+    }
+
+    /**
+     * Connect to a device. Several devices can be connected at once.
+     */
+    private void connectToDevice(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        PluginLog.d(LOGTAG, "Connecting to device.");
+
+        JSONObject json = cordovaArgs.getJSONObject(0);
+        final ConfigurableDevice device = findDevice(json);
+
+        if (device == null) {
+            callbackContext.error("Could not find device to connect to.");
+        } else {
+            this.deviceConnections.connect(device, new PluginDeviceConnectionCallback(callbackContext));
+        }
+    }
+
+    /**
+     * Disconnect from a device, or from all devices if no MAC address is given.
+     */
+    private void disconnectFromDevice(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        String macAddress = optMacAddress(cordovaArgs, 0);
+        PluginLog.d(LOGTAG, "disconnectFromDevice: " + (macAddress == null ? "all" : macAddress));
+
+        this.deviceConnections.disconnect(macAddress, new Runnable() {
+            @Override
+            public void run() {
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK));
             }
+        });
+    }
+
+    /**
+     * Set the connection limits, c/o Cordova.
+     */
+    private void configureConnections(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        JSONObject options = cordovaArgs.getJSONObject(0);
+
+        this.deviceConnections.configure(
+                options.optInt("maxConnections", DeviceConnectionManager.DEFAULT_MAX_CONNECTIONS),
+                (long) (options.optDouble("connectTimeout", DeviceConnectionManager.DEFAULT_CONNECT_TIMEOUT_MILLIS / 1000.0) * 1000),
+                (long) (options.optDouble("idleTimeout", DeviceConnectionManager.DEFAULT_IDLE_TIMEOUT_MILLIS / 1000.0) * 1000));
+
+        callbackContext.success();
+    }
+
+    /**
+     * Read an optional MAC address argument, returns null if it is missing.
+     */
+    private static String optMacAddress(CordovaArgs cordovaArgs, int index) throws JSONException {
+        if (cordovaArgs.isNull(index)) {
+            return null;
         }
+
+        String macAddress = cordovaArgs.getString(index);
+        return macAddress.length() == 0 ? null : macAddress;
+    }
+
+    /**
+     * Write Proximity UUID to connected beacon.
+     */
+    private void writeConnectedProximityUUID(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        String uuid = cordovaArgs.getString(0);
+        PluginLog.d(LOGTAG, "New UUID to be put: " + uuid + ".");
+
+        JSONObject settings = new JSONObject();
+        settings.put("proximityUUID", uuid);
+        writeConnectedSettings(optMacAddress(cordovaArgs, 1), settings, callbackContext);
+    }
+
+    /**
+     * Write Major to connected beacon.
+     */
+    private void writeConnectedMajor(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        String major = cordovaArgs.getString(0);
+        PluginLog.d(LOGTAG, "New major to be put: " + major + ".");
+
+        JSONObject settings = new JSONObject();
+        settings.put("major", major);
+        writeConnectedSettings(optMacAddress(cordovaArgs, 1), settings, callbackContext);
     }
 
     /**
      * Write Minor to connected beacon
      */
     private void writeConnectedMinor(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
-        if (this.connectedDevice != null && this.connectedDevice.getDeviceConnection().isConnected()) {
+        String minor = cordovaArgs.getString(0);
+        PluginLog.d(LOGTAG, "New minor to be put: " + minor + ".");
 
-            String minor = cordovaArgs.getString(0);
-            Log.d(LOGTAG, "New minor to be put: " + minor + ".");
-            final Integer newMinor = Integer.decode(minor);
+        JSONObject settings = new JSONObject();
+        settings.put("minor", minor);
+        writeConnectedSettings(optMacAddress(cordovaArgs, 1), settings, callbackContext);
+    }
 
-            final Integer[] currentMinor = new Integer[1];
+    /**
+     * Write several settings to connected beacon, c/o Cordova.
+     */
+    private void writeConnectedSettings(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        writeConnectedSettings(optMacAddress(cordovaArgs, 1), cordovaArgs.getJSONObject(0), callbackContext);
+    }
 
-            // Recover the current minor to be replaced by.
-            this.connectedDevice.getDeviceConnection().settings.beacon.minor().get(new SettingCallback<Integer>() {
-                @Override
-                public void onSuccess(Integer minor) {
-                    Log.d(LOGTAG, "Minor to be replaced: " + minor.toString() + ".");
-                    currentMinor[0] = minor;
-                }
+    /**
+     * Write the settings that differ from the current ones to connected beacon,
+     * and reply with the outcome of each setting. Without a MAC address, the
+     * most recently used connection is written to.
+     */
+    private void writeConnectedSettings(String macAddress, JSONObject settings, final CallbackContext callbackContext) {
+        final DeviceConnectionManager.ManagedConnection connection = this.deviceConnections.get(macAddress);
+        if (connection == null) {
+            callbackContext.error("Not connected to a device.");
+            return;
+        }
 
-                @Override
-                public void onFailure(DeviceConnectionException e) {
-                    Log.e(LOGTAG, "Could not recover current minor.");
+        SettingsTransaction transaction;
+        try {
+            transaction = SettingsTransaction.fromJSON(settings);
+        } catch (JSONException e) {
+            callbackContext.error("Invalid settings: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            callbackContext.error("Invalid settings: " + e.getMessage());
+            return;
+        }
 
-                    callbackContext.error("Could not recover minor.");
+        // Keep the connection from being closed as idle while writing.
+        connection.acquire();
+        transaction.run(connection.getDeviceConnection(), new SettingsTransaction.CompletionListener() {
+            @Override
+            public void onComplete(JSONObject results, int failures) {
+                connection.release();
+
+                if (failures == 0) {
+                    callbackContext.success(results);
+                } else {
+                    callbackContext.error(results);
                 }
-            });
+            }
+        });
+    }
 
-            // Do not write the same minor.
-            if (newMinor.equals(currentMinor[0])) {
-                this.connectedDevice.getDeviceConnection().settings.beacon.minor().set(newMinor,
-                        new SettingCallback<Integer>() {
-                            @Override
-                            public void onSuccess(Integer minor) {
-                                Log.d(LOGTAG, "Minor changed to: " + minor.toString() + ".");
-                            }
+    /**
+     * Start a provisioning job from a plan, c/o Cordova.
+     */
+    private void startProvisioning(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        ProvisioningJob job;
+        try {
+            job = ProvisioningJob.fromJSON(cordovaArgs.getJSONObject(0));
+        } catch (JSONException e) {
+            callbackContext.error("Invalid provisioning plan: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            callbackContext.error("Invalid provisioning plan: " + e.getMessage());
+            return;
+        }
 
-                            @Override
-                            public void onFailure(DeviceConnectionException e) {
-                                Log.e(LOGTAG, "Minor not changed to: " + newMinor.toString() + ".");
+        startProvisioningJob(job, callbackContext);
+    }
 
-                                callbackContext.error("Could not change minor.");
-                            }
-                        });
-            } else {
-                PluginResult r = new PluginResult(PluginResult.Status.OK);
-                callbackContext.sendPluginResult(r);
-            }
+    /**
+     * Resume a saved provisioning job, c/o Cordova.
+     */
+    private void resumeProvisioning(CordovaArgs cordovaArgs, final CallbackContext callbackContext) throws JSONException {
+        ProvisioningJob job;
+        try {
+            job = ProvisioningJob.restore(provisioningPreferences(), cordovaArgs.getString(0));
+        } catch (JSONException e) {
+            callbackContext.error("Could not read saved provisioning job: " + e.getMessage());
+            return;
+        }
+
+        if (job == null) {
+            callbackContext.error("No saved provisioning job to resume.");
+            return;
+        }
+
+        startProvisioningJob(job, callbackContext);
+    }
+
+    /**
+     * Run a provisioning job, progress is sent to the callback until the job finishes.
+     */
+    private synchronized void startProvisioningJob(ProvisioningJob job, final CallbackContext callbackContext) {
+        if (this.provisioningJob != null && this.provisioningJob.isActive()) {
+            callbackContext.error("A provisioning job is already running.");
+            return;
+        }
+
+        this.provisioningJob = job;
+        this.provisioningCallbackContext = callbackContext;
+
+        job.start(provisioningPreferences(), this.discoveredDevices, this.deviceConnections,
+                new ProvisioningJob.ProgressListener() {
+                    @Override
+                    public void onProgress(JSONObject progress, boolean finished) {
+                        PluginResult r = new PluginResult(PluginResult.Status.OK, progress);
+                        r.setKeepCallback(!finished);
+                        callbackContext.sendPluginResult(r);
+                    }
+                });
+    }
+
+    /**
+     * Stop the running provisioning job, c/o Cordova.
+     */
+    private void stopProvisioning(final CallbackContext callbackContext) {
+        if (!stopProvisioningJob()) {
+            callbackContext.error("No provisioning job running.");
+            return;
+        }
+
+        callbackContext.success();
+    }
+
+    /**
+     * Stop the running provisioning job and release its callback.
+     * Returns false if no job was running.
+     */
+    private synchronized boolean stopProvisioningJob() {
+        if (this.provisioningJob == null || !this.provisioningJob.isActive()) {
+            return false;
         }
+
+        this.provisioningJob.stop();
+
+        PluginResult result = new PluginResult(PluginResult.Status.NO_RESULT);
+        result.setKeepCallback(false);
+        this.provisioningCallbackContext.sendPluginResult(result);
+
+        this.provisioningJob = null;
+        this.provisioningCallbackContext = null;
+        return true;
+    }
+
+    private SharedPreferences provisioningPreferences() {
+        return cordova.getActivity().getSharedPreferences(ProvisioningJob.PREFERENCES_NAME, Context.MODE_PRIVATE);
     }
 
     /**
      * Listener for ranging events.
      */
     private class PluginRangingListener implements BeaconManager.BeaconRangingListener {
+        // Ranging results are handled on the event pipeline thread, so the encoder buffers can be reused.
+        private final BinaryRangingEncoder binaryEncoder = new BinaryRangingEncoder();
+
+        private final PluginLog.Sampler logSampler = new PluginLog.Sampler();
+
         @Override
-        public void onBeaconsDiscovered(BeaconRegion region, List<Beacon> beacons) {
+        public void onBeaconsDiscovered(final BeaconRegion region, final List<Beacon> beacons) {
             // Note that results are not delivered on UI thread.
 
-            Log.d(LOGTAG, "Discovered beacons: " + beacons.toString() + ".");
+            // Results arrive several times per second, only log a sample.
+            if (PluginLog.isLoggable(PluginLog.DEBUG) && this.logSampler.sample()) {
+                PluginLog.d(LOGTAG, "Discovered beacons: " + beacons + " (" + this.logSampler.takeSkipped() + " results not logged).");
+            }
+
+            TraceRecorder recorder = traceRecorder;
+            if (recorder != null) {
+                recorder.recordRanging(region, beacons);
+            }
+
+            ScanScheduler scheduler = scanScheduler;
+            if (scheduler != null) {
+                scheduler.observe(beacons, SystemClock.elapsedRealtime());
+            }
+
+            // Aggregate here rather than on the pipeline, which may drop frames.
+            PresenceAggregator aggregator = presenceAggregator;
+            if (aggregator != null) {
+                aggregator.record(beacons, System.currentTimeMillis());
+            }
+
+            // Zone regions only update the tracker, nothing is sent unless the zone changes.
+            if (ZoneTracker.isZoneRegion(region)) {
+                final ZoneTracker tracker = zoneTracker;
+                if (tracker != null) {
+                    eventPipeline.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            // Tracking may have been stopped or restarted meanwhile.
+                            if (tracker == zoneTracker) {
+                                tracker.update(beacons, SystemClock.elapsedRealtime());
+                            }
+                        }
+                    });
+                }
+                return;
+            }
+
+            // Positioning regions only update the estimator, which sends positions.
+            if (PositionEstimator.isPositionRegion(region)) {
+                final PositionEstimator estimator = positionEstimator;
+                if (estimator != null) {
+                    eventPipeline.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (estimator == positionEstimator) {
+                                estimator.update(beacons, SystemClock.elapsedRealtime());
+                            }
+                        }
+                    });
+                }
+                return;
+            }
+
+            final long receivedNanos = stats.rangingReceived(region, beacons.size());
+
+            // Serialize and send on the event pipeline, frames may be dropped under overload.
+            eventPipeline.post(new Runnable() {
+                @Override
+                public void run() {
+                    sendRangingInfo(region, beacons, receivedNanos);
+                }
+            });
+        }
 
+        private void sendRangingInfo(BeaconRegion region, List<Beacon> beacons, long receivedNanos) {
             try {
                 // Find region callback.
-                String key = beaconRegionHashMapKey(region);
-                CallbackContext rangingCallback = rangingCallbackContexts.get(key);
+                RangingSession rangingSession = rangingSessions.get(region);
 
-                if (rangingCallback == null) {
+                if (rangingSession == null) {
                     // No callback found.
-                    Log.e(LOGTAG, "No callback found for region: " + key + ".");
+                    PluginLog.e(LOGTAG, "No callback found for region: " + beaconRegionHashMapKey(region) + ".");
+                    stats.rangingMissingCallback(region);
                 } else {
-                    // Create JSON beacon info object.
-                    JSONObject json = makeJSONRangingInformation(region, beacons);
+                    // Serialization time includes smoothing and delta comparison.
+                    long serializationStart = System.nanoTime();
+                    PluginResult r;
+                    RangingDeltaTracker deltaTracker = rangingSession.getDeltaTracker();
+                    BeaconReadings readings = BeaconReadings.RAW;
+
+                    // Smooth readings before anything is compared or serialized.
+                    BeaconSmoother smoother = rangingSession.getSmoother();
+                    if (smoother != null) {
+                        smoother.update(beacons, SystemClock.elapsedRealtime());
+                        readings = smoother;
+                    }
 
-                    // Send result to JavaScript.
-                    PluginResult r = new PluginResult(PluginResult.Status.OK, json);
-                    r.setKeepCallback(true);
-                    rangingCallback.sendPluginResult(r);
+                    // Drop unwanted beacons before anything is built for them.
+                    RangingFilter filter = rangingSession.getFilter();
+                    if (filter != null) {
+                        beacons = filter.apply(beacons, readings);
+                    }
+
+                    // Keep the nearest beacons only.
+                    NearestSelector nearest = rangingSession.getNearest();
+                    if (nearest != null) {
+                        beacons = nearest.select(beacons, readings);
+                    }
+
+                    if (deltaTracker != null) {
+                        // Nothing to send if the region did not change.
+                        if (!deltaTracker.update(beacons, readings)) {
+                            return;
+                        }
+
+                        // Create JSON delta object.
+                        JSONObject json = makeJSONRangingDelta(region, deltaTracker, readings);
+                        r = new PluginResult(PluginResult.Status.OK, json);
+                    } else if (rangingSession.isBinary()) {
+                        // Create binary beacon info message.
+                        r = new PluginResult(PluginResult.Status.OK, this.binaryEncoder.encode(region, beacons, readings));
+                    } else {
+                        // Create JSON beacon info object.
+                        JSONObject json = makeJSONRangingInformation(region, beacons, readings);
+                        r = new PluginResult(PluginResult.Status.OK, json);
+                    }
+
+                    long serializationNanos = System.nanoTime() - serializationStart;
+
+                    // Queue result for the next batch, only full snapshots may replace each other.
+                    // A dispatcher stopped meanwhile refuses it, and it is sent on its own.
+                    RangingBatchDispatcher dispatcher = rangingBatchDispatcher;
+                    if (dispatcher == null || rangingSession.getDispatchId() == null
+                            || !dispatcher.add(rangingSession.getDispatchId(), r, deltaTracker == null)) {
+                        // Send result to JavaScript.
+                        r.setKeepCallback(true);
+                        rangingSession.getCallbackContext().sendPluginResult(r);
+                    }
+
+                    // Batched results count as sent when queued.
+                    stats.rangingSent(region, receivedNanos, serializationNanos);
                 }
             } catch (JSONException e) {
-                Log.e(LOGTAG, "JSON error: " + e + ".");
+                PluginLog.e(LOGTAG, "JSON error: " + e + ".");
             }
         }
     }
@@ -983,40 +1994,131 @@ public class EstimoteBeacons extends CordovaPlugin {
         @Override
         public void onEnteredRegion(BeaconRegion region, List<Beacon> beacons) {
             // Note that results are not delivered on UI thread.
-            Log.d(LOGTAG, "Entered region: " + region.getIdentifier() + ".");
+            PluginLog.d(LOGTAG, "Entered region: " + region.getIdentifier() + ".");
 
-            sendBeaconRegionInfo(region, "entered");
+            TraceRecorder recorder = traceRecorder;
+            if (recorder != null) {
+                recorder.recordMonitoring(region, true, beacons);
+            }
+
+            postBeaconRegionInfo(region, true, beacons.size());
         }
 
         @Override
         public void onExitedRegion(BeaconRegion region) {
             // Note that results are not delivered on UI thread.
-            Log.d(LOGTAG, "Exited region: " + region.getIdentifier() + ".");
+            PluginLog.d(LOGTAG, "Exited region: " + region.getIdentifier() + ".");
+
+            TraceRecorder recorder = traceRecorder;
+            if (recorder != null) {
+                recorder.recordMonitoring(region, false, null);
+            }
 
-            sendBeaconRegionInfo(region, "exited");
+            postBeaconRegionInfo(region, false, 0);
         }
 
-        private void sendBeaconRegionInfo(BeaconRegion region, String state) {
-            try {
-                // Find region callback.
-                String key = beaconRegionHashMapKey(region);
-                CallbackContext monitoringCallback = monitoringCallbackContexts.get(key);
+        private void postBeaconRegionInfo(BeaconRegion region, boolean entered, int beacons) {
+            String regionKey = beaconRegionHashMapKey(region);
+            long receivedNanos = stats.monitoringReceived(region, beacons);
 
-                if (monitoringCallback == null) {
-                    // No callback found.
-                    Log.e(LOGTAG, "No callback found for key: " + key + ".");
-                } else {
-                    // Create JSON region info object with the given state.
-                    JSONObject json = makeJSONMonitoringInformation(region, state);
+            // Debounced regions report the transition once it is stable.
+            MonitoringSession session = monitoringSessions.get(region);
+            if (session != null && session.getDebouncer() != null) {
+                session.getDebouncer().update(entered);
+                return;
+            }
 
-                    // Send result to JavaScript.
-                    PluginResult r = new PluginResult(PluginResult.Status.OK, json);
-                    r.setKeepCallback(true);
-                    monitoringCallback.sendPluginResult(r);
-                }
-            } catch (JSONException e) {
-                Log.e(LOGTAG, "JSON error: " + e + ".");
+            postMonitoringTransition(region, entered, regionKey, receivedNanos, null);
+        }
+    }
+
+    /**
+     * Send a monitoring transition on the event pipeline. If a session is
+     * given, the transition is only sent if the session is still registered.
+     */
+    private void postMonitoringTransition(final BeaconRegion region, boolean entered, final String regionKey,
+            final long receivedNanos, final MonitoringSession session) {
+        final String state = entered ? "entered" : "exited";
+
+        // Transitions are never dropped by the event pipeline.
+        eventPipeline.postReliable(new Runnable() {
+            @Override
+            public void run() {
+                sendBeaconRegionInfo(region, state, regionKey, receivedNanos, session);
+            }
+        });
+    }
+
+    private void sendBeaconRegionInfo(BeaconRegion region, String state, String regionKey, long receivedNanos,
+            MonitoringSession expectedSession) {
+        try {
+            // Find region callback.
+            MonitoringSession session = monitoringSessions.get(region);
+
+            // A debounced transition belongs to the session that debounced it.
+            if (session == null || !session.isAttached() || (expectedSession != null && session != expectedSession)) {
+                // No callback, keep the transition until the region is monitored again.
+                PluginLog.d(LOGTAG, "No callback found for key: " + regionKey + ", transition kept.");
+                stats.monitoringMissingCallback(region);
+
+                JSONObject json = makeJSONMonitoringInformation(region, state);
+                json.put("time", System.currentTimeMillis());
+                pendingEvents.add(monitoringKey(region), regionKey, "entered".equals(state), json);
+            } else {
+                // Create JSON region info object with the given state.
+                long serializationStart = System.nanoTime();
+                JSONObject json = makeJSONMonitoringInformation(region, state);
+                PluginResult r = new PluginResult(PluginResult.Status.OK, json);
+                long serializationNanos = System.nanoTime() - serializationStart;
+
+                // Send result to JavaScript.
+                r.setKeepCallback(true);
+                session.getCallbackContext().sendPluginResult(r);
+
+                stats.monitoringSent(region, receivedNanos, serializationNanos);
             }
+        } catch (JSONException e) {
+            PluginLog.e(LOGTAG, "JSON error: " + e + ".");
+        }
+    }
+
+    /**
+     * Send the pending events of a channel to the callback as one array, if there are any.
+     */
+    private void sendPendingEvents(String channel, CallbackContext callbackContext) {
+        JSONArray events = this.pendingEvents.take(channel);
+        if (events == null) {
+            return;
+        }
+
+        PluginLog.d(LOGTAG, "Sending " + events.length() + " pending events of " + channel + ".");
+
+        PluginResult r = new PluginResult(PluginResult.Status.OK, events);
+        r.setKeepCallback(true);
+        callbackContext.sendPluginResult(r);
+    }
+
+    /**
+     * Drop transitions waiting to be reported and clear the monitored regions.
+     */
+    private void closeMonitoringSessions() {
+        for (MonitoringSession session : this.monitoringSessions.values()) {
+            session.close();
+        }
+        this.monitoringSessions.clear();
+    }
+
+    private synchronized ScheduledExecutorService getMonitoringScheduler() {
+        if (this.monitoringScheduler == null) {
+            this.monitoringScheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        return this.monitoringScheduler;
+    }
+
+    private synchronized void stopMonitoringScheduler() {
+        if (this.monitoringScheduler != null) {
+            this.monitoringScheduler.shutdownNow();
+            this.monitoringScheduler = null;
         }
     }
 
@@ -1024,127 +2126,238 @@ public class EstimoteBeacons extends CordovaPlugin {
      * Listener for discovering events.
      */
     private class PluginDiscoveringListener implements BeaconManager.ConfigurableDevicesListener {
+        private final PluginLog.Sampler logSampler = new PluginLog.Sampler();
+
         @Override
-        public void onConfigurableDevicesFound(List<ConfigurableDevice> devices) {
+        public void onConfigurableDevicesFound(final List<ConfigurableDevice> devices) {
             // Note that results are not delivered on UI thread.
-            Log.d(LOGTAG, "Discovered configurable devices: " + devices.toString() + ".");
+            if (PluginLog.isLoggable(PluginLog.DEBUG) && this.logSampler.sample()) {
+                PluginLog.d(LOGTAG, "Discovered configurable devices: " + devices + " (" + this.logSampler.takeSkipped() + " results not logged).");
+            }
+
+            // Remember devices for connectToDevice.
+            discoveredDevices.update(devices);
+
+            final long receivedNanos = stats.discoveryReceived(devices.size());
+
+            // Serialize and send on the event pipeline, frames may be dropped under overload.
+            eventPipeline.post(new Runnable() {
+                @Override
+                public void run() {
+                    sendDeviceInfo(devices, receivedNanos);
+                }
+            });
+        }
 
+        private void sendDeviceInfo(List<ConfigurableDevice> devices, long receivedNanos) {
             try {
                 // Find region callback.
-                if (discoveringCallbackContext == null) {
+                CallbackContext callbackContext = discoveringCallbackContext;
+                if (callbackContext == null) {
                     // No callback found.
-                    Log.e(LOGTAG, "No callback found for discoverable devices.");
+                    PluginLog.e(LOGTAG, "No callback found for discoverable devices.");
+                    stats.discoveryMissingCallback();
                 } else {
                     // Create JSON device info object.
+                    long serializationStart = System.nanoTime();
                     JSONObject json = makeJSONDeviceInformation(devices);
+                    PluginResult r = new PluginResult(PluginResult.Status.OK, json);
+                    long serializationNanos = System.nanoTime() - serializationStart;
 
                     // Send result to JavaScript.
-                    PluginResult r = new PluginResult(PluginResult.Status.OK, json);
                     r.setKeepCallback(true);
-                    discoveringCallbackContext.sendPluginResult(r);
+                    callbackContext.sendPluginResult(r);
+
+                    stats.discoverySent(receivedNanos, serializationNanos);
                 }
             } catch (JSONException e) {
-                Log.e(LOGTAG, "JSON error: " + e + ".");
+                PluginLog.e(LOGTAG, "JSON error: " + e + ".");
             }
         }
     }
 
     /**
-     * Listener for device connection events.
+     * Listener for the outcome of a device connection request.
      */
-    private class PluginDeviceConnectionCallback implements DeviceConnectionCallback {
+    private class PluginDeviceConnectionCallback implements DeviceConnectionManager.ConnectCallback {
+        private final CallbackContext callback;
+
+        PluginDeviceConnectionCallback(CallbackContext callback) {
+            this.callback = callback;
+        }
+
         @Override
-        public void onConnected() {
-            CallbackContext callback = deviceConnectionCallback;
-
-            if (callback != null) {
-                try {
-                    JSONObject json = new JSONObject();
-
-                    json.put("batteryPercentage",
-                            connectedDevice.getDeviceConnection().settings.power.batteryPercentage());
-                    json.put("color", connectedDevice.getDeviceConnection().settings.deviceInfo.color());
-                    json.put("macAddress", connectedDevice.getDevice().macAddress);
-                    json.put("major", connectedDevice.getDeviceConnection().settings.beacon.major());
-                    json.put("minor", connectedDevice.getDeviceConnection().settings.beacon.minor());
-                    json.put("name", connectedDevice.getDeviceConnection().settings.deviceInfo.name());
-                    json.put("uuid", connectedDevice.getDeviceConnection().settings.beacon.proximityUUID());
-
-                    Settings settings = connectedDevice.getDeviceConnection().settings;
-                    JSONObject jsonSettings = new JSONObject();
-                    jsonSettings.put("advertisingIntervalMillis", settings.beacon.advertisingInterval());
-                    jsonSettings.put("batteryLevel", settings.power.batteryPercentage());
-                    jsonSettings.put("broadcastingPower", settings.beacon.transmitPower());
-                    jsonSettings.put("firmware", settings.deviceInfo.firmware());
-                    jsonSettings.put("hardware", settings.deviceInfo.hardware());
-
-                    // finish up response param
-                    json.put("settings", jsonSettings);
-
-                    // pass back to web
-                    PluginResult r = new PluginResult(PluginResult.Status.OK, json);
-                    callback.sendPluginResult(r);
-                } catch (JSONException e) {
-                    Log.e(LOGTAG, "JSON error: " + e + ".");
+        public void onConnected(DeviceConnectionManager.ManagedConnection connection) {
+            try {
+                Settings settings = connection.getDeviceConnection().settings;
+                JSONObject json = new JSONObject();
+
+                json.put("batteryPercentage", settings.power.batteryPercentage());
+                json.put("color", settings.deviceInfo.color());
+                json.put("macAddress", connection.getDevice().macAddress);
+                json.put("major", settings.beacon.major());
+                json.put("minor", settings.beacon.minor());
+                json.put("name", settings.deviceInfo.name());
+                json.put("uuid", settings.beacon.proximityUUID());
+
+                JSONObject jsonSettings = new JSONObject();
+                jsonSettings.put("advertisingIntervalMillis", settings.beacon.advertisingInterval());
+                jsonSettings.put("batteryLevel", settings.power.batteryPercentage());
+                jsonSettings.put("broadcastingPower", settings.beacon.transmitPower());
+                jsonSettings.put("firmware", settings.deviceInfo.firmware());
+                jsonSettings.put("hardware", settings.deviceInfo.hardware());
+
+                // finish up response param
+                json.put("settings", jsonSettings);
+
+                // pass back to web
+                PluginResult r = new PluginResult(PluginResult.Status.OK, json);
+                this.callback.sendPluginResult(r);
+            } catch (JSONException e) {
+                PluginLog.e(LOGTAG, "JSON error: " + e + ".");
 
-                    String msg = "Connection succeeded, could not marshall object: " + e.getMessage() + ".";
-                    callback.error(msg);
-                }
+                String msg = "Connection succeeded, could not marshall object: " + e.getMessage() + ".";
+                this.callback.error(msg);
             }
-            // Clean up.
-            deviceConnectionCallback = null;
         }
 
         @Override
-        public void onConnectionFailed(DeviceConnectionException e) {
-            CallbackContext callback = deviceConnectionCallback;
-
-            if (callback != null) {
-                // Pass back to JS.
-                callback.error(e.getMessage());
+        public void onConnectionFailed(String macAddress, String message, Exception cause) {
+            // Pass back to JS.
+            this.callback.error(message);
 
+            if (cause != null) {
                 // Print stacktrace to android logs.
                 StringWriter sw = new StringWriter();
                 PrintWriter pw = new PrintWriter(sw);
-                e.printStackTrace(pw);
-                Log.e(LOGTAG, sw.toString());
+                cause.printStackTrace(pw);
+                PluginLog.e(LOGTAG, sw.toString());
+            } else {
+                PluginLog.e(LOGTAG, "Connection to device " + macAddress + " failed: " + message);
             }
-            // Clean up.
-            deviceConnectionCallback = null;
         }
+    }
 
-        @Override
-        public void onDisconnected() {
-            CallbackContext callback = deviceDisconnectionCallback;
+    /**
+     * Callback and debouncing of a monitored region.
+     */
+    private class MonitoringSession {
+        private final CallbackContext callbackContext;
+        private final MonitoringDebouncer debouncer;
 
-            if (callback != null) {
-                PluginResult r = new PluginResult(PluginResult.Status.OK);
-                callback.sendPluginResult(r);
+        // Set on the event pipeline thread once the pending transitions are sent.
+        private boolean attached;
+
+        MonitoringSession(final BeaconRegion region, CallbackContext callbackContext, JSONObject options) {
+            this.callbackContext = callbackContext;
+
+            if (MonitoringDebouncer.isRequested(options)) {
+                final MonitoringSession session = this;
+                this.debouncer = MonitoringDebouncer.fromOptions(options, getMonitoringScheduler(), new MonitoringDebouncer.Listener() {
+                    @Override
+                    public void onTransition(boolean entered) {
+                        // Latency is counted from the time the transition became stable.
+                        postMonitoringTransition(region, entered, beaconRegionHashMapKey(region), System.nanoTime(), session);
+                    }
+
+                    @Override
+                    public void onSuppressed() {
+                        PluginLog.d(LOGTAG, "Suppressed transition of region: " + region.getIdentifier() + ".");
+                    }
+                });
+            } else {
+                this.debouncer = null;
+            }
+        }
+
+        CallbackContext getCallbackContext() {
+            return this.callbackContext;
+        }
+
+        MonitoringDebouncer getDebouncer() {
+            return this.debouncer;
+        }
+
+        void attach() {
+            this.attached = true;
+        }
+
+        boolean isAttached() {
+            return this.attached;
+        }
+
+        void close() {
+            if (this.debouncer != null) {
+                this.debouncer.close();
             }
-            // Clean up.
-            deviceDisconnectionCallback = null;
         }
     }
 
-    private class DeviceConnected {
-        private DeviceConnection deviceConnection;
-        private ConfigurableDevice device;
+    /**
+     * Callback and options of a ranged region.
+     */
+    private class RangingSession {
+        private final CallbackContext callbackContext;
+        private final String dispatchId;
+        private final boolean binary;
+        private final RangingDeltaTracker deltaTracker;
+        private final BeaconSmoother smoother;
+        private final RangingFilter filter;
+        private final NearestSelector nearest;
+
+        RangingSession(CallbackContext callbackContext, JSONObject options) throws JSONException {
+            this.callbackContext = callbackContext;
+            this.dispatchId = options == null ? null : options.optString("dispatchId", null);
+            this.binary = options != null && options.optBoolean("binary", false);
+
+            // The delta option is either true or an object with thresholds.
+            Object delta = options == null ? null : options.opt("delta");
+            if (delta instanceof JSONObject) {
+                JSONObject thresholds = (JSONObject) delta;
+                this.deltaTracker = new RangingDeltaTracker(
+                        thresholds.optInt("rssiThreshold", RangingDeltaTracker.DEFAULT_RSSI_THRESHOLD),
+                        thresholds.optDouble("accuracyThreshold", RangingDeltaTracker.DEFAULT_ACCURACY_THRESHOLD),
+                        thresholds.optInt("graceCycles", RangingDeltaTracker.DEFAULT_GRACE_CYCLES));
+            } else if (Boolean.TRUE.equals(delta)) {
+                this.deltaTracker = new RangingDeltaTracker(
+                        RangingDeltaTracker.DEFAULT_RSSI_THRESHOLD,
+                        RangingDeltaTracker.DEFAULT_ACCURACY_THRESHOLD,
+                        RangingDeltaTracker.DEFAULT_GRACE_CYCLES);
+            } else {
+                this.deltaTracker = null;
+            }
+
+            this.smoother = BeaconSmoother.fromOptions(options);
+            this.filter = RangingFilter.fromOptions(options);
+            this.nearest = NearestSelector.fromOptions(options, nearestRanking);
+        }
+
+        CallbackContext getCallbackContext() {
+            return this.callbackContext;
+        }
+
+        String getDispatchId() {
+            return this.dispatchId;
+        }
+
+        boolean isBinary() {
+            return this.binary;
+        }
 
-        DeviceConnected(DeviceConnection deviceConnection, ConfigurableDevice device) {
-            this.deviceConnection = deviceConnection;
-            this.device = device;
+        RangingDeltaTracker getDeltaTracker() {
+            return this.deltaTracker;
         }
 
-        DeviceConnection getDeviceConnection() {
-            return this.deviceConnection;
+        BeaconSmoother getSmoother() {
+            return this.smoother;
         }
 
-        void setDeviceConnection(DeviceConnection deviceConnection) {
-            this.deviceConnection = deviceConnection;
+        RangingFilter getFilter() {
+            return this.filter;
         }
 
-        ConfigurableDevice getDevice() {
-            return this.device;
+        NearestSelector getNearest() {
+            return this.nearest;
         }
     }
 }
@@ -0,0 +1,209 @@
+/*
+Event queue between the Estimote SDK listeners and the Cordova bridge,
+for the Android implementation of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+
+/**
+ * Single consumer queue that moves serialization and bridge calls off the
+ * SDK delivery thread. Droppable events (ranging and discovery frames) go
+ * to a bounded ring buffer where the oldest frame is dropped when it is
+ * full. Reliable events (monitoring transitions) are never dropped and are
+ * handled before pending frames.
+ */
+class EventPipeline {
+
+    private static final String LOGTAG = "EstimoteBeacons";
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final Object lock = new Object();
+
+    // Ring buffer of droppable events, guarded by lock.
+    private final Runnable[] ring;
+    private int head;
+    private int size;
+
+    // Events that must not be dropped, guarded by lock.
+    private final ArrayDeque<Runnable> reliable = new ArrayDeque<Runnable>();
+
+    // Counters, guarded by lock.
+    private long enqueued;
+    private long dropped;
+    private long processed;
+    private int maxDepth;
+
+    private Thread worker;
+    private boolean running;
+
+    EventPipeline(int capacity) {
+        this.ring = new Runnable[Math.max(1, capacity)];
+    }
+
+    /**
+     * Start the consumer thread.
+     */
+    void start() {
+        synchronized (this.lock) {
+            if (this.running) {
+                return;
+            }
+            this.running = true;
+        }
+
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "EstimoteBeaconsEvents");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Stop the consumer thread, pending events are discarded.
+     */
+    void stop() {
+        synchronized (this.lock) {
+            this.running = false;
+            clearLocked();
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Discard the pending droppable events. Reliable events still run.
+     */
+    void clearDroppable() {
+        synchronized (this.lock) {
+            clearRingLocked();
+        }
+    }
+
+    /**
+     * Queue an event that may be dropped under overload. Returns false if an older event was dropped.
+     */
+    boolean post(Runnable event) {
+        synchronized (this.lock) {
+            boolean dropping = this.size == this.ring.length;
+
+            if (dropping) {
+                // Overwrite the oldest frame.
+                this.ring[this.head] = event;
+                this.head = (this.head + 1) % this.ring.length;
+                this.dropped++;
+            } else {
+                this.ring[(this.head + this.size) % this.ring.length] = event;
+                this.size++;
+            }
+
+            this.enqueued++;
+            updateMaxDepthLocked();
+            this.lock.notifyAll();
+
+            return !dropping;
+        }
+    }
+
+    /**
+     * Queue an event that is never dropped.
+     */
+    void postReliable(Runnable event) {
+        synchronized (this.lock) {
+            this.reliable.add(event);
+            this.enqueued++;
+            updateMaxDepthLocked();
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Make a JSON object with the queue counters.
+     */
+    JSONObject makeJSONStats() throws JSONException {
+        JSONObject json = new JSONObject();
+
+        synchronized (this.lock) {
+            json.put("capacity", this.ring.length);
+            json.put("depth", this.size + this.reliable.size());
+            json.put("droppableDepth", this.size);
+            json.put("reliableDepth", this.reliable.size());
+            json.put("maxDepth", this.maxDepth);
+            json.put("enqueued", this.enqueued);
+            json.put("dropped", this.dropped);
+            json.put("processed", this.processed);
+        }
+
+        return json;
+    }
+
+    /**
+     * Consumer loop.
+     */
+    private void consume() {
+        while (true) {
+            Runnable event;
+
+            synchronized (this.lock) {
+                while (this.running && this.size == 0 && this.reliable.isEmpty()) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+
+                if (!this.running) {
+                    return;
+                }
+
+                // Monitoring transitions go first.
+                event = this.reliable.poll();
+                if (event == null) {
+                    event = this.ring[this.head];
+                    this.ring[this.head] = null;
+                    this.head = (this.head + 1) % this.ring.length;
+                    this.size--;
+                }
+            }
+
+            try {
+                event.run();
+            } catch (RuntimeException e) {
+                PluginLog.e(LOGTAG, "Event error: " + e + ".");
+            }
+
+            synchronized (this.lock) {
+                this.processed++;
+            }
+        }
+    }
+
+    private void updateMaxDepthLocked() {
+        int depth = this.size + this.reliable.size();
+        if (depth > this.maxDepth) {
+            this.maxDepth = depth;
+        }
+    }
+
+    private void clearLocked() {
+        clearRingLocked();
+        this.reliable.clear();
+    }
+
+    private void clearRingLocked() {
+        for (int i = 0; i < this.ring.length; i++) {
+            this.ring[i] = null;
+        }
+        this.head = 0;
+        this.size = 0;
+    }
+}
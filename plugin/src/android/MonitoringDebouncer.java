@@ -0,0 +1,158 @@
+/*
+Debouncing of monitoring transitions for the Android implementation of the
+Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import android.os.SystemClock;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds back the enter and exit transitions of a monitored region until
+ * they are stable. An entry is reported once the region has been inside for
+ * the minimum dwell time, an exit once it has been outside for the exit
+ * grace period, and no transition is reported sooner than the minimum
+ * interval after the previous one. A transition that is undone before it
+ * is due is never reported, so flaps at the region edge are suppressed.
+ */
+class MonitoringDebouncer {
+
+    /**
+     * Receives the transitions that pass.
+     */
+    interface Listener {
+        void onTransition(boolean entered);
+
+        /**
+         * Called when a transition waiting to be reported is undone.
+         */
+        void onSuppressed();
+    }
+
+    private static final int UNKNOWN = -1;
+    private static final int OUTSIDE = 0;
+    private static final int INSIDE = 1;
+
+    private final long minDwellMillis;
+    private final long exitGraceMillis;
+    private final long minIntervalMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Listener listener;
+
+    // Latest state from the SDK, and the last state reported.
+    private int state = UNKNOWN;
+    private long stateTime;
+    private int reported = UNKNOWN;
+    private long reportedTime = Long.MIN_VALUE / 2;
+
+    private ScheduledFuture<?> pending;
+
+    // Changes with every update, so that a check that was cancelled too late does nothing.
+    private int generation;
+
+    MonitoringDebouncer(long minDwellMillis, long exitGraceMillis, long minIntervalMillis,
+            ScheduledExecutorService scheduler, Listener listener) {
+        this.minDwellMillis = Math.max(0, minDwellMillis);
+        this.exitGraceMillis = Math.max(0, exitGraceMillis);
+        this.minIntervalMillis = Math.max(0, minIntervalMillis);
+        this.scheduler = scheduler;
+        this.listener = listener;
+    }
+
+    /**
+     * Returns true if the monitoring options ask for debouncing.
+     */
+    static boolean isRequested(JSONObject options) {
+        return options != null && (options.optLong("minDwellTime", 0) > 0
+                || options.optLong("exitGracePeriod", 0) > 0
+                || options.optLong("minTransitionInterval", 0) > 0);
+    }
+
+    /**
+     * Create a debouncer from the monitoring options.
+     */
+    static MonitoringDebouncer fromOptions(JSONObject options, ScheduledExecutorService scheduler, Listener listener) {
+        return new MonitoringDebouncer(
+                options.optLong("minDwellTime", 0),
+                options.optLong("exitGracePeriod", 0),
+                options.optLong("minTransitionInterval", 0),
+                scheduler, listener);
+    }
+
+    /**
+     * Feed a transition from the SDK.
+     */
+    synchronized void update(boolean inside) {
+        int newState = inside ? INSIDE : OUTSIDE;
+        if (newState == this.state) {
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        this.state = newState;
+        this.stateTime = now;
+        final int checkGeneration = ++this.generation;
+
+        if (this.pending != null) {
+            this.pending.cancel(false);
+            this.pending = null;
+
+            if (this.state == this.reported) {
+                this.listener.onSuppressed();
+                return;
+            }
+        }
+
+        if (this.state == this.reported) {
+            return;
+        }
+
+        long due = Math.max(this.stateTime + (inside ? this.minDwellMillis : this.exitGraceMillis),
+                this.reportedTime + this.minIntervalMillis);
+
+        if (due <= now) {
+            report(now);
+        } else {
+            this.pending = this.scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    onDue(checkGeneration);
+                }
+            }, due - now, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void onDue(int checkGeneration) {
+        if (checkGeneration != this.generation) {
+            return;
+        }
+        this.pending = null;
+
+        if (this.state != this.reported) {
+            report(SystemClock.elapsedRealtime());
+        }
+    }
+
+    private void report(long now) {
+        this.reported = this.state;
+        this.reportedTime = now;
+        this.listener.onTransition(this.state == INSIDE);
+    }
+
+    /**
+     * Drop the transition waiting to be reported, if any.
+     */
+    synchronized void close() {
+        this.generation++;
+        if (this.pending != null) {
+            this.pending.cancel(false);
+            this.pending = null;
+        }
+    }
+}
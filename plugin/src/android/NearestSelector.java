@@ -0,0 +1,279 @@
+/*
+Selection of the nearest beacons for the Android implementation of the
+Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the K nearest beacons of each ranging result, by accuracy or by
+ * RSSI, with a bounded max-heap so that the cost is O(n log K) and only K
+ * beacons are serialized.
+ *
+ * Selectors that rank across regions share the latest scores of all their
+ * regions, and a region only keeps the beacons that are among the K nearest
+ * of all these regions together.
+ *
+ * A selector belongs to one ranged region and is only used from the event
+ * pipeline thread, so its heap and result list are reused.
+ */
+class NearestSelector {
+
+    static final int BY_ACCURACY = 0;
+    static final int BY_RSSI = 1;
+
+    // Well below a meaningful difference in RSSI or accuracy for any major and minor.
+    private static final double TIE_BREAK_SCALE = 1e-13;
+    private static final double UNKNOWN_ACCURACY = 1e9;
+
+    private final int count;
+    private final int by;
+    private final Shared shared;
+
+    // Bounded max-heap on score, the worst kept beacon is on top.
+    private final Beacon[] heapBeacons;
+    private final double[] heapScores;
+    private int heapSize;
+
+    private double[] scores = new double[16];
+    private final List<Beacon> result = new ArrayList<Beacon>();
+
+    NearestSelector(int count, int by, Shared shared) {
+        this.count = Math.max(1, count);
+        this.by = by;
+        this.shared = shared;
+        this.heapBeacons = new Beacon[this.count];
+        this.heapScores = new double[this.count];
+    }
+
+    /**
+     * Create a selector from the nearest property of ranging options, or
+     * return null if there is none. Selectors with acrossRegions set use the
+     * given shared scores.
+     */
+    static NearestSelector fromOptions(JSONObject options, Shared shared) throws JSONException {
+        JSONObject json = options == null ? null : options.optJSONObject("nearest");
+        if (json == null) {
+            return null;
+        }
+
+        String by = json.optString("by", "accuracy");
+        if (!"accuracy".equals(by) && !"rssi".equals(by)) {
+            throw new JSONException("Invalid nearest ranking: " + by + ".");
+        }
+
+        return new NearestSelector(json.getInt("count"),
+                "rssi".equals(by) ? BY_RSSI : BY_ACCURACY,
+                json.optBoolean("acrossRegions", false) ? shared : null);
+    }
+
+    /**
+     * Lower is nearer. Beacons of unknown accuracy come last. Equal readings
+     * are told apart by major and minor, so that a tie at the K-th place
+     * does not let more than K beacons through across regions.
+     */
+    private double score(Beacon beacon, BeaconReadings readings) {
+        double tieBreak = ((long) beacon.getMajor() << 16 | beacon.getMinor()) * TIE_BREAK_SCALE;
+
+        if (this.by == BY_RSSI) {
+            return -readings.getRssi(beacon) + tieBreak;
+        }
+
+        double accuracy = readings.getAccuracy(beacon);
+        return (accuracy < 0 ? UNKNOWN_ACCURACY : accuracy) + tieBreak;
+    }
+
+    /**
+     * Returns the nearest beacons, nearest first, in a list reused by the next call.
+     */
+    List<Beacon> select(List<Beacon> beacons, BeaconReadings readings) {
+        int n = beacons.size();
+        if (this.scores.length < n) {
+            this.scores = new double[Math.max(n, this.scores.length * 2)];
+        }
+        for (int i = 0; i < n; i++) {
+            this.scores[i] = score(beacons.get(i), readings);
+        }
+
+        double threshold = Double.POSITIVE_INFINITY;
+        if (this.shared != null) {
+            threshold = this.shared.update(this, this.scores, n, this.count);
+        }
+
+        this.heapSize = 0;
+        for (int i = 0; i < n; i++) {
+            double score = this.scores[i];
+            if (score > threshold) {
+                continue;
+            }
+
+            if (this.heapSize < this.count) {
+                this.heapBeacons[this.heapSize] = beacons.get(i);
+                this.heapScores[this.heapSize] = score;
+                siftUp(this.heapSize++);
+            } else if (score < this.heapScores[0]) {
+                this.heapBeacons[0] = beacons.get(i);
+                this.heapScores[0] = score;
+                siftDown(0, this.heapSize);
+            }
+        }
+
+        // Pop the worst to the back until the heap is sorted nearest first.
+        for (int end = this.heapSize - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+
+        this.result.clear();
+        for (int i = 0; i < this.heapSize; i++) {
+            this.result.add(this.heapBeacons[i]);
+            this.heapBeacons[i] = null;
+        }
+
+        return this.result;
+    }
+
+    /**
+     * Forget the scores of this region in the shared ranking.
+     */
+    void close() {
+        if (this.shared != null) {
+            this.shared.remove(this);
+        }
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (this.heapScores[parent] >= this.heapScores[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int size) {
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+
+            if (left < size && this.heapScores[left] > this.heapScores[largest]) {
+                largest = left;
+            }
+            if (right < size && this.heapScores[right] > this.heapScores[largest]) {
+                largest = right;
+            }
+            if (largest == i) {
+                return;
+            }
+            swap(i, largest);
+            i = largest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Beacon beacon = this.heapBeacons[i];
+        this.heapBeacons[i] = this.heapBeacons[j];
+        this.heapBeacons[j] = beacon;
+
+        double score = this.heapScores[i];
+        this.heapScores[i] = this.heapScores[j];
+        this.heapScores[j] = score;
+    }
+
+    /**
+     * Latest scores of the regions ranked together.
+     */
+    static class Shared {
+        private final Map<NearestSelector, double[]> latest = new IdentityHashMap<NearestSelector, double[]>();
+        private double[] heap = new double[16];
+
+        /**
+         * Store the scores of a region and return the K-th lowest score of
+         * all regions, or infinity if there are fewer than K.
+         */
+        synchronized double update(NearestSelector owner, double[] scores, int n, int k) {
+            double[] copy = this.latest.get(owner);
+            if (copy == null || copy.length != n) {
+                copy = new double[n];
+                this.latest.put(owner, copy);
+            }
+            System.arraycopy(scores, 0, copy, 0, n);
+
+            if (this.heap.length < k) {
+                this.heap = new double[k];
+            }
+
+            int size = 0;
+            for (double[] regionScores : this.latest.values()) {
+                for (double score : regionScores) {
+                    if (size < k) {
+                        this.heap[size] = score;
+                        siftUp(this.heap, size++);
+                    } else if (score < this.heap[0]) {
+                        this.heap[0] = score;
+                        siftDown(this.heap, size);
+                    }
+                }
+            }
+
+            return size < k ? Double.POSITIVE_INFINITY : this.heap[0];
+        }
+
+        synchronized void remove(NearestSelector owner) {
+            this.latest.remove(owner);
+        }
+
+        synchronized void clear() {
+            this.latest.clear();
+        }
+
+        private static void siftUp(double[] heap, int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (heap[parent] >= heap[i]) {
+                    return;
+                }
+                double t = heap[i];
+                heap[i] = heap[parent];
+                heap[parent] = t;
+                i = parent;
+            }
+        }
+
+        private static void siftDown(double[] heap, int size) {
+            int i = 0;
+            while (true) {
+                int largest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+
+                if (left < size && heap[left] > heap[largest]) {
+                    largest = left;
+                }
+                if (right < size && heap[right] > heap[largest]) {
+                    largest = right;
+                }
+                if (largest == i) {
+                    return;
+                }
+                double t = heap[i];
+                heap[i] = heap[largest];
+                heap[largest] = t;
+                i = largest;
+            }
+        }
+    }
+}
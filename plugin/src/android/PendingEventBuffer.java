@@ -0,0 +1,290 @@
+/*
+Buffer of undelivered events for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps monitoring and zone transitions that arrive while no JavaScript
+ * callback is registered for them, for example while the WebView reloads,
+ * until a callback is registered again. Events are grouped by channel (one
+ * per monitored region, and one for zones) and by key (the region or zone
+ * the transition is about).
+ *
+ * A few events are kept in memory. Beyond that they are appended to a file
+ * in app storage, so a long backlog costs no memory, and events spilled to
+ * the file are still delivered if the process is restarted. The total is
+ * bounded, the oldest events are dropped first.
+ *
+ * When a channel is taken, opposite transitions of the same key that follow
+ * each other collapse: an exit right after an entry, or an entry right
+ * after an exit, cancel out, so only the net transitions are delivered.
+ */
+class PendingEventBuffer {
+
+    private static final String LOGTAG = "EstimoteBeacons";
+
+    static final int DEFAULT_MAX_EVENTS = 1000;
+    static final int DEFAULT_MEMORY_EVENTS = 64;
+
+    /**
+     * A buffered transition.
+     */
+    private static class Event {
+        final String channel;
+        final String key;
+        final boolean entered;
+        final JSONObject json;
+
+        Event(String channel, String key, boolean entered, JSONObject json) {
+            this.channel = channel;
+            this.key = key;
+            this.entered = entered;
+            this.json = json;
+        }
+
+        String toLine() throws JSONException {
+            JSONObject line = new JSONObject();
+            line.put("channel", this.channel);
+            line.put("key", this.key);
+            line.put("entered", this.entered);
+            line.put("event", this.json);
+            return line.toString();
+        }
+
+        static Event fromLine(String line) throws JSONException {
+            JSONObject json = new JSONObject(line);
+            return new Event(json.getString("channel"), json.getString("key"),
+                    json.getBoolean("entered"), json.getJSONObject("event"));
+        }
+    }
+
+    private final File file;
+    private final int maxEvents;
+    private final int memoryEvents;
+
+    // Guarded by this. Events in the file come before the events in memory.
+    private final List<Event> memory = new ArrayList<Event>();
+    private int fileCount = -1;
+
+    PendingEventBuffer(File file, int maxEvents, int memoryEvents) {
+        this.file = file;
+        this.maxEvents = Math.max(1, maxEvents);
+        this.memoryEvents = Math.max(1, Math.min(memoryEvents, this.maxEvents));
+    }
+
+    /**
+     * Buffer a transition.
+     */
+    synchronized void add(String channel, String key, boolean entered, JSONObject json) {
+        this.memory.add(new Event(channel, key, entered, json));
+
+        if (this.memory.size() >= this.memoryEvents) {
+            spill();
+        }
+    }
+
+    /**
+     * Remove the events of a channel and return them compacted, oldest
+     * first, or null if there are none.
+     */
+    synchronized JSONArray take(String channel) {
+        List<Event> events = new ArrayList<Event>();
+
+        if (fileCount() > 0) {
+            List<Event> kept = new ArrayList<Event>();
+            for (Event event : readFile()) {
+                if (channel.equals(event.channel)) {
+                    events.add(event);
+                } else {
+                    kept.add(event);
+                }
+            }
+            writeFile(kept, false);
+            this.fileCount = kept.size();
+        }
+
+        for (int i = 0; i < this.memory.size(); ) {
+            Event event = this.memory.get(i);
+            if (channel.equals(event.channel)) {
+                events.add(event);
+                this.memory.remove(i);
+            } else {
+                i++;
+            }
+        }
+
+        if (events.isEmpty()) {
+            return null;
+        }
+
+        JSONArray json = new JSONArray();
+        for (Event event : compact(events)) {
+            json.put(event.json);
+        }
+        return json;
+    }
+
+    /**
+     * Drop the events of a channel.
+     */
+    void discard(String channel) {
+        take(channel);
+    }
+
+    /**
+     * Number of buffered events.
+     */
+    synchronized int size() {
+        return fileCount() + this.memory.size();
+    }
+
+    /**
+     * Collapse opposite transitions of a key that follow each other.
+     */
+    private static List<Event> compact(List<Event> events) {
+        List<Event> result = new ArrayList<Event>();
+
+        for (Event event : events) {
+            int last = -1;
+            for (int i = result.size() - 1; i >= 0; i--) {
+                if (result.get(i).key.equals(event.key)) {
+                    last = i;
+                    break;
+                }
+            }
+
+            if (last >= 0 && result.get(last).entered != event.entered) {
+                result.remove(last);
+            } else {
+                result.add(event);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Append the events in memory to the file, and drop the oldest events above the maximum.
+     */
+    private void spill() {
+        int count = fileCount();
+        int excess = count + this.memory.size() - this.maxEvents;
+
+        if (excess > 0) {
+            List<Event> all = readFile();
+            all.addAll(this.memory);
+            all = all.subList(excess, all.size());
+            PluginLog.w(LOGTAG, "Pending event buffer full, dropped " + excess + " oldest events.");
+
+            if (writeFile(all, false)) {
+                this.fileCount = all.size();
+                this.memory.clear();
+            }
+        } else if (writeFile(this.memory, true)) {
+            this.fileCount = count + this.memory.size();
+            this.memory.clear();
+        }
+
+        // If the file cannot be written, keep the newest events in memory.
+        if (this.memory.size() > this.maxEvents) {
+            int drop = this.memory.size() - this.maxEvents;
+            this.memory.subList(0, drop).clear();
+            PluginLog.w(LOGTAG, "Pending event buffer full, dropped " + drop + " oldest events.");
+        }
+    }
+
+    /**
+     * Number of events in the file, counted on first use since the file may be left from a previous process.
+     */
+    private int fileCount() {
+        if (this.fileCount < 0) {
+            this.fileCount = this.file.exists() ? readFile().size() : 0;
+        }
+        return this.fileCount;
+    }
+
+    private List<Event> readFile() {
+        List<Event> events = new ArrayList<Event>();
+        if (!this.file.exists()) {
+            return events;
+        }
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    events.add(Event.fromLine(line));
+                } catch (JSONException e) {
+                    // A line cut short when the process died.
+                    PluginLog.w(LOGTAG, "Skipping pending event: " + e + ".");
+                }
+            }
+        } catch (IOException e) {
+            PluginLog.e(LOGTAG, "Pending events read error: " + e + ".");
+        } finally {
+            close(reader);
+        }
+        return events;
+    }
+
+    private boolean writeFile(List<Event> events, boolean append) {
+        if (events.isEmpty() && !append) {
+            return !this.file.exists() || this.file.delete();
+        }
+
+        File directory = this.file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            PluginLog.e(LOGTAG, "Could not create " + directory + ".");
+            return false;
+        }
+
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.file, append), "UTF-8"));
+            for (Event event : events) {
+                writer.write(event.toLine());
+                writer.write('\n');
+            }
+            writer.flush();
+            return true;
+        } catch (IOException e) {
+            PluginLog.e(LOGTAG, "Pending events write error: " + e + ".");
+        } catch (JSONException e) {
+            PluginLog.e(LOGTAG, "JSON error: " + e + ".");
+        } finally {
+            close(writer);
+        }
+        return false;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                PluginLog.e(LOGTAG, "Pending events close error: " + e + ".");
+            }
+        }
+    }
+}
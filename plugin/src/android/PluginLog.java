@@ -0,0 +1,183 @@
+/*
+Logging for the Android implementation of the Cordova plugin for
+Estimote Beacons.
+*/
+
+package com.evothings;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plugin-wide logging with a level set from JavaScript. Messages below the
+ * level are neither written to logcat nor kept; callers on hot paths check
+ * isLoggable() before building a message, and use a Sampler to log high-rate
+ * events at most once per sample interval. The last messages that passed
+ * the level are kept in a ring buffer that can be dumped on demand.
+ */
+final class PluginLog {
+
+    static final int VERBOSE = Log.VERBOSE;
+    static final int DEBUG = Log.DEBUG;
+    static final int INFO = Log.INFO;
+    static final int WARN = Log.WARN;
+    static final int ERROR = Log.ERROR;
+    static final int NONE = Log.ERROR + 1;
+
+    static final int DEFAULT_LEVEL = INFO;
+    static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = 10000;
+
+    private static final int BUFFER_SIZE = 256;
+
+    private static final String[] LEVEL_NAMES = { null, null, "verbose", "debug", "info", "warn", "error", "none" };
+
+    private static volatile int level = DEFAULT_LEVEL;
+    private static volatile long sampleIntervalMillis = DEFAULT_SAMPLE_INTERVAL_MILLIS;
+
+    // Ring buffer of recent messages, guarded by the class lock.
+    private static final long[] bufferTimes = new long[BUFFER_SIZE];
+    private static final int[] bufferLevels = new int[BUFFER_SIZE];
+    private static final String[] bufferMessages = new String[BUFFER_SIZE];
+    private static int bufferHead;
+    private static int bufferSize;
+
+    private PluginLog() {
+    }
+
+    /**
+     * Lets through one high-rate message per sample interval and counts the others.
+     */
+    static class Sampler {
+        private final AtomicLong nextTime = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+
+        /**
+         * Returns true if a message should be logged now.
+         */
+        boolean sample() {
+            long now = System.currentTimeMillis();
+            long next = this.nextTime.get();
+
+            if (now >= next && this.nextTime.compareAndSet(next, now + sampleIntervalMillis)) {
+                return true;
+            }
+
+            this.skipped.incrementAndGet();
+            return false;
+        }
+
+        /**
+         * Number of messages skipped since the last call.
+         */
+        long takeSkipped() {
+            return this.skipped.getAndSet(0);
+        }
+    }
+
+    static boolean isLoggable(int messageLevel) {
+        return messageLevel >= level;
+    }
+
+    static int getLevel() {
+        return level;
+    }
+
+    static void setLevel(int newLevel) {
+        level = Math.max(VERBOSE, Math.min(NONE, newLevel));
+    }
+
+    static void setSampleInterval(long millis) {
+        sampleIntervalMillis = Math.max(0, millis);
+    }
+
+    /**
+     * Level for a name such as "debug", or -1 if the name is unknown.
+     */
+    static int levelFromName(String name) {
+        for (int i = VERBOSE; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static String levelName(int messageLevel) {
+        return LEVEL_NAMES[messageLevel];
+    }
+
+    static void v(String tag, String message) {
+        log(VERBOSE, tag, message);
+    }
+
+    static void d(String tag, String message) {
+        log(DEBUG, tag, message);
+    }
+
+    static void i(String tag, String message) {
+        log(INFO, tag, message);
+    }
+
+    static void w(String tag, String message) {
+        log(WARN, tag, message);
+    }
+
+    static void e(String tag, String message) {
+        log(ERROR, tag, message);
+    }
+
+    private static void log(int messageLevel, String tag, String message) {
+        if (messageLevel < level) {
+            return;
+        }
+
+        Log.println(messageLevel, tag, message);
+
+        synchronized (PluginLog.class) {
+            int index = (bufferHead + bufferSize) % BUFFER_SIZE;
+            if (bufferSize == BUFFER_SIZE) {
+                bufferHead = (bufferHead + 1) % BUFFER_SIZE;
+            } else {
+                bufferSize++;
+            }
+
+            bufferTimes[index] = System.currentTimeMillis();
+            bufferLevels[index] = messageLevel;
+            bufferMessages[index] = message;
+        }
+    }
+
+    /**
+     * Make a JSON array of the buffered messages, oldest first, and optionally empty the buffer.
+     */
+    static JSONArray makeJSONBuffer(boolean clear) throws JSONException {
+        JSONArray json = new JSONArray();
+
+        synchronized (PluginLog.class) {
+            for (int i = 0; i < bufferSize; i++) {
+                int index = (bufferHead + i) % BUFFER_SIZE;
+
+                JSONObject entry = new JSONObject();
+                entry.put("time", bufferTimes[index]);
+                entry.put("level", levelName(bufferLevels[index]));
+                entry.put("message", bufferMessages[index]);
+                json.put(entry);
+            }
+
+            if (clear) {
+                for (int i = 0; i < BUFFER_SIZE; i++) {
+                    bufferMessages[i] = null;
+                }
+                bufferHead = 0;
+                bufferSize = 0;
+            }
+        }
+
+        return json;
+    }
+}
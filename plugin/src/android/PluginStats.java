@@ -0,0 +1,237 @@
+/*
+Runtime counters for the Android implementation of the Cordova plugin
+for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts SDK callbacks and their delivery to JavaScript, overall and per
+ * region, for ranging, monitoring and discovery. Counters are updated from
+ * the SDK and event pipeline threads without locks. Region counters are
+ * found by the packed region key, the string key is only made for JSON.
+ */
+class PluginStats {
+
+    /**
+     * Striped counter, threads add to their own cell and reads sum the cells.
+     * LongAdder does the same but needs API level 24.
+     */
+    static class Counter {
+        private static final int STRIPES = 8;
+
+        // Cells are spaced a cache line apart.
+        private static final int PADDING = 8;
+
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+        void add(long x) {
+            int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1));
+            this.cells.addAndGet(stripe * PADDING, x);
+        }
+
+        void increment() {
+            add(1);
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += this.cells.get(i * PADDING);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * Counters of one kind of event, overall or for one region.
+     */
+    static class EventStats {
+        // SDK callbacks and the beacons or devices they carried.
+        final Counter callbacks = new Counter();
+        final Counter items = new Counter();
+
+        // Results built and sent to JavaScript.
+        final Counter sent = new Counter();
+        final Counter serializationNanos = new Counter();
+        final AtomicLong maxSerializationNanos = new AtomicLong();
+        final Counter latencyNanos = new Counter();
+        final AtomicLong maxLatencyNanos = new AtomicLong();
+
+        // Events without a JavaScript callback to send them to.
+        final Counter missingCallback = new Counter();
+
+        void putJSON(JSONObject json, String itemsName) throws JSONException {
+            long callbacks = this.callbacks.sum();
+            long items = this.items.sum();
+            long sent = this.sent.sum();
+
+            json.put("callbacks", callbacks);
+            json.put(itemsName, items);
+            json.put(itemsName + "PerCallback", callbacks == 0 ? 0 : (double) items / callbacks);
+            json.put("sent", sent);
+            json.put("serializationTime", millis(sent == 0 ? 0 : this.serializationNanos.sum() / sent));
+            json.put("maxSerializationTime", millis(this.maxSerializationNanos.get()));
+            json.put("latency", millis(sent == 0 ? 0 : this.latencyNanos.sum() / sent));
+            json.put("maxLatency", millis(this.maxLatencyNanos.get()));
+            json.put("missingCallback", this.missingCallback.sum());
+        }
+    }
+
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Counters of one region, with the region to name them by.
+     */
+    static class RegionStats extends EventStats {
+        final BeaconRegion region;
+
+        RegionStats(BeaconRegion region) {
+            this.region = region;
+        }
+    }
+
+    private final EventStats ranging = new EventStats();
+    private final EventStats monitoring = new EventStats();
+    private final EventStats discovery = new EventStats();
+
+    private final RegionRegistry<RegionStats> rangingRegions = new RegionRegistry<RegionStats>();
+    private final RegionRegistry<RegionStats> monitoringRegions = new RegionRegistry<RegionStats>();
+
+    /**
+     * Count a ranging callback. Returns the time to pass to the other ranging methods.
+     */
+    long rangingReceived(BeaconRegion region, int beacons) {
+        received(this.ranging, region(this.rangingRegions, region), beacons);
+        return System.nanoTime();
+    }
+
+    void rangingSent(BeaconRegion region, long receivedNanos, long serializationNanos) {
+        sent(this.ranging, region(this.rangingRegions, region), receivedNanos, serializationNanos);
+    }
+
+    void rangingMissingCallback(BeaconRegion region) {
+        this.ranging.missingCallback.increment();
+        region(this.rangingRegions, region).missingCallback.increment();
+    }
+
+    /**
+     * Count a monitoring transition. Returns the time to pass to the other monitoring methods.
+     */
+    long monitoringReceived(BeaconRegion region, int beacons) {
+        received(this.monitoring, region(this.monitoringRegions, region), beacons);
+        return System.nanoTime();
+    }
+
+    void monitoringSent(BeaconRegion region, long receivedNanos, long serializationNanos) {
+        sent(this.monitoring, region(this.monitoringRegions, region), receivedNanos, serializationNanos);
+    }
+
+    void monitoringMissingCallback(BeaconRegion region) {
+        this.monitoring.missingCallback.increment();
+        region(this.monitoringRegions, region).missingCallback.increment();
+    }
+
+    /**
+     * Count a discovery callback. Returns the time to pass to the other discovery methods.
+     */
+    long discoveryReceived(int devices) {
+        received(this.discovery, null, devices);
+        return System.nanoTime();
+    }
+
+    void discoverySent(long receivedNanos, long serializationNanos) {
+        sent(this.discovery, null, receivedNanos, serializationNanos);
+    }
+
+    void discoveryMissingCallback() {
+        this.discovery.missingCallback.increment();
+    }
+
+    /**
+     * Make a JSON object with the counters. Times are in milliseconds.
+     */
+    JSONObject makeJSONStats() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("since", this.startTime);
+        json.put("ranging", makeJSONEventStats(this.ranging, this.rangingRegions, "beacons"));
+        json.put("monitoring", makeJSONEventStats(this.monitoring, this.monitoringRegions, "beacons"));
+        json.put("discovery", makeJSONEventStats(this.discovery, null, "devices"));
+        return json;
+    }
+
+    private static JSONObject makeJSONEventStats(EventStats stats, RegionRegistry<RegionStats> regions, String itemsName) throws JSONException {
+        JSONObject json = new JSONObject();
+        stats.putJSON(json, itemsName);
+
+        if (regions != null) {
+            JSONObject jsonRegions = new JSONObject();
+            for (RegionStats regionStats : regions.values()) {
+                JSONObject jsonRegion = new JSONObject();
+                regionStats.putJSON(jsonRegion, itemsName);
+                jsonRegions.put(EstimoteBeacons.beaconRegionHashMapKey(regionStats.region), jsonRegion);
+            }
+            json.put("regions", jsonRegions);
+        }
+
+        return json;
+    }
+
+    private static EventStats region(RegionRegistry<RegionStats> regions, BeaconRegion region) {
+        RegionStats stats = regions.get(region);
+        if (stats == null) {
+            RegionStats created = new RegionStats(region);
+            stats = regions.putIfAbsent(region, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    private static void received(EventStats overall, EventStats region, int items) {
+        overall.callbacks.increment();
+        overall.items.add(items);
+
+        if (region != null) {
+            region.callbacks.increment();
+            region.items.add(items);
+        }
+    }
+
+    private static void sent(EventStats overall, EventStats region, long receivedNanos, long serializationNanos) {
+        long latencyNanos = System.nanoTime() - receivedNanos;
+
+        record(overall, latencyNanos, serializationNanos);
+        if (region != null) {
+            record(region, latencyNanos, serializationNanos);
+        }
+    }
+
+    private static void record(EventStats stats, long latencyNanos, long serializationNanos) {
+        stats.sent.increment();
+        stats.serializationNanos.add(serializationNanos);
+        stats.latencyNanos.add(latencyNanos);
+        updateMax(stats.maxSerializationNanos, serializationNanos);
+        updateMax(stats.maxLatencyNanos, latencyNanos);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000.0;
+    }
+}
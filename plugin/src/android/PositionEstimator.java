@@ -0,0 +1,361 @@
+/*
+Indoor position estimation for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Estimates the position of the device from the distances to beacons of a
+ * floor map. The floor is the one with the most beacons in range. The
+ * position on that floor is the weighted least squares fit of the
+ * distances, found with a few Gauss-Newton steps from the weighted centroid.
+ * The error of a distance is taken proportional to the distance, so near
+ * beacons weigh more. The uncertainty is the square root of the trace of the
+ * covariance of the fit, scaled up when the residuals are larger than the
+ * assumed errors. An optional Kalman filter smooths successive estimates.
+ *
+ * The latest distance of each beacon is kept for a window, so beacons of
+ * several UUIDs (ranged as separate regions) are used together. All state
+ * is in arrays sized from the map and the 2x2 normal equations are solved
+ * in place, so a cycle does not allocate. The floor is chosen from per
+ * floor counts made in one pass over the map. Updates are made on the event
+ * pipeline thread.
+ */
+class PositionEstimator {
+
+    static final int DEFAULT_MIN_BEACONS = 3;
+    static final long DEFAULT_WINDOW_MILLIS = 2000;
+    static final double DEFAULT_MAX_ACCURACY = 30;
+    static final double DEFAULT_RANGE_NOISE = 0.3;
+    static final double DEFAULT_PROCESS_NOISE = 0.5;
+
+    // Identifier prefix of the regions ranged for positioning.
+    static final String REGION_PREFIX = "com.evothings.position:";
+
+    private static final double MIN_RANGE_SIGMA = 0.5;
+    private static final double MIN_DISTANCE = 0.1;
+    private static final double MIN_DETERMINANT = 1e-9;
+    private static final double CONVERGED = 1e-3;
+    private static final int MAX_ITERATIONS = 10;
+
+    /**
+     * Receives position estimates.
+     */
+    interface Listener {
+        void onPosition(double x, double y, int floor, double uncertainty, int beacons);
+    }
+
+    // Floor map.
+    private final double[] beaconX;
+    private final double[] beaconY;
+    private final int[] beaconFloor;
+    private final RegionRegistry<Integer> index;
+
+    // Distinct floors of the map, the floor index of each beacon, and per floor counts for selectFloor.
+    private final int[] floors;
+    private final int[] beaconFloorIndex;
+    private final int[] floorCount;
+    private final double[] floorNearest;
+    private final List<BeaconRegion> regions;
+    private final Listener listener;
+
+    private final int minBeacons;
+    private final long windowMillis;
+    private final double maxAccuracy;
+    private final double rangeNoise;
+    private final boolean kalman;
+    private final double processNoise;
+    private final BeaconSmoother smoother;
+
+    // Latest distance of each beacon and when it was measured.
+    private final double[] range;
+    private final long[] rangeTime;
+
+    // Beacons used by the current solve.
+    private final int[] used;
+
+    // Kalman state, the variance is the trace of the covariance.
+    private boolean hasState;
+    private int stateFloor;
+    private double stateX;
+    private double stateY;
+    private double stateVariance;
+    private long stateTime;
+
+    private PositionEstimator(double[] beaconX, double[] beaconY, int[] beaconFloor, RegionRegistry<Integer> index,
+            List<BeaconRegion> regions, JSONObject options, Listener listener) throws JSONException {
+        this.beaconX = beaconX;
+        this.beaconY = beaconY;
+        this.beaconFloor = beaconFloor;
+        this.index = index;
+        this.regions = regions;
+        this.listener = listener;
+
+        this.minBeacons = Math.max(3, options.optInt("minBeacons", DEFAULT_MIN_BEACONS));
+        this.windowMillis = Math.max(1, options.optLong("window", DEFAULT_WINDOW_MILLIS));
+        this.maxAccuracy = options.optDouble("maxAccuracy", DEFAULT_MAX_ACCURACY);
+        this.rangeNoise = Math.max(0.01, options.optDouble("rangeNoise", DEFAULT_RANGE_NOISE));
+        this.kalman = "kalman".equals(options.optString("filter", "none"));
+        this.processNoise = Math.max(0, options.optDouble("processNoise", DEFAULT_PROCESS_NOISE));
+        this.smoother = BeaconSmoother.fromOptions(options);
+
+        this.range = new double[beaconX.length];
+        this.rangeTime = new long[beaconX.length];
+        Arrays.fill(this.rangeTime, Long.MIN_VALUE / 2);
+        this.used = new int[beaconX.length];
+
+        // Floors in order of first appearance in the map.
+        int[] distinct = new int[beaconFloor.length];
+        int floorCount = 0;
+        this.beaconFloorIndex = new int[beaconFloor.length];
+        for (int i = 0; i < beaconFloor.length; i++) {
+            int f = 0;
+            while (f < floorCount && distinct[f] != beaconFloor[i]) {
+                f++;
+            }
+            if (f == floorCount) {
+                distinct[floorCount++] = beaconFloor[i];
+            }
+            this.beaconFloorIndex[i] = f;
+        }
+        this.floors = Arrays.copyOf(distinct, floorCount);
+        this.floorCount = new int[floorCount];
+        this.floorNearest = new double[floorCount];
+    }
+
+    /**
+     * Create an estimator from a floor map: an array of objects with the
+     * uuid, major and minor of a beacon, its x and y in meters, and an
+     * optional floor.
+     */
+    static PositionEstimator fromJSON(JSONArray map, JSONObject options, Listener listener) throws JSONException {
+        int n = map.length();
+        double[] beaconX = new double[n];
+        double[] beaconY = new double[n];
+        int[] beaconFloor = new int[n];
+        RegionRegistry<Integer> index = new RegionRegistry<Integer>();
+        LinkedHashMap<UUID, BeaconRegion> regions = new LinkedHashMap<UUID, BeaconRegion>();
+
+        for (int i = 0; i < n; i++) {
+            JSONObject beacon = map.getJSONObject(i);
+            String uuidString = beacon.getString("uuid");
+            if (!EstimoteBeacons.isValidUuid(uuidString)) {
+                throw new JSONException("Invalid UUID: " + uuidString + ".");
+            }
+
+            UUID uuid = UUID.fromString(uuidString);
+            beaconX[i] = beacon.getDouble("x");
+            beaconY[i] = beacon.getDouble("y");
+            beaconFloor[i] = beacon.optInt("floor", 0);
+
+            BeaconRegion key = new BeaconRegion(uuidString, uuid, beacon.getInt("major"), beacon.getInt("minor"));
+            if (index.putIfAbsent(key, i) != null) {
+                throw new JSONException("Duplicate beacon: " + key.getMajor() + ":" + key.getMinor() + ".");
+            }
+
+            if (!regions.containsKey(uuid)) {
+                regions.put(uuid, new BeaconRegion(REGION_PREFIX + uuid, uuid, null, null));
+            }
+        }
+
+        return new PositionEstimator(beaconX, beaconY, beaconFloor, index, new ArrayList<BeaconRegion>(regions.values()),
+                options == null ? new JSONObject() : options, listener);
+    }
+
+    /**
+     * Regions to range, one per UUID of the floor map.
+     */
+    List<BeaconRegion> getRegions() {
+        return this.regions;
+    }
+
+    static boolean isPositionRegion(BeaconRegion region) {
+        String identifier = region.getIdentifier();
+        return identifier != null && identifier.startsWith(REGION_PREFIX);
+    }
+
+    /**
+     * Feed a ranging result of one of the positioning regions and emit a position if one can be computed.
+     */
+    void update(List<Beacon> beacons, long now) {
+        BeaconReadings readings = BeaconReadings.RAW;
+        if (this.smoother != null) {
+            this.smoother.update(beacons, now);
+            readings = this.smoother;
+        }
+
+        for (int i = 0, n = beacons.size(); i < n; i++) {
+            Beacon beacon = beacons.get(i);
+            UUID uuid = beacon.getProximityUUID();
+            Integer mapIndex = this.index.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(),
+                    RegionRegistry.packMajorMinor(beacon.getMajor(), beacon.getMinor()));
+            if (mapIndex == null) {
+                continue;
+            }
+
+            double accuracy = readings.getAccuracy(beacon);
+            if (accuracy < 0 || accuracy > this.maxAccuracy) {
+                continue;
+            }
+
+            this.range[mapIndex] = Math.max(MIN_DISTANCE, accuracy);
+            this.rangeTime[mapIndex] = now;
+        }
+
+        solve(now);
+    }
+
+    private boolean isRecent(int i, long now) {
+        return now - this.rangeTime[i] <= this.windowMillis;
+    }
+
+    /**
+     * The floor with the most beacons in range, ties go to the floor of the nearest beacon.
+     */
+    private int selectFloor(long now) {
+        Arrays.fill(this.floorCount, 0);
+        Arrays.fill(this.floorNearest, Double.POSITIVE_INFINITY);
+
+        for (int i = 0; i < this.range.length; i++) {
+            if (isRecent(i, now)) {
+                int f = this.beaconFloorIndex[i];
+                this.floorCount[f]++;
+                this.floorNearest[f] = Math.min(this.floorNearest[f], this.range[i]);
+            }
+        }
+
+        int bestFloor = 0;
+        int bestCount = 0;
+        double bestRange = Double.POSITIVE_INFINITY;
+
+        for (int f = 0; f < this.floors.length; f++) {
+            int count = this.floorCount[f];
+            if (count > bestCount || (count > 0 && count == bestCount && this.floorNearest[f] < bestRange)) {
+                bestFloor = this.floors[f];
+                bestCount = count;
+                bestRange = this.floorNearest[f];
+            }
+        }
+
+        return bestFloor;
+    }
+
+    private void solve(long now) {
+        int floor = selectFloor(now);
+
+        int n = 0;
+        for (int i = 0; i < this.range.length; i++) {
+            if (this.beaconFloor[i] == floor && isRecent(i, now)) {
+                this.used[n++] = i;
+            }
+        }
+
+        if (n < this.minBeacons) {
+            return;
+        }
+
+        // Start from the centroid weighted by inverse squared distance.
+        double x = 0;
+        double y = 0;
+        double weights = 0;
+        for (int k = 0; k < n; k++) {
+            int i = this.used[k];
+            double w = 1 / (this.range[i] * this.range[i]);
+            x += w * this.beaconX[i];
+            y += w * this.beaconY[i];
+            weights += w;
+        }
+        x /= weights;
+        y /= weights;
+
+        // Normal equations J'WJ d = -J'Wr, kept for the covariance.
+        double h00 = 0;
+        double h01 = 0;
+        double h11 = 0;
+        double chiSquare = 0;
+
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            h00 = 0;
+            h01 = 0;
+            h11 = 0;
+            double g0 = 0;
+            double g1 = 0;
+            chiSquare = 0;
+
+            for (int k = 0; k < n; k++) {
+                int i = this.used[k];
+                double dx = x - this.beaconX[i];
+                double dy = y - this.beaconY[i];
+                double r = Math.max(1e-6, Math.sqrt(dx * dx + dy * dy));
+                double jx = dx / r;
+                double jy = dy / r;
+                double residual = r - this.range[i];
+                double sigma = Math.max(MIN_RANGE_SIGMA, this.rangeNoise * this.range[i]);
+                double w = 1 / (sigma * sigma);
+
+                h00 += w * jx * jx;
+                h01 += w * jx * jy;
+                h11 += w * jy * jy;
+                g0 += w * jx * residual;
+                g1 += w * jy * residual;
+                chiSquare += w * residual * residual;
+            }
+
+            double determinant = h00 * h11 - h01 * h01;
+            if (determinant < MIN_DETERMINANT) {
+                // Beacons in a line, the position is ambiguous.
+                return;
+            }
+
+            double stepX = -(h11 * g0 - h01 * g1) / determinant;
+            double stepY = -(h00 * g1 - h01 * g0) / determinant;
+            x += stepX;
+            y += stepY;
+
+            if (Math.abs(stepX) + Math.abs(stepY) < CONVERGED) {
+                break;
+            }
+        }
+
+        double determinant = h00 * h11 - h01 * h01;
+        double scale = n > 2 ? Math.max(1, chiSquare / (n - 2)) : 1;
+        double variance = scale * (h00 + h11) / determinant;
+
+        if (this.kalman) {
+            if (!this.hasState || this.stateFloor != floor) {
+                this.hasState = true;
+                this.stateFloor = floor;
+                this.stateX = x;
+                this.stateY = y;
+                this.stateVariance = variance;
+            } else {
+                double predicted = this.stateVariance + 2 * this.processNoise * (now - this.stateTime) / 1000.0;
+                double gain = predicted / (predicted + variance);
+                this.stateX += gain * (x - this.stateX);
+                this.stateY += gain * (y - this.stateY);
+                this.stateVariance = (1 - gain) * predicted;
+            }
+            this.stateTime = now;
+
+            x = this.stateX;
+            y = this.stateY;
+            variance = this.stateVariance;
+        }
+
+        this.listener.onPosition(x, y, floor, Math.sqrt(variance), n);
+    }
+}
@@ -0,0 +1,233 @@
+/*
+Presence analytics for the Android implementation of the Cordova plugin
+for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Aggregates the sightings of ranged beacons: first and last time seen,
+ * number of visits, total dwell time and a histogram of RSSI. A visit ends
+ * when a beacon is not seen for the visit gap, and its dwell time runs from
+ * the first to the last sighting of the visit.
+ *
+ * A beacon is reported once per scan cycle for each ranged region it is in,
+ * including the regions the plugin ranges itself. Sightings within the
+ * duplicate window of the counted one are taken as the same sighting and
+ * left out of the sighting count and the histogram.
+ *
+ * Beacons are stored in parallel primitive arrays indexed through an open
+ * addressing table on UUID, major and minor, so a sighting does not
+ * allocate. Once the table holds the maximum number of beacons, sightings
+ * of new beacons are only counted as dropped.
+ */
+class PresenceAggregator {
+
+    static final long DEFAULT_VISIT_GAP_MILLIS = 30000;
+    static final long DEFAULT_DUPLICATE_WINDOW_MILLIS = 250;
+    static final int DEFAULT_MAX_BEACONS = 1024;
+    static final int DEFAULT_MIN_RSSI = -100;
+    static final int DEFAULT_MAX_RSSI = -30;
+    static final int DEFAULT_BIN_WIDTH = 5;
+
+    private static final int FREE = -1;
+
+    private final long startTime = System.currentTimeMillis();
+
+    private final long visitGapMillis;
+    private final long duplicateWindowMillis;
+    private final int maxBeacons;
+    private final int minRssi;
+    private final int binWidth;
+    private final int bins;
+
+    // Slot to beacon index, or FREE.
+    private final int[] slots;
+
+    // Per beacon.
+    private final long[] keyMsb;
+    private final long[] keyLsb;
+    private final int[] keyMajorMinor;
+    private final long[] firstSeen;
+    private final long[] lastSeen;
+    private final long[] visitStart;
+    private final long[] closedDwell;
+    private final int[] visits;
+    private final long[] sightings;
+    private final long[] lastCounted;
+
+    // Histogram bins of beacon i are at i * bins.
+    private final int[] histogram;
+
+    private int size;
+    private long dropped;
+
+    PresenceAggregator(long visitGapMillis, long duplicateWindowMillis, int maxBeacons, int minRssi, int maxRssi,
+            int binWidth) {
+        this.visitGapMillis = Math.max(0, visitGapMillis);
+        this.duplicateWindowMillis = Math.max(0, duplicateWindowMillis);
+        this.maxBeacons = Math.max(1, maxBeacons);
+        this.minRssi = minRssi;
+        this.binWidth = Math.max(1, binWidth);
+        this.bins = Math.max(1, (maxRssi - minRssi + this.binWidth - 1) / this.binWidth);
+
+        int capacity = 8;
+        while (capacity < this.maxBeacons * 2) {
+            capacity <<= 1;
+        }
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, FREE);
+
+        this.keyMsb = new long[this.maxBeacons];
+        this.keyLsb = new long[this.maxBeacons];
+        this.keyMajorMinor = new int[this.maxBeacons];
+        this.firstSeen = new long[this.maxBeacons];
+        this.lastSeen = new long[this.maxBeacons];
+        this.visitStart = new long[this.maxBeacons];
+        this.closedDwell = new long[this.maxBeacons];
+        this.visits = new int[this.maxBeacons];
+        this.sightings = new long[this.maxBeacons];
+        this.lastCounted = new long[this.maxBeacons];
+        this.histogram = new int[this.maxBeacons * this.bins];
+    }
+
+    /**
+     * Create an aggregator from options, all properties are optional.
+     */
+    static PresenceAggregator fromOptions(JSONObject options) {
+        if (options == null) {
+            options = new JSONObject();
+        }
+
+        return new PresenceAggregator(
+                options.optLong("visitGap", DEFAULT_VISIT_GAP_MILLIS),
+                options.optLong("duplicateWindow", DEFAULT_DUPLICATE_WINDOW_MILLIS),
+                options.optInt("maxBeacons", DEFAULT_MAX_BEACONS),
+                options.optInt("minRssi", DEFAULT_MIN_RSSI),
+                options.optInt("maxRssi", DEFAULT_MAX_RSSI),
+                options.optInt("binWidth", DEFAULT_BIN_WIDTH));
+    }
+
+    /**
+     * Create an empty aggregator with the same settings.
+     */
+    PresenceAggregator emptyCopy() {
+        return new PresenceAggregator(this.visitGapMillis, this.duplicateWindowMillis, this.maxBeacons, this.minRssi,
+                this.minRssi + this.bins * this.binWidth, this.binWidth);
+    }
+
+    /**
+     * Record the beacons of a ranging result.
+     */
+    synchronized void record(List<Beacon> beacons, long now) {
+        for (int i = 0, n = beacons.size(); i < n; i++) {
+            Beacon beacon = beacons.get(i);
+            UUID uuid = beacon.getProximityUUID();
+            int index = indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(),
+                    RegionRegistry.packMajorMinor(beacon.getMajor(), beacon.getMinor()), now);
+            if (index < 0) {
+                this.dropped++;
+                continue;
+            }
+
+            if (now - this.lastSeen[index] > this.visitGapMillis) {
+                this.closedDwell[index] += this.lastSeen[index] - this.visitStart[index];
+                this.visitStart[index] = now;
+                this.visits[index]++;
+            }
+            this.lastSeen[index] = now;
+
+            // Seen already in this scan cycle, through another region.
+            if (this.sightings[index] > 0 && now - this.lastCounted[index] < this.duplicateWindowMillis) {
+                continue;
+            }
+            this.lastCounted[index] = now;
+            this.sightings[index]++;
+
+            int bin = (beacon.getRssi() - this.minRssi) / this.binWidth;
+            this.histogram[index * this.bins + Math.max(0, Math.min(this.bins - 1, bin))]++;
+        }
+    }
+
+    /**
+     * Index of the beacon, added if new, or -1 if the table is full.
+     */
+    private int indexOf(long msb, long lsb, int majorMinor, long now) {
+        int mask = this.slots.length - 1;
+        int slot = mix(msb, lsb, majorMinor) & mask;
+
+        while (this.slots[slot] != FREE) {
+            int index = this.slots[slot];
+            if (this.keyMsb[index] == msb && this.keyLsb[index] == lsb && this.keyMajorMinor[index] == majorMinor) {
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (this.size == this.maxBeacons) {
+            return -1;
+        }
+
+        int index = this.size++;
+        this.slots[slot] = index;
+        this.keyMsb[index] = msb;
+        this.keyLsb[index] = lsb;
+        this.keyMajorMinor[index] = majorMinor;
+        this.firstSeen[index] = now;
+        this.visitStart[index] = now;
+        this.lastSeen[index] = now;
+        this.visits[index] = 1;
+        return index;
+    }
+
+    private static int mix(long msb, long lsb, int majorMinor) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb * 0xC2B2AE3D27D4EB4FL ^ majorMinor * 0x165667B19E3779F9L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Make a JSON object with the aggregated beacons, in order of first sighting.
+     */
+    synchronized JSONObject makeJSONPresence() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("since", this.startTime);
+        json.put("visitGap", this.visitGapMillis);
+        json.put("minRssi", this.minRssi);
+        json.put("binWidth", this.binWidth);
+        json.put("dropped", this.dropped);
+
+        JSONArray beacons = new JSONArray();
+        for (int i = 0; i < this.size; i++) {
+            JSONObject beacon = new JSONObject();
+            beacon.put("proximityUUID", new UUID(this.keyMsb[i], this.keyLsb[i]).toString());
+            beacon.put("major", this.keyMajorMinor[i] >>> 16);
+            beacon.put("minor", this.keyMajorMinor[i] & 0xFFFF);
+            beacon.put("firstSeen", this.firstSeen[i]);
+            beacon.put("lastSeen", this.lastSeen[i]);
+            beacon.put("dwellTime", this.closedDwell[i] + this.lastSeen[i] - this.visitStart[i]);
+            beacon.put("visits", this.visits[i]);
+            beacon.put("sightings", this.sightings[i]);
+
+            JSONArray rssiHistogram = new JSONArray();
+            for (int b = 0; b < this.bins; b++) {
+                rssiHistogram.put(this.histogram[i * this.bins + b]);
+            }
+            beacon.put("rssiHistogram", rssiHistogram);
+
+            beacons.put(beacon);
+        }
+        json.put("beacons", beacons);
+
+        return json;
+    }
+}
@@ -0,0 +1,523 @@
+/*
+Fleet provisioning for the Android implementation of the Cordova plugin
+for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import com.estimote.coresdk.recognition.packets.ConfigurableDevice;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes target settings to a list of devices. Devices currently seen by
+ * discovery are connected to strongest signal first, with at most
+ * concurrency connections at a time. Failed devices are retried with
+ * exponential backoff. Progress is saved after every device, so that a job
+ * interrupted by the app being closed can be resumed.
+ */
+class ProvisioningJob {
+
+    private static final String LOGTAG = "EstimoteBeacons";
+
+    static final String PREFERENCES_NAME = "EstimoteBeaconsProvisioning";
+    private static final String KEY_PREFIX = "job.";
+
+    static final int DEFAULT_CONCURRENCY = 2;
+    static final int DEFAULT_MAX_ATTEMPTS = 5;
+    static final double DEFAULT_BACKOFF = 2;
+    static final double DEFAULT_MAX_BACKOFF = 60;
+
+    private static final long TICK_MILLIS = 1000;
+
+    static final String STATUS_PENDING = "pending";
+    static final String STATUS_RUNNING = "running";
+    static final String STATUS_DONE = "done";
+    static final String STATUS_FAILED = "failed";
+
+    /**
+     * Receives progress reports, the last one has finished set.
+     */
+    interface ProgressListener {
+        void onProgress(JSONObject progress, boolean finished);
+    }
+
+    private final String id;
+    private final List<Target> targets = new ArrayList<Target>();
+    private int concurrency;
+    private int maxAttempts;
+    private double backoff;
+    private double maxBackoff;
+
+    private SharedPreferences preferences;
+    private DeviceRegistry devices;
+    private DeviceConnectionManager connections;
+    private ProgressListener listener;
+    private ScheduledExecutorService scheduler;
+
+    // Guarded by this.
+    private boolean active;
+    private int running;
+    private long startTime;
+    private int finishedAtStart;
+
+    private ProvisioningJob(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Create a job from a plan object, or from the state saved by a previous run.
+     */
+    static ProvisioningJob fromJSON(JSONObject plan) throws JSONException {
+        ProvisioningJob job = new ProvisioningJob(plan.getString("id"));
+
+        job.concurrency = Math.max(1, plan.optInt("concurrency", DEFAULT_CONCURRENCY));
+        job.maxAttempts = Math.max(1, plan.optInt("maxAttempts", DEFAULT_MAX_ATTEMPTS));
+        job.backoff = Math.max(0, plan.optDouble("backoff", DEFAULT_BACKOFF));
+        job.maxBackoff = Math.max(job.backoff, plan.optDouble("maxBackoff", DEFAULT_MAX_BACKOFF));
+
+        JSONArray devices = plan.getJSONArray("devices");
+        for (int i = 0; i < devices.length(); i++) {
+            JSONObject json = devices.getJSONObject(i);
+            // Kept as written in the plan, lookups normalize it.
+            Target target = new Target(json.getString("macAddress"), json.getJSONObject("settings"));
+
+            // Reject bad settings now rather than on the device.
+            SettingsTransaction.fromJSON(target.settings);
+
+            String status = json.optString("status", STATUS_PENDING);
+            target.status = STATUS_RUNNING.equals(status) ? STATUS_PENDING : status;
+            target.attempts = json.optInt("attempts", 0);
+            target.error = json.optString("error", null);
+
+            job.targets.add(target);
+        }
+
+        if (job.targets.isEmpty()) {
+            throw new IllegalArgumentException("No devices to provision.");
+        }
+
+        return job;
+    }
+
+    /**
+     * Load the saved state of a job, returns null if there is none.
+     */
+    static ProvisioningJob restore(SharedPreferences preferences, String id) throws JSONException {
+        String saved = preferences.getString(KEY_PREFIX + id, null);
+        return saved == null ? null : fromJSON(new JSONObject(saved));
+    }
+
+    String getId() {
+        return this.id;
+    }
+
+    synchronized boolean isActive() {
+        return this.active;
+    }
+
+    /**
+     * Start or resume the job.
+     */
+    synchronized void start(SharedPreferences preferences, DeviceRegistry devices,
+            DeviceConnectionManager connections, ProgressListener listener) {
+        this.preferences = preferences;
+        this.devices = devices;
+        this.connections = connections;
+        this.listener = listener;
+
+        this.active = true;
+        this.running = 0;
+        this.startTime = SystemClock.elapsedRealtime();
+        this.finishedAtStart = count(STATUS_DONE) + count(STATUS_FAILED);
+        save();
+
+        PluginLog.d(LOGTAG, "Starting provisioning job " + this.id + ".");
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, 0, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the job. Its state stays saved, devices being written are
+     * released, disconnected unless held elsewhere, and retried on resume.
+     */
+    void stop() {
+        List<DeviceConnectionManager.ManagedConnection> cancelled = new ArrayList<DeviceConnectionManager.ManagedConnection>();
+
+        synchronized (this) {
+            if (!this.active) {
+                return;
+            }
+
+            PluginLog.d(LOGTAG, "Stopping provisioning job " + this.id + ".");
+
+            this.active = false;
+            this.scheduler.shutdownNow();
+
+            for (Target target : this.targets) {
+                if (STATUS_RUNNING.equals(target.status)) {
+                    target.status = STATUS_PENDING;
+                    if (target.connection != null) {
+                        cancelled.add(target.connection);
+                        target.connection = null;
+                    }
+                }
+            }
+            this.running = 0;
+            save();
+        }
+
+        // Attempts of the stopped job complete without effect. Connections
+        // that JavaScript or another job also holds stay open.
+        for (DeviceConnectionManager.ManagedConnection connection : cancelled) {
+            this.connections.removeReference(connection);
+        }
+    }
+
+    /**
+     * Start attempts on the pending devices that are in range, strongest signal first.
+     */
+    private void tick() {
+        List<Target> starting = new ArrayList<Target>();
+        JSONObject progress = null;
+
+        synchronized (this) {
+            if (!this.active) {
+                return;
+            }
+
+            // A resumed job may have nothing left to do.
+            if (this.running == 0 && count(STATUS_PENDING) == 0) {
+                finish();
+                try {
+                    progress = makeJSONProgress(null);
+                } catch (JSONException e) {
+                    PluginLog.e(LOGTAG, "JSON error: " + e + ".");
+                }
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            List<Target> ready = new ArrayList<Target>();
+
+            for (Target target : this.targets) {
+                if (STATUS_PENDING.equals(target.status) && target.nextAttemptTime <= now) {
+                    Integer rssi = this.devices.findRssi(target.macAddress);
+                    if (rssi != null) {
+                        target.rssi = rssi;
+                        ready.add(target);
+                    }
+                }
+            }
+
+            // The sort is stable, devices with the same signal keep plan order.
+            Collections.sort(ready, new Comparator<Target>() {
+                @Override
+                public int compare(Target a, Target b) {
+                    return b.rssi - a.rssi;
+                }
+            });
+
+            for (int i = 0; progress == null && i < ready.size() && this.running < this.concurrency; i++) {
+                Target target = ready.get(i);
+                target.status = STATUS_RUNNING;
+                this.running++;
+                starting.add(target);
+            }
+        }
+
+        if (progress != null) {
+            this.listener.onProgress(progress, true);
+        }
+
+        for (Target target : starting) {
+            attempt(target);
+        }
+    }
+
+    /**
+     * Connect to a device and write its settings.
+     */
+    private void attempt(final Target target) {
+        if (!isActive()) {
+            return;
+        }
+
+        ConfigurableDevice device = this.devices.find(target.macAddress);
+        if (device == null) {
+            complete(target, null, "Could not find device to connect to.");
+            return;
+        }
+
+        PluginLog.d(LOGTAG, "Provisioning device " + target.macAddress + ".");
+
+        DeviceConnectionManager.ManagedConnection reference = this.connections.addReference(device, new DeviceConnectionManager.ConnectCallback() {
+            @Override
+            public void onConnected(final DeviceConnectionManager.ManagedConnection connection) {
+                if (!isActive()) {
+                    // Stopped while connecting, the reference was given back by stop().
+                    return;
+                }
+
+                SettingsTransaction transaction;
+                try {
+                    transaction = SettingsTransaction.fromJSON(target.settings);
+                } catch (JSONException e) {
+                    releaseConnection(target);
+                    complete(target, null, "Invalid settings: " + e.getMessage());
+                    return;
+                }
+
+                connection.acquire();
+                transaction.run(connection.getDeviceConnection(), new SettingsTransaction.CompletionListener() {
+                    @Override
+                    public void onComplete(JSONObject results, int failures) {
+                        connection.release();
+
+                        if (!isActive()) {
+                            // Stopped meanwhile, the reference was given back by stop().
+                            return;
+                        }
+
+                        // Free the slot for the next device, unless someone else holds the connection.
+                        releaseConnection(target);
+
+                        complete(target, results, failures == 0 ? null : "Could not write settings.");
+                    }
+                });
+            }
+
+            @Override
+            public void onConnectionFailed(String macAddress, String message, Exception cause) {
+                releaseConnection(target);
+                complete(target, null, message);
+            }
+        });
+
+        synchronized (this) {
+            if (this.active && STATUS_RUNNING.equals(target.status) && target.connection == null) {
+                target.connection = reference;
+                return;
+            }
+        }
+
+        // Stopped, or failed already, while the connection was requested.
+        this.connections.removeReference(reference);
+    }
+
+    /**
+     * Give back the connection reference of an attempt, once.
+     */
+    private void releaseConnection(Target target) {
+        DeviceConnectionManager.ManagedConnection connection;
+
+        synchronized (this) {
+            connection = target.connection;
+            target.connection = null;
+        }
+
+        if (connection != null) {
+            this.connections.removeReference(connection);
+        }
+    }
+
+    /**
+     * Record the outcome of an attempt, a null error means success.
+     */
+    private void complete(Target target, JSONObject results, String error) {
+        JSONObject progress;
+        boolean finished;
+
+        synchronized (this) {
+            if (!this.active) {
+                // Stopped meanwhile, the saved state retries this device on resume.
+                return;
+            }
+
+            this.running--;
+            target.attempts++;
+            target.results = results;
+            target.error = error;
+
+            if (error == null) {
+                target.status = STATUS_DONE;
+            } else if (target.attempts >= this.maxAttempts) {
+                PluginLog.e(LOGTAG, "Provisioning device " + target.macAddress + " failed: " + error);
+                target.status = STATUS_FAILED;
+            } else {
+                target.status = STATUS_PENDING;
+                target.nextAttemptTime = SystemClock.elapsedRealtime() + backoffMillis(target.attempts);
+            }
+
+            finished = count(STATUS_PENDING) == 0 && count(STATUS_RUNNING) == 0;
+            if (finished) {
+                finish();
+            } else {
+                save();
+            }
+
+            try {
+                progress = makeJSONProgress(target);
+            } catch (JSONException e) {
+                PluginLog.e(LOGTAG, "JSON error: " + e + ".");
+                return;
+            }
+        }
+
+        this.listener.onProgress(progress, finished);
+    }
+
+    /**
+     * End the job, there is nothing left to resume. Called with the lock held.
+     */
+    private void finish() {
+        PluginLog.d(LOGTAG, "Provisioning job " + this.id + " finished.");
+
+        this.active = false;
+        this.scheduler.shutdownNow();
+        this.preferences.edit().remove(KEY_PREFIX + this.id).apply();
+    }
+
+    /**
+     * Delay before the next attempt, doubling with each attempt.
+     */
+    private long backoffMillis(int attempts) {
+        double delay = this.backoff * (1L << Math.min(attempts - 1, 20));
+        return (long) (Math.min(delay, this.maxBackoff) * 1000);
+    }
+
+    private int count(String status) {
+        int n = 0;
+        for (Target target : this.targets) {
+            if (status.equals(target.status)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Make a JSON progress object. Throughput is in devices per minute and
+     * the estimated time left in seconds, both for the current run. The
+     * device property describes the given device, if any.
+     */
+    private JSONObject makeJSONProgress(Target target) throws JSONException {
+        int done = count(STATUS_DONE);
+        int failed = count(STATUS_FAILED);
+        int left = this.targets.size() - done - failed;
+        double elapsed = (SystemClock.elapsedRealtime() - this.startTime) / 1000.0;
+        int handled = done + failed - this.finishedAtStart;
+
+        JSONObject json = new JSONObject();
+        json.put("id", this.id);
+        json.put("total", this.targets.size());
+        json.put("done", done);
+        json.put("failed", failed);
+        json.put("pending", left);
+        json.put("elapsed", elapsed);
+
+        if (handled > 0 && elapsed > 0) {
+            json.put("throughput", handled * 60 / elapsed);
+            json.put("eta", left * elapsed / handled);
+        } else {
+            json.put("throughput", 0);
+            json.put("eta", JSONObject.NULL);
+        }
+
+        if (target == null) {
+            return json;
+        }
+
+        JSONObject device = new JSONObject();
+        device.put("macAddress", target.macAddress);
+        device.put("status", target.status);
+        device.put("attempts", target.attempts);
+        if (target.error != null) {
+            device.put("error", target.error);
+        }
+        if (target.results != null) {
+            device.put("results", target.results);
+        }
+        json.put("device", device);
+
+        return json;
+    }
+
+    /**
+     * Save the job state to app storage. Called with the lock held.
+     */
+    private void save() {
+        try {
+            this.preferences.edit().putString(KEY_PREFIX + this.id, toJSON().toString()).apply();
+        } catch (JSONException e) {
+            PluginLog.e(LOGTAG, "JSON error: " + e + ".");
+        }
+    }
+
+    /**
+     * Make a JSON object with the plan and the status of every device, as read by fromJSON.
+     */
+    private JSONObject toJSON() throws JSONException {
+        JSONArray devices = new JSONArray();
+        for (Target target : this.targets) {
+            JSONObject json = new JSONObject();
+            json.put("macAddress", target.macAddress);
+            json.put("settings", target.settings);
+            json.put("status", target.status);
+            json.put("attempts", target.attempts);
+            if (target.error != null) {
+                json.put("error", target.error);
+            }
+            devices.put(json);
+        }
+
+        JSONObject plan = new JSONObject();
+        plan.put("id", this.id);
+        plan.put("concurrency", this.concurrency);
+        plan.put("maxAttempts", this.maxAttempts);
+        plan.put("backoff", this.backoff);
+        plan.put("maxBackoff", this.maxBackoff);
+        plan.put("devices", devices);
+        return plan;
+    }
+
+    /**
+     * A device and the settings to write to it.
+     */
+    private static class Target {
+        final String macAddress;
+        final JSONObject settings;
+        String status;
+        int attempts;
+        String error;
+        JSONObject results;
+        long nextAttemptTime;
+        int rssi;
+
+        // Connection reference of the running attempt.
+        DeviceConnectionManager.ManagedConnection connection;
+
+        Target(String macAddress, JSONObject settings) {
+            this.macAddress = macAddress;
+            this.settings = settings;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+Coalesced delivery of ranging results for the Android implementation
+of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers ranging results of all regions and sends them to JavaScript as one
+ * multipart message. The first part is an array of dispatch ids, followed by
+ * one result part per id. A batch is flushed when the flush interval has
+ * elapsed since its first result, or as soon as it holds maxBatchSize results.
+ *
+ * Full ranging snapshots replace the pending snapshot of the same region,
+ * incremental results (delta mode) are queued in order.
+ *
+ * Flushes from the timer and from add() may run at the same time. A batch
+ * is taken and sent under the send lock, so batches reach JavaScript in the
+ * order they were taken, and the final message of close() comes last.
+ */
+class RangingBatchDispatcher {
+
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    static final int DEFAULT_MAX_BATCH_SIZE = 32;
+
+    private final CallbackContext callbackContext;
+    private final long flushIntervalMillis;
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // Held while a batch is taken and sent, taken before this.
+    private final Object sendLock = new Object();
+
+    // Pending results, guarded by this.
+    private final List<String> pendingIds = new ArrayList<String>();
+    private final List<PluginResult> pendingResults = new ArrayList<PluginResult>();
+    private final List<Boolean> pendingReplaceable = new ArrayList<Boolean>();
+    private boolean flushScheduled;
+    private boolean closed;
+
+    RangingBatchDispatcher(CallbackContext callbackContext, long flushIntervalMillis, int maxBatchSize) {
+        this.callbackContext = callbackContext;
+        this.flushIntervalMillis = Math.max(0, flushIntervalMillis);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Queue a ranging result for the region with the given dispatch id.
+     * Returns false if the dispatcher is closed, the caller then sends the result itself.
+     */
+    boolean add(String dispatchId, PluginResult result, boolean replaceable) {
+        boolean flushNow;
+
+        synchronized (this) {
+            if (this.closed) {
+                return false;
+            }
+
+            int index = replaceable ? indexOfReplaceable(dispatchId) : -1;
+
+            if (index >= 0) {
+                this.pendingResults.set(index, result);
+            } else {
+                this.pendingIds.add(dispatchId);
+                this.pendingResults.add(result);
+                this.pendingReplaceable.add(replaceable);
+            }
+
+            flushNow = this.pendingIds.size() >= this.maxBatchSize;
+
+            if (!flushNow && !this.flushScheduled) {
+                this.flushScheduled = true;
+                this.scheduler.schedule(this.flushTask, this.flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (flushNow) {
+            flush();
+        }
+        return true;
+    }
+
+    /**
+     * Drop pending results of a region that is no longer ranged.
+     */
+    synchronized void remove(String dispatchId) {
+        for (int i = this.pendingIds.size() - 1; i >= 0; i--) {
+            if (this.pendingIds.get(i).equals(dispatchId)) {
+                this.pendingIds.remove(i);
+                this.pendingResults.remove(i);
+                this.pendingReplaceable.remove(i);
+            }
+        }
+    }
+
+    /**
+     * Send all pending results as one message.
+     */
+    void flush() {
+        synchronized (this.sendLock) {
+            List<PluginResult> parts;
+
+            synchronized (this) {
+                this.flushScheduled = false;
+
+                if (this.pendingIds.isEmpty()) {
+                    return;
+                }
+
+                parts = new ArrayList<PluginResult>(this.pendingResults.size() + 1);
+                parts.add(new PluginResult(PluginResult.Status.OK, new JSONArray(this.pendingIds)));
+                parts.addAll(this.pendingResults);
+
+                this.pendingIds.clear();
+                this.pendingResults.clear();
+                this.pendingReplaceable.clear();
+            }
+
+            PluginResult r = new PluginResult(PluginResult.Status.OK, parts);
+            r.setKeepCallback(true);
+            this.callbackContext.sendPluginResult(r);
+        }
+    }
+
+    /**
+     * Flush pending results and stop the flush timer. The JavaScript callback is released.
+     */
+    void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+
+        // A timer flush that already took a batch sends it before the final message.
+        synchronized (this.sendLock) {
+            flush();
+            this.scheduler.shutdown();
+
+            PluginResult r = new PluginResult(PluginResult.Status.NO_RESULT);
+            r.setKeepCallback(false);
+            this.callbackContext.sendPluginResult(r);
+        }
+    }
+
+    /**
+     * Stop the flush timer without sending anything, used when the WebView is gone.
+     */
+    void discard() {
+        synchronized (this) {
+            this.closed = true;
+        }
+
+        this.scheduler.shutdownNow();
+
+        synchronized (this) {
+            this.pendingIds.clear();
+            this.pendingResults.clear();
+            this.pendingReplaceable.clear();
+        }
+    }
+
+    private int indexOfReplaceable(String dispatchId) {
+        for (int i = 0; i < this.pendingIds.size(); i++) {
+            if (this.pendingReplaceable.get(i) && this.pendingIds.get(i).equals(dispatchId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+Delta computation of ranging results for the Android implementation
+of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.utils.Proximity;
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps the last reported snapshot of a ranged region and works out which
+ * beacons were added, removed or changed enough to be reported again.
+ * A beacon is changed when its RSSI or accuracy moved by at least the
+ * given threshold since it was last reported, or when its proximity changed.
+ * A beacon is removed once it is missing from more consecutive cycles than
+ * the grace cycles, so that a lost packet does not remove and add it again.
+ *
+ * Beacons are looked up by their packed UUID, major and minor through a
+ * reused probe key, so a cycle only allocates for new beacons.
+ *
+ * Instances are used from the ranging thread only and are not thread safe.
+ */
+class RangingDeltaTracker {
+
+    static final int DEFAULT_RSSI_THRESHOLD = 5;
+    static final double DEFAULT_ACCURACY_THRESHOLD = 0.5;
+    static final int DEFAULT_GRACE_CYCLES = 2;
+
+    private final int rssiThreshold;
+    private final double accuracyThreshold;
+    private final int graceCycles;
+
+    private final HashMap<Key, Entry> snapshot = new HashMap<Key, Entry>();
+    private final Key probe = new Key();
+    private int generation;
+
+    private final List<Beacon> added = new ArrayList<Beacon>();
+    private final List<Beacon> changed = new ArrayList<Beacon>();
+    private final List<Beacon> removed = new ArrayList<Beacon>();
+
+    RangingDeltaTracker(int rssiThreshold, double accuracyThreshold, int graceCycles) {
+        this.rssiThreshold = rssiThreshold;
+        this.accuracyThreshold = accuracyThreshold;
+        this.graceCycles = Math.max(0, graceCycles);
+    }
+
+    /**
+     * Compare the beacons with the snapshot and update it.
+     * Returns true if anything has to be reported.
+     */
+    boolean update(List<Beacon> beacons) {
+        return update(beacons, BeaconReadings.RAW);
+    }
+
+    /**
+     * Compare the beacons with the snapshot using the given readings, and update it.
+     * Returns true if anything has to be reported.
+     */
+    boolean update(List<Beacon> beacons, BeaconReadings readings) {
+        this.added.clear();
+        this.changed.clear();
+        this.removed.clear();
+        this.generation++;
+
+        for (int i = 0, n = beacons.size(); i < n; i++) {
+            Beacon b = beacons.get(i);
+            UUID uuid = b.getProximityUUID();
+            this.probe.set(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(),
+                    RegionRegistry.packMajorMinor(b.getMajor(), b.getMinor()));
+            Entry entry = this.snapshot.get(this.probe);
+
+            double rssi = readings.getRssi(b);
+            double accuracy = readings.getAccuracy(b);
+            Proximity proximity = readings.getProximity(b);
+
+            if (entry == null) {
+                this.snapshot.put(this.probe.copy(), new Entry(b, rssi, accuracy, proximity, this.generation));
+                this.added.add(b);
+            } else {
+                entry.generation = this.generation;
+
+                if (Math.abs(rssi - entry.rssi) >= this.rssiThreshold
+                        || Math.abs(accuracy - entry.accuracy) >= this.accuracyThreshold
+                        || proximity != entry.proximity) {
+                    // Only reported values become the new reference, so slow drifts are reported too.
+                    entry.beacon = b;
+                    entry.rssi = rssi;
+                    entry.accuracy = accuracy;
+                    entry.proximity = proximity;
+                    this.changed.add(b);
+                }
+            }
+        }
+
+        // Beacons missing for more than the grace cycles are gone.
+        Iterator<Entry> it = this.snapshot.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (this.generation - entry.generation > this.graceCycles) {
+                this.removed.add(entry.beacon);
+                it.remove();
+            }
+        }
+
+        return !this.added.isEmpty() || !this.changed.isEmpty() || !this.removed.isEmpty();
+    }
+
+    List<Beacon> getAdded() {
+        return this.added;
+    }
+
+    List<Beacon> getChanged() {
+        return this.changed;
+    }
+
+    List<Beacon> getRemoved() {
+        return this.removed;
+    }
+
+    /**
+     * Packed UUID, major and minor of a beacon.
+     */
+    private static final class Key {
+        long msb;
+        long lsb;
+        int majorMinor;
+
+        void set(long msb, long lsb, int majorMinor) {
+            this.msb = msb;
+            this.lsb = lsb;
+            this.majorMinor = majorMinor;
+        }
+
+        Key copy() {
+            Key key = new Key();
+            key.set(this.msb, this.lsb, this.majorMinor);
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.msb == other.msb && this.lsb == other.lsb && this.majorMinor == other.majorMinor;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = this.msb * 31 + this.lsb;
+            h = h * 31 + this.majorMinor;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * Last reported state of a beacon, and the cycle it was last seen in.
+     */
+    private static class Entry {
+        Beacon beacon;
+        double rssi;
+        double accuracy;
+        Proximity proximity;
+        int generation;
+
+        Entry(Beacon beacon, double rssi, double accuracy, Proximity proximity, int generation) {
+            this.beacon = beacon;
+            this.rssi = rssi;
+            this.accuracy = accuracy;
+            this.proximity = proximity;
+            this.generation = generation;
+        }
+    }
+}
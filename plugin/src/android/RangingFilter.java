@@ -0,0 +1,251 @@
+/*
+Native filtering of ranging results for the Android implementation of the
+Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.utils.Proximity;
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drops beacons from ranging results before they are serialized: beacons
+ * below an RSSI floor, beyond a maximum accuracy, in a proximity class that
+ * is not allowed, or not in the major/minor allow-list. Conditions that are
+ * not set let every beacon through.
+ *
+ * A filter belongs to one ranged region and is only used from the event
+ * pipeline thread, so the result list is reused.
+ */
+class RangingFilter {
+
+    private final boolean hasMinRssi;
+    private final double minRssi;
+    private final boolean hasMaxAccuracy;
+    private final double maxAccuracy;
+
+    // Bit per Proximity ordinal, or 0 for all classes.
+    private final int proximities;
+
+    // Allowed majors with any minor, and allowed major/minor pairs, or null for all beacons.
+    private final IntSet allowedMajors;
+    private final IntSet allowedPairs;
+
+    private final List<Beacon> result = new ArrayList<Beacon>();
+
+    RangingFilter(Double minRssi, Double maxAccuracy, int proximities, IntSet allowedMajors, IntSet allowedPairs) {
+        this.hasMinRssi = minRssi != null;
+        this.minRssi = minRssi == null ? 0 : minRssi;
+        this.hasMaxAccuracy = maxAccuracy != null;
+        this.maxAccuracy = maxAccuracy == null ? 0 : maxAccuracy;
+        this.proximities = proximities;
+        this.allowedMajors = allowedMajors;
+        this.allowedPairs = allowedPairs;
+    }
+
+    /**
+     * Create a filter from the filter property of ranging options, or return null if there is none.
+     */
+    static RangingFilter fromOptions(JSONObject options) throws JSONException {
+        JSONObject json = options == null ? null : options.optJSONObject("filter");
+        if (json == null) {
+            return null;
+        }
+
+        Double minRssi = json.has("minRssi") ? json.getDouble("minRssi") : null;
+        Double maxAccuracy = json.has("maxAccuracy") ? json.getDouble("maxAccuracy") : null;
+
+        int proximities = 0;
+        JSONArray jsonProximities = json.optJSONArray("proximities");
+        if (jsonProximities != null) {
+            for (int i = 0; i < jsonProximities.length(); i++) {
+                proximities |= 1 << proximityFromName(jsonProximities.getString(i)).ordinal();
+            }
+        }
+
+        IntSet allowedMajors = null;
+        IntSet allowedPairs = null;
+        JSONArray jsonAllow = json.optJSONArray("allow");
+        if (jsonAllow != null) {
+            allowedMajors = new IntSet(jsonAllow.length());
+            allowedPairs = new IntSet(jsonAllow.length());
+
+            for (int i = 0; i < jsonAllow.length(); i++) {
+                JSONObject entry = jsonAllow.getJSONObject(i);
+                int major = entry.getInt("major");
+
+                if (entry.has("minor")) {
+                    allowedPairs.add(pack(major, entry.getInt("minor")));
+                } else {
+                    allowedMajors.add(major);
+                }
+            }
+        }
+
+        return new RangingFilter(minRssi, maxAccuracy, proximities, allowedMajors, allowedPairs);
+    }
+
+    private static Proximity proximityFromName(String name) throws JSONException {
+        if ("immediate".equals(name)) {
+            return Proximity.IMMEDIATE;
+        } else if ("near".equals(name)) {
+            return Proximity.NEAR;
+        } else if ("far".equals(name)) {
+            return Proximity.FAR;
+        } else if ("unknown".equals(name)) {
+            return Proximity.UNKNOWN;
+        }
+        throw new JSONException("Invalid proximity: " + name + ".");
+    }
+
+    private static int pack(int major, int minor) {
+        return (major << 16) | (minor & 0xFFFF);
+    }
+
+    /**
+     * Returns true if the beacon passes the filter.
+     */
+    boolean accept(Beacon beacon, BeaconReadings readings) {
+        if (this.allowedPairs != null
+                && !this.allowedMajors.contains(beacon.getMajor())
+                && !this.allowedPairs.contains(pack(beacon.getMajor(), beacon.getMinor()))) {
+            return false;
+        }
+
+        if (this.hasMinRssi && readings.getRssi(beacon) < this.minRssi) {
+            return false;
+        }
+
+        if (this.hasMaxAccuracy) {
+            double accuracy = readings.getAccuracy(beacon);
+            if (accuracy < 0 || accuracy > this.maxAccuracy) {
+                return false;
+            }
+        }
+
+        if (this.proximities != 0 && (this.proximities & (1 << readings.getProximity(beacon).ordinal())) == 0) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the beacons that pass the filter. This is the given list if
+     * all of them pass, otherwise a list that is reused by the next call.
+     */
+    List<Beacon> apply(List<Beacon> beacons, BeaconReadings readings) {
+        int size = beacons.size();
+        int i = 0;
+        while (i < size && accept(beacons.get(i), readings)) {
+            i++;
+        }
+
+        if (i == size) {
+            return beacons;
+        }
+
+        this.result.clear();
+        for (int j = 0; j < i; j++) {
+            this.result.add(beacons.get(j));
+        }
+        for (int j = i + 1; j < size; j++) {
+            Beacon beacon = beacons.get(j);
+            if (accept(beacon, readings)) {
+                this.result.add(beacon);
+            }
+        }
+
+        return this.result;
+    }
+
+    /**
+     * Open addressing hash set of ints, without boxing.
+     */
+    static class IntSet {
+        private static final int FREE = Integer.MIN_VALUE;
+
+        private int[] slots;
+        private int size;
+        private boolean containsFree;
+
+        IntSet(int expectedSize) {
+            int capacity = 8;
+            while (capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            this.slots = newSlots(capacity);
+        }
+
+        void add(int value) {
+            if (value == FREE) {
+                this.containsFree = true;
+                return;
+            }
+
+            if ((this.size + 1) * 2 > this.slots.length) {
+                rehash(this.slots.length * 2);
+            }
+
+            int mask = this.slots.length - 1;
+            int i = mix(value) & mask;
+            while (this.slots[i] != FREE) {
+                if (this.slots[i] == value) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+
+            this.slots[i] = value;
+            this.size++;
+        }
+
+        boolean contains(int value) {
+            if (value == FREE) {
+                return this.containsFree;
+            }
+
+            int mask = this.slots.length - 1;
+            int i = mix(value) & mask;
+            while (this.slots[i] != FREE) {
+                if (this.slots[i] == value) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        private void rehash(int capacity) {
+            int[] old = this.slots;
+            this.slots = newSlots(capacity);
+            this.size = 0;
+
+            for (int value : old) {
+                if (value != FREE) {
+                    add(value);
+                }
+            }
+        }
+
+        private static int[] newSlots(int capacity) {
+            int[] slots = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                slots[i] = FREE;
+            }
+            return slots;
+        }
+
+        private static int mix(int value) {
+            int h = value * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+Registry of ranged and monitored regions for the Android implementation
+of the Cordova plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Maps regions to values using a packed primitive key: the two halves of
+ * the UUID and major/minor in one int. As with the string keys used before,
+ * a missing UUID, major or minor is stored as zero.
+ *
+ * The table is copy-on-write: lookups read an immutable snapshot without
+ * locking or allocating, updates are serialized and publish a new snapshot.
+ * Registrations change rarely compared to the rate of SDK callbacks.
+ */
+class RegionRegistry<V> {
+
+    private volatile Table table = new Table(8);
+
+    /**
+     * Pack major and minor in one int.
+     */
+    static int packMajorMinor(Integer major, Integer minor) {
+        return ((major == null ? 0 : major & 0xFFFF) << 16) | (minor == null ? 0 : minor & 0xFFFF);
+    }
+
+    /**
+     * Return the value registered for the region, or null.
+     */
+    V get(BeaconRegion region) {
+        UUID uuid = region.getProximityUUID();
+        return get(uuid == null ? 0L : uuid.getMostSignificantBits(),
+                uuid == null ? 0L : uuid.getLeastSignificantBits(),
+                packMajorMinor(region.getMajor(), region.getMinor()));
+    }
+
+    /**
+     * Return the value registered for the packed key, or null.
+     */
+    @SuppressWarnings("unchecked")
+    V get(long msb, long lsb, int majorMinor) {
+        Table t = this.table;
+        int index = t.indexOf(msb, lsb, majorMinor);
+        return index < 0 ? null : (V) t.values[index];
+    }
+
+    /**
+     * Register the value unless the region already has one. Returns the existing value, or null if added.
+     */
+    V putIfAbsent(BeaconRegion region, V value) {
+        UUID uuid = region.getProximityUUID();
+        long msb = uuid == null ? 0L : uuid.getMostSignificantBits();
+        long lsb = uuid == null ? 0L : uuid.getLeastSignificantBits();
+        int majorMinor = packMajorMinor(region.getMajor(), region.getMinor());
+
+        synchronized (this) {
+            V existing = get(msb, lsb, majorMinor);
+            if (existing != null) {
+                return existing;
+            }
+
+            Table current = this.table;
+            Table next = new Table(current.size + 1 > current.keysMsb.length / 2 ? current.keysMsb.length * 2 : current.keysMsb.length);
+            current.copyTo(next, -1);
+            next.insert(msb, lsb, majorMinor, value);
+            this.table = next;
+
+            return null;
+        }
+    }
+
+    /**
+     * Unregister the region. Returns the removed value, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    V remove(BeaconRegion region) {
+        UUID uuid = region.getProximityUUID();
+        long msb = uuid == null ? 0L : uuid.getMostSignificantBits();
+        long lsb = uuid == null ? 0L : uuid.getLeastSignificantBits();
+        int majorMinor = packMajorMinor(region.getMajor(), region.getMinor());
+
+        synchronized (this) {
+            Table current = this.table;
+            int index = current.indexOf(msb, lsb, majorMinor);
+            if (index < 0) {
+                return null;
+            }
+
+            Table next = new Table(current.keysMsb.length);
+            current.copyTo(next, index);
+            this.table = next;
+
+            return (V) current.values[index];
+        }
+    }
+
+    /**
+     * Unregister all regions.
+     */
+    synchronized void clear() {
+        this.table = new Table(8);
+    }
+
+    /**
+     * Number of registered regions.
+     */
+    int size() {
+        return this.table.size;
+    }
+
+    /**
+     * Snapshot of the registered values.
+     */
+    @SuppressWarnings("unchecked")
+    List<V> values() {
+        Table t = this.table;
+        List<V> result = new ArrayList<V>(t.size);
+        for (int i = 0; i < t.values.length; i++) {
+            if (t.used[i]) {
+                result.add((V) t.values[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Open addressing hash table with linear probing. Only mutated before it is published.
+     */
+    private static class Table {
+        final long[] keysMsb;
+        final long[] keysLsb;
+        final int[] keysMajorMinor;
+        final boolean[] used;
+        final Object[] values;
+        int size;
+
+        Table(int capacity) {
+            this.keysMsb = new long[capacity];
+            this.keysLsb = new long[capacity];
+            this.keysMajorMinor = new int[capacity];
+            this.used = new boolean[capacity];
+            this.values = new Object[capacity];
+        }
+
+        static int hash(long msb, long lsb, int majorMinor) {
+            long h = msb * 31 + lsb;
+            h = h * 31 + majorMinor;
+            int x = (int) (h ^ (h >>> 32));
+            return x ^ (x >>> 16);
+        }
+
+        int indexOf(long msb, long lsb, int majorMinor) {
+            int mask = this.keysMsb.length - 1;
+            int i = hash(msb, lsb, majorMinor) & mask;
+
+            while (this.used[i]) {
+                if (this.keysMsb[i] == msb && this.keysLsb[i] == lsb && this.keysMajorMinor[i] == majorMinor) {
+                    return i;
+                }
+                i = (i + 1) & mask;
+            }
+            return -1;
+        }
+
+        void insert(long msb, long lsb, int majorMinor, Object value) {
+            int mask = this.keysMsb.length - 1;
+            int i = hash(msb, lsb, majorMinor) & mask;
+
+            while (this.used[i]) {
+                i = (i + 1) & mask;
+            }
+
+            this.used[i] = true;
+            this.keysMsb[i] = msb;
+            this.keysLsb[i] = lsb;
+            this.keysMajorMinor[i] = majorMinor;
+            this.values[i] = value;
+            this.size++;
+        }
+
+        /**
+         * Insert all entries except the one at the skipped index into the other table.
+         */
+        void copyTo(Table other, int skip) {
+            for (int i = 0; i < this.values.length; i++) {
+                if (this.used[i] && i != skip) {
+                    other.insert(this.keysMsb[i], this.keysLsb[i], this.keysMajorMinor[i], this.values[i]);
+                }
+            }
+        }
+    }
+}
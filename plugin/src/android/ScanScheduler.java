@@ -0,0 +1,457 @@
+/*
+Adaptive scan scheduling for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Tunes the ranging scan period and wait time from what ranging observes.
+ * Ranging results of all regions are tracked per beacon, up to a maximum
+ * number of beacons, and at every evaluation interval a policy picks the
+ * next scan period from the beacons that appeared, disappeared or changed
+ * RSSI, and from whether the app is in the foreground.
+ *
+ * RSSI changes compare the mean RSSI of a beacon over an evaluation
+ * interval with its mean over the previous interval it was seen in, so
+ * that noise between single readings does not count as movement. A beacon
+ * seen again in the same scan cycle, through an overlapping region, is not
+ * sampled again.
+ *
+ * The time the radio would have scanned at the SDK default (scanning all
+ * the time) minus the time it scanned at the chosen periods is reported as
+ * the saved scan time.
+ *
+ * Beacons beyond the maximum are not tracked. Their sightings are counted
+ * as untracked, not as appeared beacons, so that a dense deployment does
+ * not keep the scan period at its most active.
+ */
+class ScanScheduler {
+
+    static final long DEFAULT_EVALUATION_INTERVAL_MILLIS = 5000;
+
+    // SDK default for ranging, continuous one second scans.
+    static final ScanPeriod SDK_DEFAULT = new ScanPeriod(1000, 0);
+
+    static final int DEFAULT_MAX_BEACONS = 1024;
+
+    // Longest time between two results of the same scan cycle for different regions.
+    private static final long SAME_CYCLE_MILLIS = 250;
+
+    private static final long FREE = 0;
+
+    /**
+     * Scan period and wait time in milliseconds.
+     */
+    static final class ScanPeriod {
+        final long scanMillis;
+        final long waitMillis;
+
+        ScanPeriod(long scanMillis, long waitMillis) {
+            this.scanMillis = Math.max(100, scanMillis);
+            this.waitMillis = Math.max(0, waitMillis);
+        }
+
+        double dutyCycle() {
+            return (double) this.scanMillis / (this.scanMillis + this.waitMillis);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ScanPeriod)) {
+                return false;
+            }
+            ScanPeriod other = (ScanPeriod) o;
+            return this.scanMillis == other.scanMillis && this.waitMillis == other.waitMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (this.scanMillis * 31 + this.waitMillis);
+        }
+    }
+
+    /**
+     * What ranging observed during an evaluation interval.
+     */
+    static final class Activity {
+        boolean foreground = true;
+        int beacons;
+        int appeared;
+        int disappeared;
+        int untracked;
+        double rssiChange;
+
+        boolean isForeground() {
+            return this.foreground;
+        }
+
+        /**
+         * Beacons seen during the interval.
+         */
+        int getBeacons() {
+            return this.beacons;
+        }
+
+        int getAppeared() {
+            return this.appeared;
+        }
+
+        int getDisappeared() {
+            return this.disappeared;
+        }
+
+        /**
+         * Sightings of beacons beyond the maximum number tracked, whose changes are not known.
+         */
+        int getUntracked() {
+            return this.untracked;
+        }
+
+        /**
+         * Mean absolute change in dB of the mean RSSI of a beacon from one
+         * evaluation interval to the next one it was seen in.
+         */
+        double getRssiChange() {
+            return this.rssiChange;
+        }
+    }
+
+    /**
+     * Chooses the next scan period.
+     */
+    interface Policy {
+        ScanPeriod choose(Activity activity, ScanPeriod current);
+    }
+
+    /**
+     * Receives the scan periods to apply.
+     */
+    interface Listener {
+        void onScanPeriod(ScanPeriod period);
+    }
+
+    /**
+     * Scans at the active period while beacons come, go or move, and doubles
+     * the wait time while nothing changes, up to a maximum. Without any
+     * beacon in range the wait time grows four times as fast. In the
+     * background, the wait time stays between larger bounds.
+     */
+    static class AdaptivePolicy implements Policy {
+        static final long DEFAULT_ACTIVE_SCAN_MILLIS = 1000;
+        static final long DEFAULT_ACTIVE_WAIT_MILLIS = 0;
+        static final long DEFAULT_MAX_WAIT_MILLIS = 10000;
+        static final long DEFAULT_BACKGROUND_MIN_WAIT_MILLIS = 2000;
+        static final long DEFAULT_BACKGROUND_MAX_WAIT_MILLIS = 30000;
+        // Above the change of a single noisy reading, which is about 3.4 dB for 3 dB of noise.
+        static final double DEFAULT_RSSI_THRESHOLD = 5;
+
+        private static final long FIRST_BACKOFF_MILLIS = 500;
+
+        private final long scanMillis;
+        private final long activeWaitMillis;
+        private final long maxWaitMillis;
+        private final long backgroundMinWaitMillis;
+        private final long backgroundMaxWaitMillis;
+        private final double rssiThreshold;
+
+        AdaptivePolicy(JSONObject options) {
+            this.scanMillis = options.optLong("scanPeriod", DEFAULT_ACTIVE_SCAN_MILLIS);
+            this.activeWaitMillis = Math.max(0, options.optLong("minWaitTime", DEFAULT_ACTIVE_WAIT_MILLIS));
+            this.maxWaitMillis = Math.max(this.activeWaitMillis, options.optLong("maxWaitTime", DEFAULT_MAX_WAIT_MILLIS));
+            this.backgroundMinWaitMillis = Math.max(0, options.optLong("backgroundMinWaitTime", DEFAULT_BACKGROUND_MIN_WAIT_MILLIS));
+            this.backgroundMaxWaitMillis = Math.max(this.backgroundMinWaitMillis,
+                    options.optLong("backgroundMaxWaitTime", DEFAULT_BACKGROUND_MAX_WAIT_MILLIS));
+            this.rssiThreshold = options.optDouble("rssiThreshold", DEFAULT_RSSI_THRESHOLD);
+        }
+
+        @Override
+        public ScanPeriod choose(Activity activity, ScanPeriod current) {
+            long minWait = activity.isForeground() ? this.activeWaitMillis : this.backgroundMinWaitMillis;
+            long maxWait = activity.isForeground() ? this.maxWaitMillis : this.backgroundMaxWaitMillis;
+
+            long wait;
+            if (activity.getAppeared() > 0 || activity.getDisappeared() > 0 || activity.getRssiChange() >= this.rssiThreshold) {
+                wait = minWait;
+            } else if (activity.getBeacons() == 0 && activity.getUntracked() == 0) {
+                wait = Math.max(current.waitMillis * 4, FIRST_BACKOFF_MILLIS);
+            } else {
+                wait = Math.max(current.waitMillis * 2, FIRST_BACKOFF_MILLIS);
+            }
+
+            return new ScanPeriod(this.scanMillis, Math.max(minWait, Math.min(maxWait, wait)));
+        }
+    }
+
+    /**
+     * Always the same scan period, for comparison with adaptive scheduling.
+     */
+    static class FixedPolicy implements Policy {
+        private final ScanPeriod period;
+
+        FixedPolicy(JSONObject options) {
+            this.period = new ScanPeriod(options.optLong("scanPeriod", SDK_DEFAULT.scanMillis),
+                    options.optLong("waitTime", SDK_DEFAULT.waitMillis));
+        }
+
+        @Override
+        public ScanPeriod choose(Activity activity, ScanPeriod current) {
+            return this.period;
+        }
+    }
+
+    /**
+     * Create the policy named by the policy option, adaptive by default.
+     */
+    static Policy policyFromOptions(JSONObject options) throws JSONException {
+        String name = options.optString("policy", "adaptive");
+        if ("adaptive".equals(name)) {
+            return new AdaptivePolicy(options);
+        } else if ("fixed".equals(name)) {
+            return new FixedPolicy(options);
+        }
+        throw new JSONException("Invalid scan policy: " + name + ".");
+    }
+
+    private final Policy policy;
+    private final Listener listener;
+    private final long evaluationIntervalMillis;
+
+    // Tracked beacons: hashed key, RSSI sum and count of the current interval,
+    // mean RSSI of the last interval seen in (NaN before) and time seen.
+    private final int maxTracked;
+    private final long[] keys;
+    private final long[] rssiSum;
+    private final int[] rssiCount;
+    private final double[] meanRssi;
+    private final long[] lastSeen;
+    private int tracked;
+    private long untrackedSightings;
+
+    // Counts of the current evaluation interval.
+    private final Activity activity = new Activity();
+    private int seenThisInterval;
+
+    private ScanPeriod current = SDK_DEFAULT;
+    private long lastEvaluation;
+
+    // Time accounting.
+    private long accountedUntil;
+    private long elapsedMillis;
+    private double scanMillis;
+    private long adjustments;
+
+    ScanScheduler(Policy policy, long evaluationIntervalMillis, int maxBeacons, Listener listener, long now) {
+        this.policy = policy;
+        this.evaluationIntervalMillis = Math.max(100, evaluationIntervalMillis);
+        this.listener = listener;
+
+        this.maxTracked = Math.max(1, maxBeacons);
+        int capacity = 8;
+        while (capacity < this.maxTracked * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.rssiSum = new long[capacity];
+        this.rssiCount = new int[capacity];
+        this.meanRssi = new double[capacity];
+        this.lastSeen = new long[capacity];
+
+        this.lastEvaluation = now;
+        this.accountedUntil = now;
+    }
+
+    /**
+     * Record a ranging result, and choose the next scan period if an evaluation is due.
+     */
+    synchronized void observe(List<Beacon> beacons, long now) {
+        long sameCycle = Math.min(SAME_CYCLE_MILLIS, (this.current.scanMillis + this.current.waitMillis) / 2);
+
+        for (int i = 0, n = beacons.size(); i < n; i++) {
+            Beacon beacon = beacons.get(i);
+            UUID uuid = beacon.getProximityUUID();
+            long key = mix(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(),
+                    RegionRegistry.packMajorMinor(beacon.getMajor(), beacon.getMinor()));
+
+            int slot = slotOf(key);
+            if (this.keys[slot] == key) {
+                if (now - this.lastSeen[slot] < sameCycle) {
+                    // Already sampled in this scan cycle, for another region.
+                    continue;
+                }
+                if (this.lastSeen[slot] < this.lastEvaluation) {
+                    this.seenThisInterval++;
+                }
+            } else if (this.tracked == this.maxTracked) {
+                this.activity.untracked++;
+                this.untrackedSightings++;
+                continue;
+            } else {
+                this.activity.appeared++;
+                this.seenThisInterval++;
+                this.keys[slot] = key;
+                this.meanRssi[slot] = Double.NaN;
+                this.tracked++;
+            }
+            this.rssiSum[slot] += beacon.getRssi();
+            this.rssiCount[slot]++;
+            this.lastSeen[slot] = now;
+        }
+
+        if (now - this.lastEvaluation >= this.evaluationIntervalMillis) {
+            evaluate(now);
+        }
+    }
+
+    /**
+     * Follow the app going to the background or coming back.
+     */
+    synchronized void setForeground(boolean foreground, long now) {
+        if (this.activity.foreground != foreground) {
+            this.activity.foreground = foreground;
+            evaluate(now);
+        }
+    }
+
+    private void evaluate(long now) {
+        // A beacon is gone once it missed two scans or two evaluations.
+        long absence = 2 * Math.max(this.evaluationIntervalMillis, this.current.scanMillis + this.current.waitMillis);
+        int disappeared = 0;
+        double rssiChangeSum = 0;
+        int rssiChangeCount = 0;
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot] == FREE) {
+                continue;
+            }
+            if (now - this.lastSeen[slot] > absence) {
+                disappeared++;
+            }
+
+            if (this.rssiCount[slot] > 0) {
+                double mean = (double) this.rssiSum[slot] / this.rssiCount[slot];
+                if (!Double.isNaN(this.meanRssi[slot])) {
+                    rssiChangeSum += Math.abs(mean - this.meanRssi[slot]);
+                    rssiChangeCount++;
+                }
+                this.meanRssi[slot] = mean;
+                this.rssiSum[slot] = 0;
+                this.rssiCount[slot] = 0;
+            }
+        }
+        if (disappeared > 0) {
+            rebuild(now, absence);
+        }
+
+        this.activity.beacons = this.seenThisInterval;
+        this.activity.disappeared = disappeared;
+        this.activity.rssiChange = rssiChangeCount == 0 ? 0 : rssiChangeSum / rssiChangeCount;
+
+        apply(this.policy.choose(this.activity, this.current), now);
+
+        this.lastEvaluation = now;
+        this.activity.appeared = 0;
+        this.activity.untracked = 0;
+        this.seenThisInterval = 0;
+    }
+
+    private void apply(ScanPeriod period, long now) {
+        account(now);
+
+        if (!period.equals(this.current)) {
+            this.current = period;
+            this.adjustments++;
+            this.listener.onScanPeriod(period);
+        }
+    }
+
+    private void account(long now) {
+        long elapsed = now - this.accountedUntil;
+        if (elapsed > 0) {
+            this.elapsedMillis += elapsed;
+            this.scanMillis += elapsed * this.current.dutyCycle();
+            this.accountedUntil = now;
+        }
+    }
+
+    /**
+     * Go back to the SDK default scan period.
+     */
+    synchronized void close(long now) {
+        apply(SDK_DEFAULT, now);
+    }
+
+    /**
+     * Make a JSON object with the current period and the scan time saved. Times are in milliseconds.
+     */
+    synchronized JSONObject makeJSONStats(long now) throws JSONException {
+        account(now);
+
+        JSONObject json = new JSONObject();
+        json.put("scanPeriod", this.current.scanMillis);
+        json.put("waitTime", this.current.waitMillis);
+        json.put("foreground", this.activity.foreground);
+        json.put("trackedBeacons", this.tracked);
+        json.put("untrackedSightings", this.untrackedSightings);
+        json.put("adjustments", this.adjustments);
+        json.put("elapsedTime", this.elapsedMillis);
+        json.put("scanTime", Math.round(this.scanMillis));
+        json.put("savedScanTime", Math.round(this.elapsedMillis - this.scanMillis));
+        json.put("savedRatio", this.elapsedMillis == 0 ? 0 : 1 - this.scanMillis / this.elapsedMillis);
+        return json;
+    }
+
+    /**
+     * Slot of the key, or the free slot where it would go.
+     */
+    private int slotOf(long key) {
+        int mask = this.keys.length - 1;
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (this.keys[slot] != FREE && this.keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Drop the beacons not seen for the absence time. Rehashes the table,
+     * since open addressing cannot just clear a slot.
+     */
+    private void rebuild(long now, long absence) {
+        long[] oldKeys = Arrays.copyOf(this.keys, this.keys.length);
+        long[] oldRssiSum = Arrays.copyOf(this.rssiSum, this.rssiSum.length);
+        int[] oldRssiCount = Arrays.copyOf(this.rssiCount, this.rssiCount.length);
+        double[] oldMeanRssi = Arrays.copyOf(this.meanRssi, this.meanRssi.length);
+        long[] oldLastSeen = Arrays.copyOf(this.lastSeen, this.lastSeen.length);
+
+        Arrays.fill(this.keys, FREE);
+        this.tracked = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE && now - oldLastSeen[i] <= absence) {
+                int slot = slotOf(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.rssiSum[slot] = oldRssiSum[i];
+                this.rssiCount[slot] = oldRssiCount[i];
+                this.meanRssi[slot] = oldMeanRssi[i];
+                this.lastSeen[slot] = oldLastSeen[i];
+                this.tracked++;
+            }
+        }
+    }
+
+    private static long mix(long msb, long lsb, int majorMinor) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb * 0xC2B2AE3D27D4EB4FL ^ majorMinor * 0x165667B19E3779F9L;
+        h ^= h >>> 31;
+        // Zero marks a free slot.
+        return h == FREE ? 1 : h;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+Batched settings writes for the Android implementation of the Cordova
+plugin for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.mgmtsdk.common.exceptions.DeviceConnectionException;
+import com.estimote.mgmtsdk.connection.api.DeviceConnection;
+import com.estimote.mgmtsdk.feature.settings.SettingCallback;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Writes a set of beacon settings on one device connection. Each field is
+ * read first and only written if it differs from the target value. Fields
+ * are handled one after the other, a failing field does not stop the others.
+ * The outcome of every field is reported once all of them are done.
+ */
+class SettingsTransaction {
+
+    private static final String LOGTAG = "EstimoteBeacons";
+
+    static final String STATUS_UNCHANGED = "unchanged";
+    static final String STATUS_WRITTEN = "written";
+    static final String STATUS_FAILED = "failed";
+
+    /**
+     * Called once all fields have been handled.
+     */
+    interface CompletionListener {
+        void onComplete(JSONObject results, int failures);
+    }
+
+    private final List<Field<?>> fields = new ArrayList<Field<?>>();
+
+    private DeviceConnection connection;
+    private CompletionListener listener;
+    private JSONObject results;
+    private int failures;
+
+    /**
+     * Create a transaction from a JSON object with proximityUUID, major and/or minor properties.
+     */
+    static SettingsTransaction fromJSON(JSONObject json) throws JSONException {
+        SettingsTransaction transaction = new SettingsTransaction();
+
+        if (json.has("proximityUUID")) {
+            transaction.fields.add(new ProximityUUIDField(UUID.fromString(json.getString("proximityUUID"))));
+        }
+        if (json.has("major")) {
+            transaction.fields.add(new MajorField(parseUInt16(json.getString("major"))));
+        }
+        if (json.has("minor")) {
+            transaction.fields.add(new MinorField(parseUInt16(json.getString("minor"))));
+        }
+
+        if (transaction.fields.isEmpty()) {
+            throw new IllegalArgumentException("No settings to write.");
+        }
+
+        return transaction;
+    }
+
+    private static Integer parseUInt16(String value) {
+        Integer i = Integer.decode(value);
+        if (i < 0 || i > 0xFFFF) {
+            throw new IllegalArgumentException("Value out of range: " + value + ".");
+        }
+        return i;
+    }
+
+    /**
+     * Run the transaction on a connected device.
+     */
+    void run(DeviceConnection connection, CompletionListener listener) {
+        this.connection = connection;
+        this.listener = listener;
+        this.results = new JSONObject();
+        this.failures = 0;
+
+        next(0);
+    }
+
+    /**
+     * Handle the field at the given index, or complete.
+     */
+    private void next(int index) {
+        if (index >= this.fields.size()) {
+            this.listener.onComplete(this.results, this.failures);
+        } else {
+            this.fields.get(index).apply(this, index);
+        }
+    }
+
+    /**
+     * Record the outcome of a field and go on with the next one.
+     */
+    private void report(int index, String name, String status, Object previous, Object value, String error) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("status", status);
+            if (previous != null) {
+                json.put("previous", previous.toString());
+            }
+            json.put("value", value.toString());
+            if (error != null) {
+                json.put("error", error);
+            }
+            this.results.put(name, json);
+        } catch (JSONException e) {
+            PluginLog.e(LOGTAG, "JSON error: " + e + ".");
+        }
+
+        if (STATUS_FAILED.equals(status)) {
+            this.failures++;
+        }
+
+        next(index + 1);
+    }
+
+    /**
+     * A setting to compare and write.
+     */
+    private abstract static class Field<T> {
+        final String name;
+        final T target;
+
+        Field(String name, T target) {
+            this.name = name;
+            this.target = target;
+        }
+
+        abstract void read(DeviceConnection connection, SettingCallback<T> callback);
+
+        abstract void write(DeviceConnection connection, T value, SettingCallback<T> callback);
+
+        void apply(final SettingsTransaction transaction, final int index) {
+            final DeviceConnection connection = transaction.connection;
+
+            read(connection, new SettingCallback<T>() {
+                @Override
+                public void onSuccess(final T current) {
+                    // Do not write the same value.
+                    if (target.equals(current)) {
+                        transaction.report(index, name, STATUS_UNCHANGED, current, target, null);
+                        return;
+                    }
+
+                    write(connection, target, new SettingCallback<T>() {
+                        @Override
+                        public void onSuccess(T value) {
+                            PluginLog.d(LOGTAG, "Setting " + name + " changed to: " + value + ".");
+
+                            transaction.report(index, name, STATUS_WRITTEN, current, target, null);
+                        }
+
+                        @Override
+                        public void onFailure(DeviceConnectionException e) {
+                            PluginLog.e(LOGTAG, "Could not change " + name + " to: " + target + ".");
+
+                            transaction.report(index, name, STATUS_FAILED, current, target, "Could not change " + name + ".");
+                        }
+                    });
+                }
+
+                @Override
+                public void onFailure(DeviceConnectionException e) {
+                    PluginLog.e(LOGTAG, "Could not recover current " + name + ".");
+
+                    transaction.report(index, name, STATUS_FAILED, null, target, "Could not recover current " + name + ".");
+                }
+            });
+        }
+    }
+
+    private static class ProximityUUIDField extends Field<UUID> {
+        ProximityUUIDField(UUID target) {
+            super("proximityUUID", target);
+        }
+
+        @Override
+        void read(DeviceConnection connection, SettingCallback<UUID> callback) {
+            connection.settings.beacon.proximityUUID().get(callback);
+        }
+
+        @Override
+        void write(DeviceConnection connection, UUID value, SettingCallback<UUID> callback) {
+            connection.settings.beacon.proximityUUID().set(value, callback);
+        }
+    }
+
+    private static class MajorField extends Field<Integer> {
+        MajorField(Integer target) {
+            super("major", target);
+        }
+
+        @Override
+        void read(DeviceConnection connection, SettingCallback<Integer> callback) {
+            connection.settings.beacon.major().get(callback);
+        }
+
+        @Override
+        void write(DeviceConnection connection, Integer value, SettingCallback<Integer> callback) {
+            connection.settings.beacon.major().set(value, callback);
+        }
+    }
+
+    private static class MinorField extends Field<Integer> {
+        MinorField(Integer target) {
+            super("minor", target);
+        }
+
+        @Override
+        void read(DeviceConnection connection, SettingCallback<Integer> callback) {
+            connection.settings.beacon.minor().get(callback);
+        }
+
+        @Override
+        void write(DeviceConnection connection, Integer value, SettingCallback<Integer> callback) {
+            connection.settings.beacon.minor().set(value, callback);
+        }
+    }
+}
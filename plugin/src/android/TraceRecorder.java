@@ -0,0 +1,369 @@
+/*
+Binary event trace for the Android implementation of the Cordova plugin
+for Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends SDK events to rotating binary files. Records are copied into a
+ * direct buffer on the calling thread; full buffers are written to the file
+ * channel by a background thread. If the writer falls behind and no buffer
+ * is free, records are dropped and counted rather than blocking the caller.
+ *
+ * Files start with the 8 byte header "EBTR", version, 3 reserved bytes.
+ * All values are little-endian. Each record is:
+ *
+ * u8 type (1 ranging, 2 entered, 3 exited), i64 timestamp (ms since epoch),
+ * i64 region UUID msb, i64 region UUID lsb, i32 region major/minor packed
+ * as by RegionRegistry, u16 beacon count, then per beacon: i64 UUID msb,
+ * i64 UUID lsb, u16 major, u16 minor, i8 rssi, i8 measured power.
+ */
+class TraceRecorder {
+
+    private static final String LOGTAG = "EstimoteBeacons";
+
+    static final int DEFAULT_MAX_FILE_BYTES = 4 * 1024 * 1024;
+    static final int DEFAULT_MAX_FILES = 4;
+
+    static final byte TYPE_RANGING = 1;
+    static final byte TYPE_ENTERED = 2;
+    static final byte TYPE_EXITED = 3;
+
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 31;
+    private static final int BEACON_SIZE = 22;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFER_COUNT = 3;
+    private static final long FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final String FILE_PREFIX = "trace-";
+    private static final String FILE_SUFFIX = ".bin";
+
+    private final File directory;
+    private final int maxFileBytes;
+    private final int maxFiles;
+
+    // Buffer being filled and free buffers, guarded by this.
+    private ByteBuffer current;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<ByteBuffer>();
+    private boolean closed;
+    private long recorded;
+    private long dropped;
+
+    // Only used by the writer thread.
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    private FileChannel channel;
+    private long fileBytes;
+    private int fileIndex;
+    private volatile long bytesWritten;
+
+    TraceRecorder(File directory, int maxFileBytes, int maxFiles) {
+        this.directory = directory;
+        this.maxFileBytes = Math.max(BUFFER_SIZE, maxFileBytes);
+        this.maxFiles = Math.max(1, maxFiles);
+
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            this.free.add(ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN));
+        }
+        this.current = this.free.poll();
+
+        // Continue numbering after existing files.
+        this.fileIndex = 0;
+        for (File file : listFiles()) {
+            this.fileIndex = Math.max(this.fileIndex, fileNumber(file) + 1);
+        }
+
+        this.writer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record a ranging result.
+     */
+    void recordRanging(BeaconRegion region, List<Beacon> beacons) {
+        record(TYPE_RANGING, region, beacons);
+    }
+
+    /**
+     * Record a monitoring transition.
+     */
+    void recordMonitoring(BeaconRegion region, boolean entered, List<Beacon> beacons) {
+        record(entered ? TYPE_ENTERED : TYPE_EXITED, region, beacons);
+    }
+
+    private synchronized void record(byte type, BeaconRegion region, List<Beacon> beacons) {
+        if (this.closed) {
+            return;
+        }
+
+        int count = beacons == null ? 0 : Math.min(beacons.size(), 0xFFFF);
+        int size = RECORD_HEADER_SIZE + count * BEACON_SIZE;
+
+        if (size > BUFFER_SIZE) {
+            this.dropped++;
+            return;
+        }
+
+        if (this.current == null || this.current.remaining() < size) {
+            if (!swap()) {
+                this.dropped++;
+                return;
+            }
+        }
+
+        ByteBuffer b = this.current;
+        UUID uuid = region.getProximityUUID();
+
+        b.put(type);
+        b.putLong(System.currentTimeMillis());
+        b.putLong(uuid == null ? 0L : uuid.getMostSignificantBits());
+        b.putLong(uuid == null ? 0L : uuid.getLeastSignificantBits());
+        b.putInt(RegionRegistry.packMajorMinor(region.getMajor(), region.getMinor()));
+        b.putShort((short) count);
+
+        for (int i = 0; i < count; i++) {
+            Beacon beacon = beacons.get(i);
+            UUID beaconUuid = beacon.getProximityUUID();
+
+            b.putLong(beaconUuid == null ? 0L : beaconUuid.getMostSignificantBits());
+            b.putLong(beaconUuid == null ? 0L : beaconUuid.getLeastSignificantBits());
+            b.putShort((short) beacon.getMajor());
+            b.putShort((short) beacon.getMinor());
+            b.put((byte) Math.max(-128, Math.min(127, beacon.getRssi())));
+            b.put((byte) Math.max(-128, Math.min(127, beacon.getMeasuredPower())));
+        }
+
+        this.recorded++;
+    }
+
+    /**
+     * Hand the current buffer to the writer and take a free one.
+     * Returns false if none is free. Called with the lock held.
+     */
+    private boolean swap() {
+        final ByteBuffer full = this.current;
+        this.current = this.free.poll();
+
+        if (full != null && full.position() > 0) {
+            this.writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    write(full);
+                }
+            });
+        } else if (full != null) {
+            this.free.add(full);
+            if (this.current == null) {
+                this.current = this.free.poll();
+            }
+        }
+
+        return this.current != null;
+    }
+
+    /**
+     * Write pending records, called periodically.
+     */
+    void flush() {
+        synchronized (this) {
+            if (this.closed || this.current == null || this.current.position() == 0) {
+                return;
+            }
+            swap();
+        }
+    }
+
+    /**
+     * Write pending records and close the file. Waits for the writer to finish.
+     */
+    void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            swap();
+            this.closed = true;
+        }
+
+        this.writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeChannel();
+            }
+        });
+        this.writer.shutdown();
+
+        try {
+            this.writer.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write a buffer to the current file, rotating first if it would grow
+     * past the size limit. Runs on the writer thread.
+     */
+    private void write(ByteBuffer buffer) {
+        buffer.flip();
+
+        try {
+            if (this.channel != null && this.fileBytes + buffer.remaining() > this.maxFileBytes) {
+                closeChannel();
+            }
+            if (this.channel == null) {
+                openChannel();
+            }
+
+            while (buffer.hasRemaining()) {
+                int n = this.channel.write(buffer);
+                this.fileBytes += n;
+                this.bytesWritten += n;
+            }
+        } catch (IOException e) {
+            PluginLog.e(LOGTAG, "Trace write error: " + e + ".");
+            closeChannel();
+        }
+
+        buffer.clear();
+        synchronized (this) {
+            this.free.add(buffer);
+        }
+    }
+
+    /**
+     * Start a new file and delete the oldest ones above the file limit. Runs on the writer thread.
+     */
+    private void openChannel() throws IOException {
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Could not create " + this.directory + ".");
+        }
+
+        File file = new File(this.directory, FILE_PREFIX + this.fileIndex++ + FILE_SUFFIX);
+        this.channel = new FileOutputStream(file).getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) 'E').put((byte) 'B').put((byte) 'T').put((byte) 'R');
+        header.put((byte) VERSION).put((byte) 0).put((byte) 0).put((byte) 0);
+        header.flip();
+        while (header.hasRemaining()) {
+            this.channel.write(header);
+        }
+        this.fileBytes = HEADER_SIZE;
+
+        // Drop the oldest files.
+        File[] files = listFiles();
+        for (File old : files) {
+            if (fileNumber(old) <= this.fileIndex - 1 - this.maxFiles) {
+                if (!old.delete()) {
+                    PluginLog.e(LOGTAG, "Could not delete trace file " + old + ".");
+                }
+            }
+        }
+    }
+
+    private void closeChannel() {
+        if (this.channel == null) {
+            return;
+        }
+
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            PluginLog.e(LOGTAG, "Trace close error: " + e + ".");
+        }
+        this.channel = null;
+    }
+
+    private File[] listFiles() {
+        File[] files = this.directory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+
+        int n = 0;
+        for (File file : files) {
+            if (fileNumber(file) >= 0) {
+                files[n++] = file;
+            }
+        }
+
+        File[] result = new File[n];
+        System.arraycopy(files, 0, result, 0, n);
+        return result;
+    }
+
+    /**
+     * Sequence number of a trace file, or -1 if it is not one.
+     */
+    private static int fileNumber(File file) {
+        String name = file.getName();
+        if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+            return -1;
+        }
+
+        try {
+            return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Make a JSON object with the counters and the trace files, oldest first.
+     */
+    JSONObject makeJSONStatus() throws JSONException {
+        JSONObject json = new JSONObject();
+
+        synchronized (this) {
+            json.put("recorded", this.recorded);
+            json.put("dropped", this.dropped);
+        }
+        json.put("bytesWritten", this.bytesWritten);
+
+        File[] files = listFiles();
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return fileNumber(a) - fileNumber(b);
+            }
+        });
+
+        JSONArray paths = new JSONArray();
+        for (File file : files) {
+            paths.put(file.getAbsolutePath());
+        }
+        json.put("files", paths);
+
+        return json;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+Zone occupancy for the Android implementation of the Cordova plugin for
+Estimote Beacons.
+*/
+
+package com.evothings;
+
+import com.estimote.coresdk.observation.region.beacon.BeaconRegion;
+import com.estimote.coresdk.recognition.packets.Beacon;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Works out the zone the user is in from ranging results. A zone is a set
+ * of beacons, given by UUID and optionally major and minor. The signal of a
+ * zone is the strongest RSSI of its beacons, held for a window so that
+ * zones spanning several UUIDs (ranged as separate regions) compare fairly.
+ *
+ * The strongest zone above enterRssi becomes the candidate, but the current
+ * zone is kept unless the candidate is stronger by the hysteresis margin.
+ * A candidate is entered once it stayed the candidate for the dwell time.
+ * The current zone is exited when its signal stayed below exitRssi for the
+ * exit delay, or when another zone is entered.
+ *
+ * Updates are made on the event pipeline thread.
+ */
+class ZoneTracker {
+
+    static final double DEFAULT_ENTER_RSSI = -75;
+    static final double DEFAULT_EXIT_RSSI = -85;
+    static final double DEFAULT_HYSTERESIS = 5;
+    static final long DEFAULT_DWELL_MILLIS = 3000;
+    static final long DEFAULT_EXIT_DELAY_MILLIS = 5000;
+    static final long DEFAULT_WINDOW_MILLIS = 2000;
+
+    // Identifier prefix of the regions ranged for zones.
+    static final String REGION_PREFIX = "com.evothings.zones:";
+
+    /**
+     * Receives zone transitions.
+     */
+    interface Listener {
+        void onZoneTransition(String zoneId, boolean entered, double rssi);
+    }
+
+    private final String[] zoneIds;
+
+    // Zones per member, kept apart by what the member gives, so that a
+    // member with major or minor 0 is not taken for a wildcard.
+    private final RegionRegistry<int[]> uuidMembers;
+    private final RegionRegistry<int[]> majorMembers;
+    private final RegionRegistry<int[]> beaconMembers;
+    private final List<BeaconRegion> regions;
+    private final Listener listener;
+
+    private final double enterRssi;
+    private final double exitRssi;
+    private final double hysteresis;
+    private final long dwellMillis;
+    private final long exitDelayMillis;
+    private final long windowMillis;
+
+    // Strongest recent RSSI per zone and when it was measured.
+    private final double[] zoneRssi;
+    private final long[] zoneTime;
+
+    private int current = -1;
+    private long currentSeen;
+    private int pending = -1;
+    private long pendingSince;
+
+    private ZoneTracker(String[] zoneIds, RegionRegistry<int[]>[] members, List<BeaconRegion> regions,
+            JSONObject options, Listener listener) {
+        this.zoneIds = zoneIds;
+        this.uuidMembers = members[0];
+        this.majorMembers = members[1];
+        this.beaconMembers = members[2];
+        this.regions = regions;
+        this.listener = listener;
+
+        this.enterRssi = options.optDouble("enterRssi", DEFAULT_ENTER_RSSI);
+        this.exitRssi = Math.min(this.enterRssi, options.optDouble("exitRssi", DEFAULT_EXIT_RSSI));
+        this.hysteresis = Math.max(0, options.optDouble("hysteresis", DEFAULT_HYSTERESIS));
+        this.dwellMillis = Math.max(0, options.optLong("dwellTime", DEFAULT_DWELL_MILLIS));
+        this.exitDelayMillis = Math.max(0, options.optLong("exitDelay", DEFAULT_EXIT_DELAY_MILLIS));
+        this.windowMillis = Math.max(1, options.optLong("window", DEFAULT_WINDOW_MILLIS));
+
+        this.zoneRssi = new double[zoneIds.length];
+        this.zoneTime = new long[zoneIds.length];
+        Arrays.fill(this.zoneRssi, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Create a tracker from a zone table: an array of objects with an id and
+     * an array of beacons, each with a uuid and optional major and minor.
+     */
+    static ZoneTracker fromJSON(JSONArray zones, JSONObject options, Listener listener) throws JSONException {
+        String[] zoneIds = new String[zones.length()];
+        @SuppressWarnings("unchecked")
+        RegionRegistry<int[]>[] members = new RegionRegistry[] {
+                new RegionRegistry<int[]>(), new RegionRegistry<int[]>(), new RegionRegistry<int[]>() };
+        LinkedHashMap<UUID, BeaconRegion> regions = new LinkedHashMap<UUID, BeaconRegion>();
+
+        for (int z = 0; z < zones.length(); z++) {
+            JSONObject zone = zones.getJSONObject(z);
+            zoneIds[z] = zone.getString("id");
+
+            JSONArray beacons = zone.getJSONArray("beacons");
+            for (int i = 0; i < beacons.length(); i++) {
+                JSONObject beacon = beacons.getJSONObject(i);
+                String uuidString = beacon.getString("uuid");
+                if (!EstimoteBeacons.isValidUuid(uuidString)) {
+                    throw new JSONException("Invalid UUID: " + uuidString + ".");
+                }
+
+                UUID uuid = UUID.fromString(uuidString);
+                Integer major = beacon.has("major") ? beacon.getInt("major") : null;
+                Integer minor = major != null && beacon.has("minor") ? beacon.getInt("minor") : null;
+
+                // A beacon may belong to several zones.
+                RegionRegistry<int[]> table = members[major == null ? 0 : minor == null ? 1 : 2];
+                BeaconRegion member = new BeaconRegion(zoneIds[z], uuid, major, minor);
+                int[] memberZones = table.get(member);
+                if (memberZones == null) {
+                    table.putIfAbsent(member, new int[] { z });
+                } else {
+                    int[] updated = new int[memberZones.length + 1];
+                    System.arraycopy(memberZones, 0, updated, 0, memberZones.length);
+                    updated[memberZones.length] = z;
+                    table.remove(member);
+                    table.putIfAbsent(member, updated);
+                }
+
+                if (!regions.containsKey(uuid)) {
+                    regions.put(uuid, new BeaconRegion(REGION_PREFIX + uuid, uuid, null, null));
+                }
+            }
+        }
+
+        return new ZoneTracker(zoneIds, members, new ArrayList<BeaconRegion>(regions.values()),
+                options == null ? new JSONObject() : options, listener);
+    }
+
+    /**
+     * Regions to range, one per UUID of the zone table.
+     */
+    List<BeaconRegion> getRegions() {
+        return this.regions;
+    }
+
+    static boolean isZoneRegion(BeaconRegion region) {
+        String identifier = region.getIdentifier();
+        return identifier != null && identifier.startsWith(REGION_PREFIX);
+    }
+
+    /**
+     * Feed a ranging result of one of the zone regions and emit transitions.
+     */
+    void update(List<Beacon> beacons, long now) {
+        for (int i = 0, n = beacons.size(); i < n; i++) {
+            Beacon beacon = beacons.get(i);
+            UUID uuid = beacon.getProximityUUID();
+            long msb = uuid.getMostSignificantBits();
+            long lsb = uuid.getLeastSignificantBits();
+            double rssi = beacon.getRssi();
+
+            // Members may be listed by UUID, by major, or by major and minor.
+            observe(this.beaconMembers.get(msb, lsb, RegionRegistry.packMajorMinor(beacon.getMajor(), beacon.getMinor())), rssi, now);
+            observe(this.majorMembers.get(msb, lsb, RegionRegistry.packMajorMinor(beacon.getMajor(), null)), rssi, now);
+            observe(this.uuidMembers.get(msb, lsb, 0), rssi, now);
+        }
+
+        evaluate(now);
+    }
+
+    private void observe(int[] zones, double rssi, long now) {
+        if (zones == null) {
+            return;
+        }
+
+        for (int z : zones) {
+            // Hold the peak for the window, then take newer readings.
+            if (rssi >= this.zoneRssi[z] || now - this.zoneTime[z] > this.windowMillis) {
+                this.zoneRssi[z] = rssi;
+                this.zoneTime[z] = now;
+            }
+        }
+    }
+
+    private double signal(int z, long now) {
+        return now - this.zoneTime[z] <= this.windowMillis ? this.zoneRssi[z] : Double.NEGATIVE_INFINITY;
+    }
+
+    private void evaluate(long now) {
+        if (this.current >= 0) {
+            if (signal(this.current, now) >= this.exitRssi) {
+                this.currentSeen = now;
+            } else if (now - this.currentSeen >= this.exitDelayMillis) {
+                this.listener.onZoneTransition(this.zoneIds[this.current], false, signal(this.current, now));
+                this.current = -1;
+            }
+        }
+
+        int candidate = -1;
+        double candidateRssi = Double.NEGATIVE_INFINITY;
+        for (int z = 0; z < this.zoneIds.length; z++) {
+            double rssi = signal(z, now);
+            if (rssi >= this.enterRssi && rssi > candidateRssi) {
+                candidate = z;
+                candidateRssi = rssi;
+            }
+        }
+
+        // Stay in the current zone unless clearly beaten.
+        if (this.current >= 0 && candidate != this.current
+                && (candidate < 0 || candidateRssi < signal(this.current, now) + this.hysteresis)) {
+            candidate = this.current;
+        }
+
+        if (candidate != this.pending) {
+            this.pending = candidate;
+            this.pendingSince = now;
+        }
+
+        if (candidate >= 0 && candidate != this.current && now - this.pendingSince >= this.dwellMillis) {
+            if (this.current >= 0) {
+                this.listener.onZoneTransition(this.zoneIds[this.current], false, signal(this.current, now));
+            }
+            this.current = candidate;
+            this.currentSeen = now;
+            this.listener.onZoneTransition(this.zoneIds[candidate], true, candidateRssi);
+        }
+    }
+
+    /**
+     * Id of the current zone, or null.
+     */
+    String getCurrentZone() {
+        return this.current < 0 ? null : this.zoneIds[this.current];
+    }
+}
@@ -263,6 +263,25 @@ estimote.beacons.BeaconColorWhite = 9;
  */
 estimote.beacons.BeaconColorTransparent = 10;
 
+/**
+ * Ranging success callbacks by dispatch id, used to hand
+ * batched ranging results to the callback of each region.
+ * @private
+ */
+var rangingDispatchCallbacks = {};
+
+/**
+ * Dispatch ids by region key.
+ * @private
+ */
+var rangingDispatchIds = {};
+
+/**
+ * Used for generating ranging dispatch ids.
+ * @private
+ */
+var rangingDispatchCounter = 0;
+
 /**
  * Region state.
  */
@@ -565,6 +584,91 @@ estimote.beacons.setupAppIDAndAppToken = function(appID, appToken, success, erro
  * @property {number} distance Estimated distance from the beacon in meters (ranging iOS).
  */
 
+/**
+ * Ranging options object. Options are used on Android and ignored on iOS.
+ * @typedef {Object} RangingOptions
+ * @property {boolean} [binary=false] Deliver ranging results as a compact
+ * binary message that is decoded in JavaScript. The success callback still
+ * receives a {@link BeaconInfo} object with the same properties as for JSON
+ * results, but serialization and bridge costs are much lower when many
+ * beacons are in range.
+ * @property {boolean|Object} [delta] Only report beacons that were added,
+ * removed or changed since the last report. The success callback then takes a
+ * {@link BeaconDeltaInfo} object and is not called while nothing changes.
+ * Set to true for default thresholds, or to an object with the properties
+ * rssiThreshold (default 5) and accuracyThreshold (default 0.5 meters): a
+ * beacon is reported as changed when its RSSI or accuracy moved at least this
+ * much since last reported, or when its proximity changed. The graceCycles
+ * property (default 2) is the number of consecutive ranging cycles a beacon
+ * may be missing from before it is reported as removed. Delta results are
+ * always sent as JSON, the binary option does not apply to them.
+ * @property {RangingSmoothing} [smoothing] Smooth RSSI natively before results
+ * are sent. The rssi, accuracy and proximity of beacons are then smoothed values.
+ * @property {RangingFilter} [filter] Leave out beacons natively before results
+ * are serialized and sent.
+ * @property {RangingNearest} [nearest] Only report the nearest beacons, nearest
+ * first, after filtering.
+ */
+
+/**
+ * Nearest beacons options object.
+ * @typedef {Object} RangingNearest
+ * @property {number} count Number of beacons to report.
+ * @property {string} [by='accuracy'] Rank beacons by 'accuracy' (beacons of
+ * unknown accuracy come last) or by 'rssi'. With smoothing, smoothed values
+ * are ranked.
+ * @property {boolean} [acrossRegions=false] Rank the beacons of all regions
+ * ranged with this option together. Each region then only reports its
+ * beacons that are among the count nearest of all these regions, based on
+ * their latest results. Use the same count and ranking for these regions.
+ */
+
+/**
+ * Ranging filter options object. Only beacons that meet all the given
+ * conditions are reported. With smoothing, smoothed values are compared.
+ * In delta mode, a beacon that stops meeting the conditions is reported
+ * as removed.
+ * @typedef {Object} RangingFilter
+ * @property {number} [minRssi] Lowest RSSI of reported beacons.
+ * @property {number} [maxAccuracy] Largest accuracy (estimated distance in
+ * meters) of reported beacons. Beacons with unknown accuracy are left out.
+ * @property {string[]} [proximities] Proximities of reported beacons, any of
+ * 'immediate', 'near', 'far' and 'unknown'.
+ * @property {Object[]} [allow] Beacons to report, as objects with a major
+ * and an optional minor property. An entry without minor allows all
+ * beacons with that major.
+ */
+
+/**
+ * Ranging smoothing options object. Filter state is kept per beacon MAC address.
+ * The accuracy is the one the Estimote SDK computes for the smoothed RSSI, so
+ * it is on the same scale as without smoothing, and the proximity only changes
+ * once the accuracy is clearly past a class boundary. An unknown type is an
+ * error.
+ * @typedef {Object} RangingSmoothing
+ * @property {string} [type='kalman'] One of 'ema' (exponential moving average),
+ * 'kalman' (one-dimensional Kalman filter) or 'median' (moving median).
+ * @property {number} [alpha=0.3] Weight of new samples for 'ema', between 0 and 1.
+ * @property {number} [processNoise=0.1] Process noise for 'kalman'.
+ * @property {number} [measurementNoise=4] Measurement noise for 'kalman'.
+ * @property {number} [windowSize=5] Number of samples for 'median'.
+ * @property {number} [maxGap=10000] Time in milliseconds after which the filter
+ * state of a beacon that was not seen is dropped, so a beacon that comes back
+ * starts from its new readings.
+ * @property {number} [maxBeacons=512] Number of beacons to keep filter state for,
+ * the least recently seen beacons are dropped first.
+ */
+
+/**
+ * Beacon delta info object, used when ranging with the delta option.
+ * @typedef {Object} BeaconDeltaInfo
+ * @property {BeaconRegion} region Beacon region.
+ * @property {Beacon[]} added Beacons that came into range.
+ * @property {Beacon[]} changed Beacons with changed RSSI, accuracy or proximity.
+ * @property {Beacon[]} removed Beacons that went out of range, with their
+ * last reported values.
+ */
+
 /**
  * Region state object. This object is given as a result when
  * monitoring for beacons.
@@ -578,6 +682,10 @@ estimote.beacons.setupAppIDAndAppToken = function(appID, appToken, success, erro
  * {@link estimote.beacons.RegionStateInside},
  * {@link estimote.beacons.RegionStateOutside},
  * {@link estimote.beacons.RegionStateUnknown}.
+ * @property {number} [time] On Android, set on a transition that happened
+ * while no callback was registered, for example during a page reload: the
+ * time of the transition in milliseconds since the epoch. Such transitions
+ * are delivered when monitoring of the region is started again.
  */
 
 /**
@@ -639,6 +747,7 @@ estimote.beacons.stopEstimoteBeaconDiscovery = function(success, error)
  * @param {function} success Function called when beacons are ranged,
  * takes a {@link BeaconInfo} object as parameter (mandatory).
  * @param {ErrorCallback} error Function called on error (mandatory).
+ * @param {RangingOptions} [options] Ranging options (optional, Android only).
  *
  * @example callback format:
  *   success(BeaconInfo)
@@ -651,18 +760,27 @@ estimote.beacons.stopEstimoteBeaconDiscovery = function(success, error)
  *       estimote.printObject(info) },
  *     function(errorMessage) {
  *       console.log('Ranging error: ' + errorMessage) })
+ *
+ * @example Example that uses binary results on Android:
+ *   estimote.beacons.startRangingBeaconsInRegion(
+ *     {},
+ *     onBeaconsRanged,
+ *     onError,
+ *     { binary: true })
  */
-estimote.beacons.startRangingBeaconsInRegion = function(region, success, error)
+estimote.beacons.startRangingBeaconsInRegion = function(region, success, error, options)
 {
 	if (!checkExecParamsRegionSuccessError(region, success, error)) {
 		return false;
 	}
 
-	exec(success,
+	var rangingSuccess = helper_rangingSuccess(success);
+
+	exec(rangingSuccess,
 		error,
 		'EstimoteBeacons',
 		'beacons_startRangingBeaconsInRegion',
-		[region]
+		[region, helper_addRangingDispatch(region, options, rangingSuccess)]
 	);
 
 	return true;
@@ -685,6 +803,8 @@ estimote.beacons.stopRangingBeaconsInRegion = function(region, success, error)
 		return false;
 	}
 
+	helper_removeRangingDispatch(region);
+
 	exec(success,
 		error,
 		'EstimoteBeacons',
@@ -702,17 +822,19 @@ estimote.beacons.stopRangingBeaconsInRegion = function(region, success, error)
  * To use secure beacons set the App ID and App Token using
  * {@link estimote.beacons.setupAppIDAndAppToken}.
  */
-estimote.beacons.startRangingSecureBeaconsInRegion = function(region, success, error)
+estimote.beacons.startRangingSecureBeaconsInRegion = function(region, success, error, options)
 {
 	if (!checkExecParamsRegionSuccessError(region, success, error)) {
 		return false;
 	}
 
-	exec(success,
+	var rangingSuccess = helper_rangingSuccess(success);
+
+	exec(rangingSuccess,
 		error,
 		'EstimoteBeacons',
 		'beacons_startRangingSecureBeaconsInRegion',
-		[region]
+		[region, helper_addRangingDispatch(region, options, rangingSuccess)]
 	);
 
 	return true;
@@ -729,6 +851,8 @@ estimote.beacons.stopRangingSecureBeaconsInRegion = function(region, success, er
 		return false;
 	}
 
+	helper_removeRangingDispatch(region);
+
 	exec(success,
 		error,
 		'EstimoteBeacons',
@@ -739,6 +863,719 @@ estimote.beacons.stopRangingSecureBeaconsInRegion = function(region, success, er
 	return true;
 };
 
+/**
+ * Ranging batching options object.
+ * @typedef {Object} RangingBatchingOptions
+ * @property {number} [flushInterval=1000] Maximum time in milliseconds a
+ * ranging result waits before the batch holding it is sent.
+ * @property {number} [maxBatchSize=32] Number of results that causes a
+ * batch to be sent right away.
+ */
+
+/**
+ * Start batching ranging results. Available on Android.
+ *
+ * While batching is on, the ranging results of all ranged regions are
+ * collected natively and sent to JavaScript in one message per flush
+ * interval, instead of one message per region and ranging cycle.
+ * Results are still passed to the success callback given to
+ * {@link estimote.beacons.startRangingBeaconsInRegion} for each region.
+ * A region that is ranged again before the batch is sent only gets its
+ * latest result, except in delta mode where all results are kept.
+ *
+ * @param {RangingBatchingOptions} [options] Batching options (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ *
+ * @example Example that caps ranging messages to two per second:
+ *   estimote.beacons.startRangingBatching({ flushInterval: 500 })
+ */
+estimote.beacons.startRangingBatching = function(options, error)
+{
+	exec(helper_dispatchRangingBatch,
+		error,
+		'EstimoteBeacons',
+		'beacons_startRangingBatching',
+		[options || {}]
+	);
+
+	return true;
+};
+
+/**
+ * Stop batching ranging results. Available on Android.
+ * Pending results are sent before batching stops.
+ *
+ * @param {SuccessCallbackNoParams} [success] Function called when batching
+ * is stopped (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ *
+ * @example Example that stops batching:
+ *   estimote.beacons.stopRangingBatching()
+ */
+estimote.beacons.stopRangingBatching = function(success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_stopRangingBatching',
+		[]
+	);
+
+	return true;
+};
+
+/**
+ * Event queue statistics object.
+ * @typedef {Object} EventQueueStats
+ * @property {number} capacity Maximum number of queued ranging and discovery frames.
+ * @property {number} depth Number of queued events.
+ * @property {number} droppableDepth Number of queued ranging and discovery frames.
+ * @property {number} reliableDepth Number of queued monitoring events.
+ * @property {number} maxDepth Highest number of queued events so far.
+ * @property {number} enqueued Number of events queued so far.
+ * @property {number} dropped Number of frames dropped because the queue was full.
+ * @property {number} processed Number of events sent to JavaScript so far.
+ */
+
+/**
+ * Get statistics of the native event queue. Available on Android.
+ *
+ * Ranging, monitoring and discovery events are serialized and sent on a
+ * dedicated thread. When JavaScript does not keep up, the oldest ranging
+ * and discovery frames are dropped; monitoring events are never dropped.
+ *
+ * @param {function} success Function called with an
+ * {@link EventQueueStats} object (mandatory).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ *
+ * @example Example that logs dropped frames:
+ *   estimote.beacons.getEventQueueStats(function(stats) {
+ *     console.log('Dropped frames: ' + stats.dropped) })
+ */
+estimote.beacons.getEventQueueStats = function(success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_getEventQueueStats',
+		[]
+	);
+
+	return true;
+};
+
+/**
+ * Event statistics object, for ranging, monitoring or discovery events.
+ * Times are in milliseconds.
+ * @typedef {Object} EventStats
+ * @property {number} callbacks Number of events received from the SDK.
+ * @property {number} beacons Number of beacons in these events, devices
+ * for discovery (the property is then named devices).
+ * @property {number} beaconsPerCallback Average number of beacons per
+ * event, devicesPerCallback for discovery.
+ * @property {number} sent Number of results sent to JavaScript.
+ * @property {number} serializationTime Average time to build a result.
+ * @property {number} maxSerializationTime Longest time to build a result.
+ * @property {number} latency Average time from the SDK event until the
+ * result is sent to JavaScript, or queued when ranging batching is on.
+ * @property {number} maxLatency Longest time from the SDK event until
+ * the result is sent.
+ * @property {number} missingCallback Number of events dropped because no
+ * JavaScript callback was registered for them.
+ * @property {Object.<string, EventStats>} [regions] Statistics per region,
+ * keyed by 'uuid:major:minor', for ranging and monitoring.
+ */
+
+/**
+ * Plugin statistics object.
+ * @typedef {Object} PluginStats
+ * @property {number} since Time the counters started, in milliseconds
+ * since the epoch.
+ * @property {EventStats} ranging Ranging statistics.
+ * @property {EventStats} monitoring Monitoring statistics.
+ * @property {EventStats} discovery Device discovery statistics.
+ * @property {Object} registries Object with the number of rangedRegions,
+ * monitoredRegions, discoveredDevices, connections and waitingConnections.
+ * @property {EventQueueStats} eventQueue Event queue statistics, dropped
+ * frames are counted there.
+ * @property {ScanSchedulingStats} [scanScheduling] Scan scheduling
+ * statistics, while scan scheduling is started.
+ */
+
+/**
+ * Get event rates, latencies and drop counters. Available on Android.
+ *
+ * @param {Object} [options] Object with a reset property, if true the
+ * counters start over after this call (optional).
+ * @param {function} success Function called with a
+ * {@link PluginStats} object (mandatory).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ *
+ * @example Example that logs the ranging latency:
+ *   estimote.beacons.getStats({}, function(stats) {
+ *     console.log('Ranging latency: ' + stats.ranging.latency + ' ms') })
+ */
+estimote.beacons.getStats = function(options, success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_getStats',
+		[options || {}]
+	);
+
+	return true;
+};
+
+/**
+ * Start receiving statistics at a fixed interval. Available on Android.
+ *
+ * @param {Object} [options] Object with an interval property, the time
+ * between two updates in milliseconds (default 5000) (optional).
+ * @param {function} success Function called with a
+ * {@link PluginStats} object on every update (mandatory).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.startStatsStream = function(options, success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_startStatsStream',
+		[options || {}]
+	);
+
+	return true;
+};
+
+/**
+ * Stop receiving statistics. Available on Android.
+ *
+ * @param {SuccessCallbackNoParams} [success] Function called when the
+ * stream is stopped (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.stopStatsStream = function(success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_stopStatsStream',
+		[]
+	);
+
+	return true;
+};
+
+/**
+ * Log options object.
+ * @typedef {Object} LogOptions
+ * @property {string} [level] Lowest level of the messages to log, one of
+ * 'verbose', 'debug', 'info', 'warn', 'error' or 'none'. Default is 'info'.
+ * @property {number} [sampleInterval=10000] Interval in milliseconds at
+ * which high-rate messages, such as ranging results, are logged.
+ */
+
+/**
+ * Log entry object.
+ * @typedef {Object} LogEntry
+ * @property {number} time Time of the message in milliseconds since the epoch.
+ * @property {string} level Level of the message.
+ * @property {string} message The message.
+ */
+
+/**
+ * Set the native log level. Available on Android.
+ *
+ * Messages below the level are not written to the system log, and are
+ * not built at all on the ranging and discovery paths.
+ *
+ * @param {LogOptions} options Log options (mandatory).
+ * @param {SuccessCallbackNoParams} [success] Function called when the
+ * level is set (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ *
+ * @example Example that logs debug messages:
+ *   estimote.beacons.setLogLevel({ level: 'debug' })
+ */
+estimote.beacons.setLogLevel = function(options, success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_setLogLevel',
+		[options]
+	);
+
+	return true;
+};
+
+/**
+ * Get the last 256 native log messages at or above the log level.
+ * Available on Android.
+ *
+ * @param {Object} [options] Object with a clear property, if true the
+ * messages are removed after this call (optional).
+ * @param {function} success Function called with an array of
+ * {@link LogEntry} objects, oldest first (mandatory).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.getLog = function(options, success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_getLog',
+		[options || {}]
+	);
+
+	return true;
+};
+
+/**
+ * Zone object.
+ * @typedef {Object} Zone
+ * @property {string} id Zone identifier, reported in zone events.
+ * @property {Object[]} beacons Beacons of the zone, each with a uuid
+ * property and optional major and minor properties. A beacon without
+ * minor matches all minors, a beacon without major matches the whole UUID.
+ */
+
+/**
+ * Zone tracking options object.
+ * @typedef {Object} ZoneTrackingOptions
+ * @property {number} [enterRssi=-75] RSSI a zone must reach to be entered.
+ * @property {number} [exitRssi=-85] RSSI below which the current zone is exited.
+ * @property {number} [hysteresis=5] RSSI margin in dB by which another
+ * zone must beat the current zone to replace it.
+ * @property {number} [dwellTime=3000] Time in milliseconds a zone must stay
+ * the strongest before it is entered.
+ * @property {number} [exitDelay=5000] Time in milliseconds the current zone
+ * must stay below exitRssi before it is exited.
+ * @property {number} [window=2000] Time in milliseconds over which the
+ * strongest RSSI of the beacons of a zone is kept.
+ */
+
+/**
+ * Zone event object.
+ * @typedef {Object} ZoneEvent
+ * @property {string} zone Zone identifier.
+ * @property {string} state 'entered' or 'exited'.
+ * @property {number} [rssi] RSSI of the zone at the time of the event.
+ * @property {number} [time] Set on an event that happened while the page
+ * was reloading: the time of the event in milliseconds since the epoch.
+ */
+
+/**
+ * Start tracking the zone the device is in. Available on Android.
+ *
+ * The beacons of the zones are ranged natively and only zone transitions
+ * are reported, nothing is sent while the device stays in the same zone.
+ * When the device moves from one zone to another, the exit of the old zone
+ * is reported before the entry of the new one.
+ *
+ * Zone tracking continues natively while the page reloads. Starting it
+ * again with the same zones and options resumes it, and the zone events
+ * that happened meanwhile are delivered first. An exit and a re-entry of
+ * the same zone during that time cancel out.
+ *
+ * @param {Zone[]} zones Zone table (mandatory).
+ * @param {ZoneTrackingOptions} [options] Zone tracking options (optional).
+ * @param {function} success Function called with a {@link ZoneEvent}
+ * object on every zone transition (mandatory).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ *
+ * @example Example that logs zone changes:
+ *   estimote.beacons.startZoneTracking(
+ *     [{ id: 'aisle-1', beacons: [{ uuid: 'B9407F30-F5F8-466E-AFF9-25556B57FE6D', major: 1 }] }],
+ *     {},
+ *     function(event) { console.log(event.state + ' ' + event.zone) })
+ */
+estimote.beacons.startZoneTracking = function(zones, options, success, error)
+{
+	exec(helper_pendingEventsSuccess(success),
+		error,
+		'EstimoteBeacons',
+		'beacons_startZoneTracking',
+		[zones, options || {}]
+	);
+
+	return true;
+};
+
+/**
+ * Stop tracking zones. Available on Android.
+ *
+ * @param {SuccessCallbackNoParams} [success] Function called when
+ * tracking is stopped (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.stopZoneTracking = function(success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_stopZoneTracking',
+		[]
+	);
+
+	return true;
+};
+
+/**
+ * Floor map beacon object.
+ * @typedef {Object} MapBeacon
+ * @property {string} uuid Proximity UUID of the beacon.
+ * @property {number} major Major value of the beacon.
+ * @property {number} minor Minor value of the beacon.
+ * @property {number} x X coordinate of the beacon in meters.
+ * @property {number} y Y coordinate of the beacon in meters.
+ * @property {number} [floor=0] Floor of the beacon.
+ */
+
+/**
+ * Positioning options object.
+ * @typedef {Object} PositioningOptions
+ * @property {number} [minBeacons=3] Number of beacons of one floor needed
+ * to compute a position, at least 3.
+ * @property {number} [window=2000] Time in milliseconds during which the
+ * last distance to a beacon is used.
+ * @property {number} [maxAccuracy=30] Beacons further away in meters are
+ * not used.
+ * @property {number} [rangeNoise=0.3] Error of a distance, as a fraction
+ * of the distance, used to weigh the beacons.
+ * @property {string} [filter='none'] 'kalman' to smooth successive
+ * positions, or 'none'.
+ * @property {number} [processNoise=0.5] Kalman filter process noise in
+ * square meters per second, how fast the device is expected to move.
+ * @property {Object} [smoothing] RSSI smoothing, as in ranging options.
+ */
+
+/**
+ * Position object.
+ * @typedef {Object} Position
+ * @property {number} x X coordinate in meters.
+ * @property {number} y Y coordinate in meters.
+ * @property {number} floor Floor with the most beacons in range.
+ * @property {number} uncertainty Standard error of the position in meters.
+ * @property {number} beacons Number of beacons used.
+ */
+
+/**
+ * Start computing the position of the device. Available on Android.
+ *
+ * The beacons of the floor map are ranged natively and a position is
+ * computed by weighted least squares on each ranging cycle. Only the
+ * position is sent, not the beacons.
+ *
+ * @param {MapBeacon[]} map Floor map (mandatory).
+ * @param {PositioningOptions} [options] Positioning options (optional).
+ * @param {function} success Function called with a {@link Position}
+ * object on every ranging cycle with enough beacons (mandatory).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ *
+ * @example Example that logs positions:
+ *   estimote.beacons.startPositioning(map, { filter: 'kalman' },
+ *     function(p) { console.log(p.x + ', ' + p.y + ' +/- ' + p.uncertainty) })
+ */
+estimote.beacons.startPositioning = function(map, options, success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_startPositioning',
+		[map, options || {}]
+	);
+
+	return true;
+};
+
+/**
+ * Stop computing the position. Available on Android.
+ *
+ * @param {SuccessCallbackNoParams} [success] Function called when
+ * positioning is stopped (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.stopPositioning = function(success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_stopPositioning',
+		[]
+	);
+
+	return true;
+};
+
+/**
+ * Presence analytics options object.
+ * @typedef {Object} PresenceOptions
+ * @property {number} [visitGap=30000] Time in milliseconds a beacon must
+ * be out of sight for its visit to end.
+ * @property {number} [duplicateWindow=250] Time in milliseconds within which
+ * further sightings of a beacon, such as through overlapping ranged regions
+ * in the same scan cycle, are not counted again. Keep it below the scan period.
+ * @property {number} [maxBeacons=1024] Maximum number of beacons tracked.
+ * Sightings of other beacons are counted as dropped.
+ * @property {number} [minRssi=-100] Lower bound of the RSSI histogram.
+ * @property {number} [maxRssi=-30] Upper bound of the RSSI histogram.
+ * @property {number} [binWidth=5] Width in dB of a histogram bin.
+ */
+
+/**
+ * Beacon presence object.
+ * @typedef {Object} BeaconPresence
+ * @property {string} proximityUUID Proximity UUID of the beacon.
+ * @property {number} major Major value of the beacon.
+ * @property {number} minor Minor value of the beacon.
+ * @property {number} firstSeen Time of the first sighting in milliseconds
+ * since the epoch.
+ * @property {number} lastSeen Time of the last sighting in milliseconds
+ * since the epoch.
+ * @property {number} dwellTime Total time in milliseconds of all visits.
+ * @property {number} visits Number of visits.
+ * @property {number} sightings Number of ranging results with the beacon.
+ * @property {number[]} rssiHistogram Number of sightings per RSSI bin,
+ * from minRssi up. Sightings out of range count in the first or last bin.
+ */
+
+/**
+ * Presence analytics object.
+ * @typedef {Object} PresenceAnalytics
+ * @property {number} since Time in milliseconds since the epoch at which
+ * aggregation started.
+ * @property {number} visitGap Visit gap in milliseconds.
+ * @property {number} minRssi Lower bound of the first histogram bin.
+ * @property {number} binWidth Width in dB of a histogram bin.
+ * @property {number} dropped Sightings not counted because the maximum
+ * number of beacons was reached.
+ * @property {BeaconPresence[]} beacons Beacons in order of first sighting.
+ */
+
+/**
+ * Start aggregating the sightings of the beacons of all ranged regions.
+ * Available on Android.
+ *
+ * Aggregates are kept natively and can be queried with
+ * {@link estimote.beacons.getPresenceAnalytics}, so ranging results do not
+ * need to be sent to JavaScript for analytics.
+ *
+ * @param {PresenceOptions} [options] Presence analytics options (optional).
+ * @param {SuccessCallbackNoParams} [success] Function called when
+ * aggregation is started (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.startPresenceAnalytics = function(options, success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_startPresenceAnalytics',
+		[options || {}]
+	);
+
+	return true;
+};
+
+/**
+ * Get the aggregated sightings. Available on Android.
+ *
+ * @param {Object} [options] Object with a reset property, if true the
+ * aggregates start over after this call (optional).
+ * @param {function} success Function called with a
+ * {@link PresenceAnalytics} object (mandatory).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.getPresenceAnalytics = function(options, success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_getPresenceAnalytics',
+		[options || {}]
+	);
+
+	return true;
+};
+
+/**
+ * Stop aggregating sightings. Available on Android.
+ *
+ * @param {function} [success] Function called with the final
+ * {@link PresenceAnalytics} object (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.stopPresenceAnalytics = function(success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_stopPresenceAnalytics',
+		[]
+	);
+
+	return true;
+};
+
+/**
+ * Scan scheduling options object.
+ * @typedef {Object} ScanSchedulingOptions
+ * @property {string} [policy='adaptive'] 'adaptive' to adjust the wait
+ * time between scans to the activity, or 'fixed' for a constant period.
+ * @property {number} [evaluationInterval=5000] Time in milliseconds
+ * between two choices of the scan period.
+ * @property {number} [scanPeriod=1000] Scan period in milliseconds.
+ * @property {number} [waitTime=0] Wait time in milliseconds, fixed policy only.
+ * @property {number} [minWaitTime=0] Wait time in milliseconds while beacons
+ * appear, disappear or move in the foreground.
+ * @property {number} [maxWaitTime=10000] Longest wait time in milliseconds
+ * in the foreground.
+ * @property {number} [backgroundMinWaitTime=2000] Shortest wait time in
+ * milliseconds in the background.
+ * @property {number} [backgroundMaxWaitTime=30000] Longest wait time in
+ * milliseconds in the background.
+ * @property {number} [rssiThreshold=5] Mean change in dB of the average RSSI
+ * of a beacon from one evaluation interval to the next above which beacons
+ * are considered moving. Keep it above the RSSI noise.
+ * @property {number} [maxBeacons=1024] Maximum number of beacons tracked.
+ * Beacons beyond it are counted as untracked sightings and do not make
+ * scanning more active.
+ */
+
+/**
+ * Scan scheduling stats object. Times are in milliseconds.
+ * @typedef {Object} ScanSchedulingStats
+ * @property {number} scanPeriod Current scan period.
+ * @property {number} waitTime Current wait time.
+ * @property {boolean} foreground True if the app is in the foreground.
+ * @property {number} trackedBeacons Number of beacons tracked.
+ * @property {number} untrackedSightings Sightings of beacons beyond the
+ * maximum number tracked.
+ * @property {number} adjustments Number of scan period changes.
+ * @property {number} elapsedTime Time since scheduling started.
+ * @property {number} scanTime Time spent scanning.
+ * @property {number} savedScanTime Scan time saved compared to continuous
+ * scanning, the SDK default.
+ * @property {number} savedRatio Saved scan time divided by elapsed time.
+ */
+
+/**
+ * Start adjusting the ranging scan period to the observed activity.
+ * Available on Android.
+ *
+ * Scans run continuously while beacons appear, disappear or move, and the
+ * wait time between scans grows while nothing changes or no beacon is in
+ * range. Longer wait times are used while the app is in the background.
+ * While started, stats are included in {@link PluginStats} as the
+ * scanScheduling property.
+ *
+ * @param {ScanSchedulingOptions} [options] Scan scheduling options (optional).
+ * @param {SuccessCallbackNoParams} [success] Function called when
+ * scheduling is started (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.startScanScheduling = function(options, success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_startScanScheduling',
+		[options || {}]
+	);
+
+	return true;
+};
+
+/**
+ * Stop adjusting the scan period and go back to the SDK default.
+ * Available on Android.
+ *
+ * @param {function} [success] Function called with the final
+ * {@link ScanSchedulingStats} object (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.stopScanScheduling = function(success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_stopScanScheduling',
+		[]
+	);
+
+	return true;
+};
+
+/**
+ * Trace recording status object.
+ * @typedef {Object} TraceStatus
+ * @property {number} recorded Number of events recorded.
+ * @property {number} dropped Number of events dropped because the file
+ * writer did not keep up.
+ * @property {number} bytesWritten Number of bytes written to trace files.
+ * @property {string[]} files Paths of the trace files, oldest first.
+ */
+
+/**
+ * Start recording ranging and monitoring events to binary trace files
+ * in the app files directory. Available on Android.
+ *
+ * Each record holds a timestamp, the region, and the UUID, major, minor,
+ * RSSI and measured power of every beacon in the event. When a file
+ * reaches maxFileSize bytes a new one is started, and only the last
+ * maxFiles files are kept. See TraceRecorder.java for the file format.
+ *
+ * @param {Object} [options] Object with maxFileSize (default 4 MB) and
+ * maxFiles (default 4) properties (optional).
+ * @param {function} [success] Function called with a
+ * {@link TraceStatus} object when recording has started.
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.startTraceRecording = function(options, success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_startTraceRecording',
+		[options || {}]
+	);
+
+	return true;
+};
+
+/**
+ * Stop recording trace files. Available on Android.
+ *
+ * @param {function} [success] Function called with a
+ * {@link TraceStatus} object once pending records are written.
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.stopTraceRecording = function(success, error)
+{
+	exec(success,
+		error,
+		'EstimoteBeacons',
+		'beacons_stopTraceRecording',
+		[]
+	);
+
+	return true;
+};
+
+/**
+ * Monitoring options object. Transitions that are undone before they are
+ * due are not reported.
+ * @typedef {Object} MonitoringOptions
+ * @property {number} [minDwellTime=0] Time in milliseconds the device must
+ * be in the region before the entry is reported.
+ * @property {number} [exitGracePeriod=0] Time in milliseconds the device
+ * must be out of the region before the exit is reported.
+ * @property {number} [minTransitionInterval=0] Minimum time in milliseconds
+ * between two reported transitions.
+ */
+
 /**
  * Start monitoring beacons. Available on iOS and Android.
  *
@@ -751,6 +1588,7 @@ estimote.beacons.stopRangingSecureBeaconsInRegion = function(region, success, er
  * are inside a region when the user turns display on, see
  * {@link https://developer.apple.com/library/prerelease/ios/documentation/CoreLocation/Reference/CLBeaconRegion_class/index.html#//apple_ref/occ/instp/CLBeaconRegion/notifyEntryStateOnDisplay|iOS documentation}
  * for further details (optional, defaults to false, iOS only).
+ * @param {MonitoringOptions} [options] Monitoring options (optional, Android only).
  *
  * @example success callback format:
  *   success(RegionState)
@@ -763,19 +1601,27 @@ estimote.beacons.stopRangingSecureBeaconsInRegion = function(region, success, er
  *       estimote.printObject(state) },
  *     function(errorMessage) {
  *       console.log('Monitoring error: ' + errorMessage) })
+ *
+ * @example Example that ignores flaps at the region edge on Android:
+ *   estimote.beacons.startMonitoringForRegion(
+ *     region,
+ *     onRegionState,
+ *     onError,
+ *     false,
+ *     { minDwellTime: 10000, exitGracePeriod: 30000 })
  */
 estimote.beacons.startMonitoringForRegion = function(
-	region, success, error, notifyEntryStateOnDisplay)
+	region, success, error, notifyEntryStateOnDisplay, options)
 {
 	if (!checkExecParamsRegionSuccessError(region, success, error)) {
 		return false;
 	}
 
-	exec(success,
+	exec(helper_pendingEventsSuccess(success),
 		error,
 		'EstimoteBeacons',
 		'beacons_startMonitoringForRegion',
-		[region, !!notifyEntryStateOnDisplay]
+		[region, !!notifyEntryStateOnDisplay, options || {}]
 	);
 
 	return true;
@@ -912,6 +1758,18 @@ estimote.beacons.stopDiscoveringDevices = function(success, error)
 /**
  * Connect to Estimote Device. Available on Android.
  *
+ * The device must have been found by
+ * {@link estimote.beacons.startDiscoveringDevices} within the last 60 seconds.
+ * Set the maxAge property of the device object to a smaller number of
+ * seconds to narrow this limit for the call, a larger value is clamped to
+ * 60 seconds. Devices that were connected in the
+ * last 5 minutes can be connected again without being discovered, and
+ * reconnect faster.
+ *
+ * Several devices can be connected at once, see
+ * {@link estimote.beacons.configureConnections}. Connecting to a device
+ * that is already connected reuses the connection.
+ *
  * @param {ConfiurableDevce} device Device to connect to.
  * @param {ErrorCallbackNoParams} [success] Function called when monitoring
  * is stopped (optional).
@@ -942,23 +1800,70 @@ estimote.beacons.connectToDevice = function (device, success, error)
 	return true;
 };
 
+/**
+ * Device connection options object.
+ * @typedef {Object} ConnectionOptions
+ * @property {number} maxConnections Number of devices that can be connected
+ * or connecting at once (optional, default 4). Further connection requests
+ * wait until a connection is closed.
+ * @property {number} connectTimeout Seconds before a connection attempt
+ * fails (optional, default 20).
+ * @property {number} idleTimeout Seconds after which a connection that has
+ * not been used is closed (optional, default 60).
+ */
+
+/**
+ * Set the limits of device connections. Available on Android.
+ *
+ * @param {ConnectionOptions} options Connection limits.
+ * @param {ErrorCallbackNoParams} [success] Function called when the limits
+ * have been set.
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ *
+ * @example Example that allows two connections that close after 30 seconds:
+ *   estimote.beacons.configureConnections({
+ *     maxConnections: 2,
+ *     idleTimeout: 30
+ *   });
+ */
+estimote.beacons.configureConnections = function (options, success, error)
+{
+  if (typeof options !== 'object') {
+    return false;
+  }
+
+  exec(success,
+    error,
+    'EstimoteBeacons',
+    'beacons_configureConnections',
+    [options]
+  );
+
+  return true;
+};
+
 /**
  * Disconnect from connected Estimote Device. Available on Android.
  *
- * @param {ErrorCallbackNoParams} [success] Function called when device
- * disconnection request has been init'ed.
+ * @param {ErrorCallbackNoParams} [success] Function called when the
+ * devices have disconnected.
  * @param {ErrorCallback} [error] Function called on error (optional).
+ * @param {String} [macAddress] MAC address of the device to disconnect
+ * from (optional). Disconnects from all devices if omitted.
  *
- * @example Example that disconnects from device:
+ * @example Example that disconnects from all devices:
  *   estimote.beacons.disconnectFromDevice();
+ *
+ * @example Example that disconnects from one device:
+ *   estimote.beacons.disconnectFromDevice(null, null, 'FF:0F:F0:00:F0:00');
  */
-estimote.beacons.disconnectFromDevice = function (success, error)
+estimote.beacons.disconnectFromDevice = function (success, error, macAddress)
 {
   exec(success,
     error,
     'EstimoteBeacons',
     'beacons_disconnectFromDevice',
-    []
+    [macAddress || null]
   );
 
   return true;
@@ -971,18 +1876,20 @@ estimote.beacons.disconnectFromDevice = function (success, error)
  * @param {ErrorCallbackNoParams} [success] Function called when beacon
  * disconnection request has been init'ed.
  * @param {ErrorCallback} [error] Function called on error (optional).
+ * @param {String} [macAddress] MAC address of the connected device to write
+ * to (optional). Defaults to the most recently used connection.
  *
  * @example Example that writes constant ESTIMOTE_PROXIMITY_UUID:
  *   estimote.beacons.writeConnectedProximityUUID(ESTIMOTE_PROXIMITY_UUID);
  */
-estimote.beacons.writeConnectedProximityUUID = function (uuid, success, error) {
+estimote.beacons.writeConnectedProximityUUID = function (uuid, success, error, macAddress) {
   exec(success,
     error,
     'EstimoteBeacons',
     'beacons_writeConnectedProximityUUID',
 
     // force lowercase because some uuidgen's have poor email etiquette
-    [uuid.toLowerCase()]
+    [uuid.toLowerCase(), macAddress || null]
   );
 };
 
@@ -993,16 +1900,18 @@ estimote.beacons.writeConnectedProximityUUID = function (uuid, success, error) {
  * @param {ErrorCallbackNoParams} [success] Function called when beacon
  * disconnection request has been init'ed.
  * @param {ErrorCallback} [error] Function called on error (optional).
+ * @param {String} [macAddress] MAC address of the connected device to write
+ * to (optional). Defaults to the most recently used connection.
  *
  * @example Example that writes 1:
  *   estimote.beacons.writeConnectedMajor(1);
  */
-estimote.beacons.writeConnectedMajor = function (major, success, error) {
+estimote.beacons.writeConnectedMajor = function (major, success, error, macAddress) {
   exec(success,
     error,
     'EstimoteBeacons',
     'beacons_writeConnectedMajor',
-    [major]
+    [major, macAddress || null]
   );
 };
 
@@ -1013,17 +1922,198 @@ estimote.beacons.writeConnectedMajor = function (major, success, error) {
  * @param {ErrorCallbackNoParams} [success] Function called when beacon
  * disconnection request has been init'ed.
  * @param {ErrorCallback} [error] Function called on error (optional).
+ * @param {String} [macAddress] MAC address of the connected device to write
+ * to (optional). Defaults to the most recently used connection.
  *
  * @example Example that writes 1:
  *   estimote.beacons.writeConnectedMinor(1);
  */
-estimote.beacons.writeConnectedMinor = function (minor, success, error) {
+estimote.beacons.writeConnectedMinor = function (minor, success, error, macAddress) {
   exec(success,
     error,
     'EstimoteBeacons',
     'beacons_writeConnectedMinor',
-    [minor]
+    [minor, macAddress || null]
+  );
+};
+
+/**
+ * Settings write result object. Has one property per requested setting,
+ * each with these properties:
+ * @typedef {Object} SettingsWriteResult
+ * @property {string} status One of 'unchanged' (the beacon already had the
+ * value), 'written' or 'failed'.
+ * @property {string} previous Value read from the beacon before writing,
+ * missing if it could not be read.
+ * @property {string} value Requested value.
+ * @property {string} error Error message, only when status is 'failed'.
+ */
+
+/**
+ * Write several settings to connected Estimote Beacon in one call.
+ * Available on Android.
+ *
+ * Current values are read first and only the settings that differ are
+ * written, one after the other on the same connection. The outcome of
+ * every setting is reported in one reply.
+ *
+ * @param {Object} settings Object with the settings to write, any of
+ * proximityUUID (string), major (number) and minor (number).
+ * @param {function} [success] Function called when all settings are
+ * unchanged or written, takes a {@link SettingsWriteResult} object.
+ * @param {function} [error] Function called when a setting could not be
+ * written, takes a {@link SettingsWriteResult} object, or an error message
+ * if nothing could be attempted.
+ * @param {String} [macAddress] MAC address of the connected device to write
+ * to (optional). Defaults to the most recently used connection.
+ *
+ * @example Example that writes UUID, major and minor:
+ *   estimote.beacons.writeConnectedSettings({
+ *     proximityUUID: ESTIMOTE_PROXIMITY_UUID,
+ *     major: 1,
+ *     minor: 2
+ *   });
+ */
+estimote.beacons.writeConnectedSettings = function (settings, success, error, macAddress) {
+  if (typeof settings !== 'object') {
+    return false;
+  }
+
+  var values = {};
+  for (var prop in settings) {
+    if (settings.hasOwnProperty(prop)) {
+      values[prop] = settings[prop];
+    }
+  }
+
+  // force lowercase because some uuidgen's have poor email etiquette
+  if (isString(values.proximityUUID)) {
+    values.proximityUUID = values.proximityUUID.toLowerCase();
+  }
+
+  exec(success,
+    error,
+    'EstimoteBeacons',
+    'beacons_writeConnectedSettings',
+    [values, macAddress || null]
+  );
+
+  return true;
+};
+
+/**
+ * Provisioning plan object.
+ * @typedef {Object} ProvisioningPlan
+ * @property {string} id Job identifier, used to resume the job.
+ * @property {Object[]} devices Devices to provision, each with a macAddress
+ * (string) and a settings object as taken by
+ * {@link estimote.beacons.writeConnectedSettings}.
+ * @property {number} concurrency Number of devices written at the same
+ * time (optional, default 2).
+ * @property {number} maxAttempts Attempts per device before it is marked
+ * as failed (optional, default 5).
+ * @property {number} backoff Seconds to wait before retrying a device,
+ * doubled after each failed attempt (optional, default 2).
+ * @property {number} maxBackoff Longest wait before retrying a device, in
+ * seconds (optional, default 60).
+ */
+
+/**
+ * Provisioning progress object.
+ * @typedef {Object} ProvisioningProgress
+ * @property {string} id Job identifier.
+ * @property {number} total Number of devices in the plan.
+ * @property {number} done Devices that have their settings.
+ * @property {number} failed Devices that ran out of attempts.
+ * @property {number} pending Devices left.
+ * @property {number} elapsed Seconds since the job was started or resumed.
+ * @property {number} throughput Devices handled per minute.
+ * @property {number} eta Estimated seconds left, null until a device has
+ * been handled.
+ * @property {Object} device Device that was just attempted, with
+ * macAddress, status ('pending' when it will be retried, 'done' or
+ * 'failed'), attempts, error and results (a {@link SettingsWriteResult}).
+ */
+
+/**
+ * Write settings to a list of devices. Available on Android.
+ *
+ * Devices found by {@link estimote.beacons.startDiscoveringDevices} are
+ * written strongest signal first, so discovery must be running. Failed
+ * devices are retried with increasing delays. Progress is saved in app
+ * storage after every device, so that an interrupted job can be resumed
+ * with {@link estimote.beacons.resumeProvisioning}.
+ *
+ * @param {ProvisioningPlan} plan Devices and settings to write.
+ * @param {function} [progress] Function called after each device, takes
+ * a {@link ProvisioningProgress} object. The last call has no pending
+ * devices.
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ *
+ * @example Example that sets the major of two beacons:
+ *   estimote.beacons.startProvisioning({
+ *     id: 'store-42',
+ *     devices: [
+ *       { macAddress: 'FF:0F:F0:00:F0:00', settings: { major: 42 } },
+ *       { macAddress: 'FF:0F:F0:00:F0:01', settings: { major: 42 } }
+ *     ]
+ *   },
+ *   function(progress) {
+ *     console.log(progress.done + '/' + progress.total + ', eta ' + progress.eta);
+ *   });
+ */
+estimote.beacons.startProvisioning = function (plan, progress, error) {
+  if (typeof plan !== 'object') {
+    return false;
+  }
+
+  exec(progress,
+    error,
+    'EstimoteBeacons',
+    'beacons_startProvisioning',
+    [plan]
+  );
+
+  return true;
+};
+
+/**
+ * Resume a provisioning job that was stopped or interrupted.
+ * Available on Android.
+ *
+ * @param {string} id Identifier of the job.
+ * @param {function} [progress] Function called after each device, takes
+ * a {@link ProvisioningProgress} object.
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.resumeProvisioning = function (id, progress, error) {
+  exec(progress,
+    error,
+    'EstimoteBeacons',
+    'beacons_resumeProvisioning',
+    [id]
+  );
+
+  return true;
+};
+
+/**
+ * Stop the running provisioning job, it can be resumed later.
+ * Available on Android.
+ *
+ * @param {ErrorCallbackNoParams} [success] Function called when the job
+ * is stopped (optional).
+ * @param {ErrorCallback} [error] Function called on error (optional).
+ */
+estimote.beacons.stopProvisioning = function (success, error) {
+  exec(success,
+    error,
+    'EstimoteBeacons',
+    'beacons_stopProvisioning',
+    []
   );
+
+  return true;
 };
 
 /*********************************************************/
@@ -2110,3 +3200,185 @@ function checkExecParamsRegion(region)
 
 	return true;
 }
+
+/**
+ * Internal helper function. Wraps a ranging success callback so that
+ * binary results are decoded before being passed on.
+ * @private
+ */
+function helper_rangingSuccess(success)
+{
+	return function(result)
+	{
+		if (result instanceof ArrayBuffer) {
+			result = helper_decodeBinaryRangingInformation(result);
+		}
+		success(result);
+	};
+}
+
+/**
+ * Internal helper function. Wraps the success callback of an event
+ * stream so that the pending events the native side sends as one
+ * array are passed on one by one.
+ * @private
+ */
+function helper_pendingEventsSuccess(success)
+{
+	return function(result)
+	{
+		if (Array.isArray(result)) {
+			for (var i = 0; i < result.length; ++i) {
+				success(result[i]);
+			}
+			return;
+		}
+		success(result);
+	};
+}
+
+/**
+ * Internal helper function. Returns a key that identifies a region
+ * the way the native side does.
+ * @private
+ */
+function helper_regionKey(region)
+{
+	return [
+		region.uuid ? String(region.uuid).toLowerCase() : 0,
+		isInt(region.major) ? parseInt(region.major, 10) : 0,
+		isInt(region.minor) ? parseInt(region.minor, 10) : 0
+	].join(':');
+}
+
+/**
+ * Internal helper function. Registers the ranging success callback of a
+ * region for batched delivery, returns the options to send to the native
+ * side extended with the dispatch id of the region.
+ * @private
+ */
+function helper_addRangingDispatch(region, options, rangingSuccess)
+{
+	var dispatchOptions = {};
+	for (var prop in options) {
+		if (options.hasOwnProperty(prop)) {
+			dispatchOptions[prop] = options[prop];
+		}
+	}
+
+	var regionKey = helper_regionKey(region);
+	var dispatchId = 'ranging' + (++rangingDispatchCounter);
+
+	delete rangingDispatchCallbacks[rangingDispatchIds[regionKey]];
+	rangingDispatchIds[regionKey] = dispatchId;
+	rangingDispatchCallbacks[dispatchId] = rangingSuccess;
+
+	dispatchOptions.dispatchId = dispatchId;
+	return dispatchOptions;
+}
+
+/**
+ * Internal helper function. Unregisters the ranging success callback
+ * of a region.
+ * @private
+ */
+function helper_removeRangingDispatch(region)
+{
+	var regionKey = helper_regionKey(region);
+
+	delete rangingDispatchCallbacks[rangingDispatchIds[regionKey]];
+	delete rangingDispatchIds[regionKey];
+}
+
+/**
+ * Internal helper function. Called with a batch of ranging results:
+ * an array of dispatch ids followed by one result per id.
+ * @private
+ */
+function helper_dispatchRangingBatch(dispatchIds)
+{
+	for (var i = 0; i < dispatchIds.length; ++i) {
+		var rangingSuccess = rangingDispatchCallbacks[dispatchIds[i]];
+		if (rangingSuccess) {
+			rangingSuccess(arguments[i + 1]);
+		}
+	}
+}
+
+/**
+ * Internal helper function. Decodes a binary ranging message into a
+ * {@link BeaconInfo} object. The layout is defined by
+ * BinaryRangingEncoder.java, keep both in sync.
+ * @private
+ */
+function helper_decodeBinaryRangingInformation(buffer)
+{
+	var HEADER_SIZE = 28;
+	var UUID_SIZE = 16;
+	var RECORD_SIZE = 18;
+	var PROXIMITIES = ['unknown', 'immediate', 'near', 'far'];
+
+	var view = new DataView(buffer);
+	var bytes = new Uint8Array(buffer);
+
+	function hex(offset, length, separator, upperCase)
+	{
+		var parts = [];
+		for (var i = 0; i < length; ++i) {
+			var byteHex = (bytes[offset + i] + 0x100).toString(16).substr(1);
+			parts.push(upperCase ? byteHex.toUpperCase() : byteHex);
+		}
+		return parts.join(separator);
+	}
+
+	function uuid(offset)
+	{
+		var h = hex(offset, UUID_SIZE, '', false);
+		return h.substr(0, 8) + '-' + h.substr(8, 4) + '-' +
+			h.substr(12, 4) + '-' + h.substr(16, 4) + '-' + h.substr(20);
+	}
+
+	function utf8(offset, length)
+	{
+		var encoded = '';
+		for (var i = 0; i < length; ++i) {
+			encoded += '%' + hex(offset + i, 1, '', false);
+		}
+		return decodeURIComponent(encoded);
+	}
+
+	var flags = view.getUint8(1);
+	var uuidCount = view.getUint16(6, true);
+	var beaconCount = view.getUint16(8, true);
+	var identifierLength = view.getUint16(10, true);
+
+	// Unset region properties are left out, as in JSON results.
+	var region = { identifier: utf8(HEADER_SIZE, identifierLength) };
+	if (flags & 1) { region.proximityUUID = uuid(12); }
+	if (flags & 2) { region.major = view.getUint16(2, true); }
+	if (flags & 4) { region.minor = view.getUint16(4, true); }
+
+	var offset = HEADER_SIZE + identifierLength;
+	var uuids = [];
+	for (var i = 0; i < uuidCount; ++i) {
+		uuids.push(uuid(offset));
+		offset += UUID_SIZE;
+	}
+
+	var beacons = [];
+	for (var j = 0; j < beaconCount; ++j) {
+		beacons.push({
+			proximityUUID: uuids[view.getUint16(offset, true)],
+			major: view.getUint16(offset + 2, true),
+			minor: view.getUint16(offset + 4, true),
+			rssi: view.getInt8(offset + 6),
+			proximity: PROXIMITIES[view.getUint8(offset + 7)] || 'unknown',
+			accuracy: view.getFloat32(offset + 8, true),
+			// Formatted as MacAddress.toString() in JSON results.
+			macAddress: '[' + hex(offset + 12, 6, ':', true) + ']'
+		});
+		offset += RECORD_SIZE;
+	}
+
+	return { region: region, beacons: beacons };
+}